@@ -0,0 +1,96 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import java.util.concurrent.TimeUnit;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import util.secure.AsymKeysImpl;
+
+/**
+ * Copies and serialization of a signed Item.
+ * @author Julien Prudhomme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AdvertisementBenchmark {
+	
+	private AsymKeysImpl keys;
+	private Item item;
+	private String xml;
+	private long lifeTime = 1000000L;
+	
+	@Setup
+	public void setup() {
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description", "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+		item.sign(keys);
+		xml = item.toString();
+	}
+	
+	@Benchmark
+	public Item cloneCopy() {
+		return item.clone();
+	}
+	
+	@Benchmark
+	public Item cloneXML() {
+		return new Item(item.toString());
+	}
+	
+	@Benchmark
+	public AsymKeysImpl keysCopy() {
+		return keys.copy();
+	}
+	
+	@Benchmark
+	public Item parse() {
+		return new Item(xml);
+	}
+	
+	@Benchmark
+	public String concatenedElements() {
+		item.setLifeTime(++lifeTime); // a value change, nothing is reused from the previous call
+		return item.getConcatenedElements();
+	}
+	
+	@Benchmark
+	public byte[] signingDigest() {
+		item.setLifeTime(++lifeTime);
+		return ((AbstractAdvertisement) item).getSigningDigest();
+	}
+}
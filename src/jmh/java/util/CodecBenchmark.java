@@ -0,0 +1,122 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Table-driven Hexa and Base64Codec against the previous implementations
+ * (String.format / Integer.parseInt per byte, net.jxta.impl.util.Base64).
+ * @author Julien Prudhomme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class CodecBenchmark {
+	
+	@Param({"32", "1024", "65536"})
+	public int size;
+	
+	private byte[] data;
+	private String hex;
+	private String base64;
+	
+	@Setup
+	public void setup() {
+		data = new byte[size];
+		new Random(size).nextBytes(data);
+		hex = Hexa.bytesToHex(data);
+		base64 = Base64Codec.encode(data, 0, data.length, Base64Codec.MIME_LINE);
+	}
+	
+	///// HEXADECIMAL \\\\\
+	
+	@Benchmark
+	public String bytesToHex() {
+		return Hexa.bytesToHex(data);
+	}
+	
+	@Benchmark
+	public String bytesToHexFormat() {
+		StringBuilder sb = new StringBuilder(data.length * 2);
+		for(byte b: data)
+			sb.append(String.format("%02x", b & 0xff));
+		return sb.toString();
+	}
+	
+	@Benchmark
+	public byte[] hexToBytes() {
+		return Hexa.hexToBytes(hex);
+	}
+	
+	@Benchmark
+	public byte[] hexToBytesParseInt() {
+		byte[] out = new byte[hex.length() / 2];
+		for (int i = 0; i < out.length; i++)
+			out[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		return out;
+	}
+	
+	///// BASE64 \\\\\
+	
+	@Benchmark
+	public String base64Encode() {
+		return Base64Codec.encode(data, 0, data.length, Base64Codec.MIME_LINE);
+	}
+	
+	@Benchmark
+	public String base64EncodeStreamed() throws IOException {
+		StringWriter writer = new StringWriter(Base64Codec.encodedLength(data.length, Base64Codec.MIME_LINE));
+		Base64Codec.encode(new ByteArrayInputStream(data), writer, Base64Codec.MIME_LINE);
+		return writer.toString();
+	}
+	
+	@Benchmark
+	public String base64EncodeJxta() {
+		return net.jxta.impl.util.Base64.encodeBase64(data);
+	}
+	
+	@Benchmark
+	public byte[] base64Decode() {
+		return Base64Codec.decode(base64);
+	}
+	
+	@Benchmark
+	public byte[] base64DecodeJxta() throws IOException {
+		return net.jxta.impl.util.Base64.decodeBase64(base64);
+	}
+}
@@ -0,0 +1,85 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SHA-256 hashes and hexadecimal conversions.
+ * @author Julien Prudhomme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HasherBenchmark {
+	
+	@Param({"32", "1024", "65536"})
+	public int size;
+	
+	private byte[] data;
+	private String text;
+	private String hex;
+	
+	@Setup
+	public void setup() {
+		data = new byte[size];
+		new Random(size).nextBytes(data);
+		hex = Hexa.bytesToHex(data);
+		text = hex.substring(0, size);
+	}
+	
+	@Benchmark
+	public String sha256Bytes() {
+		return Hasher.SHA256(data);
+	}
+	
+	@Benchmark
+	public String sha256String() {
+		return Hasher.SHA256(text);
+	}
+	
+	@Benchmark
+	public String bytesToHex() {
+		return Hexa.bytesToHex(data);
+	}
+	
+	@Benchmark
+	public byte[] hexToBytes() {
+		return Hexa.hexToBytes(hex);
+	}
+	
+	@Benchmark
+	public String stringToHex() {
+		return Hexa.stringToHex(text);
+	}
+}
@@ -0,0 +1,73 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Keys generation (private key encrypted with the password) and copy.
+ * @author Julien Prudhomme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AsymKeysImplBenchmark {
+	
+	private AsymKeysImpl keys;
+	private AsymKeysImpl clearKeys;
+	
+	@Setup
+	public void setup() {
+		keys = new AsymKeysImpl(false, "benchmark");
+		clearKeys = keys.copy();
+		clearKeys.decryptPrivateKey("benchmark");
+	}
+	
+	@Benchmark
+	public AsymKeysImpl generate() {
+		return new AsymKeysImpl(false, "benchmark");
+	}
+	
+	@Benchmark
+	public AsymKeysImpl copy() {
+		return keys.copy();
+	}
+	
+	@Benchmark
+	public AsymKeysImpl copyWithPrivateKey() {
+		return clearKeys.copy();
+	}
+	
+	@Benchmark
+	public boolean decryptPrivateKey() {
+		return keys.copy().decryptPrivateKey("benchmark");
+	}
+}
@@ -0,0 +1,130 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ElGamal signatures and encryption.
+ * legacySign is the signing code used before ElGamalSigner (one 1023 bits probable prime
+ * per nonce), kept here as reference.
+ * @author Julien Prudhomme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ElGamalBenchmark {
+	
+	private static final byte[] message = "Lorem ipsum dolor sit amet, consectetur adipiscing elit.".getBytes();
+	
+	private AsymKeysImpl keys;
+	private AsymKeysImpl publicKeys;
+	private ElGamal elGamal;
+	private ElGamal elGamalPublic;
+	private ElGamalSigner randomSigner;
+	private ElGamalSigner deterministicSigner;
+	private SecureRandom random = new SecureRandom();
+	private ElGamalSign sign;
+	private byte[] encrypted;
+	
+	@Setup
+	public void setup() {
+		keys = new AsymKeysImpl(false, "benchmark");
+		keys.decryptPrivateKey("benchmark");
+		publicKeys = new AsymKeysImpl(keys.getP(), keys.getG(), keys.getPublicKey());
+		elGamal = new ElGamal(keys);
+		elGamalPublic = new ElGamal(publicKeys);
+		randomSigner = new ElGamalSigner(keys);
+		deterministicSigner = new ElGamalSigner(keys, ElGamalSigner.NONCE.DETERMINISTIC, random);
+		sign = randomSigner.sign(message);
+		encrypted = elGamalPublic.encryptWithPublicKey(message);
+	}
+	
+	private static ElGamalSign legacySign(AsymKeysImpl keys, SecureRandom random, byte[] M) {
+		BigInteger m = ElGamalSigner.messageRepresentative(M);
+		BigInteger k = BigInteger.probablePrime(1023, random);
+		while(k.compareTo(BigInteger.ONE)<= 0 || k.gcd(keys.getP()).compareTo(BigInteger.ONE)!= 0 )
+		{
+			k = BigInteger.probablePrime(1023, random);
+		}
+		BigInteger l = k.modInverse(keys.getP().subtract(BigInteger.ONE));
+		BigInteger r = keys.getG().modPow(k,keys.getP());
+		BigInteger s = l.multiply(m.subtract(r.multiply(keys.getPrivateKey())).mod(keys.getP().subtract(BigInteger.ONE)));
+		return new ElGamalSign(r, s);
+	}
+	
+	///// SIGNATURES \\\\\
+	
+	@Benchmark
+	public ElGamalSign legacySign() {
+		return legacySign(keys, random, message);
+	}
+	
+	@Benchmark
+	public ElGamalSign signRandomNonce() {
+		return randomSigner.sign(message);
+	}
+	
+	@Benchmark
+	public ElGamalSign signDeterministicNonce() {
+		return deterministicSigner.sign(message);
+	}
+	
+	/**
+	 * Signature equation only, without the SignatureCache.
+	 */
+	@Benchmark
+	public boolean verify() {
+		return elGamalPublic.verifyEquation(message, sign);
+	}
+	
+	/**
+	 * Signature already verified, answered by the SignatureCache.
+	 */
+	@Benchmark
+	public boolean verifyCached() {
+		return elGamalPublic.verifySignature(message, sign);
+	}
+	
+	///// ENCRYPTION \\\\\
+	
+	@Benchmark
+	public byte[] encrypt() {
+		return elGamalPublic.encryptWithPublicKey(message);
+	}
+	
+	@Benchmark
+	public byte[] decrypt() {
+		return elGamal.decryptWithPrivateKey(encrypted);
+	}
+}
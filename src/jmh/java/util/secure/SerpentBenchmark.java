@@ -0,0 +1,84 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serpent (old format) and SerpentGCM encryption, keys already derived.
+ * @author Julien Prudhomme
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerpentBenchmark {
+	
+	@Param({"16", "1024", "65536", "1048576"})
+	public int size;
+	
+	private Serpent serpent;
+	private SerpentGCM serpentGCM;
+	private byte[] data;
+	private byte[] encrypted;
+	private byte[] encryptedGCM;
+	
+	@Setup
+	public void setup() {
+		serpent = new Serpent("benchmark");
+		serpentGCM = new SerpentGCM("benchmark");
+		data = new byte[size];
+		new Random(size).nextBytes(data);
+		encrypted = serpent.encrypt(data);
+		encryptedGCM = serpentGCM.encrypt(data);
+	}
+	
+	@Benchmark
+	public byte[] encrypt() {
+		return serpent.encrypt(data);
+	}
+	
+	@Benchmark
+	public byte[] decrypt() {
+		return serpent.decrypt(encrypted);
+	}
+	
+	@Benchmark
+	public byte[] encryptGCM() {
+		return serpentGCM.encrypt(data);
+	}
+	
+	@Benchmark
+	public byte[] decryptGCM() {
+		return serpentGCM.decrypt(encryptedGCM);
+	}
+}
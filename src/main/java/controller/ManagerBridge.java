@@ -139,8 +139,7 @@ public class ManagerBridge{
 			t = TYPE.OFFER;
 		}
 		Item item = new Item(Application.getInstance().getManager().getUserManager().getCurrentUser(), title, c, description, image, country, contact, 0, l, t);
-		AsymKeysImpl keys = new AsymKeysImpl(Application.getInstance().getManager().getUserManager().getCurrentUser().getKeys().toString());
-		keys.decryptPrivateKey(Application.getInstance().getManager().getUserManager().getCurrentUser().getClearPwd());
+		AsymKeysImpl keys = Application.getInstance().getManager().getUserManager().getCurrentUser().getSession().getKeys();
 		item.sign(keys);
 		Application.getInstance().getManager().getItemManager().addItem(item, true);
 		return item.getItemKey();
@@ -177,8 +176,7 @@ public class ManagerBridge{
 			Printer.printError(ManagerBridge.class, "updateItem", "No user logged !");
 			return;
 		}
-		AsymKeysImpl key = Application.getInstance().getManager().getUserManager().getCurrentUser().getKeys().copy();
-		key.decryptPrivateKey(Application.getInstance().getManager().getUserManager().getCurrentUser().getClearPwd());
+		AsymKeysImpl key = Application.getInstance().getManager().getUserManager().getCurrentUser().getSession().getKeys();
 		
 		Item item = new Item(Application.getInstance().getManager().getItemManager().getItem(itemKey).toString());
 		item.setTitle(title);
@@ -34,7 +34,7 @@ public class SearchItemController implements SearchListener<Item>{
 	
 	public void startSearch(String title) {
 		Search<Item> s = new Search<Item>(Application.getInstance().getNetwork(), Item.class.getSimpleName(), "title", false);
-		s.addListener(this);
+		s.addVerifiedListener(this);
 		items = new HashMap<String, Item>();
 		s.search(title, 0, 0);
 		System.out.println("recherche en cours: title = '" + title + "'");
@@ -55,10 +55,6 @@ public class SearchItemController implements SearchListener<Item>{
 	 * Receive an Item and filtering it.
 	 */
 	public void searchEvent(Item event) {
-		if(!event.checkSignature(event.getKeys())) {
-			System.out.println("Item: " + event.getTitle() + " bad signature");
-			return;
-		}
 		if(items.containsKey(event.getItemKey())) {
 			Item i = items.get(event.getItemKey());
 			if(event.getLastUpdated() > i.getLastUpdated()) {
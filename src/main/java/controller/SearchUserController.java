@@ -30,13 +30,13 @@ public class SearchUserController implements SearchListener<User>{
 	
 	public void startSearch(String nick) {
 		Search<User> s = new Search<User>(Application.getInstance().getNetwork(), User.class.getSimpleName(), "nick", false);
-		s.addListener(this);
+		s.addVerifiedListener(this);
 		s.search(nick, 0, 0);
 	}
 	
 	public void startSearchByPublicKey(String publicKey) {
 		Search<User> s = new Search<User>(Application.getInstance().getNetwork(), User.class.getSimpleName(), "superPublicKey", false);
-		s.addListener(this);
+		s.addVerifiedListener(this);
 		System.out.println("start search for user with public key " + publicKey);
 		s.search(publicKey, 3000, 5);
 	}
@@ -57,10 +57,6 @@ public class SearchUserController implements SearchListener<User>{
 	
 	@Override
 	public void searchEvent(User event) {
-		if(!event.checkSignature(event.getKeys())) {
-			System.out.println("bad signature for " + event.getNick());
-			return;
-		}
 		if(users.containsKey(event.getKeys().getPublicKey().toString(16))) {
 			User u = users.get(event.getKeys().getPublicKey().toString(16));
 			if(event.getLastUpdated() > u.getLastUpdated()) {
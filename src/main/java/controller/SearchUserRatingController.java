@@ -34,14 +34,14 @@ public class SearchUserRatingController implements SearchListener<UserRating>{
 	
 	public void startSearch(String nick) {
 		Search<UserRating> s = new Search<UserRating>(Application.getInstance().getNetwork(), UserRating.class.getSimpleName(), "nick", false);
-		s.addListener(this);
+		s.addVerifiedListener(this);
 		System.out.println("start search for user nammed " + nick);
 		s.search(nick, 0, 0);
 	}
 	
 	public void startSearchByPublicKey(BigInteger publicKey) {
 		Search<UserRating> s = new Search<UserRating>(Application.getInstance().getNetwork(), UserRating.class.getSimpleName(), "superPublicKey", false);
-		s.addListener(this);
+		s.addVerifiedListener(this);
 		System.out.println("start search for user with public key " + publicKey);
 		s.search(String.valueOf(publicKey), 3000, 5);
 	}
@@ -65,10 +65,6 @@ public class SearchUserRatingController implements SearchListener<UserRating>{
 	 * Receive a Rating and filter it.
 	 */
 	public void searchEvent(UserRating event) {
-		if(!event.checkSignature(event.getKeys())) {
-			System.out.println("Rating from: " + event.getPubKeyFrom() + "\nto: " + event.getPubKeyTo() + "\nbad signature");
-			return;
-		}
 		if(ratings.containsKey(event.getKeys().getPublicKey().toString(16))) {
 			UserRating r = ratings.get(event.getKeys().getPublicKey().toString(16));
 			if(event.getLastUpdated() > r.getLastUpdated()) {
@@ -28,6 +28,7 @@ import java.util.logging.Level;
 
 import model.advertisement.AdvertisementInstaciator;
 import model.data.RendezVousIp;
+import model.data.blob.BlobStore;
 import model.data.contrat.Clause;
 import model.data.contrat.Contrat;
 import model.data.favorites.Favorites;
@@ -35,6 +36,7 @@ import model.data.item.Category;
 import model.data.item.Item;
 import model.data.item.Category.CATEGORY;
 import model.data.item.Item.TYPE;
+import model.data.manager.ItemCatalogue;
 import model.data.manager.Manager;
 import model.data.manager.resiliance.ContratsResiliance;
 import model.data.manager.resiliance.FavoritesResiliance;
@@ -48,6 +50,7 @@ import model.data.user.UserMessage;
 import model.network.Network;
 import model.network.communication.Communication;
 import model.network.communication.service.MessageService;
+import model.network.communication.service.blob.BlobService;
 import model.network.communication.service.InstanceSender.ClassSenderService;
 import model.network.communication.service.update.UpdateService;
 import model.network.search.Search;
@@ -83,6 +86,8 @@ public class Application {
 		startCommunication();
 		manager = new Manager(network);
 		manager.recovery(VARIABLES.ManagerFilePath);
+		startCatalogue();
+		manager.getItemManager().startExpiry(VARIABLES.ItemExpiryPeriod);
 		startSharingManager();
 		
 		if(startLocalServer)
@@ -109,6 +114,18 @@ public class Application {
 		sharingManager.startSharing();
 	}
 	
+	/**
+	 * Keep the items of the other users on disk
+	 */
+	private void startCatalogue() {
+		try {
+			manager.getItemManager().setCatalogue(new ItemCatalogue(new File(VARIABLES.ItemCataloguePath),
+					VARIABLES.ItemSegmentSize, VARIABLES.ItemCacheSize));
+		} catch (IOException e) {
+			Printer.printError(this, "startCatalogue", "items kept on heap : " + e.getMessage());
+		}
+	}
+	
 	/**
 	 * Start the communication package and adds the services
 	 */
@@ -117,6 +134,9 @@ public class Application {
 			this.com = new Communication(network);
 			com.addService(new MessageService());
 			com.addService(new UpdateService());
+			BlobService blobs = new BlobService(BlobStore.getDefault());
+			com.addService(blobs);
+			BlobStore.getDefault().setFetcher(blobs);
 			ClassSenderService.addSenderServices(com);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -16,27 +16,29 @@
 package model.advertisement;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Random;
 import java.util.UUID;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.jdom2.Element;
 import org.jdom2.IllegalDataException;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 
+import util.Compressor;
 import util.Printer;
+import util.StreamParser;
 import util.StringToElement;
 import util.VARIABLES;
 import util.secure.AsymKeysImpl;
@@ -69,21 +71,47 @@ import net.jxta.peergroup.PeerGroup;
  */
 public abstract class AbstractAdvertisement extends Advertisement{
 
-	private AbstractAdvertisement old = null; //for update. After each updates the last change are saved here.
+	/*
+	 * For update. After each updates the values are saved here. The array is shared with
+	 * values (copy-on-write) until a value change.
+	 */
+	private String[] oldValues = null;
+	private boolean valuesShared = false;
+	
+	/*
+	 * The keys of this class (with their indexes for JXTA), shared by all the instances.
+	 */
+	private AdvertisementSchema schema;
+	
+	/*
+	 * Only used while the first instance of a class declares its keys.
+	 */
+	private AdvertisementSchema.Builder schemaBuilder;
 	
 	/*
-	 * An hashMap that usually contain the key and value of this advertisement content, 
+	 * The values of this advertisement content, one slot per key of the schema,
 	 * for generating an XML file for JXTA or for saving datas.
 	 */
-	protected HashMap<String, String> keyValues = new HashMap<String, String> ();
+	private String[] values;
 	
-	protected HashMap<String, Boolean> keyCanBeUpdated = new HashMap<String, Boolean>();
+	/*
+	 * Incremented each time a value change. The XML string and the concatenated elements
+	 * are computed again only if it changed since the last call.
+	 */
+	private int modifications = 0;
+	private int xmlModifications = -1;
+	private String xml;
+	private int concatenedModifications = -1;
+	private String concatened;
+	private int digestModifications = -1;
+	private byte[] digest;
+	private int putModifications = -1;		// value of modifications after the last putValues
 	
 	/*
-	 * An array list that contains the indexes for this advertisement. Indexes are used by JXTA for
-	 * advertisements publication and search.
+	 * Lazy mode : text of the fields that are not decoded yet, one slot per key of the schema.
+	 * null once every field is decoded.
 	 */
-	protected ArrayList<String> indexes = new ArrayList<String>();
+	private volatile String[] raw;
 	
 	private AsymKeysImpl keys = null;
 	
@@ -108,13 +136,50 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	public AbstractAdvertisement() {
 		super();
+		declareKeys();
+		setId();
+	}
+	
+	/**
+	 * Copy constructor for the child classes (see clone). Copy the fields of this class,
+	 * the keys without their clear private key, as new X(source.toString()) would.
+	 * @param source - an instance of the same class
+	 */
+	protected AbstractAdvertisement(AbstractAdvertisement source) {
+		super();
+		source.decodeAll();
+		declareKeys();
+		keyId = source.keyId;
+		lastUpdated = source.lastUpdated;
+		signature = source.signature;
+		keys = source.keys == null ? null : new AsymKeysImpl(source.keys);
+		if(source.schema == schema) {
+			System.arraycopy(source.values, 0, values, 0, values.length);
+			modifications = source.modifications;
+			xml = source.xml;
+			xmlModifications = source.xmlModifications;
+			concatened = source.concatened;
+			concatenedModifications = source.concatenedModifications;
+			digest = source.digest;
+			digestModifications = source.digestModifications;
+		}
+	}
+	
+	private void declareKeys() {
+		schema = AdvertisementSchema.get(getClass());
+		if(schema == null)
+			schemaBuilder = new AdvertisementSchema.Builder();
 		addKey("signature", false, true);
 		addKey("lastUpdated", false, true);
 		addKey("keyId", true, false);
 		addKey("keys", false, false);
 		addKey("superPublicKey", true, false);
 		setKeys(); //setting the default keys and indexes for this advertisement.
-		setId();
+		if(schemaBuilder != null) {
+			schema = AdvertisementSchema.register(getClass(), getAdvType(), schemaBuilder);
+			schemaBuilder = null;
+		}
+		values = new String[schema.size()];
 	}
 	
 	/**
@@ -133,18 +198,25 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	public AbstractAdvertisement(String XML) {
 		this();
-		SAXBuilder saxBuilder=new SAXBuilder();
-        Reader stringReader=new StringReader(XML);
-        Element root = null;
-        try {
-			root = saxBuilder.build(stringReader).getRootElement();
-		} catch (JDOMException e) {
+		try {
+			XMLStreamReader reader = StreamParser.createReader(new StringReader(XML));
+			try {
+				if(!StreamParser.nextChild(reader))
+					throw new XMLStreamException("no root element");
+				while(StreamParser.nextChild(reader)) { //each child is handled as soon as it is read.
+					Element e = StreamParser.readElement(reader);
+					if(!superHandleElement(e)) {
+						throw new IllegalDataException(e.getName());
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
 			System.err.println("Parse problem in " + this.getAdvType());
 			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+			initialize((Element) null);
 		}
-        initialize(root);
 	}
 	
 	
@@ -156,8 +228,21 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * @param root the root element given by Jxta.
 	 */
 	public AbstractAdvertisement(net.jxta.document.Element root) {
+		this(root, false);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	/**
+	 * Instantiate and initialize this advertisement with the given root element given by Jxta.
+	 * In lazy mode only keyId and lastUpdated are decoded now, that is enough to filter
+	 * the duplicates of a search. The other fields keep their text and are decoded on first
+	 * access (see decode), so a child class using it must call decode in its accessors.
+	 * @param root the root element given by Jxta.
+	 * @param lazy
+	 */
+	protected AbstractAdvertisement(net.jxta.document.Element root, boolean lazy) {
 		this();
-		initialize(root);
+		initialize(root, lazy);
 	}
 	
 	/**
@@ -172,15 +257,34 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * @return
 	 */
 	public HashMap<String, String> getKeysValues() {
-		return this.keyValues;
+		HashMap<String, String> keyValues = new HashMap<String, String>();
+		for(int i = 0; i < values.length; i++) {
+			keyValues.put(schema.getName(i), values[i]);
+		}
+		return keyValues;
+	}
+	
+	AdvertisementSchema getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * Return the value stored in a slot of the schema.
+	 * @param slot
+	 * @return
+	 */
+	String getValue(int slot) {
+		return values[slot];
 	}
 	
 	public void setKeys(AsymKeysImpl keys) {
 		if(keys == null) return;
+		decode("keys");
 		this.keys = keys.copy();
 	}
 	
 	public AsymKeysImpl getKeys() {
+		decode("keys");
 		return this.keys;
 	}
 	
@@ -190,10 +294,10 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * @return the element value.
 	 */
 	protected String getValue(String key) {
-		if(this.keyValues.containsKey(key)) {
-			return this.keyValues.get(key);
-		}
-		else throw new IllegalArgumentException("Key " + key + " inconnue");
+		int slot = schema.getSlot(key);
+		if(slot < 0)
+			throw new IllegalArgumentException("Key " + key + " inconnue");
+		return values[slot];
 	}
 	
 	/**
@@ -202,18 +306,27 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * @param isIndexed true if the key should be indexed for Jxta.
 	 */
 	protected void addKey(String key, boolean isIndexed, boolean canBeUpdated) {
-		keyValues.put(key, null);
-		if(isIndexed) {
-			indexes.add(key);
+		if(schemaBuilder != null) {
+			schemaBuilder.addKey(key, isIndexed, canBeUpdated);
+		}
+		else if(schema.getSlot(key) < 0) {
+			throw new IllegalStateException("key " + key + " not declared by the first instance of " + getClass().getName());
 		}
-		keyCanBeUpdated.put(key, canBeUpdated);
 	}
 	
 	protected void addValue(String key, String value) {
-		if(!keyValues.containsKey(key)) {
+		int slot = schema.getSlot(key);
+		if(slot < 0) {
 			throw new IllegalArgumentException("unknown key");
 		}
-		keyValues.put(key, value);
+		if(value == null ? values[slot] != null : !value.equals(values[slot])) {
+			if(valuesShared) {
+				values = values.clone();
+				valuesShared = false;
+			}
+			values[slot] = value;
+			modifications++;
+		}
 	}
 	
 	
@@ -235,16 +348,14 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	public Element getRootElement() {
 		superPutValues();
+		return buildRootElement();
+	}
+	
+	private Element buildRootElement() {
 		Element root = new Element(getAdvertisementName());
-		ArrayList<String> sorted = new ArrayList<>();
-		for(String key: keyValues.keySet()) {
-			sorted.add(key);
-		}
-		Collections.sort(sorted);
-		
-		for(String key: sorted) { //creating an element for each keys. Add to root content.
-			Element e = new Element(key);
-			e.addContent(keyValues.get(key));
+		for(int i = 0; i < values.length; i++) { //creating an element for each keys (alpha-order). Add to root content.
+			Element e = new Element(schema.getName(i));
+			e.addContent(values[i]);
 			root.addContent(e);
 		}
 		return root;
@@ -270,8 +381,8 @@ public abstract class AbstractAdvertisement extends Advertisement{
             ((Attributable) adv).addAttribute("xmlns:jxta", "http://jxta.org");
         }
 		
-		for (String key : keyValues.keySet()) {
-			net.jxta.document.Element e = adv.createElement(key,keyValues.get(key));
+		for (int i = 0; i < values.length; i++) {
+			net.jxta.document.Element e = adv.createElement(schema.getName(i), values[i]);
 			adv.appendChild(e);
 		}
 		return adv;
@@ -279,7 +390,7 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	
 	@Override
 	public String[] getIndexFields() {
-		return (String[]) indexes.toArray(new String[1]);
+		return schema.getIndexFields();
 	}
 	
 	/**
@@ -293,7 +404,26 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	protected abstract void putValues();
 	
-	private void superPutValues() {
+	/**
+	 * Child classes that return true call changed() in each setter of a field written by
+	 * putValues : putValues is then skipped while nothing changed since its last call.
+	 * Classes with fields that can be modified without their setter (lists, mutable objects)
+	 * keep the default.
+	 * @return false, putValues is called each time.
+	 */
+	protected boolean tracksChanges() {
+		return false;
+	}
+	
+	/**
+	 * Report a change of a field written by putValues (see tracksChanges).
+	 */
+	protected void changed() {
+		modifications++;
+	}
+	
+	void superPutValues() {
+		decodeAll();
 		addValue("signature", signature == null ? null:signature.toString());
 		addValue("lastUpdated", Long.toString(lastUpdated));
 		addValue("keyId", keyId);
@@ -301,7 +431,10 @@ public abstract class AbstractAdvertisement extends Advertisement{
 			addValue("superPublicKey", keys.getPublicKey().toString(16));
 			addValue("keys",keys.toString());
 		}
-		putValues();
+		if(putModifications != modifications || !tracksChanges()) {
+			putValues();
+			putModifications = modifications;
+		}
 	}
 	
 	/**
@@ -310,6 +443,11 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	@SuppressWarnings("rawtypes")
 	protected void initialize(net.jxta.document.Element root) {
+		initialize(root, false);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private void initialize(net.jxta.document.Element root, boolean lazy) {
 		if (!TextElement.class.isInstance(root)) {
             throw new IllegalArgumentException(getClass().getName() + "initialize needs a TextElement.");
         }
@@ -321,9 +459,15 @@ public abstract class AbstractAdvertisement extends Advertisement{
             //Jxta didn't call the right advertisement to construct. Unexpected error.
         }
 		
+		String[] text = lazy ? new String[schema.size()] : null;
 		Enumeration elements = doc.getChildren();
         while(elements.hasMoreElements()) {
         	TextElement elem = (TextElement) elements.nextElement();
+        	int slot = schema.getSlot(elem.getName());
+        	if(lazy && slot >= 0 && !elem.getName().equals("keyId") && !elem.getName().equals("lastUpdated")) {
+        		text[slot] = elem.getValue(); //decoded on first access
+        		continue;
+        	}
         	Element e = new Element(elem.getName()); //convert into a Jdom element.
         	e.addContent(elem.getValue());
         	if (!superHandleElement(e)) {
@@ -331,6 +475,57 @@ public abstract class AbstractAdvertisement extends Advertisement{
                 //this element is unknown for this advertisement.
             }
         }
+        if(lazy)
+        	raw = text;
+	}
+	
+	/**
+	 * Decode the field key if its text was kept by the lazy mode, nothing otherwise.
+	 * Child classes that use the lazy mode call it in the getters and setters of each field.
+	 * @param key
+	 * @throws IllegalDataException if the text can't be decoded, as the constructor would have.
+	 */
+	protected void decode(String key) {
+		if(raw == null)
+			return;
+		int slot = schema.getSlot(key);
+		if(slot >= 0)
+			decodeSlot(slot);
+	}
+	
+	/**
+	 * Decode all the fields whose text was kept by the lazy mode.
+	 * @throws IllegalDataException if a text can't be decoded, as the constructor would have.
+	 */
+	protected void decodeAll() {
+		if(raw == null)
+			return;
+		synchronized(this) {
+			String[] text = raw;
+			if(text == null)
+				return;
+			for(int slot = 0; slot < text.length; slot++)
+				decodeSlot(slot);
+			raw = null;
+		}
+	}
+	
+	/**
+	 * @return true if no field is waiting to be decoded.
+	 */
+	public boolean isDecoded() {
+		return raw == null;
+	}
+	
+	private synchronized void decodeSlot(int slot) {
+		String[] text = raw;
+		if(text == null || text[slot] == null)
+			return;
+		Element e = new Element(schema.getName(slot));
+		e.addContent(text[slot]);
+		text[slot] = null; //handleElement can call the setters, that call decode.
+		if(!superHandleElement(e))
+			throw new IllegalDataException(e.getName());
 	}
 	
 	/**
@@ -369,10 +564,28 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	}
 	
 	public String getSignature() {
-		return signature.toString();
+		return getElGamalSign().toString();
+	}
+	
+	ElGamalSign getElGamalSign() {
+		decode("signature");
+		return signature;
 	}
 	
-	private boolean superHandleElement(Element e) {
+	void setElGamalSign(ElGamalSign signature) {
+		decode("signature");
+		this.signature = signature;
+	}
+	
+	/**
+	 * Set the keys decoded by BinaryCodec, without copy.
+	 * @param keys
+	 */
+	void setDecodedKeys(AsymKeysImpl keys) {
+		this.keys = keys;
+	}
+	
+	boolean superHandleElement(Element e) {
 		switch(e.getName()) {
 		case "signature": setSignature(e.getValue()); return true;
 		case "lastUpdated": lastUpdated = new Long(e.getValue()); return true;
@@ -397,12 +610,33 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * Return a string, XML-Formatted, representing this instance.
 	 */
 	public String toString() {
-		org.jdom2.Element document = this.getRootElement();
+		superPutValues();
+		if(xmlModifications == modifications)
+			return xml;
+		org.jdom2.Element document = this.buildRootElement();
 		XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-        String xmlString = outputter.outputString(document);
-		return xmlString;
-	}
-	
+        xml = outputter.outputString(document);
+        xmlModifications = modifications;
+		return xml;
+	}
+	
+	/**
+	 * Return this instance in the compact binary format (see BinaryCodec).
+	 * @return
+	 */
+	public byte[] toBinary() {
+		return BinaryCodec.encode(this);
+	}
+	
+	/**
+	 * Return this instance in the compact binary format, with the long fields compressed.
+	 * @param compressor - accepted by the receivers, null for no compression.
+	 * @return
+	 */
+	public byte[] toBinary(Compressor compressor) {
+		return BinaryCodec.encode(this, compressor);
+	}
+	
 	public String getDocumentString() {
 		org.jdom2.Document document = this.getDocument();
 		XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
@@ -418,19 +652,32 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	public String getConcatenedElements() {
 		superPutValues();
-		ArrayList<String> sortedElements = new ArrayList<String>();
-		for(String s: keyValues.keySet()) {
-			if(!s.equals("signature") && keyValues.get(s) != null && !keyValues.get(s).isEmpty()) {
-				String value = s + ":" + keyValues.get(s) + "\n";
-				sortedElements.add(value);
+		if(concatenedModifications == modifications)
+			return concatened;
+		StringBuffer s = new StringBuffer();
+		for(int slot : schema.getConcatenationOrder()) {
+			String key = schema.getName(slot);
+			if(!key.equals("signature") && values[slot] != null && !values[slot].isEmpty()) {
+				s.append(key).append(':').append(values[slot]).append('\n');
 			}
 		}
-		Collections.sort(sortedElements);
-		StringBuffer s = new StringBuffer();
-		for(String c : sortedElements) {
-			s.append(c);
+		concatened = s.toString();
+		concatenedModifications = modifications;
+		return concatened;
+	}
+	
+	/**
+	 * Get the SHA-256 of getConcatenedElements().getBytes(), the digest that is signed.
+	 * Computed without building the string (see CanonicalEncoder).
+	 * @return the digest, must not be modified.
+	 */
+	byte[] getSigningDigest() {
+		superPutValues();
+		if(digestModifications != modifications) {
+			digest = CanonicalEncoder.digest(schema, values);
+			digestModifications = modifications;
 		}
-		return s.toString();
+		return digest;
 	}
 	
 	/**
@@ -440,7 +687,7 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	public ElGamalSign sign(AsymKeysImpl keys) {
 		ElGamal crypter = new ElGamal(keys);
 		lastUpdated = System.currentTimeMillis();
-		signature = crypter.getMessageSignature(getConcatenedElements().getBytes());
+		signature = crypter.getDigestSignature(getSigningDigest());
 		if(signature == null) System.err.println(this.getAdvertisementName()+" : Signature null");
 		return signature;
 	}
@@ -451,11 +698,61 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * @return true if ok, else false
 	 */
 	public boolean checkSignature(AsymKeysImpl keys) {
+		try {
+			decodeAll();
+		} catch(IllegalDataException e) {
+			Printer.printError(this, "checkSignature", "can't decode " + e.getMessage());
+			return false;
+		}
 		if(signature == null) return false;
 		ElGamal crypter = new ElGamal(keys);
-		return crypter.verifySignature(getConcatenedElements().getBytes(), signature);
+		return crypter.verifyDigestSignature(getSigningDigest(), signature);
+	}
+	
+	
+	/**
+	 * Check the signatures of several advertisements at once, each one with its own keys.
+	 * @param advertisements
+	 * @return the advertisements with a correct signature, in the same order.
+	 */
+	public static <A extends AbstractAdvertisement> ArrayList<A> verifyAll(Collection<A> advertisements) {
+		return verifyAll(advertisements, null);
 	}
 	
+	/**
+	 * Check the signatures of several advertisements at once according to a public key.
+	 * Faster than checkSignature on each advertisement (batch verification).
+	 * @param advertisements
+	 * @param keys - An AsymKeysImpl object that contain a public key, or null to use the advertisements keys.
+	 * @return the advertisements with a correct signature, in the same order.
+	 */
+	public static <A extends AbstractAdvertisement> ArrayList<A> verifyAll(Collection<A> advertisements, AsymKeysImpl keys) {
+		ArrayList<A> signed = new ArrayList<A>();
+		ArrayList<AsymKeysImpl> publicKeys = new ArrayList<AsymKeysImpl>();
+		ArrayList<byte[]> digests = new ArrayList<byte[]>();
+		ArrayList<ElGamalSign> signatures = new ArrayList<ElGamalSign>();
+		for(A a : advertisements) {
+			try {
+				a.decodeAll();
+			} catch(IllegalDataException e) {
+				Printer.printError(a, "verifyAll", "can't decode " + e.getMessage());
+				continue;
+			}
+			AsymKeysImpl k = keys == null ? a.getKeys() : keys;
+			ElGamalSign sign = ((AbstractAdvertisement) a).signature;
+			if(sign == null || k == null) continue;
+			signed.add(a);
+			publicKeys.add(k);
+			digests.add(((AbstractAdvertisement) a).getSigningDigest());
+			signatures.add(sign);
+		}
+		boolean[] valid = ElGamal.verifyDigestSignatures(publicKeys, digests, signatures);
+		ArrayList<A> result = new ArrayList<A>();
+		for(int i = 0; i < valid.length; i++) {
+			if(valid[i]) result.add(signed.get(i));
+		}
+		return result;
+	}
 	
 
 	public boolean checkUpdateMessage(Element root) {
@@ -485,13 +782,28 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	public void throwUpdate(Communication com, AsymKeysImpl emmitter) {
 		UpdateMessage update = new UpdateMessage(this, emmitter);
 		com.getService("updateService").sendMessage(update, (PeerID[])null);
-		old = this.clone(); //keeping current object state for future update computation.
+		keepOld(); //keeping current object state for future update computation.
 		System.out.println(update);
 		
 	}
 	
-	public AbstractAdvertisement getOld() {
-		return old;
+	/**
+	 * Save the current values for the next update, without copy until a value change.
+	 */
+	void keepOld() {
+		superPutValues();
+		oldValues = values;
+		valuesShared = true;
+	}
+	
+	/**
+	 * Get the hashmap of the updatable keys, as they were at the last update.
+	 * @return null if no update has been thrown.
+	 */
+	public HashMap<String, String> getOldUpdatableKeys() {
+		if(oldValues == null)
+			return null;
+		return getUpdatableKeys(oldValues);
 	}
 	
 	/**
@@ -500,10 +812,14 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 */
 	public HashMap<String, String> getUpdatableKeys() {
 		superPutValues();
+		return getUpdatableKeys(values);
+	}
+	
+	private HashMap<String, String> getUpdatableKeys(String[] values) {
 		HashMap<String, String> updatable = new HashMap<String, String>();
-		for(String key : this.keyValues.keySet()) {
-			if(keyCanBeUpdated.get(key)) {
-				updatable.put(key, keyValues.get(key));
+		for(int i = 0; i < values.length; i++) {
+			if(schema.canBeUpdated(i)) {
+				updatable.put(schema.getName(i), values[i]);
 			}
 		}
 		return updatable;
@@ -525,6 +841,7 @@ public abstract class AbstractAdvertisement extends Advertisement{
 	 * Clone the Abstract advertisement (only with declared fields in setKeys)
 	 * For example, for the User class that extends abstractAdvertisement, 
 	 * user.clone() is the same result that new User(user.toString())
+	 * Child classes can override it with their copy constructor to avoid the XML round trip.
 	 */
 	public AbstractAdvertisement clone() {
 		try {
@@ -559,5 +876,23 @@ public abstract class AbstractAdvertisement extends Advertisement{
 		}
 		
 	}
+	
+	/**
+	 * Remove this object from the local cache of his PeerGroup, the other peers keep it
+	 * until its expiration.
+	 * @param NetworkInterface the current network.
+	 */
+	public void flush(NetworkInterface n) {
+		if(n == null || n.getGroup(getSimpleName()) == null)
+			return;
+		try {
+			n.getGroup(getSimpleName()).getDiscoveryService().flushAdvertisement(this);
+			PeerGroup idGroup = n.getGroup("id-" + getSimpleName());
+			if(idGroup != null)
+				idGroup.getDiscoveryService().flushAdvertisement(new IdAdvertisement(this));
+		} catch (IOException e) {
+			Printer.printError(this, "flush", e.toString());
+		}
+	}
 
 }
@@ -0,0 +1,154 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The keys declared by an advertisement class (addKey in its constructor and setKeys).
+ * Built once per class, then shared by all its instances : each key gets a slot,
+ * and the instances only keep an array of values.
+ * @author Julien Prudhomme
+ *
+ */
+final class AdvertisementSchema {
+	
+	private static final ConcurrentHashMap<Class<?>, AdvertisementSchema> schemas = new ConcurrentHashMap<Class<?>, AdvertisementSchema>();
+	
+	private final String[] names;			// slot -> key, in alphabetic order
+	private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+	private final boolean[] canBeUpdated;
+	private final String[] indexFields;		// in declaration order
+	private final int[] concatenationOrder;	// slots sorted as the "key:value" lines of getConcatenedElements
+	private final int fingerprint;
+	
+	private AdvertisementSchema(String advType, Builder builder) {
+		final String[] names = builder.names.toArray(new String[builder.names.size()]);
+		Arrays.sort(names);
+		this.names = names;
+		canBeUpdated = new boolean[names.length];
+		StringBuffer s = new StringBuffer(advType);
+		for(int i = 0; i < names.length; i++) {
+			slots.put(names[i], i);
+			canBeUpdated[i] = builder.canBeUpdated.get(names[i]);
+			s.append(',').append(names[i]);
+		}
+		fingerprint = s.toString().hashCode();
+		indexFields = builder.indexes.toArray(new String[builder.indexes.size()]);
+		
+		Integer[] order = new Integer[names.length];
+		for(int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return (names[a] + ":").compareTo(names[b] + ":");
+			}
+		});
+		concatenationOrder = new int[order.length];
+		for(int i = 0; i < order.length; i++)
+			concatenationOrder[i] = order[i];
+	}
+	
+	/**
+	 * Get the schema of a class, null if no instance has been built yet.
+	 * @param c
+	 * @return
+	 */
+	static AdvertisementSchema get(Class<?> c) {
+		return schemas.get(c);
+	}
+	
+	/**
+	 * Freeze the keys collected by the builder as the schema of the class.
+	 * If another thread did it first, its schema is returned.
+	 * @param c
+	 * @param advType
+	 * @param builder
+	 * @return
+	 */
+	static AdvertisementSchema register(Class<?> c, String advType, Builder builder) {
+		AdvertisementSchema schema = new AdvertisementSchema(advType, builder);
+		AdvertisementSchema previous = schemas.putIfAbsent(c, schema);
+		return previous == null ? schema : previous;
+	}
+	
+	public int size() {
+		return names.length;
+	}
+	
+	/**
+	 * @param slot
+	 * @return the key stored in this slot
+	 */
+	public String getName(int slot) {
+		return names[slot];
+	}
+	
+	/**
+	 * @param key
+	 * @return the slot of this key, -1 if the key is unknown.
+	 */
+	public int getSlot(String key) {
+		Integer slot = slots.get(key);
+		return slot == null ? -1 : slot;
+	}
+	
+	public boolean canBeUpdated(int slot) {
+		return canBeUpdated[slot];
+	}
+	
+	public String[] getIndexFields() {
+		return indexFields.clone();
+	}
+	
+	/**
+	 * Slots in the order used to concatenate the elements before signing.
+	 * @return
+	 */
+	int[] getConcatenationOrder() {
+		return concatenationOrder;
+	}
+	
+	/**
+	 * Hash of the advertisement type and of the keys, used to check that two peers share the same schema.
+	 * @return
+	 */
+	public int getFingerprint() {
+		return fingerprint;
+	}
+	
+	/**
+	 * Collect the keys while the first instance of a class is built.
+	 */
+	static class Builder {
+		private ArrayList<String> names = new ArrayList<String>();
+		private ArrayList<String> indexes = new ArrayList<String>();
+		private HashMap<String, Boolean> canBeUpdated = new HashMap<String, Boolean>();
+		
+		public void addKey(String key, boolean isIndexed, boolean canBeUpdated) {
+			if(!this.canBeUpdated.containsKey(key))
+				names.add(key);
+			if(isIndexed && !indexes.contains(key))
+				indexes.add(key);
+			this.canBeUpdated.put(key, canBeUpdated);
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.jdom2.Element;
+
+import util.Compressor;
+import util.secure.AsymKeysImpl;
+import util.secure.ElGamalSign;
+
+/**
+ * Compact binary encoding of the advertisements, used between peers instead of the XML string.
+ * The fields are the ones declared with addKey, numbered in alphabetic order (the schema of the class).
+ * Format (version 1) :
+ * 'S' 'X' 'B' 0x01 | schema fingerprint (4 bytes) | number of fields (varint) | fields
+ * field : index in the schema (varint) | type (1 byte) | value
+ * Values : length-prefixed UTF-8 strings, zigzag varint for decimal numbers, raw bytes for
+ * hexadecimal strings, nested encoding for the keys and r, s for the signature.
+ * With a Compressor, long strings are compressed : compressor name | UTF-8 length (varint) |
+ * compressed bytes. Strings already compressed by their format (Base64 images) are kept as is.
+ * JXTA discovery documents stay in XML.
+ * @author Julien Prudhomme
+ *
+ */
+public class BinaryCodec {
+	
+	public static final String NAME = "sxb1";
+	public static final byte[] HEADER = {'S', 'X', 'B', 0x01};
+	
+	private static final int STRING = 0;
+	private static final int LONG = 1;
+	private static final int HEX = 2;
+	private static final int KEYS = 3;
+	private static final int SIGNATURE = 4;
+	private static final int COMPRESSED = 5;
+	
+	/**
+	 * Check if data starts with the binary header.
+	 * @param data
+	 * @return
+	 */
+	public static boolean isBinary(byte[] data) {
+		if(data == null || data.length < HEADER.length + 4)
+			return false;
+		for(int i = 0; i < HEADER.length; i++) {
+			if(data[i] != HEADER[i])
+				return false;
+		}
+		return true;
+	}
+	
+	///// ENCODING \\\\\
+	
+	/**
+	 * Encode the advertisement.
+	 * @param adv
+	 * @return
+	 */
+	public static byte[] encode(AbstractAdvertisement adv) {
+		return encode(adv, null);
+	}
+	
+	/**
+	 * Encode the advertisement, compressing the long fields.
+	 * @param adv
+	 * @param compressor - accepted by the receivers, null for no compression.
+	 * @return
+	 */
+	public static byte[] encode(AbstractAdvertisement adv, Compressor compressor) {
+		AdvertisementSchema schema = adv.getSchema();
+		adv.superPutValues();
+		ByteArrayOutputStream fields = new ByteArrayOutputStream();
+		int count = 0;
+		for(int i = 0; i < schema.size(); i++) {
+			String key = schema.getName(i);
+			if(key.equals("superPublicKey"))
+				continue; // same as keys.publicKey
+			if(key.equals("keys") && adv.getKeys() != null) {
+				writeVarint(fields, i);
+				fields.write(KEYS);
+				writeBytes(fields, encode(adv.getKeys()));
+				count++;
+				continue;
+			}
+			if(key.equals("signature") && adv.getElGamalSign() != null) {
+				writeVarint(fields, i);
+				fields.write(SIGNATURE);
+				writeBytes(fields, adv.getElGamalSign().getR().toByteArray());
+				writeBytes(fields, adv.getElGamalSign().getS().toByteArray());
+				count++;
+				continue;
+			}
+			String value = adv.getValue(i);
+			if(value == null)
+				continue;
+			writeVarint(fields, i);
+			writeValue(fields, value, compressor);
+			count++;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(fields.size() + 16);
+		out.write(HEADER, 0, HEADER.length);
+		writeInt(out, schema.getFingerprint());
+		writeVarint(out, count);
+		byte[] b = fields.toByteArray();
+		out.write(b, 0, b.length);
+		return out.toByteArray();
+	}
+	
+	private static void writeValue(ByteArrayOutputStream out, String value, Compressor compressor) {
+		if(isLong(value)) {
+			out.write(LONG);
+			long l = Long.parseLong(value);
+			writeVarint(out, (l << 1) ^ (l >> 63));
+		} else if(isHex(value)) {
+			out.write(HEX);
+			writeVarint(out, value.length());
+			byte[] b = new byte[(value.length() + 1) / 2];
+			int shift = value.length() % 2; // odd : first byte holds one digit
+			for(int i = 0; i < value.length(); i++) {
+				int pos = i + shift;
+				b[pos / 2] |= Character.digit(value.charAt(i), 16) << (pos % 2 == 0 ? 4 : 0);
+			}
+			out.write(b, 0, b.length);
+		} else {
+			byte[] b = value.getBytes(StandardCharsets.UTF_8);
+			byte[] compressed = compressor == null || Compressor.isCompressedFormat(value) ? null : compressor.compressIfUseful(b);
+			if(compressed != null) {
+				out.write(COMPRESSED);
+				writeBytes(out, compressor.getName().getBytes(StandardCharsets.UTF_8));
+				writeVarint(out, b.length);
+				writeBytes(out, compressed);
+			} else {
+				out.write(STRING);
+				writeBytes(out, b);
+			}
+		}
+	}
+	
+	/**
+	 * Decimal number that is written the same way by Long.toString
+	 */
+	private static boolean isLong(String value) {
+		int n = value.length();
+		if(n == 0 || n > 20)
+			return false;
+		int start = value.charAt(0) == '-' ? 1 : 0;
+		if(start == n || (value.charAt(start) == '0' && n > start + 1) || (start == 1 && n == 2 && value.charAt(1) == '0'))
+			return false;
+		for(int i = start; i < n; i++) {
+			char c = value.charAt(i);
+			if(c < '0' || c > '9')
+				return false;
+		}
+		try {
+			Long.parseLong(value);
+			return true;
+		} catch(NumberFormatException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Lower case hexadecimal string (as BigInteger.toString(16) or Hexa.bytesToHex)
+	 */
+	private static boolean isHex(String value) {
+		if(value.isEmpty())
+			return false;
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f'))
+				return false;
+		}
+		return true;
+	}
+	
+	private static void writeVarint(ByteArrayOutputStream out, long v) {
+		while((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+	
+	private static void writeInt(ByteArrayOutputStream out, int v) {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+	
+	private static void writeBytes(ByteArrayOutputStream out, byte[] b) {
+		writeVarint(out, b.length);
+		out.write(b, 0, b.length);
+	}
+	
+	///// DECODING \\\\\
+	
+	/**
+	 * Fill an empty advertisement with the encoded data.
+	 * @param data - encoded by the same class
+	 * @param adv - a new instance of the encoded class
+	 * @return adv
+	 * @throws IllegalArgumentException if the data are malformed or encoded with another schema.
+	 * The data come from peers : this is the only exception they can cause.
+	 */
+	public static <A extends AbstractAdvertisement> A decode(byte[] data, A adv) {
+		if(!isBinary(data))
+			throw new IllegalArgumentException("not a binary advertisement");
+		AdvertisementSchema schema = adv.getSchema();
+		ByteBuffer in = ByteBuffer.wrap(data);
+		in.position(HEADER.length);
+		try {
+			if(in.getInt() != schema.getFingerprint())
+				throw new IllegalArgumentException("unknown schema for " + adv.getAdvType());
+			long count = readVarint(in);
+			for(long n = 0; n < count; n++) {
+				long i = readVarint(in);
+				if(i < 0 || i >= schema.size())
+					throw new IllegalArgumentException("unknown field " + i);
+				String key = schema.getName((int) i);
+				int type = in.get();
+				switch(type) {
+				case KEYS:
+					if(adv instanceof AsymKeysImpl) // never encoded, and would recurse without limit
+						throw new IllegalArgumentException("keys inside keys");
+					adv.setDecodedKeys(decode(readBytes(in), new AsymKeysImpl()));
+					break;
+				case SIGNATURE:
+					BigInteger r = new BigInteger(readBytes(in));
+					BigInteger s = new BigInteger(readBytes(in));
+					adv.setElGamalSign(new ElGamalSign(r, s));
+					break;
+				default:
+					Element e = new Element(key);
+					e.addContent(readValue(in, type));
+					boolean handled;
+					try {
+						handled = adv.superHandleElement(e);
+					} catch(RuntimeException ex) { // the setters only expect values written by this application
+						throw new IllegalArgumentException("bad value for " + key + " : " + ex);
+					}
+					if(!handled)
+						throw new IllegalArgumentException("unknown field " + key);
+				}
+			}
+		} catch(BufferUnderflowException | NegativeArraySizeException e) {
+			throw new IllegalArgumentException("truncated data");
+		}
+		return adv;
+	}
+	
+	private static String readValue(ByteBuffer in, int type) {
+		switch(type) {
+		case STRING:
+			return new String(readBytes(in), StandardCharsets.UTF_8);
+		case LONG:
+			long v = readVarint(in);
+			return Long.toString((v >>> 1) ^ -(v & 1));
+		case HEX:
+			long count = readVarint(in);
+			if(count < 0 || count > 2L * in.remaining()) // from a peer : checked before allocating
+				throw new IllegalArgumentException("truncated data");
+			int digits = (int) count;
+			byte[] b = new byte[(digits + 1) / 2];
+			in.get(b);
+			char[] c = new char[digits];
+			int shift = digits % 2;
+			for(int i = 0; i < digits; i++) {
+				int pos = i + shift;
+				c[i] = Character.forDigit((b[pos / 2] >> (pos % 2 == 0 ? 4 : 0)) & 0xF, 16);
+			}
+			return new String(c);
+		case COMPRESSED:
+			String name = new String(readBytes(in), StandardCharsets.UTF_8);
+			Compressor compressor = Compressor.get(name);
+			if(compressor == null)
+				throw new IllegalArgumentException("unknown compression " + name);
+			long length = readVarint(in);
+			if(length > Compressor.MAX_LENGTH)
+				throw new IllegalArgumentException("field too long");
+			return new String(compressor.decompress(readBytes(in), (int) length), StandardCharsets.UTF_8);
+		default:
+			throw new IllegalArgumentException("unknown type " + type);
+		}
+	}
+	
+	private static long readVarint(ByteBuffer in) {
+		long v = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			v |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return v;
+		}
+		throw new IllegalArgumentException("malformed varint");
+	}
+	
+	private static byte[] readBytes(ByteBuffer in) {
+		long length = readVarint(in);
+		if(length < 0 || length > in.remaining())
+			throw new IllegalArgumentException("truncated data");
+		byte[] b = new byte[(int) length];
+		in.get(b);
+		return b;
+	}
+}
@@ -0,0 +1,146 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Compute the SHA-256 of getConcatenedElements().getBytes() without building the string :
+ * the "key:value\n" lines are encoded in a reused buffer, in the order precomputed by the
+ * schema, and given to a reused MessageDigest. One encoder per thread.
+ * The bytes are the same as String.getBytes() (default charset), so the signatures are unchanged.
+ * With a charset other than UTF-8, ISO-8859-1 or US-ASCII the string is still built.
+ * @author Julien Prudhomme
+ *
+ */
+final class CanonicalEncoder {
+	
+	private static final ThreadLocal<CanonicalEncoder> encoders = new ThreadLocal<CanonicalEncoder>() {
+		@Override
+		protected CanonicalEncoder initialValue() {
+			return new CanonicalEncoder();
+		}
+	};
+	
+	private final MessageDigest md;
+	private final CharsetEncoder encoder;
+	private final boolean streamable;	// stateless charset writing ASCII characters as one byte
+	private final byte[] buffer = new byte[4096];
+	private final ByteBuffer out = ByteBuffer.wrap(buffer);
+	
+	private CanonicalEncoder() {
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		Charset charset = Charset.defaultCharset();
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		streamable = charset.equals(StandardCharsets.UTF_8) ||
+				charset.equals(StandardCharsets.ISO_8859_1) ||
+				charset.equals(StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * SHA-256 of the concatenated elements of the advertisement (see getConcatenedElements)
+	 * @param schema
+	 * @param values - values of the advertisement, by slot
+	 * @return
+	 */
+	static byte[] digest(AdvertisementSchema schema, String[] values) {
+		return encoders.get().encode(schema, values);
+	}
+	
+	private byte[] encode(AdvertisementSchema schema, String[] values) {
+		md.reset();
+		out.clear();
+		if(!streamable) {
+			StringBuffer s = new StringBuffer();
+			for(int slot : schema.getConcatenationOrder()) {
+				String key = schema.getName(slot);
+				if(!key.equals("signature") && values[slot] != null && !values[slot].isEmpty())
+					s.append(key).append(':').append(values[slot]).append('\n');
+			}
+			return md.digest(s.toString().getBytes());
+		}
+		for(int slot : schema.getConcatenationOrder()) {
+			String key = schema.getName(slot);
+			String value = values[slot];
+			if(key.equals("signature") || value == null || value.isEmpty())
+				continue;
+			write(key);
+			write(":");
+			write(value);
+			write("\n");
+		}
+		flush();
+		return md.digest();
+	}
+	
+	private void write(String s) {
+		int n = s.length();
+		for(int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if(c >= 0x80) {
+				encode(s, i);
+				return;
+			}
+			if(!out.hasRemaining())
+				flush();
+			out.put((byte) c);
+		}
+	}
+	
+	/**
+	 * Encode s from the index start with the charset encoder.
+	 */
+	private void encode(String s, int start) {
+		CharBuffer in = CharBuffer.wrap(s, start, s.length());
+		encoder.reset();
+		try {
+			while(true) {
+				CoderResult result = encoder.encode(in, out, true);
+				if(result.isOverflow()) {
+					flush();
+					continue;
+				}
+				if(result.isError())
+					result.throwException();
+				break;
+			}
+			while(encoder.flush(out).isOverflow())
+				flush();
+		} catch (CharacterCodingException e) {
+			throw new IllegalStateException(e); // not thrown with the REPLACE actions
+		}
+	}
+	
+	private void flush() {
+		md.update(buffer, 0, out.position());
+		out.clear();
+	}
+}
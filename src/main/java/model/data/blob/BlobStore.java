@@ -0,0 +1,382 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.blob;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import util.Hexa;
+import util.Printer;
+import util.VARIABLES;
+
+/**
+ * Local content-addressed store for big contents (item images) : each blob is a file named
+ * by the SHA-256 of its content, so a content is stored once whatever the number of
+ * advertisements that refer to it. Advertisements only carry a reference ("sha256:" + digest).
+ * When the store is bigger than its capacity, the least recently used blobs are deleted,
+ * except the pinned ones (contents of the local users, unpinned by ItemManager when the last item
+ * that shows them is removed or replaced). The pins are kept in the file "pins" of
+ * the store : they protect the blobs from the eviction at opening, before the local data are read.
+ * Missing blobs are asked to the Fetcher (see BlobService).
+ * @author Julien Prudhomme
+ *
+ */
+public class BlobStore {
+	public static final String REFERENCE = "sha256:";
+	private static final int DIGEST_LENGTH = 64;	// hexadecimal SHA-256
+	private static final String PINS = "pins";
+	
+	private static BlobStore defaultStore = null;
+	
+	private File directory;
+	private long capacity;
+	private LinkedHashMap<String, Long> blobs = new LinkedHashMap<String, Long>(16, 0.75f, true); // digest -> size, least recently used first
+	private HashSet<String> pinned = new HashSet<String>();
+	private long size = 0;
+	private Fetcher fetcher = null;
+	
+	/**
+	 * Get the missing blobs from somewhere else (the other peers).
+	 */
+	public static interface Fetcher {
+		/**
+		 * Start getting the blob, without waiting for it.
+		 * @param digest
+		 */
+		public void fetch(String digest);
+	}
+	
+	///////////////////////////////////////////////// CONSTRUCTORS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Open (or create) a store in this directory.
+	 * @param directory
+	 * @param capacity - number of bytes kept on disk.
+	 */
+	public BlobStore(File directory, long capacity) {
+		this.directory = directory;
+		this.capacity = capacity;
+		if(!directory.isDirectory() && !directory.mkdirs())
+			Printer.printError(this, "BlobStore", "can't create " + directory);
+		load();
+	}
+	
+	/**
+	 * The store of the application, in VARIABLES.BlobStorePath.
+	 * @return
+	 */
+	public static synchronized BlobStore getDefault() {
+		if(defaultStore == null)
+			defaultStore = new BlobStore(new File(VARIABLES.BlobStorePath), VARIABLES.BlobStoreCapacity);
+		return defaultStore;
+	}
+	
+	public static synchronized void setDefault(BlobStore store) {
+		defaultStore = store;
+	}
+	
+	/**
+	 * Index the blobs already on disk, least recently used first.
+	 */
+	private void load() {
+		loadPins();
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for(File f : files) {
+			if(f.getName().endsWith(".tmp")) {
+				f.delete(); // interrupted write
+			} else if(isDigest(f.getName())) {
+				blobs.put(f.getName(), f.length());
+				size += f.length();
+			}
+		}
+		evict();
+	}
+	
+	///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	public synchronized boolean contains(String digest) {
+		return blobs.containsKey(digest);
+	}
+	
+	/**
+	 * Get the content of a blob.
+	 * @param digest
+	 * @return null if the blob isn't in the store.
+	 */
+	public synchronized byte[] get(String digest) {
+		Long length = blobs.get(digest);
+		if(length == null)
+			return null;
+		return read(digest, 0, length.intValue());
+	}
+	
+	/**
+	 * Read a part of a blob.
+	 * @param digest
+	 * @param offset
+	 * @param length - maximum number of bytes
+	 * @return null if the blob isn't in the store.
+	 */
+	public synchronized byte[] read(String digest, long offset, int length) {
+		Long total = blobs.get(digest);
+		if(total == null || offset < 0 || offset > total)
+			return null;
+		byte[] data = new byte[(int) Math.min(length, total - offset)];
+		try (RandomAccessFile file = new RandomAccessFile(getFile(digest), "r")) {
+			file.seek(offset);
+			file.readFully(data);
+		} catch (IOException e) {
+			Printer.printError(this, "read", e.toString());
+			remove(digest);
+			return null;
+		}
+		touch(digest);
+		return data;
+	}
+	
+	/**
+	 * @param digest
+	 * @return the size of the blob, -1 if it isn't in the store.
+	 */
+	public synchronized long getSize(String digest) {
+		Long length = blobs.get(digest);
+		return length == null ? -1 : length;
+	}
+	
+	/**
+	 * @return the number of bytes of all the blobs.
+	 */
+	public synchronized long getTotalSize() {
+		return size;
+	}
+	
+	///////////////////////////////////////////////// ADDERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Add a content.
+	 * @param data
+	 * @return its digest
+	 * @throws IOException
+	 */
+	public String put(byte[] data) throws IOException {
+		String digest = digest(data);
+		store(digest, data);
+		return digest;
+	}
+	
+	/**
+	 * Add a content received for a digest.
+	 * @param data
+	 * @param digest
+	 * @return false if data doesn't have this digest.
+	 * @throws IOException
+	 */
+	public boolean put(byte[] data, String digest) throws IOException {
+		if(!digest(data).equals(digest))
+			return false;
+		store(digest, data);
+		return true;
+	}
+	
+	private synchronized void store(String digest, byte[] data) throws IOException {
+		if(blobs.containsKey(digest)) { // already stored
+			touch(digest);
+			return;
+		}
+		File tmp = new File(directory, digest + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(tmp)) {
+			out.write(data);
+		}
+		File file = getFile(digest);
+		if(!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("can't write " + file);
+		}
+		blobs.put(digest, (long) data.length);
+		size += data.length;
+		evict();
+	}
+	
+	/**
+	 * Never evict this blob.
+	 * @param digest
+	 */
+	public synchronized void pin(String digest) {
+		if(pinned.add(digest))
+			savePins();
+	}
+	
+	public synchronized void unpin(String digest) {
+		if(pinned.remove(digest))
+			savePins();
+		evict();
+	}
+	
+	public synchronized boolean isPinned(String digest) {
+		return pinned.contains(digest);
+	}
+	
+	private void loadPins() {
+		File file = new File(directory, PINS);
+		if(!file.exists())
+			return;
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				if(isDigest(line))
+					pinned.add(line);
+			}
+		} catch (IOException e) {
+			Printer.printError(this, "loadPins", e.toString());
+		}
+	}
+	
+	/**
+	 * Write the pins, replacing the file only once the new one is complete.
+	 */
+	private void savePins() {
+		StringBuilder s = new StringBuilder();
+		for(String digest : pinned)
+			s.append(digest).append('\n');
+		File tmp = new File(directory, PINS + ".tmp");
+		File file = new File(directory, PINS);
+		try (FileOutputStream out = new FileOutputStream(tmp)) {
+			out.write(s.toString().getBytes(StandardCharsets.US_ASCII));
+		} catch (IOException e) {
+			Printer.printError(this, "savePins", e.toString());
+			return;
+		}
+		if(!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+			Printer.printError(this, "savePins", "can't write " + file);
+	}
+	
+	///////////////////////////////////////////////// REMOVERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	public synchronized boolean remove(String digest) {
+		Long length = blobs.remove(digest);
+		if(length == null)
+			return false;
+		size -= length;
+		if(pinned.remove(digest))
+			savePins();
+		getFile(digest).delete();
+		return true;
+	}
+	
+	/**
+	 * Delete the least recently used blobs until the store fits its capacity.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = blobs.entrySet().iterator();
+		while(size > capacity && it.hasNext()) {
+			Map.Entry<String, Long> e = it.next();
+			if(pinned.contains(e.getKey()))
+				continue;
+			getFile(e.getKey()).delete();
+			size -= e.getValue();
+			it.remove();
+		}
+	}
+	
+	///////////////////////////////////////////////// FETCHER \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	public synchronized void setFetcher(Fetcher fetcher) {
+		this.fetcher = fetcher;
+	}
+	
+	/**
+	 * Ask the fetcher for a missing blob. The blob will be in the store once received.
+	 * @param digest
+	 * @return false if there is no fetcher.
+	 */
+	public boolean fetch(String digest) {
+		Fetcher f;
+		synchronized(this) {
+			f = fetcher;
+		}
+		if(f == null)
+			return false;
+		f.fetch(digest);
+		return true;
+	}
+	
+	///////////////////////////////////////////////// TOOLS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	private File getFile(String digest) {
+		return new File(directory, digest);
+	}
+	
+	/**
+	 * Mark the blob as recently used, also on disk for the next start.
+	 */
+	private void touch(String digest) {
+		blobs.get(digest);
+		getFile(digest).setLastModified(System.currentTimeMillis());
+	}
+	
+	/**
+	 * SHA-256 of data, in hexadecimal.
+	 * @param data
+	 * @return
+	 */
+	public static String digest(byte[] data) {
+		try {
+			return Hexa.bytesToHex(MessageDigest.getInstance("SHA-256").digest(data));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	public static boolean isDigest(String s) {
+		return s != null && s.length() == DIGEST_LENGTH && Hexa.isHex(s);
+	}
+	
+	/**
+	 * Check if an advertisement value is a reference to a blob.
+	 * @param value
+	 * @return
+	 */
+	public static boolean isReference(String value) {
+		return value != null && value.startsWith(REFERENCE) && isDigest(value.substring(REFERENCE.length()));
+	}
+	
+	public static String toReference(String digest) {
+		return REFERENCE + digest;
+	}
+	
+	/**
+	 * @param reference
+	 * @return the digest of the reference, null if value isn't a reference.
+	 */
+	public static String getDigest(String reference) {
+		return isReference(reference) ? reference.substring(REFERENCE.length()) : null;
+	}
+}
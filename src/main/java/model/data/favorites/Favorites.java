@@ -28,7 +28,8 @@ import org.jdom2.Element;
 import util.Hexa;
 import util.StringToElement;
 import util.secure.AsymKeysImpl;
-import util.secure.Serpent;
+import util.secure.PublicKeyId;
+import util.secure.SerpentGCM;
 
 /**
  * This class can be instantiated for contains item favorite.
@@ -61,7 +62,10 @@ public class Favorites extends AbstractAdvertisement{
 	}
 	//////////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	public String getOwner(){
-		return getKeys().getPublicKey().toString(16);
+		return getOwnerId().toString();
+	}
+	public PublicKeyId getOwnerId(){
+		return getKeys().getPublicKeyId();
 	}
 	public ArrayList<String> getItemsKey(){
 		return itemsKey;
@@ -114,12 +118,22 @@ public class Favorites extends AbstractAdvertisement{
 			printError("encrypt", "password null or empty");
 			return;
 		}
+		encrypt(new SerpentGCM(password));
+	}
+	/**
+	 * Encrypt the items with an already derived key (see KeySession)
+	 * @param s
+	 */
+	public void encrypt(SerpentGCM s){
+		if(s == null){
+			printError("encrypt", "key null");
+			return;
+		}
 		if(crypted){
 			printError("encrypt", "Favorites already encrypted");
 			return;
 		}
 		ArrayList<String> itemsKeyCrypted = new ArrayList<String>();
-		Serpent s = new Serpent(password);
 		for (String i : itemsKey) {
 			itemsKeyCrypted.add(Hexa.bytesToHex(s.encrypt(i.getBytes())));
 		}
@@ -133,21 +147,32 @@ public class Favorites extends AbstractAdvertisement{
 			printError("encrypt", "password null or empty");
 			return;
 		}
-		if(!crypted){
-			printError("decrypt", "Favorites already decrypted");
+		decrypt(new SerpentGCM(password));
+	}
+	/**
+	 * Decrypt the items with an already derived key (see KeySession)
+	 * @param s
+	 */
+	public void decrypt(SerpentGCM s){
+		if(s == null){
+			printError("decrypt", "key null");
 			return;
 		}
-		Serpent s = new Serpent(password);
-		if(password == null || password.isEmpty()){
-			printError("decrypt", "password null or empty");
+		if(!crypted){
+			printError("decrypt", "Favorites already decrypted");
 			return;
 		}
 		ArrayList<String> itemsKeyCrypted = new ArrayList<String>();
 		itemsKeyCrypted.addAll(itemsKey);
 		itemsKey = new ArrayList<String>();
 		for(String b : itemsKeyCrypted){
-			String i = new String(s.decrypt(Hexa.hexToBytes(b)));
-			itemsKey.add(i);
+			byte[] i = s.decrypt(Hexa.hexToBytes(b));
+			if(i == null){
+				itemsKey = itemsKeyCrypted;
+				printError("decrypt", "wrong password");
+				return;
+			}
+			itemsKey.add(new String(i));
 		}
 		itemsKeyCrypted = null;
 		crypted = false;
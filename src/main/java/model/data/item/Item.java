@@ -15,16 +15,22 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package model.data.item;
 
+import java.io.IOException;
+
 import model.advertisement.AbstractAdvertisement;
 import model.advertisement.AdvertisementInstaciator;
+import model.data.blob.BlobStore;
 import model.data.item.Category.CATEGORY;
 import model.data.user.User;
 import net.jxta.document.AdvertisementFactory;
 
 import org.jdom2.Element;
 
+import util.Base64Codec;
+import util.Printer;
 import util.VARIABLES;
 import util.secure.AsymKeysImpl;
+import util.secure.PublicKeyId;
 
 /**
  * This class can be instantiated for contains an item.
@@ -130,9 +136,31 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 		super(i);
 	}
 	
-	@SuppressWarnings("rawtypes")
-	public Item(net.jxta.document.Element e) {
-		super(e);
+	/**
+	 * Construct an Item received from JXTA. The fields are decoded on first access.
+	 * @param e
+	 */
+	@SuppressWarnings("rawtypes")
+	public Item(net.jxta.document.Element e) {
+		super(e, true);
+	}
+	
+	/**
+	 * Copy constructor, same result as new Item(item.toString())
+	 * @param item
+	 */
+	public Item(Item item) {
+		super(item);
+		this.friendlyNick = item.friendlyNick;
+		this.title = item.title;
+		this.category = item.category == null ? null : new Category(item.category.getChoice());
+		this.description = item.description;
+		this.image = item.image;
+		this.country = item.country;
+		this.contact = item.contact;
+		this.date = item.date;
+		this.lifeTime = item.lifeTime;
+		this.type = item.type;
 	}
 
 	/**
@@ -140,7 +168,15 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public String getOwner() {
-		return getKeys().getPublicKey().toString(16);
+		return getOwnerId().toString();
+	}
+	
+	/**
+	 * Return the identifier of the owner's public key
+	 * @return
+	 */
+	public PublicKeyId getOwnerId() {
+		return getKeys().getPublicKeyId();
 	}
 	
 	/**
@@ -156,6 +192,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public String getFriendNick(){
+		decode("friendNick");
 		return friendlyNick;
 	}
 	
@@ -164,7 +201,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param friendLYNick
 	 */
 	public void setFriendlyNick(String friendLYNick){
+		decode("friendNick");
 		this.friendlyNick = friendLYNick;
+		changed();
 	}
 	
 	/**
@@ -172,6 +211,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public String getTitle() {
+		decode("title");
 		return title;
 	}
 
@@ -180,7 +220,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param title
 	 */
 	public void setTitle(String title) {
+		decode("title");
 		this.title = title;
+		changed();
 	}
 	
 	/**
@@ -188,6 +230,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return Category class
 	 */
 	public Category getCategory() {
+		decode("category");
 		return category;
 	}
 	
@@ -196,7 +239,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param category - Category class
 	 */
 	public void setCategory(Category category) {
+		decode("category");
 		this.category = category;
+		changed();
 	}
 	
 	/**
@@ -204,6 +249,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public String getDescription() {
+		decode("description");
 		return description;
 	}
 
@@ -212,25 +258,76 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param description
 	 */
 	public void setDescription(String description) {
+		decode("description");
 		this.description = description;
+		changed();
 	}
 	
 	/**
 	 * Return the image of this Item
 	 * This image will be in Base64 encoding
+	 * If the image is stored in the BlobStore and isn't there yet, it is fetched
+	 * and an empty String is returned until it arrives.
 	 * @return
 	 */
 	public String getImage() {
-		return image;
+		String digest = getImageDigest();
+		if(digest == null)
+			return getRawImage();
+		BlobStore store = BlobStore.getDefault();
+		byte[] bytes = store.get(digest);
+		if(bytes == null) {
+			store.fetch(digest);
+			return "";
+		}
+		return Base64Codec.encode(bytes, 0, bytes.length, Base64Codec.MIME_LINE);
 	}
 
 	/**
 	 * Define the image of this Item
 	 * This image will be in Base64 encoding
+	 * The image is put in the BlobStore and the Item only keeps its reference. It's pinned
+	 * until ItemManager removes or replaces the item.
 	 * @param image
 	 */
 	public void setImage(String image) {
+		decode("image");
 		this.image = image;
+		changed();
+		if(image == null || image.isEmpty() || BlobStore.isReference(image) || image.startsWith("data:"))
+			return;
+		byte[] bytes;
+		try {
+			bytes = Base64Codec.decode(image);
+		} catch(IllegalArgumentException e) {
+			return; // not an encoded image, kept as it is
+		}
+		if(bytes.length == 0)
+			return;
+		try {
+			BlobStore store = BlobStore.getDefault();
+			String digest = BlobStore.digest(bytes);
+			store.pin(digest); // before put, so it can't be evicted at once
+			store.put(bytes, digest);
+			this.image = BlobStore.toReference(digest);
+		} catch (IOException e) {
+			Printer.printError(this, "setImage", "image kept inline : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return the digest of the image in the BlobStore, null if the image is inline.
+	 */
+	public String getImageDigest() {
+		return BlobStore.getDigest(getRawImage());
+	}
+	
+	/**
+	 * The image as it is in the advertisement (inline or reference)
+	 */
+	private String getRawImage() {
+		decode("image");
+		return image;
 	}
 	
 	/**
@@ -239,7 +336,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param country
 	 */
 	public void setCountry(String country){
+		decode("country");
 		this.country = country;
+		changed();
 	}
 	
 	/**
@@ -247,6 +346,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public String getCountry(){
+		decode("country");
 		return country;
 	}
 	
@@ -255,6 +355,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public String getContact() {
+		decode("contact");
 		return contact;
 	}
 
@@ -263,7 +364,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param contact
 	 */
 	public void setContact(String contact) {
+		decode("contact");
 		this.contact = contact;
+		changed();
 	}
 	
 	/**
@@ -271,6 +374,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return long based of epoch time
 	 */
 	public long getDate() {
+		decode("date");
 		return date;
 	}
 	
@@ -279,7 +383,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param date - long based of epoch time
 	 */
 	public void setDate(long date) {
+		decode("date");
 		this.date = date==0 ? System.currentTimeMillis() : date;
+		changed();
 	}
 
 	/**
@@ -287,6 +393,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public long getLifeTime() {
+		decode("lifeTime");
 		return lifeTime;
 	}
 	
@@ -295,7 +402,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param lifeTime
 	 */
 	public void setLifeTime(long lifeTime) {
+		decode("lifeTime");
 		this.lifeTime = lifeTime;
+		changed();
 	}
 	
 	/**
@@ -303,6 +412,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public TYPE getType() {
+		decode("type");
 		return type;
 	}
 	
@@ -311,7 +421,9 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @param type
 	 */
 	public void setType(TYPE type) {
+		decode("type");
 		this.type = type;
+		changed();
 	}
 	
 	
@@ -328,9 +440,10 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public boolean isActive(){
+		long lifeTime = getLifeTime();
 		if(lifeTime == 0)
 			return true;
-		if((date + lifeTime)>System.currentTimeMillis())
+		if((getDate() + lifeTime)>System.currentTimeMillis())
 			return true;
 		return false;
 	}
@@ -341,6 +454,8 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 	 * @return
 	 */
 	public boolean isAlive(long ownerLastConnection){
+		long lifeTime = getLifeTime();
+		long date = getDate();
 		if(lifeTime == 0 &&
 				ownerLastConnection + VARIABLES.LifeTimeAfterDisconnected > System.currentTimeMillis())
 			return true;
@@ -350,6 +465,16 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 		return false;
 	}
 	
+	/**
+	 * @return the time when the lifetime of this item is exceeded, Long.MAX_VALUE if it hasn't any lifetime
+	 */
+	public long getEndOfLife() {
+		long lifeTime = getLifeTime();
+		if(lifeTime == 0)
+			return Long.MAX_VALUE;
+		return getDate() + lifeTime;
+	}
+	
 	/**
 	 * Get an unique id for this item
 	 * TODO have to change
@@ -373,6 +498,15 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 		this.addKey("type", true, true);
 	}
 	
+	/**
+	 * Every field is changed through its setter, the Category is replaced and never
+	 * modified in place.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
+	}
+	
 	/**
 	 * Used to add all keys
 	 */
@@ -382,7 +516,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 		addValue("title", this.getTitle());
 		addValue("category", category.getStringChoice());
 		addValue("description", this.getDescription());
-		addValue("image", this.getImage());
+		addValue("image", this.getRawImage());
 		addValue("country", this.getCountry());
 		addValue("contact", this.getContact());
 		addValue("date", String.valueOf(this.getDate()));
@@ -412,7 +546,8 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 			setDescription(val);
 			return true;
 		case "image":
-			setImage(val);
+			image = val; // signed value, never rewritten
+			changed();
 			return true;
 		case "country":
 			setCountry(val);
@@ -460,7 +595,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 		if(!this.getOwner().equals(item.getOwner()))
 			return this.getOwner().compareTo(item.getOwner());
 		if(!this.getTitle().equals(item.getTitle()))
-			return this.title.compareTo(item.getTitle());
+			return this.getTitle().compareTo(item.getTitle());
 		if(this.getDate() != item.getDate())
 			return this.getDate() > item.getDate() ? 1 : -1;
 		if(!this.getCategory().equals(item.getCategory()))
@@ -487,7 +622,7 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 				!this.getTitle().equals(item.getTitle()) ||
 				!this.getCategory().toString().equals(item.getCategory().toString()) ||
 				!this.getDescription().equals(item.getDescription()) ||
-				!this.getImage().equals(item.getImage()) ||
+				!this.getRawImage().equals(item.getRawImage()) ||
 				!this.getCountry().equals(item.getCountry()) ||
 				!this.getContact().equals(item.getContact()) ||
 				this.getDate() != item.getDate() ||
@@ -524,6 +659,11 @@ public class Item extends AbstractAdvertisement implements Comparable<Item>{
 		System.out.println(item1.checkSignature(user.getKeys()));
 	}
 
+	@Override
+	public Item clone() {
+		return new Item(this);
+	}
+
 	@Override
 	public String getSimpleName() {
 		return getClass().getSimpleName();
@@ -19,11 +19,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdom2.Element;
 
 import util.Printer;
 import util.StringToElement;
+import util.secure.PublicKeyId;
 import model.data.contrat.Contrat;
 import model.data.item.Item;
 import model.data.user.User;
@@ -36,7 +39,7 @@ import model.data.user.User;
  *
  */
 public class ContratManager {
-	private HashMap<String, ArrayList<Contrat>> deals = new HashMap<String, ArrayList<Contrat>>();
+	private ConcurrentHashMap<PublicKeyId, CopyOnWriteArrayList<Contrat>> deals = new ConcurrentHashMap<PublicKeyId, CopyOnWriteArrayList<Contrat>>();
 	private Manager manager;
 	
 	
@@ -46,8 +49,14 @@ public class ContratManager {
 	}
 	
     ///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
-	public HashMap<String, ArrayList<Contrat>> getDeals() {
-		return deals;
+	/**
+	 * @return a copy of the deals of all the users
+	 */
+	public HashMap<PublicKeyId, ArrayList<Contrat>> getDeals() {
+		HashMap<PublicKeyId, ArrayList<Contrat>> copy = new HashMap<PublicKeyId, ArrayList<Contrat>>();
+		for(Entry<PublicKeyId, CopyOnWriteArrayList<Contrat>> entry : deals.entrySet())
+			copy.put(entry.getKey(), new ArrayList<Contrat>(entry.getValue()));
+		return copy;
 	}
 	
 	/**
@@ -55,9 +64,27 @@ public class ContratManager {
 	 * @return ArrayList<Deal>
 	 */
 	public ArrayList<Contrat> getUserDeals(String publicKey){
-		if(!deals.containsKey(publicKey))
-			deals.put(publicKey, new ArrayList<Contrat>());
-		return deals.get(publicKey);
+		return getUserDeals(PublicKeyId.of(publicKey));
+	}
+	
+	/**
+	 * Get the user's deals. If doesn't exist, return create new ArrayList;
+	 * @return a new ArrayList<Deal>
+	 */
+	public ArrayList<Contrat> getUserDeals(PublicKeyId publicKey){
+		return new ArrayList<Contrat>(getList(publicKey));
+	}
+	
+	/**
+	 * The deals of an user, created if needed. The list can be iterated while it's changed.
+	 */
+	private CopyOnWriteArrayList<Contrat> getList(PublicKeyId publicKey) {
+		CopyOnWriteArrayList<Contrat> list = deals.get(publicKey);
+		if(list == null) {
+			deals.putIfAbsent(publicKey, new CopyOnWriteArrayList<Contrat>());
+			list = deals.get(publicKey);
+		}
+		return list;
 	}
 	
 	/**
@@ -70,10 +97,7 @@ public class ContratManager {
 			System.err.println("no user logged");
 			return null;
 		}
-		String publicKey = currentUser.getKeys().getPublicKey().toString(16);
-		if(!deals.containsKey(publicKey))
-			deals.put(publicKey, new ArrayList<Contrat>());
-		return getUserDeals(publicKey);
+		return getUserDeals(currentUser.getKeys().getPublicKeyId());
 	}
 	
 	public Contrat getContract(String contratID) {
@@ -85,6 +109,10 @@ public class ContratManager {
 	}
 	
 	public boolean containsUser(String user) {
+		return containsUser(PublicKeyId.of(user));
+	}
+	
+	public boolean containsUser(PublicKeyId user) {
 		return deals.containsKey(user);
 	}
 	
@@ -95,9 +123,9 @@ public class ContratManager {
 	 */
 	protected String getDealsXML(){
 		StringBuffer s = new StringBuffer();
-		for(Entry<String, ArrayList<Contrat>> entry : this.deals.entrySet()) {
-			String owner = entry.getKey();
-			ArrayList<Contrat> deals = entry.getValue();
+		for(Entry<PublicKeyId, CopyOnWriteArrayList<Contrat>> entry : this.deals.entrySet()) {
+			String owner = entry.getKey().toString();
+			CopyOnWriteArrayList<Contrat> deals = entry.getValue();
 			for (Contrat d : deals) {
 				s.append("<deal>");
 				s.append("<owner>");
@@ -134,11 +162,8 @@ public class ContratManager {
 			Printer.printError(this, "newDeal", "No user logged");
 			return null;
 		}
-		String publicKey = currentUser.getKeys().getPublicKey().toString(16);
-		if(!deals.containsKey(publicKey))
-			deals.put(publicKey, new ArrayList<Contrat>());
 		Contrat deal = new Contrat(title, currentUser);
-		deals.get(publicKey).add(deal);
+		getList(currentUser.getKeys().getPublicKeyId()).add(deal);
 		return deal;
 	}
 	
@@ -149,6 +174,16 @@ public class ContratManager {
 	 * @param deal
 	 */
 	public void addDeal(String publicKey, Contrat deal){
+		addDeal(PublicKeyId.of(publicKey), deal);
+	}
+	
+	/**
+	 * Add Deal to the user's publicKey. If deal is empty, it will abort.
+	 * If the publicKey isn't an user's publicKey known, it will abort.
+	 * @param publicKey
+	 * @param deal
+	 */
+	public void addDeal(PublicKeyId publicKey, Contrat deal){
 		if(deal == null){
 			Printer.printError(this, "addDeal", "deal is empty");
 			return;
@@ -157,9 +192,15 @@ public class ContratManager {
 			Printer.printError(this, "addDeal", "user is unknow");
 			return;
 		}
-		if(!deals.containsKey(publicKey))
-			deals.put(publicKey, new ArrayList<Contrat>());
-		deals.get(publicKey).add(deal);
+		getList(publicKey).add(deal);
+	}
+	
+	/**
+	 * Start the (empty) deals of an user, if he has none.
+	 * @param publicKey
+	 */
+	public void addUser(PublicKeyId publicKey) {
+		getList(publicKey);
 	}
 	
 	public boolean addItem(String contratID, Item item){
@@ -170,9 +211,9 @@ public class ContratManager {
 			System.err.println("no user logged");
 			return false;
 		}
-		String publicKey = currentUser.getKeys().getPublicKey().toString(16);
+		PublicKeyId publicKey = currentUser.getKeys().getPublicKeyId();
 		
-		for(Contrat c : deals.get(publicKey)){
+		for(Contrat c : getList(publicKey)){
 			if(c.getId().equals(contratID)){
 				contrat = c;
 				break;
@@ -187,42 +228,42 @@ public class ContratManager {
 	
 	public Collection<Contrat> getContrats() {
 		ArrayList<Contrat> contrats = new ArrayList<Contrat>();
-		for(ArrayList<Contrat> cs : deals.values()) {
+		for(CopyOnWriteArrayList<Contrat> cs : deals.values()) {
 			contrats.addAll(cs);
 		}
 		return contrats;
 	}
 	
 	public void addContrat(Contrat c) {
-		ArrayList<Contrat> contrats =  deals.get(c.getKeys().getPublicKey().toString(16));
-		if(contrats == null) {
-			contrats = new ArrayList<Contrat>();
-			deals.put(c.getKeys().getPublicKey().toString(16), contrats);
-		}
-		if(contrats.contains(c)) {
-			Contrat local = contrats.get(contrats.indexOf(c));
-			if(local.getLastUpdated() < c.getLastUpdated()) {
-				contrats.remove(local);
+		CopyOnWriteArrayList<Contrat> contrats = getList(c.getKeys().getPublicKeyId());
+		boolean added = true;
+		synchronized(contrats) { // compared and replaced at once
+			int index = contrats.indexOf(c);
+			if(index < 0)
 				contrats.add(c);
-				c.publish(manager.getNetwork());
-			}
+			else if(contrats.get(index).getLastUpdated() < c.getLastUpdated())
+				contrats.set(index, c);
+			else
+				added = false;
 		}
-		else {
-			contrats.add(c);
+		if(added)
 			c.publish(manager.getNetwork());
-		}
 	}
 	//////////////////////////////////////////////// REMOVERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	public boolean removeContrat(String publicKey, String contratID) {
-		for(Contrat d : deals.get(publicKey)){
-			if(d.getId().equals(contratID))
-				return deals.get(publicKey).remove(d);
+		CopyOnWriteArrayList<Contrat> contrats = getList(PublicKeyId.of(publicKey));
+		for(Contrat d : contrats){
+			if(d.getId().equals(contratID)) {
+				synchronized(contrats) { // see addContrat
+					return contrats.remove(d);
+				}
+			}
 		}
 		return false;
 	}
 	public boolean removeItemContrat(String itemKey, String contratID) {
-		String publicKey = manager.getUserManager().getCurrentUser().getKeys().getPublicKey().toString(16);
-		if(publicKey == null || publicKey.isEmpty())
+		PublicKeyId publicKey = manager.getUserManager().getCurrentUser().getKeys().getPublicKeyId();
+		if(publicKey == null)
 			return false;
 		for(Contrat d : getDealsCurrentUser()){
 			if(d.getId().equals(contratID)){
@@ -232,12 +273,13 @@ public class ContratManager {
 		return false;
 	}
 	public boolean removeSignatoryContrat(String contratID, String publicKey) {
-		String currentPublicKey = manager.getUserManager().getCurrentUser().getKeys().getPublicKey().toString(16);
-		if(publicKey == null || publicKey.isEmpty())
+		PublicKeyId currentPublicKey = manager.getUserManager().getCurrentUser().getKeys().getPublicKeyId();
+		PublicKeyId id = PublicKeyId.of(publicKey);
+		if(id == null)
 			return false;
-		if(currentPublicKey.equals(publicKey))
+		if(currentPublicKey.equals(id))
 			return false;
-		for(Contrat d : deals.get(publicKey)){
+		for(Contrat d : getList(id)){
 			if(d.getId().equals(contratID)){
 				return d.removeSignatory(publicKey);
 			}
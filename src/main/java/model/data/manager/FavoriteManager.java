@@ -17,12 +17,13 @@ package model.data.manager;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jdom2.Element;
 
 import util.Printer;
 import util.StringToElement;
+import util.secure.PublicKeyId;
 import util.secure.AsymKeysImpl;
 import model.Application;
 import model.data.favorites.Favorites;
@@ -36,7 +37,7 @@ import model.data.user.User;
  *
  */
 public class FavoriteManager {
-	private HashMap<String, Favorites> favorites = new HashMap<String, Favorites>();
+	private ConcurrentHashMap<PublicKeyId, Favorites> favorites = new ConcurrentHashMap<PublicKeyId, Favorites>();
 	private Manager manager;
 	
 	///////////////////////////////////////////////// CONSTRUCTORS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
@@ -51,8 +52,14 @@ public class FavoriteManager {
 	 * @return Favorites
 	 */
 	public Favorites getUserFavorites(String publicKey){
-		if(!favorites.containsKey(publicKey))
-			return null;
+		return getUserFavorites(PublicKeyId.of(publicKey));
+	}
+	
+	/**
+	 * Get the user's favorites. If doesn't exist, return null;
+	 * @return Favorites
+	 */
+	public Favorites getUserFavorites(PublicKeyId publicKey){
 		return favorites.get(publicKey);
 	}
 	
@@ -66,9 +73,9 @@ public class FavoriteManager {
 			System.err.println("no user logged");
 			return null;
 		}
-		String publicKey = currentUser.getKeys().getPublicKey().toString(16);
+		PublicKeyId publicKey = currentUser.getKeys().getPublicKeyId();
 		if(!favorites.containsKey(publicKey))
-			favorites.put(publicKey, new Favorites(currentUser));
+			favorites.putIfAbsent(publicKey, new Favorites(currentUser));
 		return getUserFavorites(publicKey);
 	}
 	
@@ -99,7 +106,7 @@ public class FavoriteManager {
 			Printer.printError(this, "addFavorites","Bad Signature for Favorite");
 			return;
 		}
-		favorites.put(f.getOwner(), f);
+		favorites.put(f.getOwnerId(), f);
 		//f.publish(manager.getNetwork()); // TODO BUG !!!!!!!!!
 	}
 	
@@ -128,7 +135,7 @@ public class FavoriteManager {
 			Printer.printError(this, "addFavorites","Bad Signature for Favorite");
 			return;
 		}
-		favorites.put(f.getOwner(), f);
+		favorites.put(f.getOwnerId(), f);
 		if(publish)
 			f.publish(manager.getNetwork()); // TODO BUG !!!!!!!!!
 	}
@@ -143,10 +150,9 @@ public class FavoriteManager {
 			Printer.printError(this, "addFavoritesItem", "not user logged !");
 			return;
 		}
-		AsymKeysImpl keys = new AsymKeysImpl(manager.getUserManager().getCurrentUser().getKeys().toString());
-		keys.decryptPrivateKey(manager.getUserManager().getCurrentUser().getClearPwd());
-		String publicKey = currentUser.getKeys().getPublicKey().toString(16);
-		if(publicKey == null || publicKey.isEmpty()){
+		AsymKeysImpl keys = currentUser.getSession().getKeys();
+		PublicKeyId publicKey = currentUser.getKeys().getPublicKeyId();
+		if(publicKey == null){
 			Printer.printError(this, "addFavoritesItem", "Not user logged or PublicKey empty !");
 			return;
 		}
@@ -159,8 +165,11 @@ public class FavoriteManager {
 			Printer.printError(this, "addFavoritesItem","This Item is null !");
 			return;
 		}
-		favorites.get(publicKey).addItem(item);
-		favorites.get(publicKey).sign(keys);
+		Favorites f = favorites.get(publicKey);
+		synchronized(f) { // the item and the signature change together
+			f.addItem(item);
+			f.sign(keys);
+		}
 	}
 	
 	
@@ -190,6 +199,9 @@ public class FavoriteManager {
 	}
 
 
+	/**
+	 * @return the favorites of all the users, it can be iterated while favorites are added
+	 */
 	public Collection<Favorites> getFavorites() {
 		return favorites.values();
 	}
@@ -0,0 +1,498 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import model.advertisement.BinaryCodec;
+import model.data.item.Item;
+import util.Printer;
+import util.secure.PublicKeyId;
+
+/**
+ * On-disk catalogue of items, for the peers that keep much more items than they can hold on heap.
+ * The items are appended in binary (see BinaryCodec) to segment files mapped in memory, the heap
+ * only holds an index (itemKey -> position, owner -> itemKeys) and a bounded cache of the
+ * last used items. The other items are decoded when they are asked.
+ * 
+ * Segment : MAGIC (int) | frames ... | 0
+ * Frame : length (int) | CRC32 of the body (int) | body
+ * Body of an item : PUT (byte) | itemKey (UTF) | owner (UTF) | lastUpdated (long) | endOfLife (long) | item in binary
+ * Body of a removal : REMOVE (byte) | itemKey (UTF)
+ * The segments are read in order when the catalogue is opened, the last frame of an itemKey wins.
+ * A frame cut by a crash doesn't match its CRC and ends the segment.
+ * @author Julien Prudhomme
+ *
+ */
+public class ItemCatalogue implements Closeable {
+	public static final int MAGIC = 0x53584332;	// "SXC2"
+	private static final String PREFIX = "items-";
+	private static final String SUFFIX = ".seg";
+	private static final int HEADER = 4;
+	private static final int FRAME_HEADER = 8;
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	
+	private File directory;
+	private int segmentSize;
+	private TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	private Segment active;
+	private HashMap<String, Entry> index = new HashMap<String, Entry>();
+	private HashMap<PublicKeyId, LinkedHashSet<String>> owners = new HashMap<PublicKeyId, LinkedHashSet<String>>();
+	private LinkedHashMap<String, Item> cache;
+	
+	/**
+	 * A segment file, mapped in memory.
+	 */
+	private static class Segment {
+		int number;
+		File file;
+		MappedByteBuffer buffer;
+		int end = HEADER;	// where the next frame goes
+		long live = 0;		// bytes of the frames still in the index
+		
+		Segment(int number, File file) {
+			this.number = number;
+			this.file = file;
+		}
+	}
+	
+	/**
+	 * Position of an item in the segments.
+	 */
+	private static class Entry {
+		int segment;
+		int offset;
+		int length;		// frame length
+		long lastUpdated;
+		long endOfLife;
+		PublicKeyId owner;
+		
+		Entry(int segment, int offset, int length, long lastUpdated, long endOfLife, PublicKeyId owner) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.lastUpdated = lastUpdated;
+			this.endOfLife = endOfLife;
+			this.owner = owner;
+		}
+	}
+	
+	///////////////////////////////////////////////// CONSTRUCTORS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Open (or create) a catalogue in this directory.
+	 * @param directory
+	 * @param segmentSize - bytes of a segment file, the biggest item must fit in.
+	 * @param cacheSize - number of decoded items kept on heap.
+	 * @throws IOException
+	 */
+	public ItemCatalogue(File directory, int segmentSize, final int cacheSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.cache = new LinkedHashMap<String, Item>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Item> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("can't create " + directory);
+		File[] files = directory.listFiles();
+		for(File f : files == null ? new File[0] : files) {
+			int number = getNumber(f);
+			if(number >= 0)
+				segments.put(number, new Segment(number, f));
+		}
+		for(Segment s : segments.values())
+			load(s);
+		if(segments.isEmpty())
+			active = newSegment(0);
+		else
+			active = segments.lastEntry().getValue();
+	}
+	
+	private void load(Segment s) throws IOException {
+		if(s.file.length() != segmentSize)
+			throw new IOException(s.file + " isn't a segment of " + segmentSize + " bytes");
+		map(s);
+		ByteBuffer b = s.buffer;
+		if(b.getInt(0) != MAGIC) {
+			if(b.getInt(0) != 0)
+				throw new IOException(s.file + " isn't a segment");
+			b.putInt(0, MAGIC); // created but never written
+		}
+		int position = HEADER;
+		while(position + FRAME_HEADER <= segmentSize) {
+			int length = b.getInt(position);
+			if(length <= 0 || position + FRAME_HEADER + length > segmentSize)
+				break;
+			byte[] body = read(s, position + FRAME_HEADER, length);
+			if(crc(body) != b.getInt(position + 4)) {
+				Printer.printError(this, "load", s.file.getName() + " cut at " + position);
+				break;
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+			byte op = in.readByte();
+			String itemKey = in.readUTF();
+			if(op == PUT) {
+				PublicKeyId owner = PublicKeyId.of(in.readUTF());
+				long lastUpdated = in.readLong();
+				index(itemKey, new Entry(s.number, position, FRAME_HEADER + length, lastUpdated, in.readLong(), owner));
+			} else {
+				unindex(itemKey);
+			}
+			position += FRAME_HEADER + length;
+		}
+		s.end = position;
+		terminate(s);
+	}
+	
+	///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	public synchronized int size() {
+		return index.size();
+	}
+	
+	public synchronized boolean contains(String itemKey) {
+		return index.containsKey(itemKey);
+	}
+	
+	/**
+	 * @param itemKey
+	 * @return the lastUpdated of the item, without decoding it. -1 if the item isn't there.
+	 */
+	public synchronized long getLastUpdated(String itemKey) {
+		Entry e = index.get(itemKey);
+		return e == null ? -1 : e.lastUpdated;
+	}
+	
+	/**
+	 * @param itemKey
+	 * @return the end of life of the item (see Item.getEndOfLife), without decoding it. -1 if the item isn't there.
+	 */
+	public synchronized long getEndOfLife(String itemKey) {
+		Entry e = index.get(itemKey);
+		return e == null ? -1 : e.endOfLife;
+	}
+	
+	/**
+	 * @param itemKey
+	 * @return the owner of the item, without decoding it. null if the item isn't there.
+	 */
+	public synchronized PublicKeyId getOwner(String itemKey) {
+		Entry e = index.get(itemKey);
+		return e == null ? null : e.owner;
+	}
+	
+	/**
+	 * @param itemKey
+	 * @return the item, null if it isn't in the catalogue.
+	 */
+	public synchronized Item get(String itemKey) {
+		Item item = cache.get(itemKey);
+		if(item != null)
+			return item;
+		Entry e = index.get(itemKey);
+		if(e == null)
+			return null;
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				read(segments.get(e.segment), e.offset + FRAME_HEADER, e.length - FRAME_HEADER)));
+		try {
+			in.readByte();
+			in.readUTF();
+			in.readUTF();
+			in.readLong();
+			in.readLong();
+			byte[] binary = new byte[in.available()];
+			in.readFully(binary);
+			item = BinaryCodec.decode(binary, new Item());
+		} catch (IOException | IllegalArgumentException ex) {
+			Printer.printError(this, "get", itemKey + " : " + ex.getMessage());
+			return null;
+		}
+		cache.put(itemKey, item);
+		return item;
+	}
+	
+	/**
+	 * @return the keys of all the items.
+	 */
+	public synchronized ArrayList<String> getItemKeys() {
+		return new ArrayList<String>(index.keySet());
+	}
+	
+	/**
+	 * @param owner
+	 * @return the keys of the items of this owner.
+	 */
+	public synchronized ArrayList<String> getItemKeys(PublicKeyId owner) {
+		LinkedHashSet<String> keys = owners.get(owner);
+		return keys == null ? new ArrayList<String>() : new ArrayList<String>(keys);
+	}
+	
+	/**
+	 * @param owner
+	 * @return the items of this owner.
+	 */
+	public synchronized ArrayList<Item> getItems(PublicKeyId owner) {
+		ArrayList<Item> items = new ArrayList<Item>();
+		for(String itemKey : getItemKeys(owner)) {
+			Item i = get(itemKey);
+			if(i != null)
+				items.add(i);
+		}
+		return items;
+	}
+	
+	///////////////////////////////////////////////// WRITERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Add an item, or replace an older version.
+	 * @param item
+	 * @return false if the catalogue already has this version or a newer one.
+	 * @throws IOException if the item doesn't fit in a segment.
+	 */
+	public synchronized boolean put(Item item) throws IOException {
+		String itemKey = item.getItemKey();
+		Entry old = index.get(itemKey);
+		if(old != null && old.lastUpdated >= item.getLastUpdated())
+			return false;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(PUT);
+		out.writeUTF(itemKey);
+		out.writeUTF(item.getOwner());
+		out.writeLong(item.getLastUpdated());
+		out.writeLong(item.getEndOfLife());
+		out.write(item.toBinary());
+		out.flush();
+		int offset = append(bytes.toByteArray());
+		index(itemKey, new Entry(active.number, offset, FRAME_HEADER + bytes.size(),
+				item.getLastUpdated(), item.getEndOfLife(), item.getOwnerId()));
+		cache.put(itemKey, item);
+		return true;
+	}
+	
+	/**
+	 * Remove an item.
+	 * @param itemKey
+	 * @return false if the item wasn't in the catalogue.
+	 * @throws IOException
+	 */
+	public synchronized boolean remove(String itemKey) throws IOException {
+		if(!index.containsKey(itemKey))
+			return false;
+		append(removal(itemKey));
+		unindex(itemKey);
+		return true;
+	}
+	
+	/**
+	 * Write the segment in use on the disk. The other segments are written when they are full.
+	 */
+	public synchronized void sync() {
+		if(active != null)
+			active.buffer.force();
+	}
+	
+	/**
+	 * @return true if some full segments are less than half used (see compact).
+	 */
+	public synchronized boolean needsCompaction() {
+		return !getSparseSegments().isEmpty();
+	}
+	
+	/**
+	 * Move the items of the segments that are less than half used at the end of the catalogue,
+	 * and delete these segments.
+	 * @return the number of deleted segments.
+	 * @throws IOException
+	 */
+	public synchronized int compact() throws IOException {
+		ArrayList<Segment> sparse = getSparseSegments();
+		for(Segment s : sparse) {
+			boolean oldest = s == segments.firstEntry().getValue();
+			int position = HEADER;
+			while(position < s.end) {
+				int length = s.buffer.getInt(position);
+				byte[] body = read(s, position + FRAME_HEADER, length);
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+				byte op = in.readByte();
+				String itemKey = in.readUTF();
+				Entry e = index.get(itemKey);
+				if(op == PUT && e != null && e.segment == s.number && e.offset == position) {
+					e.offset = append(body);
+					e.segment = active.number;
+					active.live += e.length;
+					s.live -= e.length;
+				} else if(op == REMOVE && !oldest && e == null) {
+					append(body); // an older segment may still have the item
+				}
+				position += FRAME_HEADER + length;
+			}
+			active.buffer.force();
+			segments.remove(s.number);
+			s.buffer = null;
+			if(!s.file.delete())
+				s.file.deleteOnExit(); // still mapped on some systems
+		}
+		return sparse.size();
+	}
+	
+	@Override
+	public synchronized void close() {
+		sync();
+		for(Segment s : segments.values())
+			s.buffer = null;
+		segments.clear();
+		index.clear();
+		owners.clear();
+		cache.clear();
+		active = null;
+	}
+	
+	///////////////////////////////////////////////// TOOLS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * The segments, except the one in use, that are less than half used.
+	 */
+	private ArrayList<Segment> getSparseSegments() {
+		ArrayList<Segment> sparse = new ArrayList<Segment>();
+		for(Segment s : segments.values()) {
+			if(s != active && s.live * 2 < s.end - HEADER)
+				sparse.add(s);
+		}
+		return sparse;
+	}
+	
+	private void index(String itemKey, Entry e) {
+		unindex(itemKey);
+		index.put(itemKey, e);
+		segments.get(e.segment).live += e.length;
+		LinkedHashSet<String> keys = owners.get(e.owner);
+		if(keys == null) {
+			keys = new LinkedHashSet<String>();
+			owners.put(e.owner, keys);
+		}
+		keys.add(itemKey);
+	}
+	
+	private void unindex(String itemKey) {
+		cache.remove(itemKey);
+		Entry old = index.remove(itemKey);
+		if(old == null)
+			return;
+		segments.get(old.segment).live -= old.length;
+		LinkedHashSet<String> keys = owners.get(old.owner);
+		keys.remove(itemKey);
+		if(keys.isEmpty())
+			owners.remove(old.owner);
+	}
+	
+	/**
+	 * Write a frame at the end of the segment in use, in a new segment if it's full.
+	 * @return the offset of the frame in the segment in use.
+	 */
+	private int append(byte[] body) throws IOException {
+		int length = FRAME_HEADER + body.length;
+		if(HEADER + length > segmentSize)
+			throw new IOException("item of " + body.length + " bytes, bigger than a segment");
+		if(active.end + length > segmentSize) {
+			active.buffer.force();
+			active = newSegment(active.number + 1);
+		}
+		int offset = active.end;
+		ByteBuffer b = active.buffer.duplicate();
+		b.position(offset + 4);
+		b.putInt(crc(body));
+		b.put(body);
+		b.putInt(offset, body.length); // the length last, the frame is complete once it's there
+		active.end += length;
+		terminate(active);
+		return offset;
+	}
+	
+	/**
+	 * Mark the end of the frames, so old bytes after it are never read as a frame.
+	 */
+	private void terminate(Segment s) {
+		if(s.end + 4 <= segmentSize)
+			s.buffer.putInt(s.end, 0);
+	}
+	
+	private Segment newSegment(int number) throws IOException {
+		Segment s = new Segment(number, new File(directory, String.format("%s%08d%s", PREFIX, number, SUFFIX)));
+		map(s);
+		s.buffer.putInt(0, MAGIC);
+		segments.put(number, s);
+		return s;
+	}
+	
+	private void map(Segment s) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(s.file, "rw")) {
+			s.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize); // the mapping stays valid after close
+		}
+	}
+	
+	private static int getNumber(File f) {
+		String name = f.getName();
+		if(!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+			return -1;
+		try {
+			return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	private static byte[] removal(String itemKey) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(REMOVE);
+		out.writeUTF(itemKey);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private static byte[] read(Segment s, int position, int length) {
+		byte[] data = new byte[length];
+		ByteBuffer b = s.buffer.duplicate();
+		b.position(position);
+		b.get(data);
+		return data;
+	}
+	
+	private static int crc(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		return (int) crc.getValue();
+	}
+}
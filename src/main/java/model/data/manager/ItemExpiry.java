@@ -0,0 +1,122 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Deadlines of the items, in a queue ordered by time : a pass only looks at the items
+ * whose deadline is over, not at all the items.
+ * An item has at most one deadline that counts, the earliest scheduled. The other entries of
+ * the queue are stale and skipped. A later deadline isn't scheduled : the owner of the queue
+ * computes the deadline again when it's over and schedules the item back if it moved
+ * (for example the owner of the item was seen since).
+ * @author Julien Prudhomme
+ *
+ */
+public class ItemExpiry {
+	private PriorityQueue<Deadline> queue = new PriorityQueue<Deadline>();
+	private HashMap<String, Long> scheduled = new HashMap<String, Long>();	// itemKey -> deadline that counts
+	
+	private static class Deadline implements Comparable<Deadline> {
+		long time;
+		String itemKey;
+		
+		Deadline(long time, String itemKey) {
+			this.time = time;
+			this.itemKey = itemKey;
+		}
+		
+		@Override
+		public int compareTo(Deadline d) {
+			return time < d.time ? -1 : (time == d.time ? 0 : 1);
+		}
+	}
+	
+	///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * @return the number of scheduled items
+	 */
+	public synchronized int size() {
+		return scheduled.size();
+	}
+	
+	/**
+	 * @param itemKey
+	 * @return the deadline of this item, Long.MAX_VALUE if it isn't scheduled
+	 */
+	public synchronized long getDeadline(String itemKey) {
+		Long time = scheduled.get(itemKey);
+		return time == null ? Long.MAX_VALUE : time;
+	}
+	
+	///////////////////////////////////////////////// SCHEDULE \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Schedule an item, if this deadline is earlier than the one already scheduled.
+	 * @param itemKey
+	 * @param time the deadline, Long.MAX_VALUE if the item never expires
+	 */
+	public synchronized void schedule(String itemKey, long time) {
+		if(time == Long.MAX_VALUE)
+			return;
+		Long current = scheduled.get(itemKey);
+		if(current != null && current <= time)
+			return;
+		scheduled.put(itemKey, time);
+		queue.add(new Deadline(time, itemKey));
+	}
+	
+	/**
+	 * Forget an item, its entries left in the queue are skipped.
+	 * @param itemKey
+	 */
+	public synchronized void cancel(String itemKey) {
+		scheduled.remove(itemKey);
+	}
+	
+	/**
+	 * Take out the items whose deadline is over.
+	 * @param now
+	 * @return the keys of these items, they are no longer scheduled.
+	 */
+	public synchronized ArrayList<String> poll(long now) {
+		ArrayList<String> keys = new ArrayList<String>();
+		while(!queue.isEmpty() && queue.peek().time <= now) {
+			Deadline d = queue.poll();
+			Long current = scheduled.get(d.itemKey);
+			if(current != null && current == d.time) {
+				scheduled.remove(d.itemKey);
+				keys.add(d.itemKey);
+			}
+		}
+		if(queue.size() > 2 * scheduled.size() + 64)
+			purge();
+		return keys;
+	}
+	
+	/** Drop the stale entries, when they are the most part of the queue */
+	private void purge() {
+		PriorityQueue<Deadline> live = new PriorityQueue<Deadline>(Math.max(1, scheduled.size()));
+		for(Deadline d : queue) {
+			Long current = scheduled.get(d.itemKey);
+			if(current != null && current == d.time)
+				live.add(d);
+		}
+		queue = live;
+	}
+}
@@ -17,6 +17,16 @@ package model.data.manager;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.jxta.discovery.DiscoveryService;
 
@@ -24,12 +34,57 @@ import org.jdom2.Element;
 
 import util.Printer;
 import util.StringToElement;
+import util.VARIABLES;
+import util.secure.PublicKeyId;
+import model.data.blob.BlobStore;
+import model.data.item.Category.CATEGORY;
 import model.data.item.Item;
+import model.data.item.Item.TYPE;
+import model.data.user.User;
 
+/**
+ * Items known by this peer. The items are indexed by itemKey, and by owner, category, country
+ * and type : every lookup costs the size of its result, not the number of items.
+ * The indexes are built with the values of the item when it's added, an item changed in place
+ * must be added again (see updateItem) to be indexed with its new values.
+ * The manager is used by several threads (network, resiliance, interface) : the indexes
+ * are changed together under a write lock, the readers share a read lock and get new lists.
+ * The items of the other users are scheduled in an ItemExpiry when they are added, expireItems
+ * only looks at the items whose lifetime is over or whose owner hasn't been seen for
+ * LifeTimeAfterDisconnected. The items of the local users never expire here.
+ * @author Julien Prudhomme
+ *
+ */
 public class ItemManager {
-	private ArrayList<Item> items = new ArrayList<Item>();			// list of items handled by this manager.
+	private LinkedHashMap<String, Indexed> items = new LinkedHashMap<String, Indexed>();	// itemKey -> item handled by this manager.
+	private HashMap<PublicKeyId, LinkedHashSet<String>> byOwner = new HashMap<PublicKeyId, LinkedHashSet<String>>();
+	private EnumMap<CATEGORY, LinkedHashSet<String>> byCategory = new EnumMap<CATEGORY, LinkedHashSet<String>>(CATEGORY.class);
+	private HashMap<String, LinkedHashSet<String>> byCountry = new HashMap<String, LinkedHashSet<String>>();
+	private EnumMap<TYPE, LinkedHashSet<String>> byType = new EnumMap<TYPE, LinkedHashSet<String>>(TYPE.class);
 	private Manager manager;
+	private volatile ItemCatalogue catalogue = null;	// items of the other users, on disk (heap only if null)
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final ItemExpiry expiry = new ItemExpiry();
+	private ScheduledExecutorService expirer = null;
 	
+	/**
+	 * An item and the values it is indexed with.
+	 */
+	private static class Indexed {
+		Item item;
+		PublicKeyId owner;
+		CATEGORY category;
+		String country;
+		TYPE type;
+		
+		Indexed(Item item) {
+			this.item = item;
+			this.owner = item.getOwnerId();
+			this.category = item.getCategory() == null ? null : item.getCategory().getChoice();
+			this.country = item.getCountry();
+			this.type = item.getType();
+		}
+	}
 	
 	///////////////////////////////////////////////// CONSTRUCTORS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	public ItemManager(Manager m) {
@@ -37,8 +92,58 @@ public class ItemManager {
 	}
 	
 	///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * @return a new list of the items on heap (the items of the local users, and the other items if there is no catalogue)
+	 * @see #getAllItemKeys() for all the items of this peer
+	 */
 	public ArrayList<Item> getItems() {
-		return items;
+		lock.readLock().lock();
+		try {
+			ArrayList<Item> list = new ArrayList<Item>(items.size());
+			for(Indexed i : items.values())
+				list.add(i.item);
+			return list;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of items on heap
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return items.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return the keys of all the items of this peer, on heap and in the catalogue. The items of
+	 * the catalogue are decoded one by one with getItem, not all held on heap.
+	 */
+	public ArrayList<String> getAllItemKeys() {
+		ArrayList<String> keys;
+		lock.readLock().lock();
+		try {
+			keys = new ArrayList<String>(items.keySet());
+		} finally {
+			lock.readLock().unlock();
+		}
+		ItemCatalogue catalogue = this.catalogue;
+		if(catalogue != null)
+			keys.addAll(catalogue.getItemKeys());
+		return keys;
+	}
+	
+	public ItemCatalogue getCatalogue() {
+		return catalogue;
+	}
+	
+	public ItemExpiry getExpiry() {
+		return expiry;
 	}
 	
 	/**
@@ -51,11 +156,99 @@ public class ItemManager {
 			Printer.printError(this, "getItem", ".getItem : itemKey is empty or null !");
 			return null;
 		}
-		for (Item item : items) {
-			if(item.getItemKey().equals(itemKey))
-				return item;
+		lock.readLock().lock();
+		try {
+			Indexed i = items.get(itemKey);
+			if(i != null)
+				return i.item;
+		} finally {
+			lock.readLock().unlock();
+		}
+		ItemCatalogue catalogue = this.catalogue;
+		return catalogue == null ? null : catalogue.get(itemKey);
+	}
+	
+	/**
+	 * @param owner
+	 * @return a new list of the items of this user, on heap and in the catalogue.
+	 */
+	public ArrayList<Item> getUserItems(PublicKeyId owner) {
+		ArrayList<Item> list = getItems(byOwner, owner);
+		ItemCatalogue catalogue = this.catalogue;
+		if(catalogue != null)
+			list.addAll(catalogue.getItems(owner));
+		return list;
+	}
+	
+	/**
+	 * @param owner
+	 * @return true if this user has items on heap or in the catalogue.
+	 */
+	public boolean hasItems(PublicKeyId owner) {
+		lock.readLock().lock();
+		try {
+			if(byOwner.containsKey(owner))
+				return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+		ItemCatalogue catalogue = this.catalogue;
+		return catalogue != null && !catalogue.getItemKeys(owner).isEmpty();
+	}
+	
+	/**
+	 * @param category
+	 * @return a new list of the items on heap of this category.
+	 */
+	public ArrayList<Item> getItems(CATEGORY category) {
+		return getItems(byCategory, category);
+	}
+	
+	/**
+	 * @param type
+	 * @return a new list of the items on heap of this type.
+	 */
+	public ArrayList<Item> getItems(TYPE type) {
+		return getItems(byType, type);
+	}
+	
+	/**
+	 * @param country
+	 * @return a new list of the items on heap of this country.
+	 */
+	public ArrayList<Item> getItemsByCountry(String country) {
+		return getItems(byCountry, country);
+	}
+	
+	private <K> ArrayList<Item> getItems(Map<K, LinkedHashSet<String>> index, K value) {
+		lock.readLock().lock();
+		try {
+			LinkedHashSet<String> keys = index.get(value);
+			if(keys == null)
+				return new ArrayList<Item>();
+			ArrayList<Item> list = new ArrayList<Item>(keys.size());
+			for(String key : keys)
+				list.add(items.get(key).item);
+			return list;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	///////////////////////////////////////////////// SETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Keep the items of the users that aren't local in this catalogue instead of the heap.
+	 * @param catalogue
+	 */
+	public void setCatalogue(ItemCatalogue catalogue) {
+		this.catalogue = catalogue;
+		if(catalogue == null)
+			return;
+		for(String itemKey : catalogue.getItemKeys()) {
+			PublicKeyId owner = catalogue.getOwner(itemKey);
+			if(owner != null)
+				expiry.schedule(itemKey, getDeadline(catalogue.getEndOfLife(itemKey), catalogue.getLastUpdated(itemKey), owner));
 		}
-		return null;
 	}
 	
 	///////////////////////////////////////////////// XML \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
@@ -65,7 +258,7 @@ public class ItemManager {
 	 */
 	protected String getItemsXML() {
 		StringBuffer s = new StringBuffer();
-		for(Item i: items) {
+		for(Item i: getItems()) {
 			s.append(i); 
 		}
 		return s.toString();
@@ -107,15 +300,47 @@ public class ItemManager {
 			Printer.printError(this, "addItem","Bad Signature for "+i.getTitle());
 			return;
 		}
-		if(items.contains(i)){
-			if(items.get(items.indexOf(i)).getLastUpdated() >= i.getLastUpdated()){
-				Printer.printError(this, "addItem","Item "+i.getTitle()+" is already registred !");
+		ItemCatalogue catalogue = this.catalogue;
+		if(catalogue != null && !manager.getUserManager().isLocalUser(i.getOwnerId()) && !isOnHeap(i.getItemKey())) {
+			try {
+				if(catalogue.put(i))
+					expiry.schedule(i.getItemKey(), getDeadline(i));
+				else
+					Printer.printError(this, "addItem","Item "+i.getTitle()+" is already registred !");
 				return;
-			}else{
-				items.remove(i);
+			} catch (IOException e) {
+				Printer.printError(this, "addItem", "kept on heap : " + e.getMessage());
+			}
+		}
+		Indexed old;
+		lock.writeLock().lock();
+		try {
+			old = items.get(i.getItemKey());
+			if(old != null){
+				if(old.item.getLastUpdated() >= i.getLastUpdated()){
+					Printer.printError(this, "addItem","Item "+i.getTitle()+" is already registred !");
+					return;
+				}else{
+					unindex(i.getItemKey());
+				}
 			}
+			index(i);
+			if(!manager.getUserManager().isLocalUser(i.getOwnerId()))
+				expiry.schedule(i.getItemKey(), getDeadline(i));
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if(old != null)
+			unpinImage(old.item);
+	}
+	
+	private boolean isOnHeap(String itemKey) {
+		lock.readLock().lock();
+		try {
+			return items.containsKey(itemKey);
+		} finally {
+			lock.readLock().unlock();
 		}
-		items.add(i);
 	}
 	
 	/**
@@ -136,10 +361,33 @@ public class ItemManager {
 	 * @param item
 	 */
 	public void updateItem(String itemKey, Item item){
-		removeItem(getItem(itemKey));
+		Item old = getItem(itemKey);
+		remove(old);
 		addItem(item, true);
+		unpinImage(old); // once the new version is there, it may keep the same image
 	}
 	
+	/** With the write lock */
+	private void index(Item item) {
+		Indexed i = new Indexed(item);
+		String key = item.getItemKey();
+		items.put(key, i);
+		put(byOwner, i.owner, key);
+		put(byCategory, i.category, key);
+		put(byCountry, i.country, key);
+		put(byType, i.type, key);
+	}
+	
+	private static <K> void put(Map<K, LinkedHashSet<String>> index, K value, String itemKey) {
+		if(value == null)
+			return;
+		LinkedHashSet<String> keys = index.get(value);
+		if(keys == null) {
+			keys = new LinkedHashSet<String>();
+			index.put(value, keys);
+		}
+		keys.add(itemKey);
+	}
 	
 	///////////////////////////////////////////////// REMOVERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	/**
@@ -148,24 +396,238 @@ public class ItemManager {
 	 * @return
 	 */
 	public boolean removeItem(Item item){
-		return items.remove(item);
+		if(!remove(item))
+			return false;
+		unpinImage(item);
+		return true;
+	}
+	
+	private boolean remove(Item item) {
+		if(item == null)
+			return false;
+		lock.writeLock().lock();
+		try {
+			if(unindex(item.getItemKey()) != null) {
+				expiry.cancel(item.getItemKey());
+				return true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		ItemCatalogue catalogue = this.catalogue;
+		try {
+			if(catalogue == null || !catalogue.remove(item.getItemKey()))
+				return false;
+			expiry.cancel(item.getItemKey());
+			return true;
+		} catch (IOException e) {
+			Printer.printError(this, "removeItem", e.toString());
+			return false;
+		}
+	}
+	
+	/**
+	 * Unpin the image of an item of a local user that was removed or replaced (see Item.setImage),
+	 * unless another item of a local user still refers to it.
+	 * @param old
+	 */
+	private void unpinImage(Item old) {
+		if(old == null || !manager.getUserManager().isLocalUser(old.getOwnerId()))
+			return;
+		String digest = old.getImageDigest();
+		if(digest == null)
+			return;
+		lock.readLock().lock();
+		try {
+			for(Indexed i : items.values()) {
+				if(digest.equals(i.item.getImageDigest()) && manager.getUserManager().isLocalUser(i.owner))
+					return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		BlobStore.getDefault().unpin(digest);
+	}
+	
+	/**
+	 * Remove all the items of an user.
+	 * @param owner
+	 * @return the number of removed items.
+	 */
+	public int removeUserItems(PublicKeyId owner) {
+		int removed = 0;
+		for(Item i : getUserItems(owner)) {
+			if(removeItem(i))
+				removed++;
+		}
+		return removed;
 	}
 	
 	/**
 	 * to remove all items with lifeTime is over
 	 */
 	public void cleanItems(){
-		for(int i = 0; i <items.size();i++){
-			if(!items.get(i).isAlive(manager.getUserManager().getItemUser(items.get(i)).getLastUpdated()
-					))
-				removeItem(items.get(i));
+		expireItems(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Remove the items of the other users that aren't alive anymore (see Item.isAlive) and flush
+	 * them from the local cache of the network. Only the items whose deadline is over are looked at, the
+	 * others are scheduled back if their owner has been seen since.
+	 * @param now
+	 * @return the number of removed items.
+	 */
+	public int expireItems(long now) {
+		int removed = 0;
+		for(String itemKey : expiry.poll(now)) {
+			Item item = expire(itemKey, now);
+			if(item == null)
+				continue;
+			removed++;
+			if(manager.getNetwork() != null)
+				item.flush(manager.getNetwork());
 		}
+		return removed;
+	}
+	
+	/**
+	 * Remove this item if its deadline is over, schedule it back else.
+	 * @return the removed item, null if it's still alive, already removed or of a local user.
+	 */
+	private Item expire(String itemKey, long now) {
+		lock.writeLock().lock();
+		try {
+			Indexed i = items.get(itemKey);
+			if(i != null) {
+				if(manager.getUserManager().isLocalUser(i.owner))
+					return null; // its owner logged in on this device since it was scheduled
+				long deadline = getDeadline(i.item);
+				if(deadline > now) {
+					expiry.schedule(itemKey, deadline);
+					return null;
+				}
+				return unindex(itemKey).item;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		ItemCatalogue catalogue = this.catalogue;
+		if(catalogue == null)
+			return null;
+		synchronized(catalogue) {
+			PublicKeyId owner = catalogue.getOwner(itemKey);
+			if(owner == null)
+				return null;
+			long deadline = getDeadline(catalogue.getEndOfLife(itemKey), catalogue.getLastUpdated(itemKey), owner);
+			if(deadline > now) {
+				expiry.schedule(itemKey, deadline);
+				return null;
+			}
+			Item item = catalogue.get(itemKey);
+			try {
+				catalogue.remove(itemKey);
+			} catch (IOException e) {
+				Printer.printError(this, "expire", e.toString());
+				expiry.schedule(itemKey, now);
+				return null;
+			}
+			return item;
+		}
+	}
+	
+	private long getDeadline(Item i) {
+		return getDeadline(i.getEndOfLife(), i.getLastUpdated(), i.getOwnerId());
+	}
+	
+	/**
+	 * @return the first time the item isn't alive : the end of its lifetime, or LifeTimeAfterDisconnected
+	 * after the last time its owner has been seen (the owner signed the item, or himself).
+	 */
+	private long getDeadline(long endOfLife, long lastUpdated, PublicKeyId owner) {
+		User user = manager.getUserManager().getUser(owner);
+		long seen = user == null ? lastUpdated : Math.max(lastUpdated, user.getLastUpdated());
+		return Math.min(endOfLife, seen + VARIABLES.LifeTimeAfterDisconnected);
+	}
+	
+	/**
+	 * Write the catalogue on the disk, and compact it if some of its segments are mostly
+	 * dead frames (new versions, removals).
+	 */
+	public void maintainCatalogue() {
+		ItemCatalogue catalogue = this.catalogue;
+		if(catalogue == null)
+			return;
+		catalogue.sync();
+		try {
+			if(catalogue.needsCompaction())
+				catalogue.compact();
+		} catch (IOException e) {
+			Printer.printError(this, "maintainCatalogue", e.toString());
+		}
+	}
+	
+	/**
+	 * Expire the items in background, and maintain the catalogue after each pass.
+	 * @param period ms between two passes
+	 */
+	public synchronized void startExpiry(long period) {
+		if(expirer != null)
+			return;
+		expirer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ItemExpiry");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		expirer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					expireItems(System.currentTimeMillis());
+				} catch (RuntimeException e) {
+					Printer.printError(ItemManager.this, "expireItems", e.toString()); // keep the task scheduled
+				}
+				maintainCatalogue();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+	
+	public synchronized void stopExpiry() {
+		if(expirer != null)
+			expirer.shutdownNow();
+		expirer = null;
+	}
+	
+	/** With the write lock */
+	private Indexed unindex(String itemKey) {
+		Indexed i = items.remove(itemKey);
+		if(i == null)
+			return null;
+		remove(byOwner, i.owner, itemKey);
+		remove(byCategory, i.category, itemKey);
+		remove(byCountry, i.country, itemKey);
+		remove(byType, i.type, itemKey);
+		return i;
+	}
+	
+	private static <K> void remove(Map<K, LinkedHashSet<String>> index, K value, String itemKey) {
+		LinkedHashSet<String> keys = value == null ? null : index.get(value);
+		if(keys == null)
+			return;
+		keys.remove(itemKey);
+		if(keys.isEmpty())
+			index.remove(value);
 	}
 	
 	///////////////////////////////////////////////// PUBLISHER \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	protected void publishItems() {
 		DiscoveryService discovery = manager.getNetwork().getGroup("items").getDiscoveryService();
-		for(Item i: items) {
+		for(String itemKey : getAllItemKeys()) {
+			Item i = getItem(itemKey);
+			if(i == null)
+				continue; // removed since
 			try {
 				discovery.flushAdvertisement(i);
 				discovery.publish(i); //"i have this item"
@@ -15,14 +15,15 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package model.data.manager;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import model.data.favorites.KnownUsers;
 import model.data.user.User;
 import util.Printer;
+import util.secure.PublicKeyId;
 
 public class KnownUsersManager {
-	private HashMap<String, KnownUsers> knownUsers = new HashMap<>();
+	private ConcurrentHashMap<PublicKeyId, KnownUsers> knownUsers = new ConcurrentHashMap<>();
 	private Manager m;
 	
 	public KnownUsersManager(Manager m) {
@@ -38,8 +39,8 @@ public class KnownUsersManager {
 			Printer.printError(this, "getCurrentUserKnownUsers", "no users logged");
 		}
 		User currentUser = m.getUserManager().getCurrentUser();
-		String publicKey = currentUser.getKeys().getPublicKey().toString(16);
-		if(!knownUsers.containsKey(publicKey)) knownUsers.put(publicKey, new KnownUsers(currentUser));
+		PublicKeyId publicKey = currentUser.getKeys().getPublicKeyId();
+		if(!knownUsers.containsKey(publicKey)) knownUsers.putIfAbsent(publicKey, new KnownUsers(currentUser));
 		return knownUsers.get(publicKey);
 	}
 	
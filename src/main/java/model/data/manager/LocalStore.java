@@ -0,0 +1,485 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+import util.Printer;
+import util.StreamParser;
+
+/**
+ * Append-only log of the local data (users, items, conversations, favorites, deals).
+ * Each record is a XML element identified by a section and a key. Writing a record
+ * appends it at the end of the file, the last record of a key is the live one.
+ * An unchanged record isn't written again, so a saving costs what changed.
+ * Records are written without fsync, sync() forces them all at once.
+ * When the dead records take more room than the live ones, the log is compacted :
+ * the live records are copied in a new file which replaces the log.
+ * 
+ * Frame : length (int) | CRC32 of the body (int) | body
+ * Body : op (byte) | section (UTF) | key (UTF) | owner (UTF) | XML in UTF-8 (empty for a removal)
+ * A frame cut by a crash is detected with its length or its CRC, the log is truncated there.
+ * @author Julien Prudhomme
+ *
+ */
+public class LocalStore implements Closeable {
+	public static final int MAGIC = 0x53585031;		// "SXP1"
+	public static final String EXTENSION = ".log";
+	private static final int HEADER = 4;
+	private static final int FRAME_HEADER = 8;
+	private static final int MIN_COMPACTION = 64 * 1024;	// dead bytes before compacting
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "LocalStore");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private LinkedHashMap<String, Record> index = new LinkedHashMap<String, Record>();	// section/key -> live record
+	private long live = 0;		// bytes of the live frames
+	private boolean dirty = false;	// written since the last sync
+	
+	/**
+	 * Position of a live record in the log.
+	 */
+	private static class Record {
+		String section;
+		String key;
+		String owner;
+		long offset;
+		int length;		// frame length
+		byte[] digest;	// of the body, to find unchanged records
+		
+		Record(String section, String key, String owner, long offset, int length, byte[] digest) {
+			this.section = section;
+			this.key = key;
+			this.owner = owner;
+			this.offset = offset;
+			this.length = length;
+			this.digest = digest;
+		}
+	}
+	
+	/**
+	 * Receive the records read in the log.
+	 */
+	public static interface RecordHandler {
+		public void record(String section, Element e);
+	}
+	
+	///////////////////////////////////////////////// CONSTRUCTORS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Open (or create) a log and index its records.
+	 * @param file
+	 * @throws IOException if the file isn't a log.
+	 */
+	public LocalStore(File file) throws IOException {
+		this.file = file;
+		open();
+	}
+	
+	/**
+	 * The log that goes with a data file : SXPManager.xml -> SXPManager.log
+	 * @param path
+	 * @return
+	 */
+	public static File getLogFile(String path) {
+		int dot = path.lastIndexOf('.');
+		if(dot > path.lastIndexOf(File.separatorChar) && dot > path.lastIndexOf('/'))
+			path = path.substring(0, dot);
+		return new File(path + EXTENSION);
+	}
+	
+	private void open() throws IOException {
+		File tmp = getCompactionFile();
+		if(tmp.exists()) {
+			if(file.exists())
+				tmp.delete(); // interrupted compaction, the log is still complete
+			else
+				tmp.renameTo(file); // compacted log not renamed yet
+		}
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		index.clear();
+		live = 0;
+		if(channel.size() < HEADER) {
+			channel.truncate(0);
+			ByteBuffer magic = ByteBuffer.allocate(HEADER);
+			magic.putInt(MAGIC).flip();
+			write(magic, 0);
+			channel.force(true);
+			return;
+		}
+		ByteBuffer header = read(0, HEADER);
+		if(header.getInt() != MAGIC) {
+			close();
+			throw new IOException(file + " isn't a local store");
+		}
+		long size = channel.size();
+		long position = HEADER;
+		while(position + FRAME_HEADER <= size) {
+			ByteBuffer frame = read(position, FRAME_HEADER);
+			int length = frame.getInt();
+			int crc = frame.getInt();
+			if(length < 0 || position + FRAME_HEADER + length > size)
+				break;
+			byte[] body = read(position + FRAME_HEADER, length).array();
+			if(crc(body) != crc)
+				break;
+			index(body, position);
+			position += FRAME_HEADER + length;
+		}
+		if(position != size) {
+			Printer.printError(this, "open", "log cut at " + position + ", " + (size - position) + " bytes lost");
+			channel.truncate(position);
+			channel.force(true);
+		}
+	}
+	
+	/**
+	 * Update the index with a frame read in the log.
+	 */
+	private void index(byte[] body, long offset) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		byte op = in.readByte();
+		String section = in.readUTF();
+		String key = in.readUTF();
+		String owner = in.readUTF();
+		unindex(section, key);
+		if(op == PUT) {
+			index.put(getIndexKey(section, key), new Record(section, key, owner, offset, FRAME_HEADER + body.length, digest(body)));
+			live += FRAME_HEADER + body.length;
+		}
+	}
+	
+	private void unindex(String section, String key) {
+		Record old = index.remove(getIndexKey(section, key));
+		if(old != null)
+			live -= old.length;
+	}
+	
+	///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	public File getFile() {
+		return file;
+	}
+	
+	public synchronized boolean contains(String section, String key) {
+		return index.containsKey(getIndexKey(section, key));
+	}
+	
+	public synchronized int size() {
+		return index.size();
+	}
+	
+	/**
+	 * @param section
+	 * @param key
+	 * @return the live record of this key, null if there is none.
+	 * @throws IOException
+	 */
+	public synchronized Element get(String section, String key) throws IOException {
+		Record r = index.get(getIndexKey(section, key));
+		return r == null ? null : readElement(r);
+	}
+	
+	/**
+	 * Read all the live records, section by section.
+	 * @param sections - sections in the order they must be read
+	 * @param handler
+	 * @throws IOException
+	 */
+	public synchronized void read(String[] sections, RecordHandler handler) throws IOException {
+		for(String section : sections) {
+			for(Record r : new ArrayList<Record>(index.values())) {
+				if(!r.section.equals(section))
+					continue;
+				Element e;
+				try {
+					e = readElement(r);
+				} catch (IOException ex) {
+					Printer.printError(this, "read", r.section + " " + r.key + " : " + ex.getMessage());
+					continue;
+				}
+				handler.record(section, e);
+			}
+		}
+	}
+	
+	/**
+	 * @return the bytes of the records replaced or removed.
+	 * @throws IOException
+	 */
+	public synchronized long getDeadSize() throws IOException {
+		return channel.size() - HEADER - live;
+	}
+	
+	/**
+	 * @return true when the dead records take more room than the live ones.
+	 * @throws IOException
+	 */
+	public synchronized boolean needsCompaction() throws IOException {
+		long dead = getDeadSize();
+		return dead > MIN_COMPACTION && dead > live;
+	}
+	
+	///////////////////////////////////////////////// WRITERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Write a record, if it isn't already the live one.
+	 * @param section
+	 * @param key
+	 * @param owner - public key of the user this record belongs to
+	 * @param e
+	 * @return true if the record was written.
+	 * @throws IOException
+	 */
+	public synchronized boolean put(String section, String key, String owner, Element e) throws IOException {
+		byte[] xml = new XMLOutputter(Format.getCompactFormat()).outputString(e).getBytes(UTF8);
+		byte[] body = body(PUT, section, key, owner, xml);
+		byte[] digest = digest(body);
+		Record old = index.get(getIndexKey(section, key));
+		if(old != null && Arrays.equals(old.digest, digest))
+			return false;
+		long offset = append(body);
+		unindex(section, key);
+		index.put(getIndexKey(section, key), new Record(section, key, owner, offset, FRAME_HEADER + body.length, digest));
+		live += FRAME_HEADER + body.length;
+		return true;
+	}
+	
+	/**
+	 * Remove a record.
+	 * @param section
+	 * @param key
+	 * @return false if there was no record for this key.
+	 * @throws IOException
+	 */
+	public synchronized boolean remove(String section, String key) throws IOException {
+		if(!contains(section, key))
+			return false;
+		append(body(REMOVE, section, key, "", new byte[0]));
+		unindex(section, key);
+		return true;
+	}
+	
+	/**
+	 * Remove the records of an owner in a section, except some keys.
+	 * @param section
+	 * @param owner
+	 * @param keep - keys of the records to keep
+	 * @return the number of removed records.
+	 * @throws IOException
+	 */
+	public synchronized int retain(String section, String owner, Set<String> keep) throws IOException {
+		ArrayList<String> removed = new ArrayList<String>();
+		for(Record r : index.values()) {
+			if(r.section.equals(section) && r.owner.equals(owner) && !keep.contains(r.key))
+				removed.add(r.key);
+		}
+		for(String key : removed)
+			remove(section, key);
+		return removed.size();
+	}
+	
+	/**
+	 * Make sure everything written is on the disk. One fsync for all the records written since the last one.
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		if(!dirty)
+			return;
+		channel.force(false);
+		dirty = false;
+	}
+	
+	/**
+	 * Copy the live records in a new file that replaces the log.
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		File tmp = getCompactionFile();
+		LinkedHashMap<String, Record> compacted = new LinkedHashMap<String, Record>();
+		try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+			out.setLength(0);
+			FileChannel target = out.getChannel();
+			ByteBuffer magic = ByteBuffer.allocate(HEADER);
+			magic.putInt(MAGIC).flip();
+			while(magic.hasRemaining())
+				target.write(magic);
+			for(Map.Entry<String, Record> e : index.entrySet()) {
+				Record r = e.getValue();
+				long offset = target.position();
+				ByteBuffer frame = read(r.offset, r.length);
+				while(frame.hasRemaining())
+					target.write(frame);
+				compacted.put(e.getKey(), new Record(r.section, r.key, r.owner, offset, r.length, r.digest));
+			}
+			target.force(true);
+		}
+		close();
+		if(!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+			if(file.exists())
+				open();
+			throw new IOException("can't replace " + file + ", the live records are in " + tmp);
+		}
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		index = compacted;
+		dirty = false;
+	}
+	
+	/**
+	 * Compact the log in a background thread.
+	 */
+	public void compactLater() {
+		compactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (IOException e) {
+					Printer.printError(LocalStore.this, "compact", e.toString());
+				}
+			}
+		});
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		if(raf == null)
+			return;
+		if(dirty)
+			channel.force(false);
+		dirty = false;
+		raf.close();
+		raf = null;
+		channel = null;
+	}
+	
+	///////////////////////////////////////////////// TOOLS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	private File getCompactionFile() {
+		return new File(file.getPath() + ".tmp");
+	}
+	
+	private static String getIndexKey(String section, String key) {
+		return section + '\n' + key;
+	}
+	
+	private static byte[] body(byte op, String section, String key, String owner, byte[] xml) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(xml.length + 256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(op);
+		out.writeUTF(section);
+		out.writeUTF(key);
+		out.writeUTF(owner == null ? "" : owner);
+		out.write(xml);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * @return the offset of the frame.
+	 */
+	private long append(byte[] body) throws IOException {
+		long offset = channel.size();
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + body.length);
+		frame.putInt(body.length).putInt(crc(body)).put(body).flip();
+		write(frame, offset);
+		dirty = true;
+		return offset;
+	}
+	
+	private Element readElement(Record r) throws IOException {
+		byte[] body = read(r.offset + FRAME_HEADER, r.length - FRAME_HEADER).array();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		in.readByte();
+		in.readUTF();
+		in.readUTF();
+		in.readUTF();
+		byte[] xml = new byte[in.available()];
+		in.readFully(xml);
+		try {
+			return StreamParser.readRootElement(new StringReader(new String(xml, UTF8)));
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("unexpected end of " + file);
+		}
+		buffer.flip();
+		return buffer;
+	}
+	
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+	
+	private static int crc(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		return (int) crc.getValue();
+	}
+	
+	private static byte[] digest(byte[] body) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(body);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
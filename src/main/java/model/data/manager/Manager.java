@@ -1,31 +1,38 @@
-/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
-   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
-
-   This file is part of SXP.
-
-   SXP is free software: you can redistribute it and/or modify it 
-   under the terms of the GNU Lesser General Public License as published 
-   by the Free Software Foundation, version 3.
-
-   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
-   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
-   PURPOSE.  See the GNU Lesser General Public License for more details.
-
-   You should have received a copy of the GNU Lesser General Public License along with SXP. 
-   If not, see <http://www.gnu.org/licenses/>. */
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
 package model.data.manager;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map.Entry;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import model.advertisement.AbstractAdvertisement;
+import model.data.blob.BlobStore;
 import model.data.contrat.Contrat;
 import model.data.favorites.Favorites;
 import model.data.item.Category;
@@ -40,17 +47,15 @@ import model.network.communication.service.ServiceListener;
 import model.network.search.Search;
 import net.jxta.discovery.DiscoveryService;
 
-import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 
 import util.Printer;
+import util.StreamParser;
 import util.StringToElement;
 import util.VARIABLES;
 import util.secure.AsymKeysImpl;
+import util.secure.KeySession;
+import util.secure.PublicKeyId;
 
 /**
  * Local manager for Users, items and messages.
@@ -68,6 +73,10 @@ public class Manager extends AbstractAdvertisement implements RecoveryManager {
 	private KnownUsersManager knownUsersManager;
 	
 	private NetworkInterface network;
+	private LocalStore store = null;	// log of the local data, open after recovery or saving
+	
+	/** Sections of the log, in the order they are recovered (users first) */
+	private static final String[] SECTIONS = {"users", "items", "ReceivedMessages", "favorites", "deals"};
 
 	///////////////////////////////////////////////// CONSTRUCTORS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	/**
@@ -229,208 +238,222 @@ public class Manager extends AbstractAdvertisement implements RecoveryManager {
 	}
 	///////////////////////////////////////////////////// RECOVERY \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	
+	/**
+	 * Read the local data from the log of this path, or from the XML file if there is no log yet
+	 * (the data will be in the log after the next saving).
+	 */
 	@Override
 	public void recovery(String path) {
 		if(path == null || path.isEmpty())
 			path = VARIABLES.ManagerFilePath;
-		SAXBuilder builder = new SAXBuilder();
+		if(LocalStore.getLogFile(path).exists()) {
+			try {
+				openStore(path).read(SECTIONS, new LocalStore.RecordHandler() {
+					@Override
+					public void record(String section, Element e) {
+						recoveryElement(section, e);
+					}
+				});
+				Printer.printInfo(this, "recovery", "Local data recovered");
+			} catch (IOException e) {
+				Printer.printError(this, "recovery", "IOException\n\t"+e.toString());
+			}
+			return;
+		}
 		File xmlFile = new File(path);
 		boolean recovered = true;
-		try {
-			Document document = (Document) builder.build(xmlFile);
-			Element root = document.getRootElement();
-			Element usersElement = root.getChild("users");
-			for (Element e : usersElement.getChildren()) {
-				userManager.addUser(new User(e));
-			}
-			Element itemsElement = root.getChild("items");
-			for (Element e : itemsElement.getChildren()) {
-				itemManager.addItem(new Item(e));
-			}
-			Element messagesElement = root.getChild("messages");
-			for (Element e : messagesElement.getChildren()) {
-				messageManager.addMessage(new UserMessage(e));
-			}
-			Element conversationsElement = root.getChild("ReceivedMessages");
-			for (Element e : conversationsElement.getChildren()) {
-				messageManager.addConversations(new Conversations(e));
-			}
-			Element favoritesElement = root.getChild("favorites");
-			for (Element e : favoritesElement.getChildren()) {
-				favoriteManager.addFavorites(new Favorites(e), false);
-			}
-			Element dealsElement = root.getChild("deals");
-			for	(Element e : dealsElement.getChildren()){
-				String owner = e.getChild("owner").getText();
-				if(!contratManager.containsUser(owner) && userManager.userExists(owner))
-					contratManager.getDeals().put(owner, new ArrayList<Contrat>());
-				if(e.getChild(Contrat.class.getName())!=null)
-					contratManager.addDeal(owner, new Contrat(e.getChild(Contrat.class.getName())));
+		// The file is read in one pass : each record is built and added as soon as it is read,
+		// only one record is in memory at a time. The users come first in the file (see saving).
+		// The file is decoded here : it declares the encoding "UTF8", that some parsers reject.
+		try (Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(xmlFile), "UTF-8"))) {
+			XMLStreamReader reader = StreamParser.createReader(in);
+			try {
+				if(!StreamParser.nextChild(reader)) // root element
+					throw new XMLStreamException("no root element");
+				while(StreamParser.nextChild(reader)) {
+					String section = reader.getLocalName();
+					while(StreamParser.nextChild(reader)) {
+						recoveryElement(section, StreamParser.readElement(reader));
+					}
+				}
+			} finally {
+				reader.close();
 			}
 		} catch (FileNotFoundException e){
 			recovered = Printer.printError(this, "recovery", "File \""+path+"\" doesn't exist");
 		} catch (IOException e) {
 			recovered = Printer.printError(this, "recovery", "IOException\n\t"+e.toString());
-		} catch (JDOMException e) {
-			recovered = Printer.printError(this, "recovery", "JDOMException\n\tFile \""+path+"\" is empty");
-			xmlFile.delete();
+		} catch (XMLStreamException e) {
+			recovered = Printer.printError(this, "recovery", "XMLStreamException\n\tFile \""+path+"\" is unreadable : "+e.getMessage());
+			moveAside(xmlFile);
 		} finally{
 			if(recovered)
 				Printer.printInfo(this, "recovery", "Local data recovered");
 		}
 	}
 	
+	/**
+	 * Rename a data file that can't be read, so that the next saving doesn't overwrite it.
+	 * @param file
+	 */
+	private void moveAside(File file) {
+		if(!file.exists() || file.length() == 0)
+			return;
+		File aside = new File(file.getPath() + "." + System.currentTimeMillis() + ".bad");
+		if(file.renameTo(aside))
+			Printer.printInfo(this, "recovery", "unreadable data moved to " + aside.getPath());
+		else
+			Printer.printError(this, "recovery", "can't move " + file.getPath() + " aside");
+	}
+	
+	/**
+	 * Add a record read in the local data file.
+	 * @param section - name of the element that contain the record (users, items, ...)
+	 * @param e - the record
+	 */
+	private void recoveryElement(String section, Element e) {
+		switch(section) {
+		case "users":
+			userManager.addLocalUser(new User(e));
+			break;
+		case "items":
+			Item item = new Item(e);
+			itemManager.addItem(item);
+			if(userManager.userExists(item.getOwnerId()) && item.getImageDigest() != null)
+				BlobStore.getDefault().pin(item.getImageDigest()); // images of local users are never evicted
+			break;
+		case "messages":
+			messageManager.addMessage(new UserMessage(e));
+			break;
+		case "ReceivedMessages":
+			messageManager.addConversations(new Conversations(e));
+			break;
+		case "favorites":
+			favoriteManager.addFavorites(new Favorites(e), false);
+			break;
+		case "deals":
+			PublicKeyId owner = PublicKeyId.of(e.getChild("owner").getText());
+			if(userManager.userExists(owner))
+				contratManager.addUser(owner);
+			if(e.getChild(Contrat.class.getName())!=null)
+				contratManager.addDeal(owner, new Contrat(e.getChild(Contrat.class.getName())));
+			break;
+		default:
+			Printer.printError(this, "recovery", "unknown element " + section);
+		}
+	}
+	
 	
 	/**
-	 * TODO FONCTION BCP TROP LONGUE LOL
+	 * Write the local data in the log (see LocalStore). The records of the current user are
+	 * replaced by what is in memory, the records of the other local users are merged with
+	 * what is in memory. Only the records that changed are written.
 	 */
 	@Override
 	public void saving(String path) {
-		String currentPublicKey = userManager.getCurrentUser().getKeys().getPublicKey().toString(16);
-		AsymKeysImpl keys = userManager.getCurrentUser().getKeys().copy();
-		keys.decryptPrivateKey(userManager.getCurrentUser().getClearPwd());
-		// Recovery all local data in a new Manager
-		Manager manager = new Manager(null);
-		manager.recovery(path);
-		
 		if(path == null || path.isEmpty())
-			path = VARIABLES.ManagerFilePath; 
-		// Element Root
-		Element root = new Element(Manager.class.getName());
-		// ArrayList are used for adding data in local file.
-		ArrayList<User> users = new ArrayList<User>();
-		ArrayList<Item> items = this.userManager.getUserItems(currentPublicKey);
-		ArrayList<UserMessage> messages = null; // TODO this.getUserMessages(currentPublicKey);
-		ArrayList<Conversations> conversations = new ArrayList<Conversations>();
-		ArrayList<Favorites> favorites = new ArrayList<Favorites>();
-		HashMap<String,ArrayList<Contrat>> deals = new HashMap<String,ArrayList<Contrat>>();
-		
-		Conversations converC = this.messageManager.getUserConversations(currentPublicKey);
-		if(converC!=null) conversations.add(converC);
-		ArrayList<Contrat> arrayDealsC = this.contratManager.getDealsCurrentUser();
-		if(arrayDealsC!=null) deals.put(currentPublicKey, arrayDealsC);
-		Favorites favoC = this.favoriteManager.getFavoritesCurrentUser();
-		if(favoC!=null) {
-			favoC.encrypt(userManager.getCurrentUser().getClearPwd());
-			favoC.sign(keys);
-			favorites.add(favoC);
-		}
-		
-		// Element users
-		users.add(this.userManager.getCurrentUser());
-		Element usersElement = new Element("users");
-		usersElement.addContent(this.userManager.getCurrentUser().getRootElement());
-		for (User user : manager.userManager.getUsers()){
-			String userKey =  user.getKeys().getPublicKey().toString(16);
-				if(!user.getKeys().getPublicKey().toString(16).equals(currentPublicKey)){
-					usersElement.addContent(user.getRootElement());
-					users.add(user);
-				// Filling ArrayList items
-				for (Item i : this.userManager.getUserItems(userKey)) {
-					if(!items.contains(i))
-						items.add(i);
-				}
-				for (Item i : manager.userManager.getUserItems(userKey)) {
-					if(!items.contains(i))
-						items.add(i);
-				}
-				// Filling ArrayList messages
-			/* TODO	for (Message m : this.getUserMessages(userKey)) {
-					if(!messages.contains(m))
-						messages.add(m);
-				}
-				for (Message m : manager.getUserMessages(userKey)) {
-					if(!messages.contains(m))
-						messages.add(m);
-				} */
-				
-				// Filling ArrayList conversations
-				Conversations c;
-				c = this.messageManager.getUserConversations(userKey);
-				if(c != null && !conversations.contains(c))
-					conversations.add(c);
-				c = manager.messageManager.getUserConversations(userKey);
-				if(c != null && !conversations.contains(c))
-					conversations.add(c);
-				// Filling ArrayList favorites
-				Favorites f;
-				f = this.favoriteManager.getUserFavorites(userKey);
-				if(f != null && !favorites.contains(f)){
-					favorites.add(f);
-				}
-				f = manager.favoriteManager.getUserFavorites(userKey);
-				if(f != null && !favorites.contains(f))
-					favorites.add(f);
-				// Filling ArrayList deals
-				if(!deals.containsKey(userKey))
-					deals.put(userKey, new ArrayList<Contrat>());
-				for (Contrat d : this.contratManager.getUserDeals(userKey)){
-					if(!deals.get(userKey).contains(d))
-						deals.get(userKey).add(d);
-				}
-				for (Contrat d : manager.contratManager.getUserDeals(userKey)){
-					if(!deals.get(userKey).contains(d))
-						deals.get(userKey).add(d);
+			path = VARIABLES.ManagerFilePath;
+		User currentUser = userManager.getCurrentUser();
+		PublicKeyId currentPublicKey = currentUser.getKeys().getPublicKeyId();
+		String current = currentPublicKey.toString();
+		KeySession session = currentUser.getSession();
+		AsymKeysImpl keys = session.getKeys();
+		try {
+			LocalStore store = openStore(path);
+			int written = 0;
+			// Current user
+			written += save(store, "users", current, current, currentUser.getRootElement());
+			HashSet<String> kept = new HashSet<String>();
+			for(Item i : userManager.getUserItems(currentPublicKey)) {
+				written += save(store, "items", i.getItemKey(), current, i.getRootElement());
+				kept.add(i.getItemKey());
+			}
+			written += store.retain("items", current, kept);
+			kept.clear();
+			Conversations conversations = messageManager.getUserConversations(currentPublicKey);
+			if(conversations != null) {
+				written += save(store, "ReceivedMessages", current, current, conversations.getRootElement());
+				kept.add(current);
+			}
+			written += store.retain("ReceivedMessages", current, kept);
+			kept.clear();
+			Favorites favorites = favoriteManager.getFavoritesCurrentUser();
+			if(favorites != null) {
+				favorites.encrypt(session.getCipher());
+				favorites.sign(keys);
+				written += save(store, "favorites", current, current, favorites.getRootElement());
+				kept.add(current);
+			}
+			written += store.retain("favorites", current, kept);
+			kept.clear();
+			ArrayList<Contrat> deals = contratManager.getDealsCurrentUser();
+			if(deals != null) {
+				for(Contrat d : deals) {
+					written += save(store, "deals", d.getId(), current, getDealElement(current, d));
+					kept.add(d.getId());
 				}
 			}
-		}
-		// Element items
-		Element itemsElement = new Element("items");
-		for (Item i : items) {
-			itemsElement.addContent(i.getRootElement());
-		}
-		// Element messages
-		Element messagesElement = new Element("messages");
-		/* TODO FIX BUG
-		for (Message m : messages) {
-			messagesElement.addContent(m.getRootElement());
-		}
-		*/
-		// Element ReceivedMessages
-		Element conversationsElement = new Element("ReceivedMessages");
-		for (Conversations c : conversations) {
-			conversationsElement.addContent(c.getRootElement());
-		}
-		// Element Favorites
-		Element favoritesElement = new Element("favorites");
-		for (Favorites f : favorites) {
-			favoritesElement.addContent(f.getRootElement());
-		}
-		// Element Deals
-		Element dealsElement = new Element("deals");
-		for (User u : users) {
-			String userKey = u.getKeys().getPublicKey().toString(16);
-			for(Contrat d : deals.get(userKey)){
-				Element ownerElement = new Element("owner");
-				Element dealElement = new Element("deal");
-				ownerElement.addContent(userKey);
-				dealElement.addContent(ownerElement);
-				dealElement.addContent(d.getRootElement());
-				dealsElement.addContent(dealElement);
+			written += store.retain("deals", current, kept);
+			// Other local users : their user record is kept as it is, it's only written when the log
+			// is created from the XML file (or was lost)
+			for(User user : userManager.getLocalUsers()) {
+				String userKey = user.getKeys().getPublicKeyId().toString();
+				if(userKey.equals(current))
+					continue;
+				if(!store.contains("users", userKey))
+					written += save(store, "users", userKey, userKey, user.getRootElement());
+				for(Item i : userManager.getUserItems(userKey))
+					written += save(store, "items", i.getItemKey(), userKey, i.getRootElement());
+				Conversations c = messageManager.getUserConversations(userKey);
+				if(c != null)
+					written += save(store, "ReceivedMessages", userKey, userKey, c.getRootElement());
+				Favorites f = favoriteManager.getUserFavorites(userKey);
+				if(f != null)
+					written += save(store, "favorites", userKey, userKey, f.getRootElement());
+				for(Contrat d : contratManager.getUserDeals(userKey))
+					written += save(store, "deals", d.getId(), userKey, getDealElement(userKey, d));
 			}
-		}
-		// Adding all elements in root element
-		root.addContent(usersElement);
-		root.addContent(itemsElement);
-		root.addContent(messagesElement);
-		root.addContent(conversationsElement);
-		root.addContent(favoritesElement);
-		root.addContent(dealsElement);
-		// Writing in file
-		Document doc = new Document(root);
-		XMLOutputter xmlOutput = new XMLOutputter();
-		Format format = Format.getPrettyFormat();
-		format.setEncoding("UTF8");
-		xmlOutput.setFormat(format);
-		try {
-			xmlOutput.output(doc, new FileWriter(path));
+			store.sync();
+			if(store.needsCompaction())
+				store.compactLater();
+			Printer.printInfo(this, "saving", "Data saved localy, " + written + " records written");
 		} catch (IOException e) {
 			Printer.printError(this, "saving", "saving : "+e.toString());
-		}  finally{
-			Printer.printInfo(this, "saving", "Data saved localy");
 		}
 	}
 	
+	private static int save(LocalStore store, String section, String key, String owner, Element e) throws IOException {
+		return store.put(section, key, owner, e) ? 1 : 0;
+	}
+	
+	/**
+	 * Element of a deal, as it was in the "deals" section.
+	 */
+	private static Element getDealElement(String owner, Contrat d) {
+		Element ownerElement = new Element("owner");
+		Element dealElement = new Element("deal");
+		ownerElement.addContent(owner);
+		dealElement.addContent(ownerElement);
+		dealElement.addContent(d.getRootElement());
+		return dealElement;
+	}
+	
+	/**
+	 * The log of this data file, opened once.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized LocalStore openStore(String path) throws IOException {
+		File log = LocalStore.getLogFile(path);
+		if(store != null && store.getFile().equals(log))
+			return store;
+		if(store != null)
+			store.close();
+		store = new LocalStore(log);
+		return store;
+	}
+	
 	public static void main(String[] args){
 		User u = new User("nick", "passWord", "name", "firstName", "email", "phone");
 		Item i = new Item(u, "title", new Category("NA"), "description", "image", "country", "contact", 0L, 0L, TYPE.OFFER);
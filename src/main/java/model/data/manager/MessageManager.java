@@ -17,18 +17,21 @@ package model.data.manager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdom2.Element;
 
 import util.Printer;
 import util.StringToElement;
+import util.secure.PublicKeyId;
 import model.data.user.Conversations;
 import model.data.user.User;
 import model.data.user.UserMessage;
 
 public class MessageManager {
-	private ArrayList<UserMessage> messages = new ArrayList<UserMessage>();	// Messages for users attempting to be received.
-	private HashMap<String, Conversations> conversations = new HashMap<String, Conversations>(); //users's conversation (already received.) (string : user public key that own the conversations
+	private CopyOnWriteArrayList<UserMessage> messages = new CopyOnWriteArrayList<UserMessage>();	// Messages for users attempting to be received.
+	private ConcurrentHashMap<PublicKeyId, Conversations> conversations = new ConcurrentHashMap<PublicKeyId, Conversations>(); //users's conversation (already received.) (string : user public key that own the conversations
 	private Manager manager;
 	
 	
@@ -39,15 +42,25 @@ public class MessageManager {
 	
 	
 	///////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * @return a copy of the messages
+	 */
 	public ArrayList<UserMessage> getMessages() {
-		return messages;
+		return new ArrayList<UserMessage>(messages);
 	}
 	
-	public HashMap<String, Conversations> getConversations() {
-		return conversations;
+	/**
+	 * @return a copy of the conversations
+	 */
+	public HashMap<PublicKeyId, Conversations> getConversations() {
+		return new HashMap<PublicKeyId, Conversations>(conversations);
 	}
 	
 	public Conversations getConversation(String key) {
+		return conversations.get(PublicKeyId.of(key));
+	}
+	
+	public Conversations getConversation(PublicKeyId key) {
 		return conversations.get(key);
 	}
 	
@@ -60,6 +73,15 @@ public class MessageManager {
 	public Conversations getUserConversations(String publicKey){
 		/*if(!conversations.containsKey(publicKey))
 			addConversations(new Conversations(publicKey));*/
+		return getUserConversations(PublicKeyId.of(publicKey));
+	}
+	
+	/**
+	 * Get the user conversations, null if the user has no conversations.
+	 * @param publicKey
+	 * @return
+	 */
+	public Conversations getUserConversations(PublicKeyId publicKey){
 		return conversations.get(publicKey);
 	}
 	
@@ -74,10 +96,13 @@ public class MessageManager {
 			return null;
 		}
 		User u = manager.getUserManager().getCurrentUser();
-		if(!conversations.containsKey(u.getKeys().getPublicKey().toString(16))) {
-			addConversations(new Conversations(u));
+		PublicKeyId id = u.getKeys().getPublicKeyId();
+		if(!conversations.containsKey(id)) {
+			Conversations c = new Conversations(u);
+			if(isValid(c))
+				conversations.putIfAbsent(id, c); // never replaces the conversations of another thread
 		}
-		return conversations.get(u.getKeys().getPublicKey().toString(16));
+		return conversations.get(id);
 	}
 	
 	///////////////////////////////////////////////// ADDERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
@@ -86,24 +111,25 @@ public class MessageManager {
 	 * @param c
 	 */
 	public void addConversations(Conversations c) {
+		if(isValid(c))
+			conversations.put(PublicKeyId.of(c.getOwner()), c);
+	}
+	
+	private boolean isValid(Conversations c) {
 		if(c == null){
-			Printer.printError(this, "addConversations","This Conversation is null !");
-			return;
+			return Printer.printError(this, "addConversations","This Conversation is null !");
 		}
 		String owner = c.getOwner();
 		if(owner == null || owner.isEmpty()){
-			Printer.printError(this, "addConversations","No owner found !");
-			return;
+			return Printer.printError(this, "addConversations","No owner found !");
 		}
 		if(manager.getUserManager().getUser(owner) == null){
-			Printer.printError(this, "addConversations","Owner unknown "+owner);
-			return;
+			return Printer.printError(this, "addConversations","Owner unknown "+owner);
 		}
 		if(!c.checkSignature(c.getKeys())){
-			Printer.printError(this, "addConversations","Bad Signature for Conversation");
-			return;
+			return Printer.printError(this, "addConversations","Bad Signature for Conversation");
 		}
-		conversations.put(c.getOwner(), c);
+		return true;
 	}
 	
 	public void addMessage(UserMessage msg) {
@@ -138,7 +164,7 @@ public class MessageManager {
 		return true;
 	}
 	public boolean removeCurrentUserConversation(String publicKey) {
-		return conversations.get(manager.getUserManager().getCurrentUser().getKeys().getPublicKey().toString(16)).removeConversation(publicKey);
+		return conversations.get(manager.getUserManager().getCurrentUser().getKeys().getPublicKeyId()).removeConversation(publicKey);
 	}
 	///////////////////////////////////////////////// XML \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	/**
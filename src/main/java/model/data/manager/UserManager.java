@@ -18,7 +18,9 @@ package model.data.manager;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.jxta.discovery.DiscoveryService;
 
@@ -28,7 +30,9 @@ import util.Printer;
 import util.StringToElement;
 import util.VARIABLES;
 import util.secure.AsymKeysImpl;
-import model.data.contrat.Contrat;
+import util.secure.KeySession;
+import util.secure.PublicKeyId;
+import util.secure.SerpentGCM;
 import model.data.favorites.Favorites;
 import model.data.item.Item;
 import model.data.user.Conversations;
@@ -37,8 +41,9 @@ import model.data.user.UserMessage;
 import model.network.search.Search;
 
 public class UserManager {
-	private HashMap<String, User> users = new HashMap<String,User>();  // The string key is the user's public key in hexadecimal
-	private User currentUser = null;				                   // User logged
+	private ConcurrentHashMap<PublicKeyId, User> users = new ConcurrentHashMap<PublicKeyId,User>();  // The key is the user's public key
+	private volatile User currentUser = null;				                   // User logged
+	private Set<PublicKeyId> localUsers = Collections.newSetFromMap(new ConcurrentHashMap<PublicKeyId, Boolean>()); // accounts of this device
 	private Manager manager;
 	
 	
@@ -55,6 +60,15 @@ public class UserManager {
 	 * @return
 	 */
 	public User getUser(String publicKey){
+		return getUser(PublicKeyId.of(publicKey));
+	}
+	
+	/**
+	 * Return the user with this publicKey
+	 * @param publicKey
+	 * @return
+	 */
+	public User getUser(PublicKeyId publicKey){
 		return users.get(publicKey);
 	}
 	
@@ -69,7 +83,7 @@ public class UserManager {
 	
 	/**
 	 * Get the entire list of users
-	 * @return a Collection of User
+	 * @return a Collection of User, it can be iterated while users are added or removed
 	 */
 	public Collection<User> getUsers() {
 		return users.values();
@@ -80,8 +94,29 @@ public class UserManager {
 	 * @param item
 	 * @return
 	 */
+	/**
+	 * @return the accounts of this device : the users read in the local data, and the ones that logged in.
+	 */
+	public ArrayList<User> getLocalUsers() {
+		ArrayList<User> list = new ArrayList<User>();
+		for(PublicKeyId key : localUsers) {
+			User u = users.get(key);
+			if(u != null)
+				list.add(u);
+		}
+		return list;
+	}
+	
+	/**
+	 * @param key
+	 * @return true if this user is an account of this device, not an user known from the network.
+	 */
+	public boolean isLocalUser(PublicKeyId key) {
+		return key != null && localUsers.contains(key);
+	}
+	
 	public User getItemUser(Item item){
-		return users.get(item.getOwner());
+		return users.get(item.getOwnerId());
 	}
 	
 	/**
@@ -104,13 +139,16 @@ public class UserManager {
 	 * @return a new list containing user's items
 	 */
 	public ArrayList<Item> getUserItems(String publicKey) {
-		ArrayList<Item> userItems = new ArrayList<Item>();
-		for(Item i: manager.getItemManager().getItems()) {
-			if(i.getOwner().equals(publicKey)) {
-				userItems.add(i);
-			}
-		}
-		return userItems;
+		return getUserItems(PublicKeyId.of(publicKey));
+	}
+	
+	/**
+	 * Return the user's items' list
+	 * @param publicKey the user public key
+	 * @return a new list containing user's items
+	 */
+	public ArrayList<Item> getUserItems(PublicKeyId publicKey) {
+		return manager.getItemManager().getUserItems(publicKey);
 	}
 	
 	
@@ -129,15 +167,28 @@ public class UserManager {
 			Printer.printError(this, "addUser","Bad Signature for "+u.getNick());
 			return;
 		}
-		String key = u.getKeys().getPublicKey().toString(16);
-		if(users.containsKey(key)){
-			if(users.get(key).equals(u) && users.get(key).getLastUpdated() >= u.getLastUpdated()){
+		PublicKeyId key = u.getKeys().getPublicKeyId();
+		User old = users.putIfAbsent(key, u);
+		while(old != null) { // replaced only if it's still the user that was compared
+			if(old.equals(u) && old.getLastUpdated() >= u.getLastUpdated()){
 				Printer.printError(this, "addUser","User "+u.getNick()+" is already registred !");
 				return;
 			}
+			if(users.replace(key, old, u))
+				break;
+			old = users.putIfAbsent(key, u);
 		}
-		users.put(key, u);
-		manager.getContratManager().getDeals().put(key, new ArrayList<Contrat>());
+		manager.getContratManager().addUser(key);
+	}
+	
+	/**
+	 * Add an account of this device, read in the local data.
+	 * @param u
+	 */
+	public void addLocalUser(User u) {
+		addUser(u);
+		if(u != null && userExists(u.getKeys().getPublicKeyId()))
+			localUsers.add(u.getKeys().getPublicKeyId());
 	}
 	
 	/**
@@ -206,13 +257,11 @@ public class UserManager {
 	 * @return
 	 */
 	public boolean removeUserIfEmpty(User user){
-		String userKey = user.getKeys().getPublicKey().toString(16);
+		PublicKeyId userKey = user.getKeys().getPublicKeyId();
 		if(getUser(userKey) == null)
 			return false;
-		for (Item i : manager.getItemManager().getItems()) {
-			if(i.getOwner().equals(userKey))
-				return false;
-		}
+		if(manager.getItemManager().hasItems(userKey))
+			return false;
 		return users.remove(userKey)!=null;
 	}
 	
@@ -224,16 +273,11 @@ public class UserManager {
 	 * @return
 	 */
 	public boolean removeUser(User user){
-		String userKey = user.getKeys().getPublicKey().toString(16);
-		if(!users.containsKey(user.getKeys().getPublicKey().toString(16)))
+		PublicKeyId userKey = user.getKeys().getPublicKeyId();
+		if(!users.containsKey(userKey))
 			return false;
-		boolean valid = true;
-		for (Item i : manager.getItemManager().getItems()) {
-			if(i.getOwner().equals(userKey))
-				valid &= manager.getItemManager().getItems().remove(i);
-		}
-		
-		return (valid &= (users.remove(userKey)!=null));
+		manager.getItemManager().removeUserItems(userKey);
+		return users.remove(userKey)!=null;
 	}
 	
 	
@@ -242,21 +286,24 @@ public class UserManager {
 	 * Log out the current User.
 	 */
 	public void logout() {
-		AsymKeysImpl clearKeys = currentUser.getKeys().copy();
-		clearKeys.decryptPrivateKey(currentUser.getClearPwd());
-		String clearPassword = new String(currentUser.getClearPwd());
+		KeySession session = currentUser.getSession();
+		AsymKeysImpl clearKeys = session.getKeys();
 		/*if(manager.getFavoriteManager().getFavoritesCurrentUser() != null){
 			manager.getFavoriteManager().getFavoritesCurrentUser().encrypt(clearPassword);
 			manager.getFavoriteManager().getFavoritesCurrentUser().sign(currentUser.getKeys());
 		}*/
-		currentUser.getKeys().encryptPrivateKey(clearPassword);
+		currentUser.getKeys().encryptPrivateKey(session.getCipher());
 		currentUser.sign(clearKeys);
 		manager.saving(VARIABLES.ManagerFilePath);
-		currentUser.setClearPassword(null);
+		currentUser.setClearPassword(null); // key material cleared
 		currentUser = null;
 	}
 	
 	public boolean userExists(String key) {
+		return userExists(PublicKeyId.of(key));
+	}
+	
+	public boolean userExists(PublicKeyId key) {
 		return users.containsKey(key);
 	}
 	
@@ -286,37 +333,50 @@ public class UserManager {
 		User findUser = getLocalUserByLogin(nickname, password);
 		
 		//Retrieving network users
-		Search<User> search = new Search<User>(manager.getNetwork(), User.class.getSimpleName(), "nick", true);
-		search.search(nickname, VARIABLES.CheckTimeAccount, VARIABLES.ReplicationsAccount);
-		ArrayList<User> results = search.getResults();
+		ArrayList<User> results = new ArrayList<User>();
+		if(manager.getNetwork() != null) { // offline : only the local users
+			Search<User> search = new Search<User>(manager.getNetwork(), User.class.getSimpleName(), "nick", true);
+			search.search(nickname, VARIABLES.CheckTimeAccount, VARIABLES.ReplicationsAccount);
+			results = search.getResults();
+		}
 		if(results.isEmpty() && findUser == null){
 			return false;
 		}
 		
 		
+		SerpentGCM cipher = new SerpentGCM(password); // key derived once per salt for all the candidates
 		for(User u : results) {
 			if(!u.checkSignature(u.getKeys()) || !u.isPassword(password))  {
 				System.out.println("bad signature : " + u.getNick());
 				continue;
 			}
-			if(u.getKeys().getDecryptedPrivateKey(password) == null) continue;
+			if(u.getKeys().getDecryptedPrivateKey(cipher) == null) continue;
 			if(findUser == null) findUser = u;
 			if(u.getLastUpdated() > findUser.getLastUpdated()) {
 				findUser = u;
 			}
 		}
 		
-		if(findUser == null) return false;
+		if(findUser == null) {
+			cipher.destroy();
+			return false;
+		}
 		
 		addUser(findUser);
 		
 		
 		// Check privateKey decryption
-		if(!findUser.getKeys().decryptPrivateKey(password))
+		KeySession session = new KeySession(findUser.getKeys(), cipher);
+		if(!session.isValid()) {
+			session.close();
 			return false;
+		}
+		findUser.getKeys().setPrivateKey(session.getKeys().getPrivateKey());
 		currentUser = findUser;
+		localUsers.add(findUser.getKeys().getPublicKeyId());
 		currentUser.setClearPassword(password);
-		manager.getFavoriteManager().getFavoritesCurrentUser().decrypt(password);
+		currentUser.setSession(session);
+		manager.getFavoriteManager().getFavoritesCurrentUser().decrypt(session.getCipher());
 		return currentUser != null;
 	}
 	
@@ -15,12 +15,15 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package model.data.manager.resiliance;
 
+import java.util.ArrayList;
+
 import model.data.contrat.Contrat;
 import model.data.manager.Manager;
 import model.network.communication.Communication;
 import model.network.communication.service.InstanceSender.ContratSender;
 import model.network.search.RandomPeerFinder;
 import model.network.search.Search;
+import model.network.search.VerificationExecutor;
 import net.jxta.peer.PeerID;
 
 public class ContratsResiliance extends AbstractResiliance {
@@ -34,20 +37,16 @@ public class ContratsResiliance extends AbstractResiliance {
 		Search<Contrat> s = new Search<Contrat>(manager.getNetwork(), Contrat.class.getSimpleName(), "keyId", true);
 		for(Contrat f : manager.getContratManager().getContrats()) {
 			s.search(f.getId(), 2, 5);
-			for(Contrat contrat: s.getResults()) {
-				if(!contrat.checkSignature(f.getKeys())) {
-					s.getResults().remove(contrat);
-				}
-				else {
-					if(contrat.getLastUpdated() > f.getLastUpdated()) {
-							manager.getContratManager().addContrat(contrat);
-							f = contrat;
-					}
+			ArrayList<Contrat> results = VerificationExecutor.getInstance().verifyAll(s.getResults(), f.getKeys()); //wrong signatures don't count.
+			for(Contrat contrat: results) {
+				if(contrat.getLastUpdated() > f.getLastUpdated()) {
+						manager.getContratManager().addContrat(contrat);
+						f = contrat;
 				}
 			}
-			if(s.getResults().size() < 5) {
+			if(results.size() < 5) {
 				RandomPeerFinder rpf = new RandomPeerFinder(manager.getNetwork());
-				rpf.findPeers(2, 5 - s.getResults().size());
+				rpf.findPeers(2, 5 - results.size());
 				com.getService(ContratSender.class.getSimpleName()).sendMessage(f, rpf.getResults().toArray(new PeerID[0]));
 			}
 			f.publish(manager.getNetwork());
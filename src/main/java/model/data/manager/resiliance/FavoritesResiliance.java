@@ -15,6 +15,8 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package model.data.manager.resiliance;
 
+import java.util.ArrayList;
+
 import net.jxta.peer.PeerID;
 import model.data.favorites.Favorites;
 import model.data.manager.Manager;
@@ -22,6 +24,7 @@ import model.network.communication.Communication;
 import model.network.communication.service.InstanceSender.FavoritesSender;
 import model.network.search.RandomPeerFinder;
 import model.network.search.Search;
+import model.network.search.VerificationExecutor;
 
 
 /**
@@ -41,20 +44,16 @@ public class FavoritesResiliance extends AbstractResiliance {
 		Search<Favorites> s = new Search<Favorites>(manager.getNetwork(), Favorites.class.getSimpleName(), "keyId", true);
 		for(Favorites f : manager.getFavoriteManager().getFavorites()) {
 			s.search(f.getId(), 2, 5);
-			for(Favorites favorites: s.getResults()) {
-				if(!favorites.checkSignature(f.getKeys())) {
-					s.getResults().remove(favorites);
-				}
-				else {
-					if(favorites.getLastUpdated() > f.getLastUpdated()) {
-							manager.getFavoriteManager().addFavorites(favorites);
-							f = favorites;
-					}
+			ArrayList<Favorites> results = VerificationExecutor.getInstance().verifyAll(s.getResults(), f.getKeys()); //wrong signatures don't count.
+			for(Favorites favorites: results) {
+				if(favorites.getLastUpdated() > f.getLastUpdated()) {
+						manager.getFavoriteManager().addFavorites(favorites);
+						f = favorites;
 				}
 			}
-			if(s.getResults().size() < 5) {
+			if(results.size() < 5) {
 				RandomPeerFinder rpf = new RandomPeerFinder(manager.getNetwork());
-				rpf.findPeers(2, 5 - s.getResults().size());
+				rpf.findPeers(2, 5 - results.size());
 				com.getService(FavoritesSender.class.getSimpleName()).sendMessage(f, rpf.getResults().toArray(new PeerID[0]));
 			}
 			f.publish(manager.getNetwork());
@@ -15,6 +15,8 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package model.data.manager.resiliance;
 
+import java.util.ArrayList;
+
 import net.jxta.peer.PeerID;
 import model.data.item.Item;
 import model.data.manager.Manager;
@@ -22,6 +24,7 @@ import model.network.communication.Communication;
 import model.network.communication.service.InstanceSender.ItemSender;
 import model.network.search.RandomPeerFinder;
 import model.network.search.Search;
+import model.network.search.VerificationExecutor;
 import model.network.search.SearchListener;
 
 /**
@@ -38,22 +41,21 @@ public class ItemResiliance extends AbstractResiliance {
 	@Override
 	public void step() {
 		Search<Item> s = new Search<Item>(manager.getNetwork(), Item.class.getSimpleName(), "itemKey", true);
-		for(Item i : manager.getItemManager().getItems()) {
+		for(String itemKey : manager.getItemManager().getAllItemKeys()) { // the items kept for the other users too
+			Item i = manager.getItemManager().getItem(itemKey);
+			if(i == null)
+				continue; // removed since
 			s.search(i.getItemKey(), 2, 5);
-			for(Item item: s.getResults()) {
-				if(!item.checkSignature(i.getKeys())) {
-					s.getResults().remove(item);
-				}
-				else {
-					if(item.getLastUpdated() > i.getLastUpdated()) {
-							manager.getItemManager().addItem(item);
-							i = item;
-					}
+			ArrayList<Item> results = VerificationExecutor.getInstance().verifyAll(s.getResults(), i.getKeys()); //wrong signatures don't count.
+			for(Item item: results) {
+				if(item.getLastUpdated() > i.getLastUpdated()) {
+						manager.getItemManager().addItem(item);
+						i = item;
 				}
 			}
-			if(s.getResults().size() < 5) {
+			if(results.size() < 5) {
 				RandomPeerFinder rpf = new RandomPeerFinder(manager.getNetwork());
-				rpf.findPeers(2, 5 - s.getResults().size());
+				rpf.findPeers(2, 5 - results.size());
 				com.getService(ItemSender.class.getSimpleName()).sendMessage(i, rpf.getResults().toArray(new PeerID[0]));
 			}
 			i.publish(manager.getNetwork());
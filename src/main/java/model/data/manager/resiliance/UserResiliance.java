@@ -15,6 +15,8 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package model.data.manager.resiliance;
 
+import java.util.ArrayList;
+
 import net.jxta.peer.PeerID;
 import model.data.manager.Manager;
 import model.data.user.User;
@@ -22,6 +24,7 @@ import model.network.communication.Communication;
 import model.network.communication.service.InstanceSender.UserSender;
 import model.network.search.RandomPeerFinder;
 import model.network.search.Search;
+import model.network.search.VerificationExecutor;
 
 public class UserResiliance extends AbstractResiliance {
 
@@ -35,20 +38,16 @@ public class UserResiliance extends AbstractResiliance {
 		Search<User> s = new Search<User>(manager.getNetwork(), User.class.getSimpleName(), "publicKey", true);
 		for(User u: manager.getUserManager().getUsers()) {
 			s.search(u.getKeys().getPublicKey().toString(16), 2, 5);
-			for(User user: s.getResults()) {
-				if(!user.checkSignature(u.getKeys())) {
-					s.getResults().remove(user); //wrong signature, result doesn't count.
-				}
-				else {
-					if(u.getLastUpdated() < user.getLastUpdated()) {
-						manager.getUserManager().addUser(user, false);
-						u = user;
-					}
+			ArrayList<User> results = VerificationExecutor.getInstance().verifyAll(s.getResults(), u.getKeys()); //wrong signatures don't count.
+			for(User user: results) {
+				if(u.getLastUpdated() < user.getLastUpdated()) {
+					manager.getUserManager().addUser(user, false);
+					u = user;
 				}
 			}
-			if(s.getResults().size() < 5) {
+			if(results.size() < 5) {
 				RandomPeerFinder rpf = new RandomPeerFinder(manager.getNetwork());
-				rpf.findPeers(2, 5 - s.getResults().size());
+				rpf.findPeers(2, 5 - results.size());
 				com.getService(UserSender.class.getSimpleName()).sendMessage(u, rpf.getResults().toArray(new PeerID[0]));
 			}
 			u.publish(manager.getNetwork());
@@ -26,7 +26,7 @@ import util.Hexa;
 import util.Printer;
 import util.StringToElement;
 import util.secure.AsymKeysImpl;
-import util.secure.Serpent;
+import util.secure.SerpentGCM;
 import model.advertisement.AbstractAdvertisement;
 
 /**
@@ -45,7 +45,7 @@ public class Conversations extends AbstractAdvertisement{
 	private HashMap<String, ArrayList<UserMessage>> messages; //all message when cypher is decrypted.
 	private String owner; //public key of the conversation owner;
 	private String cypher;
-	private String password = null; //content locked if password is null
+	private SerpentGCM crypter = null; //content locked if crypter is null, derived from the owner password
 	private AsymKeysImpl keys = null;
 	
 	public Conversations(Element child) {
@@ -55,7 +55,7 @@ public class Conversations extends AbstractAdvertisement{
 	public Conversations(User owner) {
 		super();
 		this.owner = owner.getKeys().getPublicKey().toString(16);
-		this.password = owner.getClearPwd();
+		this.crypter = owner.getSession() == null ? null : owner.getSession().getCipher();
 		this.keys = owner.getKeys();
 		setKeys(owner.getKeys());
 	}
@@ -76,7 +76,7 @@ public class Conversations extends AbstractAdvertisement{
 	protected void putValues() {
 		addValue("owner", owner);
 		
-		if(password != null) { //if password is set we can recompute the cypher with the possible new values.
+		if(!isLocked()) { //if password is set we can recompute the cypher with the possible new values.
 			if(messages == null) {
 				System.err.println("password is set but messages still null ?");
 				return;
@@ -100,7 +100,6 @@ public class Conversations extends AbstractAdvertisement{
 			 * ...
 			 */
 			
-			Serpent crypter = new Serpent(password);
 			cypher = Hexa.bytesToHex(crypter.encrypt(s.toString().getBytes()));
 		}
 		addValue("cypher", cypher);
@@ -111,18 +110,34 @@ public class Conversations extends AbstractAdvertisement{
 	 * @param loguedUser
 	 */
 	public void unLock(User loguedUser) {
-		this.password = loguedUser.getClearPwd();
-		Serpent crypter = new Serpent(password);
-		String clearText = new String(crypter.decrypt(Hexa.hexToBytes(cypher)));
+		this.crypter = loguedUser.getSession() == null ? null : loguedUser.getSession().getCipher();
+		if(crypter == null) {
+			Printer.printError(this, "unLock", "user not logged");
+			return;
+		}
+		byte[] clear = crypter.decrypt(Hexa.hexToBytes(cypher));
+		if(clear == null) {
+			Printer.printError(this, "unLock", "wrong password");
+			return;
+		}
+		String clearText = new String(clear);
 		Element root = StringToElement.getElementFromString(clearText, "UserConversation");
 		parseRootElement(root);
 	}
 	
 	public void lock() {
-		this.password = null;
+		this.crypter = null;
 		messages = null;
 	}
 	
+	/**
+	 * Content is locked until unLock, or again once the owner logged out.
+	 * @return
+	 */
+	private boolean isLocked() {
+		return crypter == null || crypter.isDestroyed();
+	}
+	
 	
 	/**
 	 * We parse the root element, result of decrypted cypher.
@@ -145,19 +160,19 @@ public class Conversations extends AbstractAdvertisement{
 	 * @param to
 	 */
 	public ArrayList<UserMessage> getConversation(String to) {
-		if(password == null) return null; //content locked
+		if(isLocked()) return null; //content locked
 		if(!messages.containsKey(to)) messages.put(to, new ArrayList<UserMessage>());
 		return messages.get(to);
 	}
 	
 	public boolean removeConversation(String to) {
-		if(password == null) return false; //content locked
+		if(isLocked()) return false; //content locked
 		if(!messages.containsKey(to)) return true;
 		return messages.remove(to) != null;
 	}
 	
 	public ArrayList<String> getSenders(){
-		if(password == null) return null; //content locked
+		if(isLocked()) return null; //content locked
 		ArrayList<String> senders = new ArrayList<String>();
 		for (String sender : messages.keySet()) {
 			senders.add(sender);
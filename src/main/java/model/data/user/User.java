@@ -23,6 +23,7 @@ import org.jdom2.Element;
 
 import util.Hasher;
 import util.secure.AsymKeysImpl;
+import util.secure.KeySession;
 
 /**
  * This class can be instantiated for contains an user.
@@ -41,6 +42,7 @@ public class User extends AbstractAdvertisement implements Comparable<User>{
 	private long date;				// The date of creation/update of the user's profile
 	private UserRate rate;			// The general rate of the user.
 	private String clearPassword;	// is never saved, not null only if a user log in this.
+	private KeySession session;		// key material derived from clearPassword, never saved
 	
 	/**
 	 * To make new User (during registration)
@@ -95,9 +97,13 @@ public class User extends AbstractAdvertisement implements Comparable<User>{
 		super(u);
 	}
 	
+	/**
+	 * Construct a User received from JXTA. The fields are decoded on first access.
+	 * @param u
+	 */
 	@SuppressWarnings("rawtypes")
 	public User(net.jxta.document.Element u) {
-		super(u);
+		super(u, true);
 	}
 
 	//////////////////////////////////////////////////// TOOLS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
@@ -109,7 +115,7 @@ public class User extends AbstractAdvertisement implements Comparable<User>{
 	public boolean isPassword(String password){
 		try {
 			String hash = Hasher.SHA256(password);
-			return hash.equals(this.hashPwd);
+			return hash.equals(getHashPwd());
 		} catch (Exception e) {
 			e.printStackTrace();
 			return false;
@@ -118,80 +124,120 @@ public class User extends AbstractAdvertisement implements Comparable<User>{
 	
 	/////////////////////////////////////////////////// GETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	public String getNick() {
+		decode("nick");
 		return nick;
 	}
 	public String getHashPwd() {
+		decode("hashPwd");
 		return hashPwd;
 	}
 	public String getName() {
+		decode("name");
 		return name;
 	}
 	public String getFirstName() {
+		decode("firstName");
 		return firstName;
 	}
 	public String getEmail() {
+		decode("email");
 		return email;
 	}
 	public String getPhone() {
+		decode("phone");
 		return phone;
 	}
 	public long getDate(){
+		decode("date");
 		return date;
 	}
 	public UserRate getRate(){
+		decode("rate");
 		return rate;
 	}
 	public String getRateAsString(){
+		UserRate rate = getRate();
 		return Float.toString(rate.getRapidity()) + "|" + Float.toString(rate.getConformity());
 	}
 	public String getClearPwd(){
 		return clearPassword;
 	}
+	/**
+	 * Key material of the logged user, derived from the clear password on first use.
+	 * @return null if the clear password is unknown.
+	 */
+	public KeySession getSession(){
+		if(session == null && clearPassword != null && getKeys() != null)
+			session = new KeySession(getKeys(), clearPassword);
+		return session;
+	}
 	
 	/////////////////////////////////////////////////// SETTERS \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
 	public void setNick(String login) {
+		decode("nick");
 		this.nick = login == null ? "":login;
 	}
 	public void setPassWord(String passWord){
+		decode("hashPwd");
 		this.hashPwd = Hasher.SHA256(passWord);
 	}
 	public void setClearPassword(String password) {
+		setSession(null);
 		this.clearPassword = password;
 	}
+	/**
+	 * Set the key material of the logged user, the previous one is cleared.
+	 * @param session
+	 */
+	public void setSession(KeySession session) {
+		if(this.session != null && this.session != session)
+			this.session.close();
+		this.session = session;
+	}
 	public void setHashPwd(String hashPwd) {
+		decode("hashPwd");
 		this.hashPwd = hashPwd;
 	}
 	public void setName(String name) {
+		decode("name");
 		this.name = name == null ? "": name;
 	}
 	public void setFirstName(String firstName) {
+		decode("firstName");
 		this.firstName = firstName == null ? "": firstName;
 	}
 	public void setEmail(String email) {
+		decode("email");
 		this.email = email == null ? "": email;
 	}
 	public void setPhone(String phone) {
+		decode("phone");
 		this.phone = phone == null ? "":phone;
 	}
 	public void setDate(long date){
+		decode("date");
 		this.date = date == 0 ? System.currentTimeMillis() : date;
 	}
 	public void setRate(UserRate rate){
+		decode("rate");
 		this.rate = rate;
 	}
 	public void setRate(float rapidity, float conformity){
+		decode("rate");
 		this.rate = new UserRate(rapidity, conformity);
 	}
 	public void setRate(){
+		decode("rate");
 		this.rate = new UserRate();
 	}
 	public void setRateFromString(String rate){
-		String s[] = rate.split ("|");
+		decode("rate");
+		String s[] = rate.split ("\\|");
 	
 		this.rate = new UserRate(Float.parseFloat(s[0]), Float.parseFloat(s[1]));
 	}
 	public void setClearPwd(String password){
-		this.clearPassword = password;
+		setClearPassword(password);
 	}
 	
 	//////////////////////////////////////////////// ADVERTISEMENT \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
@@ -16,13 +16,18 @@
 package model.data.user;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import model.advertisement.AbstractAdvertisement;
 
 import org.jdom2.Element;
 
+import util.Hexa;
+import util.Printer;
 import util.secure.AsymKeysImpl;
 import util.secure.ElGamal;
+import util.secure.ElGamalHybrid;
 
 public class UserMessage extends AbstractAdvertisement {
 
@@ -72,24 +77,58 @@ public class UserMessage extends AbstractAdvertisement {
 	
 	/**
 	 * Encrypt the message. Must be call before the message is send.
+	 * The sender public key and the content are encrypted together (ElGamalHybrid format),
+	 * so there is one ElGamal operation per message whatever its size. The content becomes
+	 * the hexadecimal encrypted data and the sender public key is hidden (0).
 	 */
 	public void encrypt() {
 		if(encrypted) return;
-		ElGamal eg = new ElGamal(receiver);
-		message = new String(eg.encryptWithPublicKey(message.getBytes()));
-		BigInteger crypted = 
-				new BigInteger(
-						new String(eg.encryptWithPublicKey(getKeys().getPublicKey().toByteArray())));
-		getKeys().setPublicKey(crypted);
+		byte[] sender = getKeys().getPublicKey().toByteArray();
+		byte[] content = message.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer clear = ByteBuffer.allocate(2 + sender.length + content.length);
+		clear.putShort((short) sender.length);
+		clear.put(sender);
+		clear.put(content);
+		message = Hexa.bytesToHex(new ElGamalHybrid(receiver).encryptWithPublicKey(clear.array()));
+		getKeys().setPublicKey(BigInteger.ZERO);
 		encrypted = true;
 	}
 	
 	/**
-	 * Decrypt the message.
+	 * Decrypt the message (hybrid format, or the old one block format).
 	 * @param receiver the receiver keys (with private key)
 	 */
 	public void decrypt(AsymKeysImpl receiver) {
 		if(!encrypted) return;
+		byte[] data = Hexa.isHex(message) ? Hexa.hexToBytes(message) : null;
+		if(!ElGamalHybrid.isHybrid(data)) {
+			decryptOldFormat(receiver);
+			return;
+		}
+		byte[] clear = new ElGamalHybrid(receiver).decryptWithPrivateKey(data);
+		if(clear == null || clear.length < 2) {
+			Printer.printError(this, "decrypt", "can't decrypt the message");
+			return;
+		}
+		ByteBuffer b = ByteBuffer.wrap(clear);
+		byte[] sender = new byte[b.getShort() & 0xffff];
+		if(sender.length > b.remaining()) {
+			Printer.printError(this, "decrypt", "malformed message");
+			return;
+		}
+		b.get(sender);
+		byte[] content = new byte[b.remaining()];
+		b.get(content);
+		message = new String(content, StandardCharsets.UTF_8);
+		getKeys().setPublicKey(new BigInteger(sender));
+		encrypted = false;
+	}
+	
+	/**
+	 * Messages encrypted before the hybrid format : content and sender key in one ElGamal block each.
+	 * @param receiver
+	 */
+	private void decryptOldFormat(AsymKeysImpl receiver) {
 		ElGamal eg = new ElGamal(receiver);
 		
 		message = new String(eg.decryptWithPrivateKey(message.getBytes()));
@@ -16,9 +16,16 @@
 package model.network.communication;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import util.Compressor;
+import util.Printer;
+import util.VARIABLES;
+import model.advertisement.BinaryCodec;
 import model.network.Network;
 import model.network.NetworkInterface;
 import model.network.communication.service.Service;
@@ -36,16 +43,37 @@ import net.jxta.protocol.PipeAdvertisement;
  * This class can be bind to an input pipe (specified by the Network) to receive all messages specified to this client.
  * These messages have a specified format, its contain a toService element, then 
  * this class will redirect the message to the specified service, if it exists
+ * Each message tells the content encoding (codec element) and the encodings accepted by its
+ * sender (accept element) : a peer is sent binary content only once it has told it accepts it,
+ * otherwise XML is used.
+ * The accept element also lists the compressions (see Compressor) : XML content is compressed
+ * (compression and length elements) when all the receivers accept the same compression.
  * @author Julien Prudhomme
  *
  */
 
 public class Communication implements PipeMsgListener {
 	public final static String SERVICE_TAG = "toService";
+	public final static String CODEC_TAG = "codec";
+	public final static String ACCEPT_TAG = "accept";
+	public final static String FROM_TAG = "from";
+	public final static String COMPRESSION_TAG = "compression";
+	public final static String LENGTH_TAG = "length";
+	public final static String XML = "xml";
+	private final static String ACCEPTED = acceptedEncodings(); // encodings and compressions this peer can read
+	private final static HashSet<String> ACCEPTED_SET = new HashSet<String>(Arrays.asList(ACCEPTED.split(",")));
 	private NetworkInterface network = null;
 	private PeerGroup communicationGroup = null;
 	@SuppressWarnings("rawtypes")
 	private HashMap<String, Service> services = new HashMap<String, Service>();
+	// PeerID -> accepted encodings, the least recently used peers are forgotten (the from element isn't authenticated)
+	private LinkedHashMap<String, HashSet<String>> peerCodecs = new LinkedHashMap<String, HashSet<String>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, HashSet<String>> eldest) {
+			return size() > VARIABLES.PeerCodecsSize;
+		}
+	};
 	
 	/**
 	 * Instantiate the Communication class, based on a pipe
@@ -135,7 +163,9 @@ public class Communication implements PipeMsgListener {
 	@Override
 	public void pipeMsgEvent(PipeMsgEvent event) {
 		Message m = event.getMessage();
+		learnCodecs(m);
 		if(!checkMessageFormat(m)) return; // Message format incorrect, aborting...
+		if(!decompress(m)) return; // Compression unknown or corrupted content
 		if(!checkService(m)) return; // Service unknown ..
 		
 		String service = new String(m.getMessageElement(SERVICE_TAG).getBytes(true));
@@ -152,10 +182,111 @@ public class Communication implements PipeMsgListener {
 	}
 	
 	
-	private Message createMessage(String toService, String content) {
+	private static String acceptedEncodings() {
+		StringBuilder s = new StringBuilder(BinaryCodec.NAME + "," + XML);
+		for(String name: Compressor.getNames())
+			s.append(',').append(name);
+		return s.toString();
+	}
+	
+	/**
+	 * Remember the encodings accepted by the message's sender.
+	 * @param m
+	 */
+	private void learnCodecs(Message m) {
+		if(m.getMessageElement(FROM_TAG) == null || m.getMessageElement(ACCEPT_TAG) == null) return;
+		String from = new String(m.getMessageElement(FROM_TAG).getBytes(true));
+		String accept = new String(m.getMessageElement(ACCEPT_TAG).getBytes(true));
+		HashSet<String> codecs = new HashSet<String>();
+		for(String codec: accept.split(",")) {
+			if(ACCEPTED_SET.contains(codec)) // the others would never be used
+				codecs.add(codec);
+		}
+		synchronized(peerCodecs) {
+			peerCodecs.put(from, codecs);
+		}
+	}
+	
+	/**
+	 * Check if all the peers told they accept this encoding.
+	 * @param codec
+	 * @param ids the peers' PeerID, null or empty means any peer.
+	 * @return false if one of the peers is unknown or doesn't accept the encoding.
+	 */
+	public boolean accepts(String codec, PeerID ...ids) {
+		if(XML.equals(codec)) return true;
+		if(ids == null || ids.length == 0) return false;
+		synchronized(peerCodecs) {
+			for(PeerID id: ids) {
+				HashSet<String> codecs = id == null ? null : peerCodecs.get(id.toString());
+				if(codecs == null || !codecs.contains(codec))
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the first compression accepted by all the peers.
+	 * @param ids the peers' PeerID.
+	 * @return null if there is none.
+	 */
+	public Compressor getCompressor(PeerID ...ids) {
+		for(String name: Compressor.getNames()) {
+			if(accepts(name, ids))
+				return Compressor.get(name);
+		}
+		return null;
+	}
+	
+	/**
+	 * Replace the compressed content of the message by the original content.
+	 * @param m
+	 * @return false if the compression is unknown or the content corrupted.
+	 */
+	private boolean decompress(Message m) {
+		if(m.getMessageElement(COMPRESSION_TAG) == null) return true;
+		String name = new String(m.getMessageElement(COMPRESSION_TAG).getBytes(true));
+		Compressor compressor = Compressor.get(name);
+		if(compressor == null || m.getMessageElement(LENGTH_TAG) == null) {
+			Printer.printError(this, "decompress", "unknown compression " + name);
+			return false;
+		}
+		try {
+			int length = Integer.parseInt(new String(m.getMessageElement(LENGTH_TAG).getBytes(true)));
+			byte[] content = compressor.decompress(m.getMessageElement("content").getBytes(true), length);
+			m.replaceMessageElement(new ByteArrayMessageElement("content", null, content, null));
+		} catch(IllegalArgumentException e) { // NumberFormatException too
+			Printer.printError(this, "decompress", e.getMessage());
+			return false;
+		}
+		m.removeMessageElement(m.getMessageElement(COMPRESSION_TAG));
+		m.removeMessageElement(m.getMessageElement(LENGTH_TAG));
+		return true;
+	}
+	
+	/**
+	 * Get the encoding of the message content.
+	 * @param m
+	 * @return the codec name, XML if not specified.
+	 */
+	public static String getCodec(Message m) {
+		if(m.getMessageElement(CODEC_TAG) == null) return XML;
+		return new String(m.getMessageElement(CODEC_TAG).getBytes(true));
+	}
+	
+	private Message createMessage(String toService, byte[] content, String codec, Compressor compressor) {
 		Message m = new Message();
+		byte[] compressed = compressor == null ? null : compressor.compressIfUseful(content);
 		m.addMessageElement(new ByteArrayMessageElement(SERVICE_TAG, null, toService.getBytes(), null));
-		m.addMessageElement(new ByteArrayMessageElement("content", null, content.getBytes(), null));
+		m.addMessageElement(new ByteArrayMessageElement("content", null, compressed == null ? content : compressed, null));
+		if(compressed != null) {
+			m.addMessageElement(new ByteArrayMessageElement(COMPRESSION_TAG, null, compressor.getName().getBytes(), null));
+			m.addMessageElement(new ByteArrayMessageElement(LENGTH_TAG, null, Integer.toString(content.length).getBytes(), null));
+		}
+		m.addMessageElement(new ByteArrayMessageElement(CODEC_TAG, null, codec.getBytes(), null));
+		m.addMessageElement(new ByteArrayMessageElement(ACCEPT_TAG, null, ACCEPTED.getBytes(), null));
+		m.addMessageElement(new ByteArrayMessageElement(FROM_TAG, null, communicationGroup.getPeerID().toString().getBytes(), null));
 		return m;
 	}
 	
@@ -166,6 +297,18 @@ public class Communication implements PipeMsgListener {
 	 * @return true if the message is sended.
 	 */
 	public boolean sendMessage(String content, String toService, PeerID ...ids) {
+		return sendMessage(content.getBytes(), XML, toService, ids);
+	}
+	
+	/**
+	 * Sends an encoded message to one or severals peers.
+	 * @param content the message content.
+	 * @param codec the content encoding, check the peers accept it first.
+	 * XML content is compressed if the peers accept a compression.
+	 * @param ids the peers' PeerID.
+	 * @return true if the message is sended.
+	 */
+	public boolean sendMessage(byte[] content, String codec, String toService, PeerID ...ids) {
 		HashSet<PeerID> to = new HashSet<PeerID>();
 		OutputPipe pipe = null;
 		for(PeerID id: ids) {
@@ -178,7 +321,8 @@ public class Communication implements PipeMsgListener {
 			return false;
 		}
 		try {
-			pipe.send(createMessage(toService, content));
+			Compressor compressor = XML.equals(codec) ? getCompressor(ids) : null; // binary fields are already compressed
+			pipe.send(createMessage(toService, content, codec, compressor));
 		} catch (IOException e) {
 			e.printStackTrace();
 			pipe.close();
@@ -17,8 +17,10 @@ package model.network.communication.service.InstanceSender;
 
 import org.jdom2.Element;
 
+import util.Printer;
 import util.StringToElement;
 import model.advertisement.AbstractAdvertisement;
+import model.advertisement.BinaryCodec;
 import model.network.communication.Communication;
 import model.network.communication.service.Service;
 import net.jxta.endpoint.Message;
@@ -31,13 +33,29 @@ public abstract class ClassSenderService<T extends AbstractAdvertisement> extend
 	@Override
 	public AbstractAdvertisement handleMessage(Message m) {
 		if(m.getMessageElement("content") == null) return null;
-		Element xml = StringToElement.getElementFromString(new String(m.getMessageElement("content").getBytes(true)), "adv");
+		byte[] content = m.getMessageElement("content").getBytes(true);
+		if(BinaryCodec.NAME.equals(Communication.getCodec(m))) {
+			try {
+				return BinaryCodec.decode(content, newInstance(new Element("adv")));
+			} catch(IllegalArgumentException e) {
+				Printer.printError(this, "handleMessage", e.getMessage());
+				return null;
+			}
+		}
+		Element xml = StringToElement.getElementFromString(new String(content), "adv");
 		return newInstance(xml);
 	}
 
+	/**
+	 * Send the advertisement in binary if all the peers accept it, else in XML.
+	 * Long fields are compressed if the peers accept a compression.
+	 */
 	@Override
 	public void sendMessage(AbstractAdvertisement data, PeerID... ids) {
-		sender.sendMessage(data.toString(), this.getServiceName(), ids);
+		if(sender.accepts(BinaryCodec.NAME, ids))
+			sender.sendMessage(data.toBinary(sender.getCompressor(ids)), BinaryCodec.NAME, this.getServiceName(), ids);
+		else
+			sender.sendMessage(data.toString(), this.getServiceName(), ids);
 	}
 
 	
@@ -0,0 +1,264 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.network.communication.service.blob;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import model.data.blob.BlobStore;
+import model.network.communication.Communication;
+import model.network.communication.service.Service;
+import model.network.search.RandomPeerFinder;
+import net.jxta.endpoint.Message;
+import net.jxta.id.IDFactory;
+import net.jxta.peer.PeerID;
+import util.Hexa;
+import util.Printer;
+import util.VARIABLES;
+
+/**
+ * Transfer of the blobs (see BlobStore) between peers, by chunks of CHUNK bytes.
+ * A peer that misses a blob asks the first chunk to some peers, then asks each next chunk
+ * to the first peer that answered. Once complete, the blob is checked against its digest
+ * and added to the store, then the listeners receive its digest.
+ * Request : "GET digest offset". Chunk : 'B' 'L' 'O' 'B' | digest (32 bytes) | total size (int) | offset (int) | data
+ * @author Julien Prudhomme
+ *
+ */
+public class BlobService extends Service<String> implements BlobStore.Fetcher {
+	public static final String CODEC = "blob";
+	public static final int CHUNK = 32 * 1024;
+	private static final long TIMEOUT = 30000L;	// a transfer without news is abandoned
+	private static final byte[] MAGIC = {'B', 'L', 'O', 'B'};
+	private static final int HEADER = MAGIC.length + 32 + 4 + 4;
+	
+	private BlobStore store;
+	private HashMap<String, Transfer> transfers = new HashMap<String, Transfer>(); // digest -> transfer in progress
+	private ExecutorService finder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "BlobService");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	/**
+	 * A blob being received.
+	 */
+	private static class Transfer {
+		private PeerID source = null;	// the first peer that answered
+		private byte[] data = null;
+		private int received = 0;
+		private long lastNews = System.currentTimeMillis();
+		
+		private boolean isAlive() {
+			return System.currentTimeMillis() - lastNews < TIMEOUT;
+		}
+	}
+	
+	public BlobService(BlobStore store) {
+		this.store = store;
+	}
+	
+	@Override
+	public String getServiceName() {
+		return this.getClass().getSimpleName();
+	}
+	
+	///////////////////////////////////////////////// SENDING \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	/**
+	 * Ask a blob to these peers.
+	 * @param digest
+	 * @param ids the peers that may have the blob.
+	 */
+	@Override
+	public void sendMessage(String digest, PeerID... ids) {
+		if(store.contains(digest) || ids == null || ids.length == 0)
+			return;
+		synchronized(transfers) {
+			Transfer t = transfers.get(digest);
+			if(t != null && t.isAlive())
+				return; // already asked
+			purge();
+			transfers.put(digest, new Transfer());
+		}
+		request(digest, 0, ids);
+	}
+	
+	/**
+	 * Ask a blob to random peers, without waiting.
+	 */
+	@Override
+	public void fetch(final String digest) {
+		if(store.contains(digest) || isTransferring(digest))
+			return;
+		finder.submit(new Runnable() {
+			@Override
+			public void run() {
+				RandomPeerFinder peers = new RandomPeerFinder(getNetwork());
+				peers.findPeers(VARIABLES.MaxTimeSearch, VARIABLES.ReplicationsAccount);
+				ArrayList<PeerID> ids = peers.getResults();
+				sendMessage(digest, ids.toArray(new PeerID[ids.size()]));
+			}
+		});
+	}
+	
+	/**
+	 * Forget the abandoned transfers, and the data they received. With the lock on transfers.
+	 */
+	private void purge() {
+		Iterator<Transfer> it = transfers.values().iterator();
+		while(it.hasNext()) {
+			if(!it.next().isAlive())
+				it.remove();
+		}
+	}
+	
+	private boolean isTransferring(String digest) {
+		synchronized(transfers) {
+			Transfer t = transfers.get(digest);
+			return t != null && t.isAlive();
+		}
+	}
+	
+	private void request(String digest, int offset, PeerID... ids) {
+		byte[] content = ("GET " + digest + " " + offset).getBytes(StandardCharsets.US_ASCII);
+		sender.sendMessage(content, CODEC, getServiceName(), ids);
+	}
+	
+	///////////////////////////////////////////////// RECEIVING \\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\\
+	@Override
+	public String handleMessage(Message m) {
+		if(m.getMessageElement("content") == null) return null;
+		byte[] content = m.getMessageElement("content").getBytes(true);
+		PeerID from = getSender(m);
+		if(from == null) return null;
+		if(isChunk(content))
+			return handleChunk(ByteBuffer.wrap(content), from);
+		handleRequest(new String(content, StandardCharsets.US_ASCII), from);
+		return null;
+	}
+	
+	/**
+	 * Send the asked chunk, if the blob is in the store.
+	 */
+	private void handleRequest(String request, PeerID from) {
+		String[] parts = request.split(" ");
+		if(parts.length != 3 || !parts[0].equals("GET") || !BlobStore.isDigest(parts[1])) {
+			Printer.printError(this, "handleRequest", "bad request");
+			return;
+		}
+		int offset;
+		try {
+			offset = Integer.parseInt(parts[2]);
+		} catch(NumberFormatException e) {
+			Printer.printError(this, "handleRequest", "bad offset");
+			return;
+		}
+		String digest = parts[1];
+		long total = store.getSize(digest);
+		byte[] data = store.read(digest, offset, CHUNK);
+		if(data == null)
+			return; // another peer may have it
+		ByteBuffer chunk = ByteBuffer.allocate(HEADER + data.length);
+		chunk.put(MAGIC).put(Hexa.hexToBytes(digest)).putInt((int) total).putInt(offset).put(data);
+		sender.sendMessage(chunk.array(), CODEC, getServiceName(), from);
+	}
+	
+	/**
+	 * Add a received chunk to its transfer and ask the next one.
+	 * @return the digest of the blob once complete, null otherwise.
+	 */
+	private String handleChunk(ByteBuffer chunk, PeerID from) {
+		chunk.position(MAGIC.length);
+		byte[] d = new byte[32];
+		chunk.get(d);
+		String digest = Hexa.bytesToHex(d);
+		int total = chunk.getInt();
+		int offset = chunk.getInt();
+		byte[] data;
+		int next;
+		PeerID source;
+		synchronized(transfers) {
+			Transfer t = transfers.get(digest);
+			if(t == null)
+				return null; // not asked, or already received
+			if(t.source == null && t.data == null) {
+				if(total < 0 || total > VARIABLES.BlobMaxSize) {
+					Printer.printError(this, "handleChunk", "blob too big");
+					transfers.remove(digest);
+					return null;
+				}
+				t.source = from;
+				t.data = new byte[total];
+			}
+			if(!from.equals(t.source) || offset != t.received || total != t.data.length
+					|| chunk.remaining() > total - offset || (chunk.remaining() == 0 && offset < total))
+				return null; // duplicate answer or unexpected chunk
+			int length = chunk.remaining();
+			chunk.get(t.data, offset, length);
+			t.received = offset + length;
+			t.lastNews = System.currentTimeMillis();
+			next = t.received;
+			source = t.source;
+			data = t.data;
+			if(next == total)
+				transfers.remove(digest);
+		}
+		if(next < total) {
+			request(digest, next, source);
+			return null;
+		}
+		try {
+			if(store.put(data, digest))
+				return digest;
+			Printer.printError(this, "handleChunk", "blob doesn't match its digest");
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+	
+	private static boolean isChunk(byte[] content) {
+		if(content.length < HEADER)
+			return false;
+		for(int i = 0; i < MAGIC.length; i++) {
+			if(content[i] != MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+	
+	private static PeerID getSender(Message m) {
+		if(m.getMessageElement(Communication.FROM_TAG) == null)
+			return null;
+		try {
+			return (PeerID) IDFactory.fromURI(new URI(new String(m.getMessageElement(Communication.FROM_TAG).getBytes(true))));
+		} catch (URISyntaxException | ClassCastException e) {
+			return null;
+		}
+	}
+}
@@ -17,6 +17,7 @@ package model.network.communication.service.sigma.sigmaProtocol;
 import java.math.BigInteger;
 
 import util.secure.AsymKeysImpl;
+import util.secure.FixedBase;
 
 /**
  * The CCD response
@@ -41,7 +42,7 @@ public class ResponsesCCD extends Responses {
 	 * Verify if the CCD response is good or not 
 	 */
 	public Boolean Verifies( AsymKeysImpl tKeys, ResEncrypt res) {
-		if (!tKeys.getG().modPow(getResponse(), tKeys.getP()).equals(((tKeys.getPublicKey().modPow(getChallenge(), tKeys.getP())).multiply(getMasks().getA())).mod(tKeys.getP())))
+		if (!FixedBase.modPow(tKeys.getG(), getResponse(), tKeys.getP()).equals(((tKeys.getPublicKey().modPow(getChallenge(), tKeys.getP())).multiply(getMasks().getA())).mod(tKeys.getP())))
 		{
 			return false;
 		}
@@ -17,6 +17,7 @@ package model.network.communication.service.sigma.sigmaProtocol;
 import java.math.BigInteger;
 
 import util.secure.AsymKeysImpl;
+import util.secure.FixedBase;
 
 /**
  * The CCE response
@@ -46,7 +47,7 @@ public class ResponsesCCE extends Responses {
 	 */
 	public Boolean Verifies(AsymKeysImpl tKeys, ResEncrypt res) {
 		
-		BigInteger gPowr = tKeys.getG().modPow(getResponse(),tKeys.getP());
+		BigInteger gPowr = FixedBase.modPow(tKeys.getG(), getResponse(), tKeys.getP());
 		BigInteger uPowc = res.getU().modPow(getChallenge(), tKeys.getP());
 		BigInteger uPowcMulta = uPowc.multiply(getMasks().getA()).mod(tKeys.getP());
 		
@@ -17,6 +17,7 @@ package model.network.communication.service.sigma.sigmaProtocol;
 import java.math.BigInteger;
 
 import util.secure.AsymKeysImpl;
+import util.secure.FixedBase;
 
 /**
  * The Schnorr response
@@ -46,7 +47,7 @@ public class ResponsesSchnorr extends Responses{
 	 * Verify if the Schnorr response is good or not 
 	 */
 	public Boolean Verifies(AsymKeysImpl tKeys, ResEncrypt res) {
-		return (tKeys.getG().modPow(getResponse(), tKeys.getP()).equals(((tKeys.getPublicKey().modPow(getChallenge(), tKeys.getP())).multiply(getMasks().getA())).mod(tKeys.getP())));
+		return (FixedBase.modPow(tKeys.getG(), getResponse(), tKeys.getP()).equals(((tKeys.getPublicKey().modPow(getChallenge(), tKeys.getP())).multiply(getMasks().getA())).mod(tKeys.getP())));
 	}
 
 	@Override
@@ -62,7 +62,7 @@ public class Sender extends Fabric{
 			
 		BigInteger s, a;
 		s = Utils.rand(1024, keys.getP());
-		a = keys.getG().modPow(s,keys.getP());
+		a = keys.getG().modPow(s, keys.getP());
 		
 		Masks mask = new Masks(a,null);
 		eph.put(mask, s);
@@ -114,7 +114,7 @@ public class Sender extends Fabric{
 		BigInteger s, a, aBis;
 		s = Utils.rand(1024, tKeys.getP());
 		
-		a = tKeys.getG().modPow(s,tKeys.getP());		
+		a = tKeys.getG().modPow(s, tKeys.getP());		
 		aBis = tKeys.getPublicKey().modPow(s, tKeys.getP());
 		
 		Masks masks = new Masks(a,aBis);
@@ -49,11 +49,9 @@ public class UpdateMessage extends AbstractAdvertisement{
 	public UpdateMessage(AbstractAdvertisement updatedObject, AsymKeysImpl emmitterKeys) {
 		
 		HashMap<String, String> updated = updatedObject.getUpdatableKeys();
-		HashMap<String, String> old;
-		if(updatedObject.getOld() == null) {
+		HashMap<String, String> old = updatedObject.getOldUpdatableKeys();
+		if(old == null) {
 			old = updated;
-		} else {
-			old = updatedObject.getOld().getUpdatableKeys();
 		}
 		
 		this.newSignature = updatedObject.sign(emmitterKeys);
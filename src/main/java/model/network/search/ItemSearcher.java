@@ -49,13 +49,9 @@ public class ItemSearcher {
 		
 		Search<Item> itemSearch = new Search<Item>(Application.getInstance().getNetwork(), Item.class.getSimpleName(), "keyId", true);
 		itemSearch.search(itemKey, VARIABLES.MaxTimeSearch, VARIABLES.ReplicationsAccount);
-		itemList = itemSearch.getResults();
+		itemList = VerificationExecutor.getInstance().verifyAll(itemSearch.getResults(), null); // Removes items that are fallacious
 		long maxDateItem = 0;
 		for(Item i : itemList){
-			if(!i.checkSignature(i.getKeys())){
-				itemList.remove(i); // Removes items that are fallacious
-				continue;
-			}
 			if(maxDateItem >= i.getLastUpdated()){
 				itemList.remove(i); // Removes items that are less up to date (or as much)
 				continue;
@@ -39,6 +39,7 @@ import net.jxta.peer.PeerID;
 public class Search<T extends AbstractAdvertisement> implements DiscoveryListener {
 
 	private ArrayList<SearchListener<T>> listeners = new ArrayList<SearchListener<T>>();
+	private ArrayList<SearchListener<T>> verifiedListeners = new ArrayList<SearchListener<T>>();
 	private DiscoveryService discovery;
 	private String attribute;
 	private boolean exact;
@@ -118,6 +119,24 @@ public class Search<T extends AbstractAdvertisement> implements DiscoveryListene
 		}
 	}
 	
+	/**
+	 * Add a listener that only want the advertisements with a correct signature (according to
+	 * their own keys). Signatures are checked in parallel by the VerificationExecutor and
+	 * the advertisements are given in order of verification, one at a time.
+	 * @param l
+	 */
+	public void addVerifiedListener(SearchListener<T> l) {
+		verifiedListeners.add(l);
+	}
+	
+	private void notifyVerifiedListeners(T event) {
+		synchronized(verifiedListeners) {
+			for(SearchListener<T> l: verifiedListeners) {
+				l.searchEvent(event);
+			}
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	public ArrayList<T> getResults() {
 		return (ArrayList<T>) results.clone();
@@ -133,13 +152,22 @@ public class Search<T extends AbstractAdvertisement> implements DiscoveryListene
 	public void discoveryEvent(DiscoveryEvent event) {
 		String pid = "urn:jxta:" + event.getSource().toString().substring(7);
 		Enumeration<Advertisement> advs = event.getResponse().getAdvertisements();
+		ArrayList<T> received = new ArrayList<T>();
 		while(advs.hasMoreElements()) {
 			T adv = (T) advs.nextElement();
 			results.add(adv);
 			resultsWithPeerID.add(new Result(pid, adv));
+			received.add(adv);
 			notifyListeners(adv);
 		}
-		
+		if(!verifiedListeners.isEmpty()) {
+			VerificationExecutor.getInstance().submit(received, null, new SearchListener<T>() {
+				@Override
+				public void searchEvent(T event) {
+					notifyVerifiedListeners(event);
+				}
+			});
+		}
 	}
 
 }
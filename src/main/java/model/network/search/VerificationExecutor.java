@@ -0,0 +1,167 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.network.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+
+import model.advertisement.AbstractAdvertisement;
+import util.secure.AsymKeysImpl;
+
+/**
+ * Verify advertisements signatures in parallel, on a bounded work-stealing pool
+ * (one thread per core). Advertisements are verified by small batches
+ * (AbstractAdvertisement.verifyAll), each batch being a task of the pool.
+ * The number of advertisements waiting for verification is bounded : submit blocks
+ * the caller (usually the JXTA discovery thread) when the pool is overloaded.
+ * @author Julien Prudhomme
+ *
+ */
+public class VerificationExecutor {
+
+	private static final int CHUNK = 8;				// advertisements per task
+	private static final int MAX_PENDING = 4096;	// advertisements waiting for verification
+
+	private static VerificationExecutor instance = null;
+
+	private ForkJoinPool pool;
+	private Semaphore pending;
+	private int maxPending;
+
+	/**
+	 * @param parallelism - number of threads
+	 * @param maxPending - maximum number of advertisements submitted and not verified yet
+	 */
+	public VerificationExecutor(int parallelism, int maxPending) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.maxPending = maxPending;
+		this.pending = new Semaphore(maxPending);
+	}
+
+	/**
+	 * Get the executor shared by the searches and the resiliance, one thread per core.
+	 * @return
+	 */
+	public static synchronized VerificationExecutor getInstance() {
+		if(instance == null)
+			instance = new VerificationExecutor(Runtime.getRuntime().availableProcessors(), MAX_PENDING);
+		return instance;
+	}
+
+	/**
+	 * Verify the advertisements in background. The well signed ones are given to the listener
+	 * as soon as their batch is verified (order of completion), from the pool threads.
+	 * Blocks while too many advertisements are waiting for verification.
+	 * @param advertisements
+	 * @param keys - the public keys to check, null to use each advertisement keys.
+	 * @param listener - receive the advertisements with a correct signature.
+	 */
+	public <T extends AbstractAdvertisement> void submit(Collection<T> advertisements, final AsymKeysImpl keys, final SearchListener<T> listener) {
+		for(final List<T> chunk : split(advertisements)) {
+			final int permits = Math.min(chunk.size(), maxPending);
+			pending.acquireUninterruptibly(permits);
+			try {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for(T adv : verifyChunk(chunk, keys)) {
+								listener.searchEvent(adv);
+							}
+						} catch(RuntimeException e) {
+							e.printStackTrace();
+						} finally {
+							pending.release(permits);
+						}
+					}
+				});
+			} catch(RuntimeException e) {
+				pending.release(permits);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Verify the advertisements in parallel and wait for the result.
+	 * @param advertisements
+	 * @param keys - the public keys to check, null to use each advertisement keys.
+	 * @return the advertisements with a correct signature, in the same order.
+	 */
+	public <T extends AbstractAdvertisement> ArrayList<T> verifyAll(Collection<T> advertisements, final AsymKeysImpl keys) {
+		if(advertisements.size() <= CHUNK)
+			return verifyChunk(advertisements, keys);
+		ArrayList<ForkJoinTask<ArrayList<T>>> tasks = new ArrayList<ForkJoinTask<ArrayList<T>>>();
+		for(final List<T> chunk : split(advertisements)) {
+			tasks.add(pool.submit(new Callable<ArrayList<T>>() {
+				@Override
+				public ArrayList<T> call() {
+					return verifyChunk(chunk, keys);
+				}
+			}));
+		}
+		ArrayList<T> verified = new ArrayList<T>();
+		for(ForkJoinTask<ArrayList<T>> task : tasks) {
+			verified.addAll(task.join());
+		}
+		return verified;
+	}
+
+	/**
+	 * Stop the threads, the advertisements already submitted are still verified.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static <T extends AbstractAdvertisement> ArrayList<T> verifyChunk(Collection<T> chunk, AsymKeysImpl keys) {
+		try {
+			return AbstractAdvertisement.verifyAll(chunk, keys);
+		} catch(RuntimeException e) {
+			e.printStackTrace(); // a malformed advertisement, the whole chunk is checked one by one.
+			ArrayList<T> verified = new ArrayList<T>();
+			for(T adv : chunk) {
+				try {
+					if(adv.checkSignature(keys == null ? adv.getKeys() : keys))
+						verified.add(adv);
+				} catch(RuntimeException e2) {
+					e2.printStackTrace();
+				}
+			}
+			return verified;
+		}
+	}
+
+	private static <T> ArrayList<List<T>> split(Collection<T> advertisements) {
+		ArrayList<List<T>> chunks = new ArrayList<List<T>>();
+		ArrayList<T> chunk = new ArrayList<T>();
+		for(T adv : advertisements) {
+			chunk.add(adv);
+			if(chunk.size() == CHUNK) {
+				chunks.add(chunk);
+				chunk = new ArrayList<T>();
+			}
+		}
+		if(!chunk.isEmpty())
+			chunks.add(chunk);
+		return chunks;
+	}
+}
@@ -44,19 +44,12 @@ public abstract class BaseExtendedListener<T extends AbstractAdvertisement> impl
 	 * @return true if the result was added, otherwise false (result already exist and more recent, or filtered)
 	 */
 	public boolean addResult(T result) {
-		if(!filter(result)) return false;
 		T adv = results.get(result.getId());
-		if(adv == null) {
-			results.put(result.getId(), result);
-			return true;
-		}
-		else {
-			if(result.getLastUpdated() > adv.getLastUpdated()) {
-				results.put(result.getId(), result);
-				return true;
-			}
-			else return false;
-		}
+		//duplicates are rejected with keyId and lastUpdated only, before decoding the filtered fields.
+		if(adv != null && result.getLastUpdated() <= adv.getLastUpdated()) return false;
+		if(!filter(result)) return false;
+		results.put(result.getId(), result);
+		return true;
 		
 		
 	}
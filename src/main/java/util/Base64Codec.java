@@ -0,0 +1,315 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Table-driven Base64 (RFC 4648) encoder and decoder.
+ * Encoding can be wrapped in lines of MIME_LINE characters separated by CRLF, as
+ * net.jxta.impl.util.Base64 does; decoding ignores white spaces.
+ * The Encoder streams its output, so a file can be encoded without being read in memory.
+ * @author Julien Prudhomme
+ *
+ */
+public class Base64Codec {
+	public static final int MIME_LINE = 76;		// line length of MIME (and of the JXTA encoder)
+	
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final byte[] VALUES = new byte[128];	// value of a character, -1 if invalid, -2 if white space
+	private static final int WHITE = -2;
+	
+	static {
+		for(int i = 0; i < VALUES.length; i++)
+			VALUES[i] = -1;
+		for(int i = 0; i < ALPHABET.length; i++)
+			VALUES[ALPHABET[i]] = (byte) i;
+		VALUES[' '] = WHITE;
+		VALUES['\t'] = WHITE;
+		VALUES['\r'] = WHITE;
+		VALUES['\n'] = WHITE;
+	}
+	
+	///// ENCODING \\\\\
+	
+	/**
+	 * Encode data on a single line
+	 * @param data
+	 * @return
+	 */
+	public static String encode(byte[] data) {
+		return encode(data, 0, data.length, 0);
+	}
+	
+	/**
+	 * Encode the remaining bytes of buffer on a single line.
+	 * The position of the buffer isn't modified.
+	 * @param buffer
+	 * @return
+	 */
+	public static String encode(ByteBuffer buffer) {
+		if(buffer.hasArray())
+			return encode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), 0);
+		byte[] data = new byte[buffer.remaining()];
+		buffer.duplicate().get(data);
+		return encode(data);
+	}
+	
+	/**
+	 * Encode data
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @param lineLength - 0 for a single line, else a multiple of 4 (see MIME_LINE)
+	 * @return
+	 */
+	public static String encode(byte[] data, int offset, int length, int lineLength) {
+		char[] out = new char[encodedLength(length, lineLength)];
+		int p = 0, column = 0;
+		int end = offset + length - length % 3;
+		for(int i = offset; i < end; i += 3) {
+			if(lineLength > 0 && column == lineLength) {
+				out[p++] = '\r';
+				out[p++] = '\n';
+				column = 0;
+			}
+			int v = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+			out[p++] = ALPHABET[v >>> 18];
+			out[p++] = ALPHABET[(v >>> 12) & 0x3F];
+			out[p++] = ALPHABET[(v >>> 6) & 0x3F];
+			out[p++] = ALPHABET[v & 0x3F];
+			column += 4;
+		}
+		if(end < offset + length) {
+			if(lineLength > 0 && column == lineLength) {
+				out[p++] = '\r';
+				out[p++] = '\n';
+			}
+			p = encodeTail(data, end, offset + length - end, out, p);
+		}
+		return new String(out, 0, p);
+	}
+	
+	/**
+	 * Number of characters written by encode
+	 * @param length - number of bytes
+	 * @param lineLength - 0 for a single line
+	 * @return
+	 */
+	public static int encodedLength(int length, int lineLength) {
+		int chars = (length + 2) / 3 * 4;
+		if(lineLength > 0 && chars > 0)
+			chars += (chars - 1) / lineLength * 2;
+		return chars;
+	}
+	
+	/**
+	 * Encode the last 1 or 2 bytes, with padding.
+	 * @return the new position in out
+	 */
+	private static int encodeTail(byte[] data, int i, int remaining, char[] out, int p) {
+		int v = (data[i] & 0xFF) << 16;
+		if(remaining == 2)
+			v |= (data[i + 1] & 0xFF) << 8;
+		out[p++] = ALPHABET[v >>> 18];
+		out[p++] = ALPHABET[(v >>> 12) & 0x3F];
+		out[p++] = remaining == 2 ? ALPHABET[(v >>> 6) & 0x3F] : '=';
+		out[p++] = '=';
+		return p;
+	}
+	
+	/**
+	 * Encode everything that can be read from in. in isn't closed.
+	 * @param in
+	 * @param out
+	 * @param lineLength - 0 for a single line, else a multiple of 4 (see MIME_LINE)
+	 * @throws IOException
+	 */
+	public static void encode(InputStream in, Writer out, int lineLength) throws IOException {
+		Encoder encoder = new Encoder(out, lineLength);
+		byte[] buffer = new byte[3 * 1024];
+		int read;
+		while((read = in.read(buffer)) != -1)
+			encoder.write(buffer, 0, read);
+		encoder.finish();
+	}
+	
+	/**
+	 * Stream encoding bytes to a Writer. finish (or close) writes the padding.
+	 */
+	public static class Encoder extends OutputStream {
+		private Writer out;
+		private int lineLength;
+		private int column = 0;
+		private byte[] pending = new byte[3];	// bytes waiting for a complete group
+		private int pendingLength = 0;
+		private char[] chars = new char[1024];
+		private int charsLength = 0;
+		private boolean finished = false;
+		
+		/**
+		 * @param out
+		 * @param lineLength - 0 for a single line, else a multiple of 4 (see MIME_LINE)
+		 */
+		public Encoder(Writer out, int lineLength) {
+			if(lineLength < 0 || lineLength % 4 != 0)
+				throw new IllegalArgumentException("line length must be a multiple of 4");
+			this.out = out;
+			this.lineLength = lineLength;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(finished)
+				throw new IOException("Encoder finished");
+			int end = off + len;
+			while(pendingLength > 0 && pendingLength < 3 && off < end)
+				pending[pendingLength++] = b[off++];
+			if(pendingLength == 3) {
+				group(pending, 0);
+				pendingLength = 0;
+			}
+			for(; off + 3 <= end; off += 3)
+				group(b, off);
+			while(off < end)
+				pending[pendingLength++] = b[off++];
+		}
+		
+		/**
+		 * Write the last group and flush, without closing the writer.
+		 * @throws IOException
+		 */
+		public void finish() throws IOException {
+			if(finished)
+				return;
+			finished = true;
+			if(pendingLength > 0) {
+				newLineIfNeeded();
+				if(charsLength + 4 > chars.length)
+					flushChars();
+				charsLength = encodeTail(pending, 0, pendingLength, chars, charsLength);
+			}
+			flushChars();
+			out.flush();
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			flushChars();
+			out.flush();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			finish();
+			out.close();
+		}
+		
+		private void group(byte[] b, int i) throws IOException {
+			newLineIfNeeded();
+			if(charsLength + 4 > chars.length)
+				flushChars();
+			int v = (b[i] & 0xFF) << 16 | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF);
+			chars[charsLength++] = ALPHABET[v >>> 18];
+			chars[charsLength++] = ALPHABET[(v >>> 12) & 0x3F];
+			chars[charsLength++] = ALPHABET[(v >>> 6) & 0x3F];
+			chars[charsLength++] = ALPHABET[v & 0x3F];
+			column += 4;
+		}
+		
+		private void newLineIfNeeded() throws IOException {
+			if(lineLength == 0 || column < lineLength)
+				return;
+			if(charsLength + 2 > chars.length)
+				flushChars();
+			chars[charsLength++] = '\r';
+			chars[charsLength++] = '\n';
+			column = 0;
+		}
+		
+		private void flushChars() throws IOException {
+			out.write(chars, 0, charsLength);
+			charsLength = 0;
+		}
+	}
+	
+	///// DECODING \\\\\
+	
+	/**
+	 * Decode a Base64 text. White spaces (line breaks of MIME) are ignored.
+	 * @param encoded
+	 * @return
+	 * @throws IllegalArgumentException if encoded isn't valid Base64
+	 */
+	public static byte[] decode(CharSequence encoded) {
+		int length = encoded.length();
+		int significant = 0, padding = 0;
+		for(int i = 0; i < length; i++) {
+			char c = encoded.charAt(i);
+			if(c == '=')
+				padding++;
+			else if(value(c, i) != WHITE) {
+				if(padding > 0)
+					throw new IllegalArgumentException("Data after padding at index " + i);
+				significant++;
+			}
+		}
+		if(padding > 2 || (significant + padding) % 4 != 0 && padding > 0 || significant % 4 == 1)
+			throw new IllegalArgumentException("Bad Base64 length");
+		
+		byte[] out = new byte[significant / 4 * 3 + Math.max(0, significant % 4 - 1)];
+		int p = 0, v = 0, n = 0;
+		for(int i = 0; i < length && p < out.length; i++) {
+			char c = encoded.charAt(i);
+			if(c == '=')
+				break;
+			int d = value(c, i);
+			if(d == WHITE)
+				continue;
+			v = v << 6 | d;
+			if(++n == 4) {
+				out[p++] = (byte) (v >> 16);
+				out[p++] = (byte) (v >> 8);
+				out[p++] = (byte) v;
+				v = 0;
+				n = 0;
+			}
+		}
+		if(n == 2)
+			out[p++] = (byte) (v >> 4);
+		else if(n == 3) {
+			out[p++] = (byte) (v >> 10);
+			out[p++] = (byte) (v >> 2);
+		}
+		return out;
+	}
+	
+	private static int value(char c, int index) {
+		int d = c < 128 ? VALUES[c] : -1;
+		if(d == -1)
+			throw new IllegalArgumentException("Not a Base64 character: '" + c + "' at index " + index);
+		return d;
+	}
+}
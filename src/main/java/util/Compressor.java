@@ -0,0 +1,152 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import java.util.LinkedHashMap;
+
+/**
+ * A compression algorithm for the codecs (fields of BinaryCodec, messages of Communication),
+ * registered by name. Peers tell the names they accept, so a sender only compresses for
+ * receivers that can decompress.
+ * compressIfUseful skips small data and data that is already compressed by its format
+ * (images, archives), including when it is given in Base64.
+ * @author Julien Prudhomme
+ *
+ */
+public abstract class Compressor {
+	public static final int THRESHOLD = 256;					// smaller data is never compressed
+	public static final int MAX_LENGTH = 64 * 1024 * 1024;	// decompressed data can't be bigger
+	
+	private static final LinkedHashMap<String, Compressor> compressors = new LinkedHashMap<String, Compressor>();
+	
+	static {
+		register(new DeflateCompressor());
+	}
+	
+	/**
+	 * Name used to negotiate the compression with the other peers.
+	 * @return
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Compress the data
+	 * @param data
+	 * @return
+	 */
+	public abstract byte[] compress(byte[] data);
+	
+	/**
+	 * Decompress data given by compress.
+	 * @param data
+	 * @param length - length of the original data
+	 * @return
+	 * @throws IllegalArgumentException if data is corrupted or doesn't have this length
+	 */
+	public abstract byte[] decompress(byte[] data, int length);
+	
+	/**
+	 * Compress the data, only if it's worth it.
+	 * @param data
+	 * @return the compressed data, null if data is small, already compressed or doesn't shrink.
+	 */
+	public byte[] compressIfUseful(byte[] data) {
+		if(data.length < THRESHOLD || isCompressedFormat(data, 0))
+			return null;
+		byte[] compressed = compress(data);
+		return compressed.length < data.length - data.length / 16 ? compressed : null;
+	}
+	
+	///// REGISTRY \\\\\
+	
+	/**
+	 * Add a compression algorithm. It replaces the one with the same name.
+	 * @param compressor
+	 */
+	public static void register(Compressor compressor) {
+		synchronized(compressors) {
+			compressors.put(compressor.getName(), compressor);
+		}
+	}
+	
+	/**
+	 * @param name
+	 * @return the compressor with this name, null if unknown.
+	 */
+	public static Compressor get(String name) {
+		synchronized(compressors) {
+			return compressors.get(name);
+		}
+	}
+	
+	/**
+	 * @return the names of the registered compressors, in order of preference.
+	 */
+	public static String[] getNames() {
+		synchronized(compressors) {
+			return compressors.keySet().toArray(new String[compressors.size()]);
+		}
+	}
+	
+	///// CONTENT HINTS \\\\\
+	
+	/**
+	 * Check if the data starts like a compressed format : PNG, JPEG, GIF, WebP, zip, gzip.
+	 * @param data
+	 * @param offset
+	 * @return
+	 */
+	public static boolean isCompressedFormat(byte[] data, int offset) {
+		int n = data.length - offset;
+		if(n >= 4 && (data[offset] & 0xFF) == 0x89 && data[offset + 1] == 'P' && data[offset + 2] == 'N' && data[offset + 3] == 'G')
+			return true;
+		if(n >= 3 && (data[offset] & 0xFF) == 0xFF && (data[offset + 1] & 0xFF) == 0xD8 && (data[offset + 2] & 0xFF) == 0xFF)
+			return true;
+		if(n >= 4 && data[offset] == 'G' && data[offset + 1] == 'I' && data[offset + 2] == 'F' && data[offset + 3] == '8')
+			return true;
+		if(n >= 12 && data[offset] == 'R' && data[offset + 1] == 'I' && data[offset + 2] == 'F' && data[offset + 3] == 'F'
+				&& data[offset + 8] == 'W' && data[offset + 9] == 'E' && data[offset + 10] == 'B' && data[offset + 11] == 'P')
+			return true;
+		if(n >= 4 && data[offset] == 'P' && data[offset + 1] == 'K' && data[offset + 2] == 3 && data[offset + 3] == 4)
+			return true;
+		if(n >= 2 && (data[offset] & 0xFF) == 0x1F && (data[offset + 1] & 0xFF) == 0x8B)
+			return true;
+		return false;
+	}
+	
+	/**
+	 * Check if the text is a compressed format in Base64 (see ImageBase64), optionally
+	 * as a data URI (data:image/png;base64,...).
+	 * @param value
+	 * @return
+	 */
+	public static boolean isCompressedFormat(String value) {
+		int start = 0;
+		if(value.startsWith("data:")) {
+			start = value.indexOf(";base64,");
+			if(start < 0)
+				return false;
+			start += ";base64,".length();
+		}
+		if(value.length() - start < 16)
+			return false;
+		try {
+			return isCompressedFormat(Base64Codec.decode(value.subSequence(start, start + 16)), 0);
+		} catch(IllegalArgumentException e) {
+			return false; // not Base64
+		}
+	}
+}
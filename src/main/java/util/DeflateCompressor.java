@@ -0,0 +1,81 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate (zlib format) compression.
+ * @author Julien Prudhomme
+ *
+ */
+public class DeflateCompressor extends Compressor {
+	public static final String NAME = "deflate";
+	
+	@Override
+	public String getName() {
+		return NAME;
+	}
+	
+	@Override
+	public byte[] compress(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+			byte[] buffer = new byte[4096];
+			while(!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	@Override
+	public byte[] decompress(byte[] data, int length) {
+		if(length < 0 || length > MAX_LENGTH)
+			throw new IllegalArgumentException("bad length " + length);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			byte[] out = new byte[length];
+			byte[] extra = new byte[1];
+			int n = 0;
+			while(!inflater.finished()) {
+				int read = n < length ? inflater.inflate(out, n, length - n) : inflater.inflate(extra);
+				if(read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IllegalArgumentException("corrupted data");
+				if(n == length && read > 0)
+					throw new IllegalArgumentException("data longer than " + length);
+				n += read;
+			}
+			if(n != length)
+				throw new IllegalArgumentException("data shorter than " + length);
+			return out;
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("corrupted data");
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -15,82 +15,178 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package util;
 
+import java.nio.ByteBuffer;
+
 /**
  * This class is useful to convert the hex to another format or another in the hexadecimal format.
+ * Conversions are table-driven : no String.format, substring or Integer.parseInt per byte.
  * @author michael
  *
  */
 public class Hexa {
+	private static final char[] LOWER = "0123456789abcdef".toCharArray();
+	private static final char[] UPPER = "0123456789ABCDEF".toCharArray();
+	private static final byte[] DIGITS = new byte[128];	// value of an hexadecimal digit, -1 if not a digit
+	
+	static {
+		for(int i = 0; i < DIGITS.length; i++)
+			DIGITS[i] = -1;
+		for(int i = 0; i < 16; i++) {
+			DIGITS[LOWER[i]] = (byte) i;
+			DIGITS[UPPER[i]] = (byte) i;
+		}
+	}
+	
 	/**
 	 * To convert byte array to Hex String 
 	 * @param txtInByte
 	 * @return text in hex string
 	 */
 	public static String bytesToHex(byte[] txtInByte) {
-		   StringBuilder sb = new StringBuilder(txtInByte.length * 2);
-		   for(byte b: txtInByte)
-		      sb.append(String.format("%02x", b & 0xff));
-		   return sb.toString();
+		return new String(encode(txtInByte, 0, txtInByte.length, LOWER));
+	}
+	
+	/**
+	 * To convert the remaining bytes of a buffer to Hex String.
+	 * The position of the buffer isn't modified.
+	 * @param buffer
+	 * @return text in hex string
+	 */
+	public static String bytesToHex(ByteBuffer buffer) {
+		if(buffer.hasArray())
+			return new String(encode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), LOWER));
+		char[] out = new char[buffer.remaining() * 2];
+		for(int i = 0, p = buffer.position(); i < out.length; i += 2, p++) {
+			int b = buffer.get(p);
+			out[i] = LOWER[(b >> 4) & 0xF];
+			out[i + 1] = LOWER[b & 0xF];
+		}
+		return new String(out);
+	}
+	
+	/**
+	 * Append the bytes in hexadecimal to sb
+	 * @param sb
+	 * @param txtInByte
+	 * @param offset
+	 * @param length
+	 * @return sb
+	 */
+	public static StringBuilder appendHex(StringBuilder sb, byte[] txtInByte, int offset, int length) {
+		sb.ensureCapacity(sb.length() + length * 2);
+		for(int i = offset; i < offset + length; i++) {
+			sb.append(LOWER[(txtInByte[i] >> 4) & 0xF]);
+			sb.append(LOWER[txtInByte[i] & 0xF]);
 		}
-    
+		return sb;
+	}
+	
 	/**
 	 * To convert byte array to Hex String with capital
 	 * @param txtInByte
 	 * @return text in hex string
 	 */
-    public static String bytesToHex_UpperCase(byte[] txtInByte) {
-		return bytesToHex(txtInByte).toUpperCase();
-    }
-    
-    /**
-     * To convert a Hex String to Readable String
-     * @param txtInHex
-     * @return
-     */
-    public static String hexToString(String txtInHex) {
-    	int groupLength = 2;
-        StringBuilder sb = new StringBuilder(txtInHex.length() / groupLength);
- 
-        for (int i = 0; i < txtInHex.length() - groupLength + 1; i += groupLength) {
-            String hex = txtInHex.substring(i, i + groupLength);
-            sb.append((char) Integer.parseInt(hex, 16));
-        }
- 
-        return sb.toString();
-    }
-    
-    /**
-     * To convert a Readable String to Hex String
-     * @param input
-     * @return
-     */
-    public static String stringToHex(String input)
-    {
-        if (input == null) throw new NullPointerException();
-        	return bytesToHex(input.getBytes());
-    }
-    
-    /**
-     * To convert a byte Array to Readable String
-     * @param txtInByte
-     * @return
-     */
-    public static String bytesToString(byte[] txtInByte){
-    	return hexToString(bytesToHex(txtInByte));
-    }
-    
-    /**
-     * To convert a Hex String to byte Array
-     * @param txtInHex
-     * @return
-     */
-    public static byte[] hexToBytes(String txtInHex) {
-        byte[] txtInBytes = new byte[txtInHex.length() / 2];
-        for (int i = 0; i < txtInBytes.length; i++) {
-          int index = i * 2;
-          int v = Integer.parseInt(txtInHex.substring(index, index + 2), 16);
-          txtInBytes[i] = (byte) v;
-        }
-        return txtInBytes;
-      }
+	public static String bytesToHex_UpperCase(byte[] txtInByte) {
+		return new String(encode(txtInByte, 0, txtInByte.length, UPPER));
+	}
+	
+	/**
+	 * To convert a Hex String to Readable String
+	 * @param txtInHex
+	 * @return
+	 */
+	public static String hexToString(CharSequence txtInHex) {
+		char[] out = new char[txtInHex.length() / 2];
+		for(int i = 0; i < out.length; i++)
+			out[i] = (char) decodeByte(txtInHex, i * 2);
+		return new String(out);
+	}
+	
+	/**
+	 * To convert a Readable String to Hex String
+	 * @param input
+	 * @return
+	 */
+	public static String stringToHex(String input) {
+		if (input == null) throw new NullPointerException();
+		return bytesToHex(input.getBytes());
+	}
+	
+	/**
+	 * To convert a byte Array to Readable String
+	 * @param txtInByte
+	 * @return
+	 */
+	public static String bytesToString(byte[] txtInByte){
+		char[] out = new char[txtInByte.length];
+		for(int i = 0; i < out.length; i++)
+			out[i] = (char) (txtInByte[i] & 0xFF);
+		return new String(out);
+	}
+	
+	/**
+	 * To convert a Hex String to byte Array
+	 * A last odd digit is ignored.
+	 * @param txtInHex
+	 * @return
+	 * @throws NumberFormatException if a character isn't an hexadecimal digit.
+	 */
+	public static byte[] hexToBytes(CharSequence txtInHex) {
+		byte[] txtInBytes = new byte[txtInHex.length() / 2];
+		for(int i = 0; i < txtInBytes.length; i++)
+			txtInBytes[i] = (byte) decodeByte(txtInHex, i * 2);
+		return txtInBytes;
+	}
+	
+	/**
+	 * Decode txtInHex into the buffer, from its position.
+	 * @param txtInHex
+	 * @param out - must have txtInHex.length() / 2 bytes remaining
+	 * @return out
+	 * @throws NumberFormatException if a character isn't an hexadecimal digit.
+	 */
+	public static ByteBuffer hexToBytes(CharSequence txtInHex, ByteBuffer out) {
+		int length = txtInHex.length() / 2;
+		for(int i = 0; i < length; i++)
+			out.put((byte) decodeByte(txtInHex, i * 2));
+		return out;
+	}
+	
+	/**
+	 * Check that s is a non empty sequence of lower case hexadecimal bytes (as written by bytesToHex).
+	 * @param s
+	 * @return
+	 */
+	public static boolean isHex(CharSequence s) {
+		if(s.length() == 0 || s.length() % 2 != 0)
+			return false;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f'))
+				return false;
+		}
+		return true;
+	}
+	
+	private static char[] encode(byte[] in, int offset, int length, char[] digits) {
+		char[] out = new char[length * 2];
+		for(int i = 0; i < length; i++) {
+			int b = in[offset + i];
+			out[2 * i] = digits[(b >> 4) & 0xF];
+			out[2 * i + 1] = digits[b & 0xF];
+		}
+		return out;
+	}
+	
+	private static int decodeByte(CharSequence s, int index) {
+		return (digit(s, index) << 4) | digit(s, index + 1);
+	}
+	
+	private static int digit(CharSequence s, int index) {
+		char c = s.charAt(index);
+		int d = c < 128 ? DIGITS[c] : -1;
+		if(d < 0)
+			throw new NumberFormatException("Not an hexadecimal digit: '" + c + "' at index " + index);
+		return d;
+	}
 }
@@ -18,33 +18,42 @@ package util;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import javax.swing.ImageIcon;
 
-import net.jxta.impl.util.Base64;
-
-@SuppressWarnings("deprecation")
+/**
+ * Images to and from Base64 strings. The file is streamed through the encoder,
+ * wrapped in MIME lines as net.jxta.impl.util.Base64 did.
+ */
 public class ImageBase64 {
 	public static String encode(String path) {
 		File file = new File(path);
-		byte[] imageData = new byte[(int) file.length()];
-		FileInputStream imageInFile;
+		StringWriter writer = new StringWriter(Base64Codec.encodedLength((int) file.length(), Base64Codec.MIME_LINE));
+		FileInputStream imageInFile = null;
 		try {
 			imageInFile = new FileInputStream(file);
-			imageInFile.read(imageData);
-			imageInFile.close();
+			Base64Codec.encode(imageInFile, writer, Base64Codec.MIME_LINE);
 		} catch (IOException e) {	
 			e.printStackTrace();
+		} finally {
+			if(imageInFile != null) {
+				try {
+					imageInFile.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 		
-		return Base64.encodeBase64(imageData);
+		return writer.toString();
 	}
 	
 	
 	public static ImageIcon decode(String encoded) {
 		try {
-			return new ImageIcon(Base64.decodeBase64(encoded));
-		} catch (IOException e) {
+			return new ImageIcon(Base64Codec.decode(encoded));
+		} catch (IllegalArgumentException e) {
 			e.printStackTrace();
 		}
 		return null;
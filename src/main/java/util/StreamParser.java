@@ -0,0 +1,151 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Element;
+
+/**
+ * Pull (StAX) parsing of the XML used by the advertisements and the local data file.
+ * The factory is created once and shared : creating readers from it is thread safe.
+ * Elements are read one by one from the stream, so the memory used is bounded by the
+ * biggest element read, not by the whole document.
+ * @author Julien Prudhomme
+ *
+ */
+public class StreamParser {
+	
+	private static final XMLInputFactory factory = createFactory();
+	
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+	
+	/**
+	 * Create a reader on a XML string or file content.
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReader createReader(Reader reader) throws XMLStreamException {
+		return factory.createXMLStreamReader(reader);
+	}
+	
+	/**
+	 * Create a reader on a XML stream, the encoding is read in the XML declaration.
+	 * @param in
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+		return factory.createXMLStreamReader(in);
+	}
+	
+	/**
+	 * Move to the next start tag of the current element.
+	 * @param reader
+	 * @return false if the end tag of the current element is reached.
+	 * @throws XMLStreamException
+	 */
+	public static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+		while(reader.hasNext()) {
+			switch(reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				return true;
+			case XMLStreamConstants.END_ELEMENT:
+			case XMLStreamConstants.END_DOCUMENT:
+				return false;
+			default: // text between the children, comments
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Read the element on which the reader is (start tag) with its content, as a Jdom element.
+	 * After the call the reader is on the end tag of this element.
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static Element readElement(XMLStreamReader reader) throws XMLStreamException {
+		Element root = newElement(reader);
+		Element current = root;
+		int depth = 1;
+		while(depth > 0) {
+			switch(reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				Element child = newElement(reader);
+				current.addContent(child);
+				current = child;
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				current = current.getParentElement();
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				current.addContent(reader.getText());
+				break;
+			case XMLStreamConstants.END_DOCUMENT:
+				throw new XMLStreamException("unexpected end of document in " + root.getName());
+			default: // comments, processing instructions
+			}
+		}
+		return root;
+	}
+	
+	private static Element newElement(XMLStreamReader reader) {
+		Element e = new Element(reader.getLocalName());
+		for(int i = 0; i < reader.getAttributeCount(); i++) {
+			String name = reader.getAttributeLocalName(i);
+			if(!name.startsWith("xmlns"))
+				e.setAttribute(name, reader.getAttributeValue(i));
+		}
+		return e;
+	}
+	
+	/**
+	 * Read a whole document.
+	 * @param reader
+	 * @return the root element.
+	 * @throws XMLStreamException
+	 */
+	public static Element readRootElement(Reader reader) throws XMLStreamException {
+		XMLStreamReader xml = createReader(reader);
+		try {
+			if(!nextChild(xml))
+				throw new XMLStreamException("no root element");
+			return readElement(xml);
+		} finally {
+			xml.close();
+		}
+	}
+}
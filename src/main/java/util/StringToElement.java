@@ -15,13 +15,11 @@
    If not, see <http://www.gnu.org/licenses/>. */
 package util;
 
-import java.io.IOException;
-import java.io.Reader;
 import java.io.StringReader;
 
+import javax.xml.stream.XMLStreamException;
+
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 
 public class StringToElement {
 	/**
@@ -30,16 +28,12 @@ public class StringToElement {
 	 * @return
 	 */
 	public static Element getElementFromString(String XML) {
-		SAXBuilder saxBuilder=new SAXBuilder();
-        Reader stringReader=new StringReader(XML);
         Element root = null;
         try {
-			root = saxBuilder.build(stringReader).getRootElement();
-		} catch (JDOMException e) {
+			root = StreamParser.readRootElement(new StringReader(XML));
+		} catch (XMLStreamException e) {
 			System.err.println("Parse problem");
 			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
         return root;
 	}
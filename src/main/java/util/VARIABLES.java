@@ -19,9 +19,11 @@ public class VARIABLES {
 	/* Items */
 	public static final long LifeTimeAfterDisconnected = 2592000000L;
 	public static final long TimeBeforeDeleteAfterLifeTime = 2678400L;
+	public static final long ItemExpiryPeriod = 60000L;	// ms between two passes on the items to expire
 	
 	/* Communication */
 	public final static String SERVICE_TAG = "toService";
+	public static final int PeerCodecsSize = 4096;	// peers whose accepted encodings are remembered
 	
 	/* SharingManager */
 	public final static int ReplicationsAccount = 5;
@@ -41,6 +43,15 @@ public class VARIABLES {
 	public static final String ManagerFilePath = "./"+ManagerFileName;
 	public static final String BootstrapFileName = "bootstrap.xml";
 	public static final String BootstrapFilePath = "./"+BootstrapFileName;
+	public static final String BlobStorePath = "./blobs";
+	public static final long BlobStoreCapacity = 256L * 1024 * 1024;	// bytes kept on disk before evicting
+	public static final int BlobMaxSize = 16 * 1024 * 1024;			// biggest blob accepted from a peer
+	public static final String ItemCataloguePath = "./catalogue";
+	public static final int ItemSegmentSize = 16 * 1024 * 1024;		// bytes of a segment file of the catalogue
+	public static final int ItemCacheSize = 10000;					// items of the catalogue kept on heap
+	
+	/* Signatures */
+	public static final int SignatureCacheSize = 20000;	// verified signatures kept in memory
 	
 	/* AVProtocol */
 	public static final int AVProtocolN = 10;
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import util.secure.AsymKeysImpl;
 import util.secure.ElGamal;
 import util.secure.ElGamalEncrypt;
+import util.secure.ElGamalNoncePool;
 import util.secure.AVProtocol.ParticipantEx;
 
 /**
@@ -89,6 +90,8 @@ public class Dealer {
 	{
 		Proof proof = new Proof (m, keys.getG(), keys.getP(), aj);
 		
+		for (int i =0; i< TTP.getN(); i++) // nonces computed in background while the Mi are created
+			ElGamalNoncePool.getInstance().prepare(TTP.getParticipant(i).getKeys());
 		for (int i =0; i< TTP.getN(); i++)
 		{
 			BigInteger Mi = createMi(m, TTP.getParticipant(i), aj);
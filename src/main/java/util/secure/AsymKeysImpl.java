@@ -46,6 +46,7 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 	private boolean wellGenerated = false;
 	private BigInteger privateKey;
 	private BigInteger publicKey;
+	private PublicKeyId publicKeyId;		// identifier of publicKey, computed on first use
 	private BigInteger encryptedPrivateKey;
 	/**
 	 * This method is used to generate P and G
@@ -119,6 +120,20 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 		super(e);
 	}
 	
+	/**
+	 * Copy constructor, same as new AsymKeysImpl(keys.toString()) : the clear private key isn't copied.
+	 * @param keys
+	 */
+	public AsymKeysImpl(AsymKeysImpl keys) {
+		super(keys);
+		this.p = keys.p;
+		this.g = keys.g;
+		this.publicKey = keys.publicKey;
+		this.publicKeyId = keys.publicKeyId;
+		this.encryptedPrivateKey = keys.encryptedPrivateKey;
+		this.privateKey = null;
+	}
+	
 	@SuppressWarnings("rawtypes")
 	public AsymKeysImpl(net.jxta.document.Element e) {
 		super(e);
@@ -157,6 +172,22 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 		return publicKey;
 	}
 	
+	/**
+	 * Used to return the interned identifier of the public key.
+	 * @return null if the public key is unknown.
+	 */
+	public PublicKeyId getPublicKeyId(){
+		BigInteger key = publicKey;
+		PublicKeyId id = publicKeyId;
+		if(key == null)
+			return null;
+		if(id == null || (id.getKey() != key && !id.getKey().equals(key))) { //publicKey changed since the last call
+			id = PublicKeyId.of(key);
+			publicKeyId = id;
+		}
+		return id;
+	}
+	
 	/**
 	 * Used to return the p (of the public key).
 	 * @return
@@ -257,8 +288,16 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 	 */
 	public BigInteger getEncryptedPrivateKey(String password) {
 		if(encryptedPrivateKey != null) return encryptedPrivateKey; //key already encrypted.
-		
-		Serpent cypher = new Serpent(password);
+		return getEncryptedPrivateKey(new SerpentGCM(password));
+	}
+	
+	/**
+	 * Crypt the private key with an already derived key (see KeySession).
+	 * @param cypher
+	 * @return
+	 */
+	public BigInteger getEncryptedPrivateKey(SerpentGCM cypher) {
+		if(encryptedPrivateKey != null) return encryptedPrivateKey; //key already encrypted.
 		return new BigInteger(cypher.encrypt(privateKey.toByteArray()));	
 	}
 	
@@ -268,9 +307,27 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 			return null;
 		}
 		if(privateKey != null) return privateKey;
+		return getDecryptedPrivateKey(new SerpentGCM(password));
+	}
+	
+	/**
+	 * Decrypt the private key with an already derived key (see KeySession).
+	 * @param cypher
+	 * @return the clear private key, null if the key is wrong.
+	 */
+	public BigInteger getDecryptedPrivateKey(SerpentGCM cypher) {
+		if(encryptedPrivateKey == null)  {
+			Printer.printError(this, "getDecriptedKey", "encyrpted key is null");
+			return null;
+		}
+		if(privateKey != null) return privateKey;
 		
-		Serpent cypher = new Serpent(password);
-		BigInteger clear = new BigInteger(cypher.decrypt(encryptedPrivateKey.toByteArray()));
+		byte[] decrypted = cypher.decrypt(encryptedPrivateKey.toByteArray());
+		if(decrypted == null) {
+			Printer.printError(this, "getDecryptedPrivateKey", "wrong password");
+			return null;
+		}
+		BigInteger clear = new BigInteger(decrypted);
 		if(!isCompatible(clear)) {
 			
 			Printer.printError(this, "getDecryptedPrivateKey", "key no compatible");
@@ -286,10 +343,22 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 		return true;
 	}
 	
+	public boolean decryptPrivateKey(SerpentGCM cypher) {
+		BigInteger pk = getDecryptedPrivateKey(cypher);
+		if(pk == null) return false;
+		privateKey = pk;
+		return true;
+	}
+	
 	public void encryptPrivateKey(String password) {
 		encryptedPrivateKey = getEncryptedPrivateKey(password);
 		privateKey = null;
 	}
+	
+	public void encryptPrivateKey(SerpentGCM cypher) {
+		encryptedPrivateKey = getEncryptedPrivateKey(cypher);
+		privateKey = null;
+	}
 
 	@Override
 	protected String getAdvertisementName() {
@@ -327,12 +396,17 @@ public class AsymKeysImpl extends AbstractAdvertisement implements util.secure.e
 	}
 	
 	public AsymKeysImpl copy() {
-		AsymKeysImpl res = new AsymKeysImpl(this.toString());
+		AsymKeysImpl res = new AsymKeysImpl(this);
 		if(this.privateKey != null)
 			res.setPrivateKey(new BigInteger(privateKey.toByteArray()));
 		return res;
 	}
 
+	@Override
+	public AsymKeysImpl clone() {
+		return new AsymKeysImpl(this);
+	}
+
 	@Override
 	public String getSimpleName() {
 		return getClass().getSimpleName();
@@ -17,13 +17,15 @@ package util.secure;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.engines.ElGamalEngine;
 import org.bouncycastle.crypto.params.ElGamalParameters;
 import org.bouncycastle.crypto.params.ElGamalPrivateKeyParameters;
-import org.bouncycastle.crypto.params.ElGamalPublicKeyParameters;
 
-import util.Hasher;
 import util.secure.encryptionInterface.AsymEncryption;
 import util.secure.encryptionInterface.AsymKeys;
 import util.secure.encryptionInterface.Signature;
@@ -38,6 +40,8 @@ public class ElGamal implements AsymEncryption<byte[], BigInteger>, Signature<by
 	
 	private AsymKeysImpl keys;
 	
+	private ElGamalSigner.NONCE nonce = ElGamalSigner.NONCE.RANDOM;
+	
 	
 	/**
 	 * Constructor
@@ -56,34 +60,30 @@ public class ElGamal implements AsymEncryption<byte[], BigInteger>, Signature<by
 		this.keys = keys;
 	}
 	
+	/**
+	 * Choose how signatures nonces are generated (random by default).
+	 * @param nonce
+	 */
+	public void setNonce(ElGamalSigner.NONCE nonce){
+		this.nonce = nonce;
+	}
+	
 	/**
 	 * To sign a message
 	 * @param M - byte[]
 	 */
 	public ElGamalSign getMessageSignature(byte[] M)
 	{
-		if(keys.getPrivateKey() == null)
-			try {
-				throw new Exception("Private key unknown");
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		BigInteger k;
-		BigInteger l;
-		BigInteger r;
-		BigInteger s;
-		
-		BigInteger m = new BigInteger(Hasher.SHA256(M).getBytes());
-		k = BigInteger.probablePrime(1023, random);
-		while(k.compareTo(BigInteger.ONE)<= 0 || k.gcd(keys.getP()).compareTo(BigInteger.ONE)!= 0 )
-		{
-			k = BigInteger.probablePrime(1023, random);
-		}
-		l = k.modInverse(keys.getP().subtract(BigInteger.ONE));
-		
-		r = keys.getG().modPow(k,keys.getP());
-		s = l.multiply(m.subtract(r.multiply(keys.getPrivateKey())).mod(keys.getP().subtract(BigInteger.ONE)));
-		return new ElGamalSign(r, s);
+		return new ElGamalSigner(keys, nonce, random).sign(M);
+	}
+	
+	/**
+	 * To sign a message given by its SHA-256 (see ElGamalSigner.messageDigest)
+	 * @param digest - byte[]
+	 */
+	public ElGamalSign getDigestSignature(byte[] digest)
+	{
+		return new ElGamalSigner(keys, nonce, random).signDigest(digest);
 	}
 	
 	/**
@@ -92,6 +92,15 @@ public class ElGamal implements AsymEncryption<byte[], BigInteger>, Signature<by
 	 * @return true if the signature is from public Key, false else
 	 */
 	public boolean verifySignature(byte[] M, ElGamalSign sign){
+		return verifyDigestSignature(M == null ? null : ElGamalSigner.messageDigest(M), sign);
+	}
+	
+	/**
+	 * To verify the signature of a message given by its SHA-256
+	 * @param digest - SHA-256 of the message
+	 * @return true if the signature is from public Key, false else
+	 */
+	public boolean verifyDigestSignature(byte[] digest, ElGamalSign sign){
 		try {
 			if(sign == null || sign.getR() == null || sign.getS() == null){
 				throw new Exception("R or S unknown");
@@ -103,35 +112,102 @@ public class ElGamal implements AsymEncryption<byte[], BigInteger>, Signature<by
 			e.printStackTrace();
 		}
 		
-		
-		BigInteger m = new BigInteger(Hasher.SHA256(M).getBytes());
-		BigInteger v = keys.getG().modPow(m, keys.getP());
+		SignatureCache cache = SignatureCache.getInstance();
+		if(cache.isDigestVerified(keys, digest, sign))
+			return true;
+		boolean valid = verifyDigestEquation(digest, sign);
+		if(valid)
+			cache.addVerifiedDigest(keys, digest, sign);
+		return valid;
+	}
+	
+	/**
+	 * Check g^m = y^r * r^s mod p, without the signature cache.
+	 * @param M
+	 * @param sign
+	 * @return
+	 */
+	boolean verifyEquation(byte[] M, ElGamalSign sign){
+		return verifyDigestEquation(ElGamalSigner.messageDigest(M), sign);
+	}
+	
+	boolean verifyDigestEquation(byte[] digest, ElGamalSign sign){
+		BigInteger m = ElGamalSigner.digestRepresentative(digest);
+		BigInteger v = FixedBase.modPow(keys.getG(), m, keys.getP());
 		BigInteger w = (keys.getPublicKey().modPow(sign.getR(), keys.getP()).multiply(sign.getR().modPow(sign.getS(), keys.getP())).mod(keys.getP()));
 		
 		return (v.equals(w));
 	}
 	
+	/**
+	 * To verify several signatures of this public key at once
+	 * @param M - messages
+	 * @param signs - signatures, signs[i] of M[i]
+	 * @return for each message, true if its signature is from public Key
+	 */
+	public boolean[] verifySignatures(List<byte[]> M, List<ElGamalSign> signs){
+		return verifySignatures(new ArrayList<AsymKeysImpl>(Collections.nCopies(M.size(), keys)), M, signs);
+	}
+	
+	/**
+	 * To verify several signatures, from different public keys, at once.
+	 * Much faster than verifySignature on each message when they share p and g.
+	 * @param keys - public keys, keys[i] for signs[i]
+	 * @param M - messages
+	 * @param signs - signatures, signs[i] of M[i]
+	 * @return for each message, true if its signature is from its public Key
+	 */
+	public static boolean[] verifySignatures(List<AsymKeysImpl> keys, List<byte[]> M, List<ElGamalSign> signs){
+		return ElGamalBatch.verify(keys, M, signs);
+	}
+	
+	/**
+	 * Same as verifySignatures, with the SHA-256 of the messages (see ElGamalSigner.messageDigest).
+	 * @param keys - public keys, keys[i] for signs[i]
+	 * @param digests - SHA-256 of the messages
+	 * @param signs - signatures, signs[i] of the message i
+	 * @return for each message, true if its signature is from its public Key
+	 */
+	public static boolean[] verifyDigestSignatures(List<AsymKeysImpl> keys, List<byte[]> digests, List<ElGamalSign> signs){
+		return ElGamalBatch.verifyDigests(keys, digests, signs);
+	}
+	
+	/**
+	 * Encrypt with a precomputed nonce of ElGamalNoncePool.
+	 * Same block format as the BouncyCastle ElGamalEngine (g^k | m*y^k mod p).
+	 */
 	@Override
 	public byte[] encryptWithPublicKey(byte[] data) {
-		ElGamalParameters params = new ElGamalParameters(keys.getP(), keys.getG());
-		ElGamalPublicKeyParameters pubKey = new ElGamalPublicKeyParameters(keys.getPublicKey(), params);
-		
-		ElGamalEngine e = new ElGamalEngine();
-		e.init(true, pubKey);
-        return e.processBlock(data, 0, data.length) ;
+		return encryptBlock(toInput(data), ElGamalNoncePool.getInstance().take(keys));
 	}
 	
 	public ElGamalEncrypt encryptForContract(byte[] data) {
-		ElGamalParameters params = new ElGamalParameters(keys.getP(), keys.getG());
-		ElGamalPublicKeyParameters pubKey = new ElGamalPublicKeyParameters(keys.getPublicKey(), params);
-		
-		ElGamalEngine e = new ElGamalEngine();
-		e.init(true, pubKey);
-		byte[] m = e.processBlock(data, 0, data.length);
-		BigInteger k = e.getK();
-        BigInteger u = keys.getG().modPow(k,keys.getP());
-        BigInteger v = (keys.getPublicKey().modPow(e.getK(), keys.getP()).multiply(new BigInteger(data)));
-        return new ElGamalEncrypt (u,v,k, m);
+		BigInteger input = toInput(data);
+		ElGamalNoncePool.Nonce nonce = ElGamalNoncePool.getInstance().take(keys);
+		byte[] m = encryptBlock(input, nonce);
+		BigInteger v = nonce.getYK().multiply(new BigInteger(data));
+		return new ElGamalEncrypt(nonce.getGK(), v, nonce.getK(), m);
+	}
+	
+	private BigInteger toInput(byte[] data) {
+		BigInteger input = new BigInteger(1, data);
+		if(data.length > (keys.getP().bitLength() - 1) / 8 + 1 || input.compareTo(keys.getP()) >= 0)
+			throw new DataLengthException("input too large for ElGamal cipher.\n");
+		return input;
+	}
+	
+	private byte[] encryptBlock(BigInteger input, ElGamalNoncePool.Nonce nonce) {
+		int half = (keys.getP().bitLength() + 7) / 8;
+		byte[] out = new byte[2 * half];
+		putUnsigned(nonce.getGK(), out, 0, half);
+		putUnsigned(input.multiply(nonce.getYK()).mod(keys.getP()), out, half, half);
+		return out;
+	}
+	
+	private static void putUnsigned(BigInteger v, byte[] out, int off, int len) {
+		byte[] b = v.toByteArray();
+		int n = Math.min(b.length, len);
+		System.arraycopy(b, b.length - n, out, off + len - n, n);
 	}
 
 	@Override
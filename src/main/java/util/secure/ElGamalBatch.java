@@ -0,0 +1,399 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch verification of ElGamal signatures (small exponents test).
+ * Each signature (m, r, s) of a public key y satisfies g^m = y^r * r^s mod p. For random
+ * 64 bits d_i, the product of all these equations raised to d_i is checked at once :
+ * g^(sum d_i*m_i) = prod y^(sum d_i*r_i) * prod r_i^(d_i*s_i)
+ * with a single fixed-base exponentiation and one multi-exponentiation sharing all the squarings.
+ * Identical signatures (replicas of the same advertisement) are only checked once, and
+ * signatures found in the SignatureCache are not checked again.
+ * If the batch fails, each signature of the batch is checked alone.
+ *
+ * The test is only sound in a prime order group, so it is used only when p is a safe prime
+ * (p = 2q+1, q prime, as the keys of the application) : the quadratic character of both sides
+ * of each equation is compared first (Jacobi symbols), which leaves only the subgroup of order q.
+ * @author Julien Prudhomme
+ *
+ */
+class ElGamalBatch {
+
+	private static final int DELTA_BITS = 64;		// size of the random exponents d_i
+	private static final int CHUNK = 128;			// signatures per multi-exponentiation
+	private static final int WINDOW = 5;			// sliding window of the multi-exponentiation
+
+	private static final SecureRandom random = new SecureRandom();
+	private static final HashMap<BigInteger, Boolean> safePrimes = new HashMap<BigInteger, Boolean>();
+
+	/**
+	 * Verify the signatures, result i is the same as new ElGamal(keys[i]).verifySignature(M[i], signs[i])
+	 * @param keys - public keys
+	 * @param M - messages
+	 * @param signs - signatures
+	 * @return
+	 */
+	public static boolean[] verify(List<AsymKeysImpl> keys, List<byte[]> M, List<ElGamalSign> signs) {
+		ArrayList<byte[]> digests = new ArrayList<byte[]>(M.size());
+		for(byte[] m : M)
+			digests.add(m == null ? null : ElGamalSigner.messageDigest(m));
+		return verifyDigests(keys, digests, signs);
+	}
+	
+	/**
+	 * Same as verify, with the SHA-256 of the messages (see ElGamalSigner.messageDigest)
+	 * @param keys - public keys
+	 * @param digests - SHA-256 of the messages
+	 * @param signs - signatures
+	 * @return
+	 */
+	public static boolean[] verifyDigests(List<AsymKeysImpl> keys, List<byte[]> digests, List<ElGamalSign> signs) {
+		if(keys.size() != digests.size() || digests.size() != signs.size())
+			throw new IllegalArgumentException("keys, messages and signatures count differ");
+		boolean[] valid = new boolean[digests.size()];
+
+		// identical signatures are checked once, signatures already verified are skipped
+		SignatureCache cache = SignatureCache.getInstance();
+		LinkedHashMap<Entry, ArrayList<Integer>> entries = new LinkedHashMap<Entry, ArrayList<Integer>>();
+		for(int i = 0; i < digests.size(); i++) {
+			AsymKeysImpl k = keys.get(i);
+			ElGamalSign sign = signs.get(i);
+			if(k == null || k.getPublicKey() == null || digests.get(i) == null ||
+					sign == null || sign.getR() == null || sign.getS() == null)
+				continue;
+			if(cache.isDigestVerified(k, digests.get(i), sign)) {
+				valid[i] = true;
+				continue;
+			}
+			Entry e = new Entry(k, digests.get(i), sign);
+			ArrayList<Integer> indexes = entries.get(e);
+			if(indexes == null) {
+				indexes = new ArrayList<Integer>();
+				entries.put(e, indexes);
+			}
+			indexes.add(i);
+		}
+
+		// batches are made of signatures sharing p and g
+		LinkedHashMap<Group, ArrayList<Entry>> groups = new LinkedHashMap<Group, ArrayList<Entry>>();
+		for(Entry e : entries.keySet()) {
+			if(!e.isBatchable()) {
+				e.valid = e.verifyAlone();
+				continue;
+			}
+			Group group = new Group(e.p, e.g);
+			ArrayList<Entry> list = groups.get(group);
+			if(list == null) {
+				list = new ArrayList<Entry>();
+				groups.put(group, list);
+			}
+			list.add(e);
+		}
+		for(Map.Entry<Group, ArrayList<Entry>> group : groups.entrySet()) {
+			ArrayList<Entry> list = group.getValue();
+			if(list.size() < 2 || !isSafePrime(group.getKey().p)) {
+				for(Entry e : list)
+					e.valid = e.verifyAlone();
+				continue;
+			}
+			for(int i = 0; i < list.size(); i += CHUNK)
+				verifyChunk(list.subList(i, Math.min(list.size(), i + CHUNK)));
+		}
+
+		for(Map.Entry<Entry, ArrayList<Integer>> e : entries.entrySet()) {
+			Entry entry = e.getKey();
+			if(entry.valid)
+				cache.addVerifiedDigest(entry.keys, entry.digest, entry.sign);
+			for(int i : e.getValue())
+				valid[i] = entry.valid;
+		}
+		return valid;
+	}
+
+	/**
+	 * Verify signatures sharing the same safe prime p and generator g.
+	 * @param entries
+	 */
+	private static void verifyChunk(List<Entry> entries) {
+		BigInteger p = entries.get(0).p;
+		BigInteger g = entries.get(0).g;
+		BigInteger order = p.subtract(BigInteger.ONE);
+
+		int chiG = jacobi(g, p);
+		HashMap<BigInteger, Integer> chiY = new HashMap<BigInteger, Integer>();
+		ArrayList<Entry> batch = new ArrayList<Entry>();
+		for(Entry e : entries) {
+			Integer y = chiY.get(e.y);
+			if(y == null) {
+				y = jacobi(e.y, p);
+				chiY.put(e.y, y);
+			}
+			int left = pow(chiG, e.m);
+			int right = pow(y, e.r) * pow(jacobi(e.r, p), e.s);
+			if(left != right)
+				e.valid = false;	// can't be a valid signature
+			else
+				batch.add(e);
+		}
+		if(batch.size() < 2) {
+			for(Entry e : batch)
+				e.valid = e.verifyAlone();
+			return;
+		}
+
+		BigInteger sumM = BigInteger.ZERO;
+		LinkedHashMap<BigInteger, BigInteger> expY = new LinkedHashMap<BigInteger, BigInteger>();
+		ArrayList<BigInteger> bases = new ArrayList<BigInteger>();
+		ArrayList<BigInteger> exponents = new ArrayList<BigInteger>();
+		for(Entry e : batch) {
+			BigInteger d;
+			do {
+				d = new BigInteger(DELTA_BITS, random);
+			} while(d.signum() == 0);
+			sumM = sumM.add(d.multiply(e.m));
+			BigInteger ey = expY.get(e.y);
+			expY.put(e.y, (ey == null ? BigInteger.ZERO : ey).add(d.multiply(e.r)).mod(order));
+			bases.add(e.r);
+			exponents.add(d.multiply(e.s).mod(order));
+		}
+		for(Map.Entry<BigInteger, BigInteger> y : expY.entrySet()) {
+			bases.add(y.getKey());
+			exponents.add(y.getValue());
+		}
+
+		BigInteger left = FixedBase.modPow(g, sumM.mod(order), p);
+		BigInteger right = multiPow(bases, exponents, p);
+		if(left.equals(right)) {
+			for(Entry e : batch)
+				e.valid = true;
+		} else {
+			for(Entry e : batch)
+				e.valid = e.verifyAlone();
+		}
+	}
+
+	/**
+	 * Compute prod bases[i]^exponents[i] mod p, exponents >= 0, with interleaved sliding windows :
+	 * the squarings are shared between all the bases.
+	 * @param bases - in [1, p-1]
+	 * @param exponents
+	 * @param p - odd modulus
+	 * @return
+	 */
+	static BigInteger multiPow(List<BigInteger> bases, List<BigInteger> exponents, BigInteger p) {
+		Montgomery mont = new Montgomery(p);
+		int[] t = mont.newScratch();
+		int count = bases.size();
+		int bits = 0;
+		for(BigInteger e : exponents)
+			bits = Math.max(bits, e.bitLength());
+
+		int[][][] tables = new int[count][][];
+		byte[][] digits = new byte[count][];
+		for(int j = 0; j < count; j++) {
+			// odd powers b, b^3, ..., b^(2^WINDOW - 1)
+			int[][] table = new int[1 << (WINDOW - 1)][];
+			table[0] = mont.toMontgomery(bases.get(j));
+			int[] square = new int[table[0].length];
+			mont.multiply(table[0], table[0], square, t);
+			for(int k = 1; k < table.length; k++) {
+				table[k] = new int[square.length];
+				mont.multiply(table[k - 1], square, table[k], t);
+			}
+			tables[j] = table;
+			digits[j] = slidingWindow(exponents.get(j), bits);
+		}
+
+		int[] acc = mont.one();
+		boolean started = false;
+		for(int i = bits - 1; i >= 0; i--) {
+			if(started)
+				mont.multiply(acc, acc, acc, t);
+			for(int j = 0; j < count; j++) {
+				int d = digits[j][i];
+				if(d != 0) {
+					mont.multiply(acc, tables[j][d >> 1], acc, t);
+					started = true;
+				}
+			}
+		}
+		return mont.fromMontgomery(acc, t);
+	}
+
+	/**
+	 * Split e in odd windows of at most WINDOW bits.
+	 * @return digits[i] is the odd value of the window ending at bit i, 0 elsewhere
+	 */
+	private static byte[] slidingWindow(BigInteger e, int bits) {
+		byte[] digits = new byte[bits];
+		int i = e.bitLength() - 1;
+		while(i >= 0) {
+			if(!e.testBit(i)) {
+				i--;
+				continue;
+			}
+			int l = Math.max(0, i - WINDOW + 1);
+			while(!e.testBit(l))
+				l++;
+			int value = 0;
+			for(int b = i; b >= l; b--)
+				value = (value << 1) | (e.testBit(b) ? 1 : 0);
+			digits[l] = (byte) value;
+			i = l - 1;
+		}
+		return digits;
+	}
+
+	/**
+	 * Jacobi symbol (a/n), n odd and positive.
+	 * @return 1, -1 or 0 if gcd(a, n) != 1
+	 */
+	static int jacobi(BigInteger a, BigInteger n) {
+		a = a.mod(n);
+		int result = 1;
+		while(a.signum() != 0) {
+			int zeros = a.getLowestSetBit();
+			a = a.shiftRight(zeros);
+			int n8 = n.intValue() & 7;
+			if((zeros & 1) == 1 && (n8 == 3 || n8 == 5))
+				result = -result;
+			if((a.intValue() & 3) == 3 && (n8 & 3) == 3)
+				result = -result;
+			BigInteger tmp = a;
+			a = n.mod(tmp);
+			n = tmp;
+		}
+		return n.equals(BigInteger.ONE) ? result : 0;
+	}
+
+	/**
+	 * @param chi - 1 or -1
+	 * @param e - e >= 0
+	 * @return chi^e
+	 */
+	private static int pow(int chi, BigInteger e) {
+		if(e.signum() == 0)
+			return 1;
+		if(chi == -1 && !e.testBit(0))
+			return 1;
+		return chi;
+	}
+
+	private static boolean isSafePrime(BigInteger p) {
+		synchronized (safePrimes) {
+			Boolean safe = safePrimes.get(p);
+			if(safe == null) {
+				safe = p.isProbablePrime(40) && p.shiftRight(1).isProbablePrime(40);
+				if(safePrimes.size() > 16)
+					safePrimes.clear();
+				safePrimes.put(p, safe);
+			}
+			return safe;
+		}
+	}
+
+	private static class Group {
+		private BigInteger p;
+		private BigInteger g;
+
+		public Group(BigInteger p, BigInteger g) {
+			this.p = p;
+			this.g = g;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * p.hashCode() + g.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Group))
+				return false;
+			Group other = (Group) o;
+			return p.equals(other.p) && g.equals(other.g);
+		}
+	}
+
+	/**
+	 * One distinct (key, message digest, signature)
+	 */
+	private static class Entry {
+		private AsymKeysImpl keys;
+		private byte[] digest;
+		private ElGamalSign sign;
+		private BigInteger p, g, y, m, r, s;
+		private boolean valid = false;
+
+		public Entry(AsymKeysImpl keys, byte[] digest, ElGamalSign sign) {
+			this.keys = keys;
+			this.digest = digest;
+			this.sign = sign;
+			this.p = keys.getP();
+			this.g = keys.getG();
+			this.y = keys.getPublicKey();
+			this.m = ElGamalSigner.digestRepresentative(digest);
+			this.r = sign.getR();
+			this.s = sign.getS();
+		}
+
+		/**
+		 * r and y must be units modulo p, exponents positives.
+		 */
+		public boolean isBatchable() {
+			return p.testBit(0) && p.bitLength() > 32 &&
+					g.signum() > 0 && g.compareTo(p) < 0 &&
+					y.signum() > 0 && y.compareTo(p) < 0 &&
+					r.signum() > 0 && r.compareTo(p) < 0 &&
+					s.signum() >= 0;
+		}
+
+		public boolean verifyAlone() {
+			try {
+				return new ElGamal(keys).verifyDigestEquation(digest, sign);
+			} catch(ArithmeticException e) {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			int h = p.hashCode();
+			h = 31 * h + y.hashCode();
+			h = 31 * h + m.hashCode();
+			h = 31 * h + r.hashCode();
+			return 31 * h + s.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Entry))
+				return false;
+			Entry e = (Entry) o;
+			return p.equals(e.p) && g.equals(e.g) && y.equals(e.y) &&
+					m.equals(e.m) && r.equals(e.r) && s.equals(e.s);
+		}
+	}
+}
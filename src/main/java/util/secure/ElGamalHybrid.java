@@ -0,0 +1,164 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+
+import util.Printer;
+import util.secure.encryptionInterface.AsymEncryption;
+import util.secure.encryptionInterface.AsymKeys;
+
+/**
+ * Hybrid encryption for data of any size : a random Serpent key is encrypted once with
+ * ElGamal, the data is encrypted with this key in GCM mode. Encrypted data format (version 1) :
+ * 'S' 'X' 'H' 0x01 | ElGamal block length (2 bytes) | ElGamal block (key) | nonce (12 bytes) | cypher | tag (16 bytes)
+ * The header and the ElGamal block are authenticated with the data.
+ * @author Julien Prudhomme
+ *
+ */
+public class ElGamalHybrid implements AsymEncryption<byte[], BigInteger> {
+
+	public static final byte[] HEADER = {'S', 'X', 'H', 0x01};
+	private static final int KEY_LENGTH = 32;
+
+	private static SecureRandom random = new SecureRandom();
+
+	private AsymKeysImpl keys;
+
+	/**
+	 * @param keys - public key to encrypt, private key to decrypt.
+	 */
+	public ElGamalHybrid(AsymKeysImpl keys) {
+		this.keys = keys;
+	}
+
+	@Override
+	public void setAsymsKeys(AsymKeys<BigInteger> keys) {
+		this.keys = (AsymKeysImpl) keys;
+	}
+
+	/**
+	 * Check if data is in the hybrid format.
+	 * @param data
+	 * @return
+	 */
+	public static boolean isHybrid(byte[] data) {
+		if(data == null || data.length < HEADER.length + 2 + GCMMode.NONCE_LENGTH + GCMMode.TAG_LENGTH)
+			return false;
+		for(int i = 0; i < HEADER.length; i++) {
+			if(data[i] != HEADER[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Encrypt the data for the owner of the public key, one ElGamal operation whatever the size.
+	 * @param data
+	 * @return the encrypted data.
+	 */
+	@Override
+	public byte[] encryptWithPublicKey(byte[] data) {
+		byte[] key = new byte[KEY_LENGTH];
+		byte[] nonce = new byte[GCMMode.NONCE_LENGTH];
+		random.nextBytes(key);
+		random.nextBytes(nonce);
+		try {
+			byte[] block = new ElGamal(keys).encryptWithPublicKey(key);
+			ByteBuffer res = ByteBuffer.allocate(HEADER.length + 2 + block.length + nonce.length + data.length + GCMMode.TAG_LENGTH);
+			res.put(HEADER);
+			res.putShort((short) block.length);
+			res.put(block);
+			byte[] aad = Arrays.copyOf(res.array(), res.position());
+			res.put(nonce);
+			newMode(key).encrypt(nonce, aad, ByteBuffer.wrap(data), res);
+			return res.array();
+		} catch (InvalidKeyException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+
+	/**
+	 * Decrypt data in the hybrid format with the private key.
+	 * @param data
+	 * @return the clear data, null if it isn't for this key or was modified.
+	 */
+	@Override
+	public byte[] decryptWithPrivateKey(byte[] data) {
+		if(!isHybrid(data)) {
+			Printer.printError(this, "decryptWithPrivateKey", "unknown format");
+			return null;
+		}
+		ByteBuffer src = ByteBuffer.wrap(data);
+		src.position(HEADER.length);
+		int blockLength = src.getShort() & 0xffff;
+		if(src.remaining() < blockLength + GCMMode.NONCE_LENGTH + GCMMode.TAG_LENGTH) {
+			Printer.printError(this, "decryptWithPrivateKey", "data too short");
+			return null;
+		}
+		byte[] block = new byte[blockLength];
+		src.get(block);
+		byte[] aad = Arrays.copyOf(data, src.position());
+		byte[] nonce = new byte[GCMMode.NONCE_LENGTH];
+		src.get(nonce);
+
+		byte[] key = null;
+		try {
+			key = unsignedKey(new ElGamal(keys).decryptWithPrivateKey(block));
+			if(key == null) {
+				Printer.printError(this, "decryptWithPrivateKey", "wrong key");
+				return null;
+			}
+			ByteBuffer res = ByteBuffer.allocate(src.remaining() - GCMMode.TAG_LENGTH);
+			newMode(key).decrypt(nonce, aad, src, res);
+			return res.array();
+		} catch (AEADBadTagException e) {
+			Printer.printError(this, "decryptWithPrivateKey", "wrong key or modified data");
+			return null;
+		} catch (InvalidKeyException | RuntimeException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			if(key != null)
+				Arrays.fill(key, (byte) 0);
+		}
+	}
+
+	private static GCMMode newMode(byte[] key) throws InvalidKeyException {
+		return new GCMMode(new gnu.crypto.cipher.Serpent(), key);
+	}
+
+	/**
+	 * The decrypted ElGamal block lost the leading zeros of the key.
+	 */
+	private static byte[] unsignedKey(byte[] decrypted) {
+		if(decrypted.length > KEY_LENGTH)
+			return null;
+		byte[] key = new byte[KEY_LENGTH];
+		System.arraycopy(decrypted, 0, key, KEY_LENGTH - decrypted.length, decrypted.length);
+		Arrays.fill(decrypted, (byte) 0);
+		return key;
+	}
+}
@@ -0,0 +1,212 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of precomputed ElGamal encryption nonces (k, g^k, y^k), one queue per recipient
+ * public key. The queues are filled in background by low priority threads (one per core),
+ * so an encryption only costs one modular multiplication (m * y^k mod p) when the pool
+ * is ready. Each nonce is given only once.
+ * @author Julien Prudhomme
+ *
+ */
+public class ElGamalNoncePool {
+
+	private static final int POOL_SIZE = 16;		// nonces kept per recipient
+	private static final int LOW_WATER = 4;			// refill below this size
+	private static final int MAX_RECIPIENTS = 64;	// least recently used recipients are forgotten
+
+	private static ElGamalNoncePool instance = null;
+
+	private final SecureRandom random = new SecureRandom();
+	private final ExecutorService executor;
+	private final LinkedHashMap<String, Recipient> recipients;
+	private final int poolSize;
+
+	/**
+	 * @param parallelism - number of background threads
+	 * @param poolSize - nonces kept per recipient
+	 */
+	public ElGamalNoncePool(int parallelism, int poolSize) {
+		this.poolSize = poolSize;
+		this.recipients = new LinkedHashMap<String, Recipient>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Recipient> eldest) {
+				return size() > MAX_RECIPIENTS;
+			}
+		};
+		this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ElGamalNoncePool-" + count.incrementAndGet());
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY); // only idle cores
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Get the pool shared by all the encryptions, one thread per core.
+	 * @return
+	 */
+	public static synchronized ElGamalNoncePool getInstance() {
+		if(instance == null)
+			instance = new ElGamalNoncePool(Runtime.getRuntime().availableProcessors(), POOL_SIZE);
+		return instance;
+	}
+
+	/**
+	 * Precomputed values for one encryption.
+	 */
+	public static class Nonce {
+		private final BigInteger k;
+		private final BigInteger gk;
+		private final BigInteger yk;
+
+		private Nonce(BigInteger k, BigInteger gk, BigInteger yk) {
+			this.k = k;
+			this.gk = gk;
+			this.yk = yk;
+		}
+
+		public BigInteger getK() {
+			return k;
+		}
+
+		/**
+		 * @return g^k mod p
+		 */
+		public BigInteger getGK() {
+			return gk;
+		}
+
+		/**
+		 * @return y^k mod p
+		 */
+		public BigInteger getYK() {
+			return yk;
+		}
+	}
+
+	/**
+	 * Ask the pool to prepare nonces for a recipient, before encrypting for it
+	 * (a message sent to many users, the AV protocol participants...).
+	 * @param keys - the recipient public keys
+	 */
+	public void prepare(AsymKeysImpl keys) {
+		refill(recipient(keys), keys);
+	}
+
+	/**
+	 * Take a fresh nonce for the recipient. It is computed by the caller if the pool is empty.
+	 * @param keys - the recipient public keys
+	 * @return a nonce never given before.
+	 */
+	public Nonce take(AsymKeysImpl keys) {
+		Recipient r = recipient(keys);
+		Nonce n = r.nonces.poll();
+		if(n != null)
+			r.size.decrementAndGet();
+		refill(r, keys);
+		return n != null ? n : newNonce(keys);
+	}
+
+	/**
+	 * Number of nonces ready for the recipient.
+	 * @param keys
+	 * @return
+	 */
+	public int available(AsymKeysImpl keys) {
+		return recipient(keys).size.get();
+	}
+
+	/**
+	 * Stop the threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private Recipient recipient(AsymKeysImpl keys) {
+		String id = keys.getP().toString(16) + ":" + keys.getG().toString(16) + ":" + keys.getPublicKey().toString(16);
+		synchronized(recipients) {
+			Recipient r = recipients.get(id);
+			if(r == null) {
+				r = new Recipient();
+				recipients.put(id, r);
+			}
+			return r;
+		}
+	}
+
+	private void refill(final Recipient r, final AsymKeysImpl keys) {
+		if(r.size.get() + r.pending.get() >= LOW_WATER)
+			return;
+		int missing = poolSize - r.size.get() - r.pending.get();
+		for(int i = 0; i < missing; i++) {
+			r.pending.incrementAndGet();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							r.nonces.add(newNonce(keys));
+							r.size.incrementAndGet();
+						} catch(RuntimeException e) {
+							e.printStackTrace();
+						} finally {
+							r.pending.decrementAndGet();
+						}
+					}
+				});
+			} catch(RuntimeException e) { // pool stopped
+				r.pending.decrementAndGet();
+				return;
+			}
+		}
+	}
+
+	private Nonce newNonce(AsymKeysImpl keys) {
+		BigInteger p = keys.getP();
+		BigInteger pMinusTwo = p.subtract(BigInteger.valueOf(2));
+		BigInteger k;
+		do {
+			k = new BigInteger(p.bitLength() - 1, random);
+		} while(k.signum() == 0 || k.compareTo(pMinusTwo) > 0);
+		return new Nonce(k, keys.getG().modPow(k, p), keys.getPublicKey().modPow(k, p));
+	}
+
+	private static class Recipient {
+		private final ConcurrentLinkedQueue<Nonce> nonces = new ConcurrentLinkedQueue<Nonce>();
+		private final AtomicInteger size = new AtomicInteger();		// nonces in the queue
+		private final AtomicInteger pending = new AtomicInteger();	// nonces being computed
+	}
+}
@@ -0,0 +1,286 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import util.Printer;
+
+/**
+ * ElGamal signing engine.
+ * The nonce k is drawn directly from the units of Z/(p-1) instead of generating a
+ * probable prime for each signature. In deterministic mode k is derived from the private
+ * key and the message with HMAC-SHA256 (RFC 6979, section 3.2), so signing twice the same
+ * message with the same key gives the same signature.
+ * Signatures are ElGamalSign objects checked by ElGamal.verifySignature.
+ * @author Julien Prudhomme
+ *
+ */
+public class ElGamalSigner {
+
+	/**
+	 * How the per-signature nonce is chosen.
+	 */
+	public static enum NONCE {
+		RANDOM,					// k drawn with a SecureRandom
+		DETERMINISTIC			// k derived from private key and message (RFC 6979)
+	};
+
+	private static final String HMAC = "HmacSHA256";
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private AsymKeysImpl keys;
+	private NONCE nonce;
+	private SecureRandom random;
+
+	/**
+	 * Create a signer with random nonces.
+	 * @param keys - keys containing the clear private key.
+	 */
+	public ElGamalSigner(AsymKeysImpl keys) {
+		this(keys, NONCE.RANDOM, new SecureRandom());
+	}
+
+	/**
+	 * Create a signer
+	 * @param keys - keys containing the clear private key.
+	 * @param nonce - the nonce generation mode
+	 * @param random - used only in RANDOM mode
+	 */
+	public ElGamalSigner(AsymKeysImpl keys, NONCE nonce, SecureRandom random) {
+		this.keys = keys;
+		this.nonce = nonce;
+		this.random = random;
+	}
+
+	/**
+	 * Return the integer that is really signed for the message M.
+	 * Kept identical to the previous implementation (hexadecimal SHA-256 string as bytes).
+	 * @param M
+	 * @return
+	 */
+	public static BigInteger messageRepresentative(byte[] M) {
+		return digestRepresentative(messageDigest(M));
+	}
+	
+	/**
+	 * Same as messageRepresentative, from the SHA-256 of the message.
+	 * The hexadecimal string is written directly as ASCII bytes.
+	 * @param digest - SHA-256 of the message
+	 * @return
+	 */
+	public static BigInteger digestRepresentative(byte[] digest) {
+		byte[] ascii = new byte[digest.length * 2];
+		for(int i = 0; i < digest.length; i++) {
+			ascii[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+			ascii[2 * i + 1] = HEX[digest[i] & 0xF];
+		}
+		return new BigInteger(ascii);
+	}
+	
+	/**
+	 * SHA-256 of the message, as used to sign it.
+	 * @param M
+	 * @return
+	 */
+	public static byte[] messageDigest(byte[] M) {
+		try {
+			return sha256(M);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Sign the message M
+	 * @param M - byte[]
+	 * @return the signature, null if the private key is unknown.
+	 */
+	public ElGamalSign sign(byte[] M) {
+		return signDigest(messageDigest(M));
+	}
+	
+	/**
+	 * Sign a message given by its SHA-256 (see messageDigest).
+	 * Same signature as sign(M).
+	 * @param digest - SHA-256 of the message
+	 * @return the signature, null if the private key is unknown.
+	 */
+	public ElGamalSign signDigest(byte[] digest) {
+		if(keys == null || keys.getPrivateKey() == null) {
+			Printer.printError(this, "sign", "Private key unknown");
+			return null;
+		}
+		BigInteger p = keys.getP();
+		BigInteger pMinusOne = p.subtract(BigInteger.ONE);
+		BigInteger x = keys.getPrivateKey();
+		BigInteger m = digestRepresentative(digest);
+
+		NonceGenerator generator = newNonceGenerator(digest, pMinusOne, x);
+		while(true) {
+			BigInteger k = generator.next();
+			BigInteger r = keys.getG().modPow(k, p);
+			BigInteger s = k.modInverse(pMinusOne)
+					.multiply(m.subtract(r.multiply(x)))
+					.mod(pMinusOne);
+			if(s.signum() != 0)
+				return new ElGamalSign(r, s);
+		}
+	}
+
+	private NonceGenerator newNonceGenerator(byte[] digest, BigInteger pMinusOne, BigInteger x) {
+		if(nonce == NONCE.DETERMINISTIC) {
+			try {
+				return new DeterministicNonce(pMinusOne, x, digest);
+			} catch (NoSuchAlgorithmException | InvalidKeyException e) {
+				e.printStackTrace(); // fall back on random nonces.
+			}
+		}
+		return new RandomNonce(pMinusOne, random);
+	}
+
+	private static byte[] sha256(byte[] M) throws NoSuchAlgorithmException {
+		return MessageDigest.getInstance("SHA-256").digest(M);
+	}
+
+	/**
+	 * Accept k only if 1 < k < p-1 and k is invertible modulo p-1
+	 * @param k
+	 * @param pMinusOne
+	 * @return
+	 */
+	private static boolean isValidNonce(BigInteger k, BigInteger pMinusOne) {
+		return k.compareTo(BigInteger.ONE) > 0 &&
+				k.compareTo(pMinusOne) < 0 &&
+				k.gcd(pMinusOne).equals(BigInteger.ONE);
+	}
+
+	private static interface NonceGenerator {
+		public BigInteger next();
+	}
+
+	/**
+	 * Uniform nonces in the unit group of Z/(p-1)
+	 */
+	private static class RandomNonce implements NonceGenerator {
+		private BigInteger pMinusOne;
+		private SecureRandom random;
+
+		public RandomNonce(BigInteger pMinusOne, SecureRandom random) {
+			this.pMinusOne = pMinusOne;
+			this.random = random;
+		}
+
+		@Override
+		public BigInteger next() {
+			BigInteger k;
+			do {
+				k = new BigInteger(pMinusOne.bitLength(), random);
+			} while(!isValidNonce(k, pMinusOne));
+			return k;
+		}
+	}
+
+	/**
+	 * HMAC_DRBG nonces as described in RFC 6979, with q = p-1.
+	 */
+	private static class DeterministicNonce implements NonceGenerator {
+		private BigInteger q;
+		private Mac mac;
+		private byte[] K;
+		private byte[] V;
+		private boolean first = true;
+
+		public DeterministicNonce(BigInteger q, BigInteger x, byte[] hash) throws NoSuchAlgorithmException, InvalidKeyException {
+			this.q = q;
+			this.mac = Mac.getInstance(HMAC);
+			int rlen = (q.bitLength() + 7) / 8;
+			byte[] xOctets = int2octets(x, rlen);
+			byte[] hOctets = int2octets(bits2int(hash).mod(q), rlen);
+
+			V = new byte[mac.getMacLength()];
+			Arrays.fill(V, (byte) 0x01);
+			K = new byte[mac.getMacLength()];
+
+			K = hmac(K, V, new byte[] {0x00}, xOctets, hOctets);
+			V = hmac(K, V);
+			K = hmac(K, V, new byte[] {0x01}, xOctets, hOctets);
+			V = hmac(K, V);
+			Arrays.fill(xOctets, (byte) 0);
+		}
+
+		@Override
+		public BigInteger next() {
+			try {
+				while(true) {
+					if(!first) {
+						K = hmac(K, V, new byte[] {0x00});
+						V = hmac(K, V);
+					}
+					first = false;
+					byte[] T = new byte[0];
+					while(T.length * 8 < q.bitLength()) {
+						V = hmac(K, V);
+						byte[] tmp = new byte[T.length + V.length];
+						System.arraycopy(T, 0, tmp, 0, T.length);
+						System.arraycopy(V, 0, tmp, T.length, V.length);
+						T = tmp;
+					}
+					BigInteger k = bits2int(T);
+					if(isValidNonce(k, q))
+						return k;
+				}
+			} catch (InvalidKeyException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private BigInteger bits2int(byte[] in) {
+			BigInteger v = new BigInteger(1, in);
+			int blen = in.length * 8;
+			if(blen > q.bitLength())
+				v = v.shiftRight(blen - q.bitLength());
+			return v;
+		}
+
+		private static byte[] int2octets(BigInteger v, int rlen) {
+			byte[] out = v.toByteArray();
+			if(out.length == rlen)
+				return out;
+			byte[] res = new byte[rlen];
+			if(out.length > rlen)
+				System.arraycopy(out, out.length - rlen, res, 0, rlen);
+			else
+				System.arraycopy(out, 0, res, rlen - out.length, out.length);
+			return res;
+		}
+
+		private byte[] hmac(byte[] key, byte[]... data) throws InvalidKeyException {
+			mac.init(new SecretKeySpec(key, HMAC));
+			for(byte[] d : data)
+				mac.update(d);
+			return mac.doFinal();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fixed-base modular exponentiation g^x mod p.
+ * All the keys of the application share the same p and g, so g^x is computed with
+ * precomputed tables g^(d*2^(8i)) (one table per byte of the exponent) : an exponentiation
+ * then costs one Montgomery multiplication per non-zero byte of x instead of a full
+ * square-and-multiply.
+ * Tables are kept in a small LRU cache keyed by (g, p) and are only built once a pair
+ * has been used a few times. Without table, it falls back on BigInteger.modPow.
+ * The table read at each step is indexed by a byte of x, so the memory access pattern (and
+ * the cache timing) leaks the exponent : only use it with public exponents (verifications,
+ * batch checks). Private keys, nonces and masks go through BigInteger.modPow.
+ * @author Julien Prudhomme
+ *
+ */
+public class FixedBase {
+
+	private static final int WINDOW = 8;				// bits per table, one table per byte
+	private static final int MAX_TABLES = 4;			// about 4MB per 1024-bit table
+	private static final int BUILD_THRESHOLD = 4;		// uses of (g, p) before building its table
+	private static final int MAX_BITS = 4096;			// bigger moduli always use modPow
+
+	private static final Map<Key, FixedBase> tables = new LinkedHashMap<Key, FixedBase>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, FixedBase> eldest) {
+			return size() > MAX_TABLES;
+		}
+	};
+	private static final HashMap<Key, Integer> uses = new HashMap<Key, Integer>();
+
+	/**
+	 * Compute g^x mod p, using the precomputed table of (g, p) if any.
+	 * Same result as g.modPow(x, p).
+	 * x must be public, see the class comment.
+	 * @param g
+	 * @param x
+	 * @param p
+	 * @return
+	 */
+	public static BigInteger modPow(BigInteger g, BigInteger x, BigInteger p) {
+		FixedBase table = getTable(g, p);
+		if(table == null)
+			return g.modPow(x, p);
+		return table.pow(x);
+	}
+
+	/**
+	 * Build now the table for (g, p), instead of waiting for BUILD_THRESHOLD uses.
+	 * @param g
+	 * @param p
+	 */
+	public static void precompute(BigInteger g, BigInteger p) {
+		if(!isUsable(g, p))
+			return;
+		Key key = new Key(g, p);
+		synchronized (tables) {
+			if(tables.containsKey(key))
+				return;
+		}
+		FixedBase table = new FixedBase(g, p);
+		synchronized (tables) {
+			tables.put(key, table);
+		}
+	}
+
+	private static FixedBase getTable(BigInteger g, BigInteger p) {
+		if(!isUsable(g, p))
+			return null;
+		Key key = new Key(g, p);
+		synchronized (tables) {
+			FixedBase table = tables.get(key);
+			if(table != null)
+				return table;
+			Integer count = uses.get(key);
+			count = count == null ? 1 : count + 1;
+			if(count < BUILD_THRESHOLD) {
+				if(uses.size() > 64 * MAX_TABLES)
+					uses.clear();
+				uses.put(key, count);
+				return null;
+			}
+			uses.remove(key);
+		}
+		FixedBase table = new FixedBase(g, p);
+		synchronized (tables) {
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Montgomery arithmetic needs an odd modulus, and 1 < g < p.
+	 */
+	private static boolean isUsable(BigInteger g, BigInteger p) {
+		return p.testBit(0) && p.bitLength() > 32 && p.bitLength() <= MAX_BITS &&
+				g.compareTo(BigInteger.ONE) > 0 && g.compareTo(p) < 0;
+	}
+
+	///// TABLE \\\\\
+
+	private BigInteger g;
+	private BigInteger p;
+	private BigInteger order;		// p-1 if p is prime, null otherwise
+	private Montgomery mont;
+	private int[][][] table;		// table[i][d] = g^(d*2^(8i)) in Montgomery form
+
+	private FixedBase(BigInteger g, BigInteger p) {
+		this.g = g;
+		this.p = p;
+		this.order = p.isProbablePrime(40) ? p.subtract(BigInteger.ONE) : null;
+		this.mont = new Montgomery(p);
+
+		int rows = (p.bitLength() + WINDOW - 1) / WINDOW;
+		int size = 1 << WINDOW;
+		int[] t = mont.newScratch();
+		table = new int[rows][size][];
+		int[] base = mont.toMontgomery(g);
+		for(int i = 0; i < rows; i++) {
+			table[i][1] = base;
+			for(int d = 2; d < size; d++) {
+				table[i][d] = new int[base.length];
+				mont.multiply(table[i][d - 1], base, table[i][d], t);
+			}
+			int[] next = new int[base.length];
+			mont.multiply(table[i][size - 1], base, next, t);
+			base = next;
+		}
+	}
+
+	private BigInteger pow(BigInteger x) {
+		if(x.signum() < 0 || x.bitLength() > table.length * WINDOW) {
+			if(order == null)
+				return g.modPow(x, p);
+			x = x.mod(order);
+		}
+		byte[] bytes = x.toByteArray();
+		int[] acc = mont.one();
+		int[] t = mont.newScratch();
+		for(int i = 0; i < table.length && i < bytes.length; i++) {
+			int d = bytes[bytes.length - 1 - i] & 0xff;
+			if(d != 0)
+				mont.multiply(acc, table[i][d], acc, t);
+		}
+		return mont.fromMontgomery(acc, t);
+	}
+
+	private static class Key {
+		private BigInteger g;
+		private BigInteger p;
+
+		public Key(BigInteger g, BigInteger p) {
+			this.g = g;
+			this.p = p;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * g.hashCode() + p.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return g.equals(k.g) && p.equals(k.p);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import gnu.crypto.cipher.IBlockCipher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.crypto.AEADBadTagException;
+
+/**
+ * Galois/Counter Mode (NIST SP 800-38D) over any 128 bits block cipher, with 96 bits nonces
+ * and 128 bits tags. The key schedule and the GHASH tables are computed once per key,
+ * then messages of any size are processed by chunks, without allocation per block,
+ * from ByteBuffers or streams. Thread safe : each message has its own state.
+ * @author Julien Prudhomme
+ *
+ */
+public class GCMMode {
+
+	public static final int BLOCK_SIZE = 16;
+	public static final int NONCE_LENGTH = 12;
+	public static final int TAG_LENGTH = 16;
+	private static final int CHUNK = 4096;
+
+	// reduction of the 4 bits shifted out of the GHASH accumulator
+	private static final int[] LAST4 = {
+		0x0000, 0x1c20, 0x3840, 0x2460, 0x7080, 0x6ca0, 0x48c0, 0x54e0,
+		0xe100, 0xfd20, 0xd940, 0xc560, 0x9180, 0x8da0, 0xa9c0, 0xb5e0
+	};
+
+	private IBlockCipher cipher;
+	private long[] HH = new long[16];		// multiples of H used by GHASH (4 bits tables)
+	private long[] HL = new long[16];
+
+	/**
+	 * @param cipher - a 128 bits block cipher (not initialized), owned by this object.
+	 * @param key - the secret key, can be cleared after the call.
+	 * @throws InvalidKeyException
+	 */
+	public GCMMode(IBlockCipher cipher, byte[] key) throws InvalidKeyException {
+		HashMap<String, Object> attributes = new HashMap<String, Object>();
+		attributes.put(IBlockCipher.KEY_MATERIAL, key);
+		attributes.put(IBlockCipher.CIPHER_BLOCK_SIZE, Integer.valueOf(BLOCK_SIZE));
+		cipher.init(attributes);
+		this.cipher = cipher;
+
+		byte[] h = new byte[BLOCK_SIZE];
+		cipher.encryptBlock(h, 0, h, 0);
+		long vh = readLong(h, 0);
+		long vl = readLong(h, 8);
+		HH[8] = vh;
+		HL[8] = vl;
+		for(int i = 4; i > 0; i >>= 1) {
+			long t = (vl & 1) != 0 ? 0xe100000000000000L : 0;
+			vl = (vh << 63) | (vl >>> 1);
+			vh = (vh >>> 1) ^ t;
+			HH[i] = vh;
+			HL[i] = vl;
+		}
+		for(int i = 2; i <= 8; i *= 2) {
+			vh = HH[i];
+			vl = HL[i];
+			for(int j = 1; j < i; j++) {
+				HH[i + j] = vh ^ HH[j];
+				HL[i + j] = vl ^ HL[j];
+			}
+		}
+	}
+
+	///// BUFFERS \\\\\
+
+	/**
+	 * Encrypt src.remaining() bytes of src into dst, followed by the tag.
+	 * @param nonce - 12 bytes, never reuse a nonce with the same key.
+	 * @param aad - additional authenticated data, can be null.
+	 * @param src
+	 * @param dst - needs src.remaining() + TAG_LENGTH bytes.
+	 * @return number of bytes written in dst.
+	 */
+	public int encrypt(byte[] nonce, byte[] aad, ByteBuffer src, ByteBuffer dst) {
+		Message msg = new Message(nonce, aad);
+		int written = 0;
+		while(src.hasRemaining()) {
+			int n = Math.min(CHUNK, src.remaining());
+			src.get(msg.chunk, 0, n);
+			msg.crypt(msg.chunk, 0, n);
+			msg.ghash(msg.chunk, 0, n);
+			dst.put(msg.chunk, 0, n);
+			written += n;
+		}
+		dst.put(msg.tag());
+		return written + TAG_LENGTH;
+	}
+
+	/**
+	 * Check the tag then decrypt src (ciphertext followed by the tag) into dst.
+	 * Nothing is written in dst if the tag is wrong.
+	 * @param nonce - the nonce used for encryption
+	 * @param aad - additional authenticated data, can be null.
+	 * @param src
+	 * @param dst - needs src.remaining() - TAG_LENGTH bytes.
+	 * @return number of bytes written in dst.
+	 * @throws AEADBadTagException if the data or the aad were modified, or the key is wrong.
+	 */
+	public int decrypt(byte[] nonce, byte[] aad, ByteBuffer src, ByteBuffer dst) throws AEADBadTagException {
+		int length = src.remaining() - TAG_LENGTH;
+		if(length < 0)
+			throw new AEADBadTagException("data too short");
+		Message msg = new Message(nonce, aad);
+		ByteBuffer cypher = src.duplicate();
+		cypher.limit(cypher.position() + length);
+		while(cypher.hasRemaining()) {
+			int n = Math.min(CHUNK, cypher.remaining());
+			cypher.get(msg.chunk, 0, n);
+			msg.ghash(msg.chunk, 0, n);
+		}
+		byte[] tag = new byte[TAG_LENGTH];
+		ByteBuffer received = src.duplicate();
+		received.position(src.position() + length);
+		received.get(tag);
+		if(!MessageDigest.isEqual(tag, msg.tag()))
+			throw new AEADBadTagException("wrong tag");
+
+		for(int done = 0; done < length; ) {
+			int n = Math.min(CHUNK, length - done);
+			src.get(msg.chunk, 0, n);
+			msg.crypt(msg.chunk, 0, n);
+			dst.put(msg.chunk, 0, n);
+			done += n;
+		}
+		src.position(src.position() + TAG_LENGTH);
+		return length;
+	}
+
+	///// STREAMS \\\\\
+
+	/**
+	 * Encrypt the whole input stream, writing the ciphertext then the tag.
+	 * The streams are not closed.
+	 * @param nonce - 12 bytes, never reuse a nonce with the same key.
+	 * @param aad - additional authenticated data, can be null.
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	public void encrypt(byte[] nonce, byte[] aad, InputStream in, OutputStream out) throws IOException {
+		Message msg = new Message(nonce, aad);
+		int n;
+		while((n = in.read(msg.chunk, 0, CHUNK)) != -1) {
+			msg.crypt(msg.chunk, 0, n);
+			msg.ghash(msg.chunk, 0, n);
+			out.write(msg.chunk, 0, n);
+		}
+		out.write(msg.tag());
+	}
+
+	/**
+	 * Decrypt the whole input stream (ciphertext then tag).
+	 * The clear data is written as it is decrypted : if AEADBadTagException is thrown,
+	 * everything written in out must be discarded. The streams are not closed.
+	 * @param nonce - the nonce used for encryption
+	 * @param aad - additional authenticated data, can be null.
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 * @throws AEADBadTagException if the data or the aad were modified, or the key is wrong.
+	 */
+	public void decrypt(byte[] nonce, byte[] aad, InputStream in, OutputStream out) throws IOException, AEADBadTagException {
+		Message msg = new Message(nonce, aad);
+		byte[] buffer = new byte[CHUNK + TAG_LENGTH];
+		int held = 0;		// last bytes read, can be the tag
+		int n;
+		while((n = in.read(buffer, held, CHUNK)) != -1) {
+			held += n;
+			int ready = held - TAG_LENGTH;
+			if(ready <= 0)
+				continue;
+			msg.ghash(buffer, 0, ready);
+			msg.crypt(buffer, 0, ready);
+			out.write(buffer, 0, ready);
+			System.arraycopy(buffer, ready, buffer, 0, TAG_LENGTH);
+			held = TAG_LENGTH;
+		}
+		if(held != TAG_LENGTH || !MessageDigest.isEqual(Arrays.copyOf(buffer, TAG_LENGTH), msg.tag()))
+			throw new AEADBadTagException("wrong tag");
+	}
+
+	/**
+	 * Forget the key : the GHASH tables are cleared and the block cipher is reset.
+	 * This object can't be used anymore.
+	 */
+	public void destroy() {
+		Arrays.fill(HH, 0);
+		Arrays.fill(HL, 0);
+		cipher.reset();
+	}
+
+	///// GHASH \\\\\
+
+	/**
+	 * x = x * H in GF(2^128)
+	 */
+	private void multiplyH(long[] x) {
+		long xh = x[0], xl = x[1];
+		int lo = (int) (xl & 0xf);
+		long zh = HH[lo], zl = HL[lo];
+		for(int i = 15; i >= 0; i--) {
+			int b = (int) ((i < 8 ? xh >>> (8 * (7 - i)) : xl >>> (8 * (15 - i))) & 0xff);
+			lo = b & 0xf;
+			int hi = b >>> 4;
+			int rem;
+			if(i != 15) {
+				rem = (int) (zl & 0xf);
+				zl = (zh << 60) | (zl >>> 4);
+				zh = (zh >>> 4) ^ ((long) LAST4[rem] << 48);
+				zh ^= HH[lo];
+				zl ^= HL[lo];
+			}
+			rem = (int) (zl & 0xf);
+			zl = (zh << 60) | (zl >>> 4);
+			zh = (zh >>> 4) ^ ((long) LAST4[rem] << 48);
+			zh ^= HH[hi];
+			zl ^= HL[hi];
+		}
+		x[0] = zh;
+		x[1] = zl;
+	}
+
+	private static long readLong(byte[] b, int off) {
+		long v = 0;
+		for(int i = 0; i < 8; i++)
+			v = (v << 8) | (b[off + i] & 0xff);
+		return v;
+	}
+
+	private static void writeLong(long v, byte[] b, int off) {
+		for(int i = 7; i >= 0; i--) {
+			b[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	/**
+	 * State of one message : counter, keystream and GHASH accumulator.
+	 */
+	private class Message {
+		private byte[] chunk = new byte[CHUNK];
+		private byte[] counter = new byte[BLOCK_SIZE];
+		private byte[] keystream = new byte[BLOCK_SIZE];
+		private int used = BLOCK_SIZE;				// keystream bytes already used
+		private byte[] tagMask = new byte[BLOCK_SIZE];
+		private long[] x = new long[2];				// GHASH accumulator
+		private byte[] partial = new byte[BLOCK_SIZE];
+		private int partialLength = 0;
+		private long aadLength;
+		private long dataLength = 0;
+
+		public Message(byte[] nonce, byte[] aad) {
+			if(nonce == null || nonce.length != NONCE_LENGTH)
+				throw new IllegalArgumentException("nonce must be " + NONCE_LENGTH + " bytes");
+			System.arraycopy(nonce, 0, counter, 0, NONCE_LENGTH);
+			counter[BLOCK_SIZE - 1] = 1;
+			cipher.encryptBlock(counter, 0, tagMask, 0);
+			if(aad != null) {
+				ghash(aad, 0, aad.length);
+				flush();
+			}
+			aadLength = aad == null ? 0 : aad.length;
+			dataLength = 0;
+		}
+
+		/**
+		 * Xor data with the keystream (CTR), in place.
+		 */
+		public void crypt(byte[] data, int off, int len) {
+			for(int i = off; i < off + len; i++) {
+				if(used == BLOCK_SIZE) {
+					increment();
+					cipher.encryptBlock(counter, 0, keystream, 0);
+					used = 0;
+				}
+				data[i] ^= keystream[used++];
+			}
+		}
+
+		private void increment() {
+			for(int i = BLOCK_SIZE - 1; i >= NONCE_LENGTH; i--) {
+				if(++counter[i] != 0)
+					break;
+			}
+		}
+
+		/**
+		 * Add ciphertext (or aad) bytes to GHASH
+		 */
+		public void ghash(byte[] data, int off, int len) {
+			dataLength += len;
+			int i = off, end = off + len;
+			if(partialLength > 0) {
+				while(partialLength < BLOCK_SIZE && i < end)
+					partial[partialLength++] = data[i++];
+				if(partialLength < BLOCK_SIZE)
+					return;
+				block(partial, 0);
+				partialLength = 0;
+			}
+			for(; i + BLOCK_SIZE <= end; i += BLOCK_SIZE)
+				block(data, i);
+			while(i < end)
+				partial[partialLength++] = data[i++];
+		}
+
+		private void block(byte[] b, int off) {
+			x[0] ^= readLong(b, off);
+			x[1] ^= readLong(b, off + 8);
+			multiplyH(x);
+		}
+
+		/**
+		 * Pad the last incomplete block with zeros
+		 */
+		private void flush() {
+			if(partialLength > 0) {
+				Arrays.fill(partial, partialLength, BLOCK_SIZE, (byte) 0);
+				block(partial, 0);
+				partialLength = 0;
+			}
+		}
+
+		public byte[] tag() {
+			flush();
+			x[0] ^= aadLength * 8;
+			x[1] ^= dataLength * 8;
+			multiplyH(x);
+			byte[] tag = new byte[TAG_LENGTH];
+			writeLong(x[0], tag, 0);
+			writeLong(x[1], tag, 8);
+			for(int i = 0; i < TAG_LENGTH; i++)
+				tag[i] ^= tagMask[i];
+			return tag;
+		}
+	}
+}
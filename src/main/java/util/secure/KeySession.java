@@ -0,0 +1,86 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+/**
+ * Key material of a logged user, derived once at login and cleared at logout.
+ * It holds the password derived SerpentGCM key (PBKDF2 and Serpent key schedule done once)
+ * and a copy of the user keys with the clear private key, checked once against the public key.
+ * Every operation of the session (signing, favorites, conversations, saving) reuses it.
+ * @author Julien Prudhomme
+ *
+ */
+public class KeySession {
+	private SerpentGCM cipher;
+	private AsymKeysImpl keys;
+	private boolean valid;
+	
+	/**
+	 * Open a session : derive the key from the password and decrypt the private key.
+	 * @param keys - the user keys (encrypted private key)
+	 * @param password
+	 */
+	public KeySession(AsymKeysImpl keys, String password) {
+		this(keys, new SerpentGCM(password));
+	}
+	
+	/**
+	 * Open a session with an already derived key.
+	 * @param keys - the user keys (encrypted private key)
+	 * @param cipher - owned by the session from now.
+	 */
+	public KeySession(AsymKeysImpl keys, SerpentGCM cipher) {
+		this.cipher = cipher;
+		this.keys = keys.copy();
+		this.valid = this.keys.getPrivateKey() != null || this.keys.decryptPrivateKey(cipher);
+	}
+	
+	/**
+	 * The password derived key, to encrypt or decrypt the user data.
+	 * @return null if the session is closed.
+	 */
+	public SerpentGCM getCipher() {
+		return cipher;
+	}
+	
+	/**
+	 * User keys with the clear private key, for signing. They must not be modified.
+	 * @return null if the session is closed, the private key is null if the password is wrong.
+	 */
+	public AsymKeysImpl getKeys() {
+		return keys;
+	}
+	
+	/**
+	 * @return true if the private key was decrypted and the session is not closed.
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+	
+	/**
+	 * Clear the key material. The session can't be used anymore.
+	 */
+	public void close() {
+		if(cipher != null)
+			cipher.destroy();
+		cipher = null;
+		if(keys != null)
+			keys.setPrivateKey(null);
+		keys = null;
+		valid = false;
+	}
+}
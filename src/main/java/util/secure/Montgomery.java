@@ -0,0 +1,156 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Montgomery arithmetic modulo an odd p, on little-endian arrays of 32-bit words.
+ * Used by the exponentiation helpers (FixedBase, ElGamalBatch), much faster than
+ * BigInteger.multiply().mod() for repeated products.
+ * Values handled by multiply are in Montgomery form (x*R mod p, R = 2^(32n)).
+ * @author Julien Prudhomme
+ *
+ */
+class Montgomery {
+
+	private BigInteger p;
+	private int n;					// words of p
+	private int[] m;				// p
+	private int mInv;				// -p^-1 mod 2^32
+	private BigInteger R;
+
+	/**
+	 * @param p - an odd modulus
+	 */
+	public Montgomery(BigInteger p) {
+		if(!p.testBit(0) || p.signum() <= 0)
+			throw new IllegalArgumentException("Montgomery needs an odd modulus");
+		this.p = p;
+		this.n = (p.bitLength() + 31) / 32;
+		this.m = toWords(p, n);
+		this.mInv = -BigInteger.valueOf(m[0] & 0xffffffffL).modInverse(BigInteger.ONE.shiftLeft(32)).intValue();
+		this.R = BigInteger.ONE.shiftLeft(32 * n);
+	}
+
+	/**
+	 * @return a new scratch space for multiply
+	 */
+	public int[] newScratch() {
+		return new int[n + 2];
+	}
+
+	/**
+	 * @return 1 in Montgomery form
+	 */
+	public int[] one() {
+		return toWords(R.mod(p), n);
+	}
+
+	/**
+	 * Convert x into Montgomery form.
+	 * @param x
+	 * @return
+	 */
+	public int[] toMontgomery(BigInteger x) {
+		return toWords(x.multiply(R).mod(p), n);
+	}
+
+	/**
+	 * Convert a value back from Montgomery form.
+	 * @param a
+	 * @param t - scratch space
+	 * @return
+	 */
+	public BigInteger fromMontgomery(int[] a, int[] t) {
+		int[] unit = new int[n];
+		unit[0] = 1;
+		int[] out = new int[n];
+		multiply(a, unit, out, t);
+		return fromWords(out);
+	}
+
+	/**
+	 * Montgomery product (CIOS) : out = a*b*R^-1 mod p. out may be a or b.
+	 * @param t - scratch space of n+2 words
+	 */
+	public void multiply(int[] a, int[] b, int[] out, int[] t) {
+		Arrays.fill(t, 0);
+		long mLow = m[0] & 0xffffffffL;
+		for(int i = 0; i < n; i++) {
+			long ai = a[i] & 0xffffffffL;
+			long c = 0;
+			long s;
+			for(int j = 0; j < n; j++) {
+				s = (t[j] & 0xffffffffL) + ai * (b[j] & 0xffffffffL) + c;
+				t[j] = (int) s;
+				c = s >>> 32;
+			}
+			s = (t[n] & 0xffffffffL) + c;
+			t[n] = (int) s;
+			t[n + 1] = (int) (s >>> 32);
+
+			long q = (t[0] * mInv) & 0xffffffffL;
+			s = (t[0] & 0xffffffffL) + q * mLow;
+			c = s >>> 32;
+			for(int j = 1; j < n; j++) {
+				s = (t[j] & 0xffffffffL) + q * (m[j] & 0xffffffffL) + c;
+				t[j - 1] = (int) s;
+				c = s >>> 32;
+			}
+			s = (t[n] & 0xffffffffL) + c;
+			t[n - 1] = (int) s;
+			t[n] = t[n + 1] + (int) (s >>> 32);
+		}
+		if(greaterOrEqual(t)) {
+			long borrow = 0;
+			for(int j = 0; j < n; j++) {
+				long d = (t[j] & 0xffffffffL) - (m[j] & 0xffffffffL) - borrow;
+				out[j] = (int) d;
+				borrow = d >>> 63;
+			}
+		} else {
+			System.arraycopy(t, 0, out, 0, n);
+		}
+	}
+
+	private boolean greaterOrEqual(int[] t) {
+		if(t[n] != 0)
+			return true;
+		for(int j = n - 1; j >= 0; j--) {
+			if(t[j] != m[j])
+				return (t[j] ^ Integer.MIN_VALUE) > (m[j] ^ Integer.MIN_VALUE);
+		}
+		return true;
+	}
+
+	private static int[] toWords(BigInteger v, int n) {
+		int[] words = new int[n];
+		byte[] bytes = v.toByteArray();
+		for(int i = 0; i < bytes.length && i / 4 < n; i++)
+			words[i / 4] |= (bytes[bytes.length - 1 - i] & 0xff) << (8 * (i % 4));
+		return words;
+	}
+
+	private static BigInteger fromWords(int[] words) {
+		byte[] bytes = new byte[words.length * 4];
+		for(int i = 0; i < words.length; i++)
+			for(int k = 0; k < 4; k++)
+				bytes[bytes.length - 1 - (4 * i + k)] = (byte) (words[i] >>> (8 * k));
+		return new BigInteger(1, bytes);
+	}
+}
@@ -0,0 +1,161 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.lang.ref.WeakReference;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.WeakHashMap;
+
+/**
+ * Identifier of a user : his public key, with its hexadecimal form, hashCode and SHA-256
+ * computed once. Instances are interned (weak table), so there is one PublicKeyId per
+ * public key in memory and equals is usually an identity test.
+ * Used as map key by the managers instead of getPublicKey().toString(16).
+ * @author Julien Prudhomme
+ *
+ */
+public final class PublicKeyId {
+	
+	private static final WeakHashMap<PublicKeyId, WeakReference<PublicKeyId>> interned = new WeakHashMap<PublicKeyId, WeakReference<PublicKeyId>>();
+	
+	private final BigInteger key;
+	private final int hash;
+	private volatile String hex;
+	private volatile byte[] digest;
+	
+	private PublicKeyId(BigInteger key) {
+		this.key = key;
+		this.hash = key.hashCode();
+	}
+	
+	/**
+	 * Get the identifier of a public key.
+	 * @param key
+	 * @return null if key is null
+	 */
+	public static PublicKeyId of(BigInteger key) {
+		if(key == null)
+			return null;
+		PublicKeyId id = new PublicKeyId(key);
+		synchronized(interned) {
+			WeakReference<PublicKeyId> ref = interned.get(id);
+			PublicKeyId found = ref == null ? null : ref.get();
+			if(found != null)
+				return found;
+			interned.put(id, new WeakReference<PublicKeyId>(id));
+			return id;
+		}
+	}
+	
+	/**
+	 * Get the identifier of a public key in hexadecimal (as getPublicKey().toString(16)).
+	 * @param hex
+	 * @return null if hex is null or isn't an hexadecimal number.
+	 */
+	public static PublicKeyId of(String hex) {
+		if(hex == null || hex.isEmpty())
+			return null;
+		try {
+			PublicKeyId id = of(new BigInteger(hex, 16));
+			if(id.hex == null && isCanonical(hex))
+				id.hex = hex;
+			return id;
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Written as BigInteger.toString(16) would : lower case, no sign, no leading zero.
+	 */
+	private static boolean isCanonical(String hex) {
+		if(hex.charAt(0) == '0')
+			return hex.length() == 1;
+		for(int i = 0; i < hex.length(); i++) {
+			char c = hex.charAt(i);
+			if(!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f'))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the identifier of the public key of keys.
+	 * @param keys
+	 * @return null if keys or its public key is null
+	 */
+	public static PublicKeyId of(AsymKeysImpl keys) {
+		return keys == null ? null : keys.getPublicKeyId();
+	}
+	
+	public BigInteger getKey() {
+		return key;
+	}
+	
+	/**
+	 * SHA-256 of the public key (two's-complement bytes).
+	 * @return a new array of 32 bytes
+	 */
+	public byte[] getDigest() {
+		byte[] d = digest;
+		if(d == null) {
+			try {
+				d = MessageDigest.getInstance("SHA-256").digest(key.toByteArray());
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			digest = d;
+		}
+		return d.clone();
+	}
+	
+	/**
+	 * Number of identifiers in memory.
+	 * @return
+	 */
+	static int internedCount() {
+		synchronized(interned) {
+			return interned.size();
+		}
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if(o == this)
+			return true;
+		return o instanceof PublicKeyId && key.equals(((PublicKeyId) o).key);
+	}
+	
+	/**
+	 * The public key in hexadecimal, same as getKey().toString(16)
+	 */
+	@Override
+	public String toString() {
+		String h = hex;
+		if(h == null) {
+			h = key.toString(16);
+			hex = h;
+		}
+		return h;
+	}
+}
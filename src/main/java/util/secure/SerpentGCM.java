@@ -0,0 +1,330 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import util.Hexa;
+import util.Printer;
+import util.secure.encryptionInterface.SymEncryption;
+
+/**
+ * Authenticated Serpent encryption (GCM mode) for various length data.
+ * The 256 bits key is derived from the password and a random salt (PBKDF2), the key schedule
+ * is then reused for every message with this salt. Encrypted data format (version 2) :
+ * 'S' 'X' 'P' 0x02 | salt (16 bytes) | nonce (12 bytes) | cypher (same length as the clear data) | tag (16 bytes)
+ * The salt is chosen per user : an instance encrypts with the salt of the first data it
+ * decrypted (the private key of the user, at login), or with a new one if it didn't decrypt
+ * anything before. A precomputed dictionary of passwords is then useless for the other users.
+ * Data of the version 1 (the same salt for everyone, no salt in the header) and of the old
+ * util.secure.Serpent format (without header) can still be decrypted.
+ * @author Julien Prudhomme
+ *
+ */
+public class SerpentGCM implements SymEncryption<byte[], String> {
+
+	public static final byte[] HEADER = {'S', 'X', 'P', 0x02};
+	public static final int SALT_LENGTH = 16;
+	public static final int OVERHEAD = HEADER.length + SALT_LENGTH + GCMMode.NONCE_LENGTH + GCMMode.TAG_LENGTH;
+
+	private static final byte[] HEADER_V1 = {'S', 'X', 'P', 0x01};
+	private static final int OVERHEAD_V1 = HEADER_V1.length + GCMMode.NONCE_LENGTH + GCMMode.TAG_LENGTH;
+	private static final byte[] SALT_V1 = "SXP-Serpent-GCM".getBytes();
+	private static final int ITERATIONS = 10000;
+	private static final int KEY_LENGTH = 32;
+	private static final int MAX_KEYS = 4;	// derived keys kept, one per salt
+
+	private LinkedHashMap<String, GCMMode> modes = newModes();	// salt -> key schedule
+	private byte[] salt = null;			// salt of the encryptions, chosen at the first use
+	private String password = null;
+	private SecureRandom random = new SecureRandom();
+
+	/**
+	 * Create a new instance with the key derived from the password.
+	 * @param password
+	 */
+	public SerpentGCM(String password) {
+		setSecretKey(password);
+	}
+
+	@Override
+	public synchronized void setSecretKey(String password) {
+		destroy();
+		this.password = password;
+	}
+
+	private static LinkedHashMap<String, GCMMode> newModes() {
+		return new LinkedHashMap<String, GCMMode>(8, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, GCMMode> eldest) {
+				if(size() <= MAX_KEYS)
+					return false;
+				eldest.getValue().destroy();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * The key schedule for this salt, derived from the password the first time.
+	 */
+	private synchronized GCMMode getMode(byte[] salt) {
+		if(password == null)
+			throw new IllegalStateException("destroyed");
+		String id = Hexa.bytesToHex(salt);
+		GCMMode mode = modes.get(id);
+		if(mode != null)
+			return mode;
+		byte[] key = null;
+		try {
+			SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+			PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, KEY_LENGTH * 8);
+			key = factory.generateSecret(spec).getEncoded();
+			spec.clearPassword();
+			mode = new GCMMode(new gnu.crypto.cipher.Serpent(), key);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("invalid key", e);
+		} finally {
+			if(key != null)
+				Arrays.fill(key, (byte) 0);
+		}
+		modes.put(id, mode);
+		return mode;
+	}
+
+	/**
+	 * @return the salt of the encryptions : the one of the first decrypted data, or a new one.
+	 */
+	private synchronized byte[] getSalt() {
+		if(salt == null) {
+			salt = new byte[SALT_LENGTH];
+			random.nextBytes(salt);
+		}
+		return salt;
+	}
+
+	/**
+	 * Keep the salt of authenticated data for the next encryptions, if none is chosen yet.
+	 */
+	private synchronized void adopt(byte[] salt) {
+		if(this.salt == null && salt != SALT_V1)
+			this.salt = salt.clone();
+	}
+
+	/**
+	 * Clear the derived keys, this instance can't be used anymore.
+	 */
+	public synchronized void destroy() {
+		for(GCMMode mode : modes.values())
+			mode.destroy();
+		modes.clear();
+		salt = null;
+		password = null;
+	}
+
+	/**
+	 * @return true if destroy() was called.
+	 */
+	public synchronized boolean isDestroyed() {
+		return password == null;
+	}
+
+	/**
+	 * Check if data is in the authenticated format (else it is the old Serpent format).
+	 * @param data
+	 * @return
+	 */
+	public static boolean isAuthenticated(byte[] data) {
+		return getOverhead(data) > 0;
+	}
+
+	/**
+	 * @return the overhead of this authenticated data (both versions), 0 if it's in the old Serpent format.
+	 */
+	private static int getOverhead(byte[] data) {
+		if(data == null || data.length < OVERHEAD_V1)
+			return 0;
+		if(startsWith(data, HEADER))
+			return data.length < OVERHEAD ? 0 : OVERHEAD;
+		return startsWith(data, HEADER_V1) ? OVERHEAD_V1 : 0;
+	}
+
+	private static boolean startsWith(byte[] data, byte[] header) {
+		for(int i = 0; i < header.length; i++) {
+			if(data[i] != header[i])
+				return false;
+		}
+		return true;
+	}
+
+	/** Authenticated data : the header, and the salt for the version 2 */
+	private static byte[] getAad(byte[] salt) {
+		if(salt == SALT_V1)
+			return HEADER_V1;
+		byte[] aad = Arrays.copyOf(HEADER, HEADER.length + salt.length);
+		System.arraycopy(salt, 0, aad, HEADER.length, salt.length);
+		return aad;
+	}
+
+	/**
+	 * Encrypt the data
+	 * @param data the original data
+	 * @return header, nonce, cypher and tag.
+	 */
+	@Override
+	public byte[] encrypt(byte[] data) {
+		ByteBuffer res = ByteBuffer.allocate(data.length + OVERHEAD);
+		encrypt(ByteBuffer.wrap(data), res);
+		return res.array();
+	}
+
+	/**
+	 * Decrypt the encrypted data (both formats)
+	 * @param data
+	 * @return the original data, null if the data were modified or the password is wrong.
+	 */
+	@Override
+	public byte[] decrypt(byte[] data) {
+		int overhead = getOverhead(data);
+		if(overhead == 0)
+			return new Serpent(password).decrypt(data);
+		ByteBuffer res = ByteBuffer.allocate(data.length - overhead);
+		try {
+			decrypt(ByteBuffer.wrap(data), res);
+		} catch (AEADBadTagException e) {
+			Printer.printError(this, "decrypt", "wrong password or modified data");
+			return null;
+		}
+		return res.array();
+	}
+
+	/**
+	 * Encrypt src.remaining() bytes into dst.
+	 * @param src
+	 * @param dst - needs src.remaining() + OVERHEAD bytes
+	 * @return number of bytes written
+	 */
+	public int encrypt(ByteBuffer src, ByteBuffer dst) {
+		byte[] salt = getSalt();
+		byte[] nonce = newNonce();
+		dst.put(HEADER);
+		dst.put(salt);
+		dst.put(nonce);
+		return OVERHEAD - GCMMode.TAG_LENGTH + getMode(salt).encrypt(nonce, getAad(salt), src, dst);
+	}
+
+	/**
+	 * Decrypt src (header, salt, nonce, cypher and tag) into dst, nothing is written if the data
+	 * can't be authenticated.
+	 * @param src
+	 * @param dst - needs src.remaining() - OVERHEAD bytes (less for the version 1)
+	 * @return number of bytes written
+	 * @throws AEADBadTagException if the data were modified or the password is wrong.
+	 */
+	public int decrypt(ByteBuffer src, ByteBuffer dst) throws AEADBadTagException {
+		if(src.remaining() < OVERHEAD_V1)
+			throw new AEADBadTagException("data too short");
+		byte[] header = new byte[HEADER.length];
+		src.get(header);
+		byte[] salt = readSalt(header);
+		if(src.remaining() < salt.length + GCMMode.NONCE_LENGTH + GCMMode.TAG_LENGTH)
+			throw new AEADBadTagException("data too short");
+		if(salt != SALT_V1)
+			src.get(salt);
+		byte[] nonce = new byte[GCMMode.NONCE_LENGTH];
+		src.get(nonce);
+		int length = getMode(salt).decrypt(nonce, getAad(salt), src, dst);
+		adopt(salt);
+		return length;
+	}
+
+	/**
+	 * @return a buffer for the salt of this version, SALT_V1 for the version 1
+	 * @throws AEADBadTagException if the header is unknown
+	 */
+	private static byte[] readSalt(byte[] header) throws AEADBadTagException {
+		if(Arrays.equals(header, HEADER))
+			return new byte[SALT_LENGTH];
+		if(Arrays.equals(header, HEADER_V1))
+			return SALT_V1;
+		throw new AEADBadTagException("unknown format");
+	}
+
+	/**
+	 * Encrypt a stream of any size. Streams are not closed.
+	 * @param in - clear data
+	 * @param out - encrypted data
+	 * @throws IOException
+	 */
+	public void encrypt(InputStream in, OutputStream out) throws IOException {
+		byte[] salt = getSalt();
+		byte[] nonce = newNonce();
+		out.write(HEADER);
+		out.write(salt);
+		out.write(nonce);
+		getMode(salt).encrypt(nonce, getAad(salt), in, out);
+	}
+
+	/**
+	 * Decrypt a stream of any size. The clear data is written while it is decrypted,
+	 * everything written must be discarded if AEADBadTagException is thrown.
+	 * Streams are not closed.
+	 * @param in - encrypted data
+	 * @param out - clear data
+	 * @throws IOException
+	 * @throws AEADBadTagException if the data were modified or the password is wrong.
+	 */
+	public void decrypt(InputStream in, OutputStream out) throws IOException, AEADBadTagException {
+		byte[] header = new byte[HEADER.length];
+		readFully(in, header);
+		byte[] salt = readSalt(header);
+		if(salt != SALT_V1)
+			readFully(in, salt);
+		byte[] nonce = new byte[GCMMode.NONCE_LENGTH];
+		readFully(in, nonce);
+		getMode(salt).decrypt(nonce, getAad(salt), in, out);
+		adopt(salt);
+	}
+
+	private byte[] newNonce() {
+		byte[] nonce = new byte[GCMMode.NONCE_LENGTH];
+		random.nextBytes(nonce);
+		return nonce;
+	}
+
+	private static void readFully(InputStream in, byte[] b) throws IOException, AEADBadTagException {
+		int off = 0;
+		while(off < b.length) {
+			int n = in.read(b, off, b.length - off);
+			if(n == -1)
+				throw new AEADBadTagException("data too short");
+			off += n;
+		}
+	}
+}
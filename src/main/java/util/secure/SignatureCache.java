@@ -0,0 +1,216 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.VARIABLES;
+
+/**
+ * Bounded cache of the signatures already verified.
+ * An entry is the SHA-256 of (p, g, public key, signature, SHA-256 of the message), so
+ * checking again an unchanged advertisement signed by the same key is a hash lookup.
+ * Only valid signatures are kept. Eviction is LRU, the cache is safe for concurrent use.
+ * @author Julien Prudhomme
+ *
+ */
+public class SignatureCache {
+
+	private static final SignatureCache instance = new SignatureCache(VARIABLES.SignatureCacheSize);
+
+	private final LinkedHashMap<Digest, Boolean> verified;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private int capacity;
+
+	/**
+	 * @param capacity - maximum number of signatures kept
+	 */
+	public SignatureCache(int capacity) {
+		this.capacity = capacity;
+		this.verified = new LinkedHashMap<Digest, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Digest, Boolean> eldest) {
+				return size() > SignatureCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Get the cache shared by all the ElGamal verifications
+	 * @return
+	 */
+	public static SignatureCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Check if this signature of M has already been verified for these keys.
+	 * Counts a hit or a miss.
+	 * @param keys - public keys
+	 * @param M - the message
+	 * @param sign
+	 * @return true if the signature is known to be valid
+	 */
+	public boolean isVerified(AsymKeysImpl keys, byte[] M, ElGamalSign sign) {
+		return isDigestVerified(keys, M == null ? null : ElGamalSigner.messageDigest(M), sign);
+	}
+	
+	/**
+	 * Same as isVerified, with the SHA-256 of the message.
+	 * @param keys - public keys
+	 * @param message - SHA-256 of the message
+	 * @param sign
+	 * @return true if the signature is known to be valid
+	 */
+	public boolean isDigestVerified(AsymKeysImpl keys, byte[] message, ElGamalSign sign) {
+		Digest d = digest(keys, message, sign);
+		boolean found;
+		synchronized (verified) {
+			found = d != null && verified.get(d) != null;
+		}
+		if(found)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return found;
+	}
+
+	/**
+	 * Remember a valid signature.
+	 * @param keys - public keys
+	 * @param M - the message
+	 * @param sign - a signature checked against keys
+	 */
+	public void addVerified(AsymKeysImpl keys, byte[] M, ElGamalSign sign) {
+		addVerifiedDigest(keys, M == null ? null : ElGamalSigner.messageDigest(M), sign);
+	}
+	
+	/**
+	 * Same as addVerified, with the SHA-256 of the message.
+	 * @param keys - public keys
+	 * @param message - SHA-256 of the message
+	 * @param sign - a signature checked against keys
+	 */
+	public void addVerifiedDigest(AsymKeysImpl keys, byte[] message, ElGamalSign sign) {
+		Digest d = digest(keys, message, sign);
+		if(d == null)
+			return;
+		synchronized (verified) {
+			verified.put(d, Boolean.TRUE);
+		}
+	}
+
+	///// STATISTICS \\\\\
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (verified) {
+			return verified.size();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Change the maximum number of entries, evicting the oldest ones if needed.
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		synchronized (verified) {
+			this.capacity = capacity;
+			Iterator<Digest> it = verified.keySet().iterator();
+			while(verified.size() > capacity && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Empty the cache and reset the counters.
+	 */
+	public void clear() {
+		synchronized (verified) {
+			verified.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private static Digest digest(AsymKeysImpl keys, byte[] message, ElGamalSign sign) {
+		if(keys == null || keys.getPublicKey() == null || message == null ||
+				sign == null || sign.getR() == null || sign.getS() == null)
+			return null;
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			update(md, keys.getP());
+			update(md, keys.getG());
+			update(md, keys.getPublicKey());
+			update(md, sign.getR());
+			update(md, sign.getS());
+			md.update(message);
+			return new Digest(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest md, BigInteger v) {
+		byte[] bytes = v == null ? new byte[0] : v.toByteArray();
+		int l = bytes.length;
+		md.update(new byte[] {(byte) (l >>> 24), (byte) (l >>> 16), (byte) (l >>> 8), (byte) l});
+		md.update(bytes);
+	}
+
+	private static class Digest {
+		private byte[] value;
+		private int hash;
+
+		public Digest(byte[] value) {
+			this.value = value;
+			this.hash = Arrays.hashCode(value);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Digest && Arrays.equals(value, ((Digest) o).value);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.secure.AsymKeysImpl;
+
+public class AdvertisementCopyTest {
+	private static AsymKeysImpl keys;
+	private static Item item;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description", "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+		item.sign(keys);
+	}
+	
+	@Test
+	public void sameAsXML() {
+		Item copy = item.clone();
+		assertNotSame(item, copy);
+		assertEquals(new Item(item.toString()).toString(), copy.toString());
+		assertEquals(item.getId(), copy.getId());
+		assertTrue(copy.checkSignature(keys));
+		assertNotSame(item.getKeys(), copy.getKeys());
+		assertNull(copy.getKeys().getPrivateKey());
+	}
+	
+	@Test
+	public void independent() {
+		Item copy = item.clone();
+		copy.setTitle("other title");
+		assertEquals("title", item.getTitle());
+		assertFalse(item.toString().contains("other title"));
+		assertTrue(copy.toString().contains("other title"));
+	}
+	
+	@Test
+	public void keys() {
+		AsymKeysImpl copy = keys.copy();
+		assertEquals(keys.getPrivateKey(), copy.getPrivateKey());
+		assertEquals(keys.toString(), copy.toString());
+		assertNull(keys.clone().getPrivateKey());
+	}
+	
+	@Test
+	public void oldValues() {
+		Item i = item.clone();
+		assertNull(i.getOldUpdatableKeys());
+		((AbstractAdvertisement) i).keepOld();
+		HashMap<String, String> old = i.getOldUpdatableKeys();
+		assertEquals(i.getUpdatableKeys(), old);
+		i.setTitle("new title");
+		assertEquals("title", i.getOldUpdatableKeys().get("title"));
+		assertEquals("new title", i.getUpdatableKeys().get("title"));
+	}
+}
@@ -0,0 +1,113 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.secure.AsymKeysImpl;
+
+public class AdvertisementSchemaTest {
+	private static AsymKeysImpl keys;
+	private static Item item;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description", "",
+				"country", "0123456789", 1234567890123L, 42, Item.TYPE.OFFER);
+	}
+	
+	@Test
+	public void sharedByInstances() {
+		assertSame(((AbstractAdvertisement) item).getSchema(), ((AbstractAdvertisement) new Item()).getSchema());
+		assertNotSame(((AbstractAdvertisement) item).getSchema(), ((AbstractAdvertisement) keys).getSchema());
+		assertEquals(item.getKeysValues().size(), ((AbstractAdvertisement) item).getSchema().size());
+		assertTrue(((AbstractAdvertisement) item).getSchema().getSlot("keyId") >= 0);
+		assertEquals(-1, ((AbstractAdvertisement) item).getSchema().getSlot("unknown"));
+	}
+	
+	@Test
+	public void concatenationOrder() {
+		// same lines and order than the previous implementation, sorting "key:value" strings
+		item.getConcatenedElements();
+		HashMap<String, String> values = item.getKeysValues();
+		ArrayList<String> sorted = new ArrayList<String>();
+		for(String key : values.keySet()) {
+			String value = values.get(key);
+			if(!key.equals("signature") && value != null && !value.isEmpty())
+				sorted.add(key + ":" + value + "\n");
+		}
+		Collections.sort(sorted);
+		StringBuffer s = new StringBuffer();
+		for(String line : sorted)
+			s.append(line);
+		assertEquals(s.toString(), item.getConcatenedElements());
+	}
+	
+	@Test
+	public void valuesUpdated() {
+		Item i = new Item(item.toString());
+		String xml = i.toString();
+		assertSame(xml, i.toString());
+		i.setTitle("other title");
+		assertNotEquals(xml, i.toString());
+		assertTrue(i.toString().contains("other title"));
+		assertTrue(i.getConcatenedElements().contains("title:other title\n"));
+	}
+	
+	@Test
+	public void putValuesSkipped() {
+		final int[] puts = new int[1];
+		Item i = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description", "",
+				"country", "0123456789", 1234567890123L, 42, Item.TYPE.OFFER) {
+			@Override
+			protected void putValues() {
+				puts[0]++;
+				super.putValues();
+			}
+			@Override
+			protected String getAdvertisementName() {
+				return Item.class.getName();
+			}
+		};
+		String xml = i.toString();
+		puts[0] = 0;
+		assertSame(xml, i.toString());
+		i.getConcatenedElements();
+		assertEquals(0, puts[0]); // nothing changed since the last call
+		i.setTitle("other title");
+		assertTrue(i.toString().contains("other title"));
+		assertEquals(1, puts[0]);
+	}
+	
+	@Test
+	public void indexFields() {
+		String[] indexes = item.getIndexFields();
+		assertEquals("keyId", indexes[0]);
+		assertEquals("superPublicKey", indexes[1]);
+	}
+}
@@ -0,0 +1,134 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+import model.data.user.User;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.Base64Codec;
+import util.Compressor;
+import util.DeflateCompressor;
+import util.secure.AsymKeysImpl;
+
+public class BinaryCodecTest {
+	private static AsymKeysImpl keys;
+	private static Item item;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description with accents éà", "",
+				"country", "0123456789", 1234567890123L, 42, Item.TYPE.OFFER);
+		AsymKeysImpl clearKeys = keys.copy();
+		clearKeys.decryptPrivateKey("password");
+		item.sign(clearKeys);
+	}
+	
+	@Test
+	public void encodeDecode() {
+		byte[] binary = item.toBinary();
+		assertTrue(BinaryCodec.isBinary(binary));
+		assertTrue(binary.length < item.toString().getBytes().length / 2);
+		
+		Item decoded = BinaryCodec.decode(binary, new Item());
+		assertEquals(item.toString(), decoded.toString());
+		assertEquals(item.getConcatenedElements(), decoded.getConcatenedElements());
+		assertTrue(decoded.checkSignature(decoded.getKeys()));
+		assertEquals(keys.getPublicKey(), decoded.getKeys().getPublicKey());
+	}
+	
+	@Test
+	public void compressed() {
+		Item i = item.clone();
+		StringBuilder description = new StringBuilder();
+		for(int n = 0; n < 100; n++)
+			description.append("a long description, ");
+		i.setDescription(description.toString());
+		Compressor deflate = Compressor.get(DeflateCompressor.NAME);
+		byte[] plain = i.toBinary();
+		byte[] compressed = i.toBinary(deflate);
+		assertTrue(compressed.length < plain.length - 1000);
+		assertEquals(i.toString(), BinaryCodec.decode(compressed, new Item()).toString());
+		
+		// images are already compressed by their format
+		byte[] png = new byte[2000];
+		png[0] = (byte) 0x89; png[1] = 'P'; png[2] = 'N'; png[3] = 'G';
+		i.setDescription("description");
+		i.setImage("data:image/png;base64," + Base64Codec.encode(png)); // inline, not in the BlobStore
+		assertArrayEquals(i.toBinary(), i.toBinary(deflate));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void truncated() {
+		byte[] binary = item.toBinary();
+		BinaryCodec.decode(Arrays.copyOf(binary, binary.length - 10), new Item());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeIndex() {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write(item.toBinary(), 0, 8); // header and schema
+		data.write(1); // one field, of index -1
+		for(int n = 0; n < 9; n++)
+			data.write(0xFF);
+		data.write(0x01);
+		data.write(0); // string of length 0
+		data.write(0);
+		BinaryCodec.decode(data.toByteArray(), new Item());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void nestedKeys() {
+		ByteArrayOutputStream inner = new ByteArrayOutputStream();
+		inner.write(keys.toBinary(), 0, 8);
+		inner.write(0); // no field
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write(keys.toBinary(), 0, 8);
+		data.write(1); // one field : keys of the keys
+		data.write(((AbstractAdvertisement) keys).getSchema().getSlot("keys"));
+		data.write(3);
+		data.write(inner.size());
+		data.write(inner.toByteArray(), 0, inner.size());
+		BinaryCodec.decode(data.toByteArray(), new AsymKeysImpl());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void hugeHexCount() {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write(item.toBinary(), 0, 8);
+		data.write(1); // one field, the title in hex
+		data.write(((AbstractAdvertisement) item).getSchema().getSlot("title"));
+		data.write(2);
+		byte[] field = {(byte) 0x84, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 0x12, 0x34}; // 2^32+4 digits, 4 once cast to int
+		data.write(field, 0, field.length);
+		BinaryCodec.decode(data.toByteArray(), new Item());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void otherSchema() {
+		BinaryCodec.decode(item.toBinary(), new User());
+	}
+}
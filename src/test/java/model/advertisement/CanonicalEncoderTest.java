@@ -0,0 +1,82 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import static org.junit.Assert.*;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.secure.AsymKeysImpl;
+import util.secure.ElGamalSign;
+import util.secure.ElGamalSigner;
+
+public class CanonicalEncoderTest {
+	private static AsymKeysImpl keys;
+	private static AsymKeysImpl clearKeys;
+	private static Item item;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		clearKeys = keys.copy();
+		clearKeys.decryptPrivateKey("password");
+		StringBuffer description = new StringBuffer("description éàü € 😀 ");
+		for(int i = 0; i < 500; i++) // longer than the encoder buffer
+			description.append("long description ").append(i).append(" é");
+		item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), description.toString(), "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+		item.sign(clearKeys);
+	}
+	
+	@Test
+	public void sameDigest() throws Exception {
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest(item.getConcatenedElements().getBytes());
+		assertArrayEquals(expected, ((AbstractAdvertisement) item).getSigningDigest());
+	}
+	
+	@Test
+	public void sameRepresentative() {
+		byte[] M = item.getConcatenedElements().getBytes();
+		assertEquals(ElGamalSigner.messageRepresentative(M),
+				ElGamalSigner.digestRepresentative(((AbstractAdvertisement) item).getSigningDigest()));
+	}
+	
+	@Test
+	public void sameSignature() {
+		ElGamalSigner signer = new ElGamalSigner(clearKeys, ElGamalSigner.NONCE.DETERMINISTIC, new SecureRandom());
+		ElGamalSign legacy = signer.sign(item.getConcatenedElements().getBytes());
+		ElGamalSign digest = signer.signDigest(((AbstractAdvertisement) item).getSigningDigest());
+		assertEquals(legacy.getR(), digest.getR());
+		assertEquals(legacy.getS(), digest.getS());
+	}
+	
+	@Test
+	public void checkSignature() {
+		assertTrue(item.checkSignature(keys));
+		Item copy = new Item(item.toString());
+		assertTrue(copy.checkSignature(keys));
+		copy.setTitle("other");
+		assertFalse(copy.checkSignature(keys));
+	}
+}
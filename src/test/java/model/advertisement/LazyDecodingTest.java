@@ -0,0 +1,118 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.advertisement;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+import model.network.search.extended.BaseExtendedListener;
+import net.jxta.document.MimeMediaType;
+import net.jxta.document.StructuredDocument;
+import net.jxta.document.StructuredDocumentFactory;
+
+import org.jdom2.IllegalDataException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.secure.AsymKeysImpl;
+
+public class LazyDecodingTest {
+	private static AsymKeysImpl keys;
+	private static Item item;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description", "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+		item.sign(keys);
+	}
+	
+	private static Item received(Item i) {
+		return new Item((StructuredDocument<?>) i.getDocument(MimeMediaType.XMLUTF8));
+	}
+	
+	@Test
+	public void onlyIdAndDate() {
+		Item lazy = received(item);
+		assertFalse(lazy.isDecoded());
+		assertEquals(item.getId(), lazy.getId());
+		assertEquals(item.getLastUpdated(), lazy.getLastUpdated());
+		assertEquals("title", lazy.getTitle());
+		assertEquals(Item.TYPE.OFFER, lazy.getType());
+		assertFalse(lazy.isDecoded());
+	}
+	
+	@Test
+	public void sameAsEager() {
+		Item lazy = received(item);
+		assertTrue(lazy.checkSignature(keys));
+		assertTrue(lazy.isDecoded());
+		assertEquals(new Item(item.toString()).toString(), received(item).toString());
+		assertEquals(item.getKeys().getPublicKey(), received(item).getKeys().getPublicKey());
+		assertEquals(item.toString(), received(item).clone().toString());
+	}
+	
+	@Test
+	public void setterWins() {
+		Item lazy = received(item);
+		lazy.setTitle("other title");
+		assertEquals("other title", lazy.getTitle());
+		assertTrue(lazy.toString().contains("other title"));
+		assertFalse(lazy.checkSignature(keys));
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Test
+	public void malformed() {
+		StructuredDocument doc = StructuredDocumentFactory.newStructuredDocument(MimeMediaType.XMLUTF8, item.getAdvType());
+		for(Map.Entry<String, String> e : item.getKeysValues().entrySet()) {
+			String value = e.getKey().equals("type") ? "neither" : e.getValue();
+			doc.appendChild(doc.createElement(e.getKey(), value));
+		}
+		Item lazy = new Item(doc);
+		assertEquals(item.getId(), lazy.getId());
+		try {
+			lazy.getType();
+			fail();
+		} catch(IllegalDataException e) {
+		}
+		assertFalse(new Item(doc).checkSignature(keys));
+		assertTrue(AbstractAdvertisement.verifyAll(java.util.Arrays.asList(new Item(doc))).isEmpty());
+	}
+	
+	@Test
+	public void duplicatesNotDecoded() {
+		final int[] filtered = {0};
+		BaseExtendedListener<Item> listener = new BaseExtendedListener<Item>() {
+			@Override
+			public boolean filter(Item event) {
+				filtered[0]++;
+				return event.getTitle().equals("title");
+			}
+		};
+		assertTrue(listener.addResult(received(item)));
+		Item duplicate = received(item);
+		assertFalse(listener.addResult(duplicate));
+		assertEquals(1, filtered[0]);
+		assertFalse(duplicate.isDecoded());
+	}
+}
@@ -0,0 +1,155 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.blob;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import util.Base64Codec;
+import util.secure.AsymKeysImpl;
+
+public class BlobStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static byte[] random(int length, long seed) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+	
+	@After
+	public void reset() {
+		BlobStore.setDefault(null);
+	}
+	
+	@Test
+	public void putGet() throws IOException {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		byte[] data = random(5000, 1);
+		String digest = store.put(data);
+		assertTrue(BlobStore.isDigest(digest));
+		assertArrayEquals(data, store.get(digest));
+		assertEquals(digest, store.put(data.clone())); // same content, same blob
+		assertEquals(5000, store.getTotalSize());
+		assertNull(store.get(BlobStore.digest(new byte[1])));
+	}
+	
+	@Test
+	public void wrongDigest() throws IOException {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		assertFalse(store.put(random(100, 1), BlobStore.digest(random(100, 2))));
+		assertEquals(0, store.getTotalSize());
+	}
+	
+	@Test
+	public void read() throws IOException {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		byte[] data = random(1000, 1);
+		String digest = store.put(data);
+		assertArrayEquals(Arrays.copyOfRange(data, 100, 200), store.read(digest, 100, 100));
+		assertArrayEquals(Arrays.copyOfRange(data, 900, 1000), store.read(digest, 900, 500));
+		assertEquals(0, store.read(digest, 1000, 10).length);
+		assertNull(store.read(digest, 1001, 10));
+	}
+	
+	@Test
+	public void eviction() throws IOException {
+		BlobStore store = new BlobStore(folder.getRoot(), 3000);
+		String a = store.put(random(1000, 1));
+		String b = store.put(random(1000, 2));
+		String c = store.put(random(1000, 3));
+		store.pin(a);
+		store.get(b); // c is now the least recently used not pinned
+		String d = store.put(random(1000, 4));
+		assertTrue(store.contains(a));
+		assertTrue(store.contains(b));
+		assertFalse(store.contains(c));
+		assertTrue(store.contains(d));
+		assertFalse(new File(folder.getRoot(), c).exists());
+		assertEquals(3000, store.getTotalSize());
+	}
+	
+	@Test
+	public void reload() throws IOException {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		byte[] data = random(1000, 1);
+		String digest = store.put(data);
+		new File(folder.getRoot(), digest + ".tmp").createNewFile();
+		store = new BlobStore(folder.getRoot(), 1 << 20);
+		assertArrayEquals(data, store.get(digest));
+		assertEquals(1000, store.getTotalSize());
+		assertFalse(new File(folder.getRoot(), digest + ".tmp").exists());
+	}
+	
+	@Test
+	public void pinsKept() throws IOException {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		String a = store.put(random(1000, 1));
+		String b = store.put(random(1000, 2));
+		store.pin(a); // a is the least recently used
+		store = new BlobStore(folder.getRoot(), 1000); // over capacity at opening, before any pin
+		assertTrue(store.isPinned(a));
+		assertTrue(store.contains(a));
+		assertFalse(store.contains(b));
+		store.unpin(a);
+		assertFalse(new BlobStore(folder.getRoot(), 1 << 20).isPinned(a));
+	}
+	
+	@Test
+	public void references() {
+		String digest = BlobStore.digest(new byte[0]);
+		assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", digest);
+		assertTrue(BlobStore.isReference(BlobStore.toReference(digest)));
+		assertEquals(digest, BlobStore.getDigest(BlobStore.toReference(digest)));
+		assertFalse(BlobStore.isReference("sha256:xyz"));
+		assertNull(BlobStore.getDigest("aGVsbG8="));
+	}
+	
+	@Test
+	public void itemImage() {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		BlobStore.setDefault(store);
+		AsymKeysImpl keys = new AsymKeysImpl(false, "password");
+		byte[] png = random(3000, 1);
+		String image = Base64Codec.encode(png, 0, png.length, Base64Codec.MIME_LINE);
+		Item item = new Item(keys, "nick", "title", new Category(CATEGORY.NA), "description", image,
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+		String digest = item.getImageDigest();
+		assertNotNull(digest);
+		assertTrue(store.contains(digest));
+		assertEquals(image, item.getImage());
+		assertFalse(item.toString().contains(image)); // only the reference is in the advertisement
+		assertEquals(digest, new Item(item.toString()).getImageDigest());
+		
+		item.setImage("data:image/png;base64,AAAA");
+		assertNull(item.getImageDigest());
+		assertEquals("data:image/png;base64,AAAA", item.getImage());
+	}
+}
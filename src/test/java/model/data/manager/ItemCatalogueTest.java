@@ -0,0 +1,201 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import util.secure.AsymKeysImpl;
+
+public class ItemCatalogueTest {
+	private static final int SEGMENT = 16 * 1024;
+	private static AsymKeysImpl alice;
+	private static AsymKeysImpl bob;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@BeforeClass
+	public static void init() {
+		alice = new AsymKeysImpl(false, "password");
+		alice.decryptPrivateKey("password");
+		bob = new AsymKeysImpl(false, "password");
+	}
+	
+	private static Item item(AsymKeysImpl keys, String title) {
+		return new Item(keys, "nick", title, new Category(CATEGORY.NA), "description", "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+	}
+	
+	private ItemCatalogue open(int cacheSize) throws IOException {
+		return new ItemCatalogue(folder.getRoot(), SEGMENT, cacheSize);
+	}
+	
+	private int segments() {
+		return folder.getRoot().list().length;
+	}
+	
+	@Test
+	public void putGet() throws IOException {
+		ItemCatalogue catalogue = open(0); // nothing cached, every get decodes
+		Item i = item(alice, "one");
+		assertTrue(catalogue.put(i));
+		assertEquals(1, catalogue.size());
+		assertEquals(i.toString(), catalogue.get(i.getItemKey()).toString());
+		assertNotSame(catalogue.get(i.getItemKey()), catalogue.get(i.getItemKey()));
+		assertNull(catalogue.get("unknown"));
+		catalogue.close();
+	}
+	
+	@Test
+	public void cache() throws IOException {
+		ItemCatalogue catalogue = open(1);
+		Item one = item(alice, "one");
+		Item two = item(alice, "two");
+		catalogue.put(one);
+		assertSame(one, catalogue.get(one.getItemKey()));
+		catalogue.put(two);
+		assertNotSame(one, catalogue.get(one.getItemKey())); // evicted by two
+		assertEquals(one.toString(), catalogue.get(one.getItemKey()).toString());
+		catalogue.close();
+	}
+	
+	@Test
+	public void newerOnly() throws IOException, InterruptedException {
+		ItemCatalogue catalogue = open(10);
+		Item i = item(alice, "one");
+		i.sign(alice);
+		Item newer = new Item(i);
+		newer.setTitle("one bis");
+		Thread.sleep(5);
+		newer.sign(alice);
+		assertTrue(catalogue.put(newer));
+		assertFalse(catalogue.put(i));
+		assertFalse(catalogue.put(new Item(newer)));
+		assertEquals(1, catalogue.size());
+		assertEquals("one bis", catalogue.get(i.getItemKey()).getTitle());
+		assertEquals(newer.getLastUpdated(), catalogue.getLastUpdated(i.getItemKey()));
+		catalogue.close();
+	}
+	
+	@Test
+	public void owners() throws IOException {
+		ItemCatalogue catalogue = open(10);
+		catalogue.put(item(alice, "a1"));
+		catalogue.put(item(alice, "a2"));
+		Item b = item(bob, "b1");
+		catalogue.put(b);
+		assertEquals(2, catalogue.getItems(alice.getPublicKeyId()).size());
+		assertEquals(1, catalogue.getItemKeys(bob.getPublicKeyId()).size());
+		assertTrue(catalogue.remove(b.getItemKey()));
+		assertFalse(catalogue.remove(b.getItemKey()));
+		assertTrue(catalogue.getItemKeys(bob.getPublicKeyId()).isEmpty());
+		catalogue.close();
+	}
+	
+	@Test
+	public void reopen() throws IOException {
+		ItemCatalogue catalogue = open(10);
+		Item kept = item(alice, "kept");
+		Item removed = item(alice, "removed");
+		catalogue.put(kept);
+		catalogue.put(removed);
+		catalogue.remove(removed.getItemKey());
+		catalogue.close();
+		catalogue = open(10);
+		assertEquals(1, catalogue.size());
+		assertEquals(kept.toString(), catalogue.get(kept.getItemKey()).toString());
+		assertFalse(catalogue.contains(removed.getItemKey()));
+		catalogue.close();
+	}
+	
+	@Test
+	public void severalSegments() throws IOException {
+		ItemCatalogue catalogue = open(0);
+		Item[] items = new Item[40];
+		for(int n = 0; n < items.length; n++) {
+			items[n] = item(n % 2 == 0 ? alice : bob, "item " + n);
+			catalogue.put(items[n]);
+		}
+		assertTrue(segments() > 1);
+		catalogue.close();
+		catalogue = open(0);
+		assertEquals(items.length, catalogue.size());
+		for(Item i : items)
+			assertEquals(i.toString(), catalogue.get(i.getItemKey()).toString());
+		catalogue.close();
+	}
+	
+	@Test
+	public void compaction() throws IOException {
+		ItemCatalogue catalogue = open(0);
+		Item[] items = new Item[40];
+		for(int n = 0; n < items.length; n++) {
+			items[n] = item(alice, "item " + n);
+			catalogue.put(items[n]);
+		}
+		int before = segments();
+		for(int n = 0; n < items.length; n++) {
+			if(n % 4 != 0)
+				catalogue.remove(items[n].getItemKey());
+		}
+		assertTrue(catalogue.compact() > 0);
+		assertTrue(segments() < before);
+		catalogue.close();
+		catalogue = open(0);
+		assertEquals(items.length / 4, catalogue.size());
+		for(int n = 0; n < items.length; n++) {
+			assertEquals(n % 4 == 0, catalogue.contains(items[n].getItemKey()));
+			if(n % 4 == 0)
+				assertEquals(items[n].toString(), catalogue.get(items[n].getItemKey()).toString());
+		}
+		catalogue.close();
+	}
+	
+	@Test
+	public void tornFrame() throws IOException {
+		ItemCatalogue catalogue = open(10);
+		Item one = item(alice, "one");
+		Item two = item(alice, "two");
+		catalogue.put(one);
+		catalogue.put(two);
+		catalogue.close();
+		File segment = folder.getRoot().listFiles()[0];
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.seek(4 + 8 + 20); // inside the body of the first frame
+			file.write(file.read() ^ 0xFF);
+		}
+		catalogue = open(10);
+		assertEquals(0, catalogue.size()); // the segment ends at the first bad frame
+		catalogue.put(two);
+		catalogue.close();
+		catalogue = open(10);
+		assertEquals(two.toString(), catalogue.get(two.getItemKey()).toString());
+		catalogue.close();
+	}
+}
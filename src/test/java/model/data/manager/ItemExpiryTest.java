@@ -0,0 +1,74 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ItemExpiryTest {
+	
+	@Test
+	public void order() {
+		ItemExpiry expiry = new ItemExpiry();
+		expiry.schedule("b", 20);
+		expiry.schedule("a", 10);
+		expiry.schedule("c", 30);
+		expiry.schedule("never", Long.MAX_VALUE);
+		assertEquals(3, expiry.size());
+		assertEquals(Arrays.asList("a", "b"), expiry.poll(25));
+		assertTrue(expiry.poll(25).isEmpty());
+		assertEquals(Arrays.asList("c"), expiry.poll(Long.MAX_VALUE - 1));
+		assertEquals(0, expiry.size());
+	}
+	
+	@Test
+	public void earliestCounts() {
+		ItemExpiry expiry = new ItemExpiry();
+		expiry.schedule("a", 20);
+		expiry.schedule("a", 30); // later, ignored
+		assertEquals(20, expiry.getDeadline("a"));
+		expiry.schedule("a", 10);
+		assertEquals(10, expiry.getDeadline("a"));
+		assertEquals(Arrays.asList("a"), expiry.poll(100)); // once
+	}
+	
+	@Test
+	public void cancel() {
+		ItemExpiry expiry = new ItemExpiry();
+		expiry.schedule("a", 10);
+		expiry.schedule("b", 10);
+		expiry.cancel("a");
+		assertEquals(Long.MAX_VALUE, expiry.getDeadline("a"));
+		assertEquals(Arrays.asList("b"), expiry.poll(10));
+	}
+	
+	@Test
+	public void stale() {
+		ItemExpiry expiry = new ItemExpiry();
+		for(int i = 0; i < 1000; i++) {
+			expiry.schedule("a", 1000 - i);
+		}
+		expiry.schedule("b", 2000);
+		ArrayList<String> keys = expiry.poll(1500);
+		assertEquals(Arrays.asList("a"), keys);
+		assertEquals(1, expiry.size());
+		assertEquals(Arrays.asList("b"), expiry.poll(2000));
+	}
+}
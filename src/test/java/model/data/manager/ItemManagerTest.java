@@ -0,0 +1,343 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import model.data.blob.BlobStore;
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+import model.data.item.Item.TYPE;
+import model.data.user.User;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import util.Base64Codec;
+import util.VARIABLES;
+import util.secure.AsymKeysImpl;
+
+public class ItemManagerTest {
+	private static AsymKeysImpl alice;
+	private static AsymKeysImpl bob;
+	private ItemManager items;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@BeforeClass
+	public static void init() {
+		alice = new AsymKeysImpl(false, "password");
+		alice.decryptPrivateKey("password");
+		bob = new AsymKeysImpl(false, "password");
+		bob.decryptPrivateKey("password");
+	}
+	
+	@Before
+	public void manager() {
+		items = new Manager(null).getItemManager();
+	}
+	
+	private static Item item(AsymKeysImpl keys, String title, CATEGORY category, String country, TYPE type) {
+		Item i = new Item(keys, "nick", title, new Category(category), "description", "",
+				country, "contact", 0L, 1000000L, type);
+		i.sign(keys);
+		return i;
+	}
+	
+	@Test
+	public void indexes() {
+		Item a1 = item(alice, "a1", CATEGORY.Baby, "France", TYPE.OFFER);
+		Item a2 = item(alice, "a2", CATEGORY.Appliances, "France", TYPE.DEMAND);
+		Item b1 = item(bob, "b1", CATEGORY.Baby, "Italy", TYPE.OFFER);
+		items.addItem(a1);
+		items.addItem(a2);
+		items.addItem(b1);
+		assertEquals(3, items.size());
+		assertSame(a2, items.getItem(a2.getItemKey()));
+		assertEquals(2, items.getUserItems(alice.getPublicKeyId()).size());
+		assertEquals(1, items.getUserItems(bob.getPublicKeyId()).size());
+		assertEquals(2, items.getItems(CATEGORY.Baby).size());
+		assertTrue(items.getItems(CATEGORY.NA).isEmpty());
+		assertEquals(2, items.getItemsByCountry("France").size());
+		assertSame(b1, items.getItemsByCountry("Italy").get(0));
+		assertEquals(2, items.getItems(TYPE.OFFER).size());
+		assertSame(a2, items.getItems(TYPE.DEMAND).get(0));
+	}
+	
+	@Test
+	public void newerReplaces() throws InterruptedException {
+		Item i = item(alice, "one", CATEGORY.Baby, "France", TYPE.OFFER);
+		items.addItem(i);
+		Item newer = new Item(i);
+		newer.setCountry("Italy");
+		Thread.sleep(5);
+		newer.sign(alice);
+		items.addItem(newer);
+		items.addItem(i); // older, ignored
+		assertEquals(1, items.size());
+		assertSame(newer, items.getItem(i.getItemKey()));
+		assertTrue(items.getItemsByCountry("France").isEmpty());
+		assertEquals(1, items.getItemsByCountry("Italy").size());
+	}
+	
+	@Test
+	public void remove() {
+		Item a1 = item(alice, "a1", CATEGORY.Baby, "France", TYPE.OFFER);
+		Item a2 = item(alice, "a2", CATEGORY.Baby, "France", TYPE.OFFER);
+		items.addItem(a1);
+		items.addItem(a2);
+		assertTrue(items.removeItem(new Item(a1)));
+		assertFalse(items.removeItem(a1));
+		assertNull(items.getItem(a1.getItemKey()));
+		assertEquals(1, items.getItems(CATEGORY.Baby).size());
+		assertTrue(items.hasItems(alice.getPublicKeyId()));
+		assertEquals(1, items.removeUserItems(alice.getPublicKeyId()));
+		assertFalse(items.hasItems(alice.getPublicKeyId()));
+		assertTrue(items.getItemsByCountry("France").isEmpty());
+		assertEquals(0, items.size());
+	}
+	
+	@Test
+	public void itemsIsACopy() {
+		items.addItem(item(alice, "a1", CATEGORY.Baby, "France", TYPE.OFFER));
+		items.getItems().clear();
+		assertEquals(1, items.getItems().size());
+	}
+	
+	@Test
+	public void concurrent() throws InterruptedException {
+		final Item[] all = new Item[100];
+		for(int n = 0; n < all.length; n++)
+			all[n] = item(n % 2 == 0 ? alice : bob, "item " + n, n % 3 == 0 ? CATEGORY.Baby : CATEGORY.NA, "France", TYPE.OFFER);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++) {
+			final int first = t;
+			threads.add(new Thread() { // writers : add everything, remove a part
+				@Override
+				public void run() {
+					for(int n = first; n < all.length; n += 4) {
+						items.addItem(all[n]);
+						if(n % 5 == 0)
+							items.removeItem(all[n]);
+					}
+				}
+			});
+			threads.add(new Thread() { // readers
+				@Override
+				public void run() {
+					try {
+						for(int n = 0; n < 200; n++) {
+							for(Item i : items.getItems())
+								items.getItem(i.getItemKey()); // may be removed meanwhile
+							items.getItems(CATEGORY.Baby);
+							items.getUserItems(alice.getPublicKeyId());
+							items.getItemsByCountry("France");
+						}
+					} catch(Throwable e) {
+						failure.set(e);
+					}
+				}
+			});
+		}
+		for(Thread t : threads)
+			t.start();
+		for(Thread t : threads)
+			t.join();
+		assertNull(failure.get());
+		assertEquals(80, items.size());
+		assertEquals(80, items.getItemsByCountry("France").size());
+		assertEquals(40, items.getUserItems(alice.getPublicKeyId()).size());
+	}
+	
+	@Test
+	public void catalogue() throws IOException {
+		items.setCatalogue(new ItemCatalogue(folder.getRoot(), 64 * 1024, 10));
+		Item remote = item(bob, "b1", CATEGORY.Baby, "Italy", TYPE.OFFER);
+		items.addItem(remote);
+		assertEquals(0, items.size()); // bob isn't a local user
+		assertEquals(1, items.getCatalogue().size());
+		assertTrue(items.getItems().isEmpty());
+		assertEquals(1, items.getAllItemKeys().size()); // resiliance and publishing see it
+		assertEquals(remote.toString(), items.getItem(remote.getItemKey()).toString());
+		assertEquals(1, items.getUserItems(bob.getPublicKeyId()).size());
+		assertTrue(items.hasItems(bob.getPublicKeyId()));
+		assertTrue(items.removeItem(remote));
+		assertFalse(items.hasItems(bob.getPublicKeyId()));
+		items.getCatalogue().close();
+	}
+	
+	@Test
+	public void knownUserInCatalogue() throws IOException {
+		Manager manager = new Manager(null);
+		items = manager.getItemManager();
+		items.setCatalogue(new ItemCatalogue(folder.getRoot(), 64 * 1024, 10));
+		User carol = user("carol");
+		User dave = user("dave");
+		manager.getUserManager().addUser(carol); // replicated from the network
+		manager.getUserManager().addLocalUser(dave);
+		items.addItem(item(carol.getKeys(), "c1", CATEGORY.Baby, "Italy", TYPE.OFFER));
+		items.addItem(item(dave.getKeys(), "d1", CATEGORY.Baby, "Italy", TYPE.OFFER));
+		assertEquals(1, items.getCatalogue().size());
+		assertEquals(1, items.size());
+		assertEquals(dave.getKeys().getPublicKeyId(), items.getItems().get(0).getOwnerId());
+		items.getCatalogue().close();
+	}
+	
+	@Test
+	public void imagesUnpinned() throws InterruptedException {
+		BlobStore store = new BlobStore(folder.getRoot(), 1 << 20);
+		BlobStore.setDefault(store);
+		try {
+			Manager manager = new Manager(null);
+			items = manager.getItemManager();
+			User dave = user("dave");
+			manager.getUserManager().addLocalUser(dave);
+			String a = image(1);
+			Item first = image(dave, "first", a);
+			Item second = image(dave, "second", a);
+			items.addItem(first);
+			items.addItem(second);
+			String digest = first.getImageDigest();
+			assertTrue(store.isPinned(digest));
+			assertTrue(items.removeItem(first));
+			assertTrue(store.isPinned(digest)); // second still shows it
+			
+			Item newer = new Item(second);
+			newer.setImage(image(2));
+			Thread.sleep(5);
+			newer.sign(dave.getKeys());
+			items.addItem(newer); // replaces second
+			assertFalse(store.isPinned(digest));
+			assertTrue(store.isPinned(newer.getImageDigest()));
+			assertTrue(items.removeItem(newer));
+			assertFalse(store.isPinned(newer.getImageDigest()));
+		} finally {
+			BlobStore.setDefault(null);
+		}
+	}
+	
+	private static String image(long seed) {
+		byte[] png = new byte[3000];
+		new Random(seed).nextBytes(png);
+		return Base64Codec.encode(png, 0, png.length, Base64Codec.MIME_LINE);
+	}
+	
+	private static Item image(User owner, String title, String image) {
+		Item i = new Item(owner.getKeys(), "nick", title, new Category(CATEGORY.Baby), "description", image,
+				"France", "contact", 0L, 1000000L, TYPE.OFFER);
+		i.sign(owner.getKeys());
+		return i;
+	}
+	
+	private static User user(String nick) {
+		User u = new User(nick, "password", "name", "firstname", "email@em.fr", "0650507121");
+		u.getKeys().decryptPrivateKey("password");
+		u.sign(u.getKeys());
+		return u;
+	}
+	
+	@Test
+	public void catalogueCompacted() throws IOException {
+		items.setCatalogue(new ItemCatalogue(folder.getRoot(), 16 * 1024, 10));
+		Item[] list = new Item[40];
+		for(int n = 0; n < list.length; n++) {
+			list[n] = item(bob, "item " + n, CATEGORY.Baby, "Italy", TYPE.OFFER);
+			items.addItem(list[n]);
+		}
+		for(int n = 0; n < list.length; n++) {
+			if(n % 4 != 0)
+				items.removeItem(list[n]);
+		}
+		assertTrue(items.getCatalogue().needsCompaction());
+		items.maintainCatalogue(); // done by the expiry task
+		assertFalse(items.getCatalogue().needsCompaction());
+		for(int n = 0; n < list.length; n += 4)
+			assertEquals(list[n].toString(), items.getItem(list[n].getItemKey()).toString());
+		items.getCatalogue().close();
+	}
+	
+	private static Item forever(AsymKeysImpl keys, String title) {
+		return item(keys, title, 0L, 0L);
+	}
+	
+	private static Item over(AsymKeysImpl keys, String title) {
+		return item(keys, title, 100000L, 1000L); // lifetime over since 1970
+	}
+	
+	private static Item item(AsymKeysImpl keys, String title, long date, long lifeTime) {
+		Item i = new Item(keys, "nick", title, new Category(CATEGORY.Baby), "description", "",
+				"France", "contact", date, lifeTime, TYPE.OFFER);
+		i.sign(keys);
+		return i;
+	}
+	
+	@Test
+	public void expire() {
+		Item over = over(alice, "over");
+		Item alive = forever(alice, "alive");
+		items.addItem(over);
+		items.addItem(alive);
+		long now = System.currentTimeMillis();
+		assertEquals(1, items.expireItems(now));
+		assertNull(items.getItem(over.getItemKey()));
+		assertSame(alive, items.getItem(alive.getItemKey()));
+		assertEquals(0, items.expireItems(now));
+		// the owner isn't seen anymore
+		assertEquals(1, items.expireItems(alive.getLastUpdated() + VARIABLES.LifeTimeAfterDisconnected));
+		assertEquals(0, items.size());
+		assertEquals(0, items.getExpiry().size());
+	}
+	
+	@Test
+	public void expireLater() throws InterruptedException {
+		Item i = forever(alice, "alive");
+		items.addItem(i);
+		long deadline = i.getLastUpdated() + VARIABLES.LifeTimeAfterDisconnected;
+		Item newer = new Item(i);
+		Thread.sleep(5);
+		newer.sign(alice);
+		items.addItem(newer); // the owner has been seen since
+		assertEquals(0, items.expireItems(deadline));
+		assertSame(newer, items.getItem(i.getItemKey()));
+		assertEquals(newer.getLastUpdated() + VARIABLES.LifeTimeAfterDisconnected, items.getExpiry().getDeadline(i.getItemKey()));
+	}
+	
+	@Test
+	public void expireCatalogue() throws IOException {
+		ItemCatalogue catalogue = new ItemCatalogue(folder.getRoot(), 64 * 1024, 10);
+		Item over = over(bob, "over");
+		Item alive = forever(bob, "alive");
+		catalogue.put(over);
+		catalogue.put(alive);
+		items.setCatalogue(catalogue); // items already in the catalogue are scheduled
+		assertEquals(2, items.getExpiry().size());
+		assertEquals(1, items.expireItems(System.currentTimeMillis()));
+		assertFalse(catalogue.contains(over.getItemKey()));
+		assertTrue(catalogue.contains(alive.getItemKey()));
+		catalogue.close();
+	}
+}
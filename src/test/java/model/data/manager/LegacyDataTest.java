@@ -0,0 +1,99 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import model.data.user.User;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import util.VARIABLES;
+import util.secure.PublicKeyId;
+
+/**
+ * Start from a SXPManager.xml written by the XML saving (two accounts : alice with two items
+ * and favorites, bob with one item) and move it to the log.
+ */
+public class LegacyDataTest {
+	private static final File LEGACY = new File("src/test/ressources/legacy/SXPManager.xml");
+	private File path;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Before
+	public void copy() throws IOException {
+		path = new File(folder.getRoot(), "SXPManager.xml");
+		Files.copy(LEGACY.toPath(), path.toPath());
+	}
+	
+	private static PublicKeyId key(Manager m, String nick) {
+		return m.getUserManager().getNamed(nick).get(0).getKeys().getPublicKeyId();
+	}
+	
+	@Test
+	public void recovery() {
+		Manager m = new Manager(null);
+		m.recovery(path.getPath());
+		assertEquals(2, m.getUserManager().getLocalUsers().size());
+		assertEquals(2, m.getItemManager().getUserItems(key(m, "alice")).size());
+		assertEquals(1, m.getItemManager().getUserItems(key(m, "bob")).size());
+		assertTrue(path.exists());
+	}
+	
+	@Test
+	public void migration() {
+		Manager m = new Manager(null);
+		m.recovery(path.getPath());
+		assertTrue(m.getUserManager().login("alice", "alicePwd"));
+		m.saving(path.getPath());
+		assertTrue(LocalStore.getLogFile(path.getPath()).exists());
+		
+		Manager log = new Manager(null);
+		log.recovery(path.getPath()); // from the log now
+		assertEquals(2, log.getUserManager().getLocalUsers().size());
+		PublicKeyId bob = key(log, "bob");
+		assertEquals(2, log.getItemManager().getUserItems(key(log, "alice")).size());
+		assertEquals(1, log.getItemManager().getUserItems(bob).size());
+		assertNotNull(log.getFavoriteManager().getUserFavorites(bob.toString()));
+		assertTrue(log.getUserManager().login("bob", "bobPwd"));
+		User current = log.getUserManager().getCurrentUser();
+		assertEquals(bob, current.getKeys().getPublicKeyId());
+	}
+	
+	@Test
+	public void localItemsDontExpire() {
+		Manager m = new Manager(null);
+		m.recovery(path.getPath());
+		long later = System.currentTimeMillis() + VARIABLES.LifeTimeAfterDisconnected + 24 * 3600 * 1000L;
+		assertEquals(0, m.getItemManager().expireItems(later)); // bob and alice haven't been seen since
+		assertTrue(m.getUserManager().login("alice", "alicePwd"));
+		m.saving(path.getPath());
+		
+		Manager log = new Manager(null);
+		log.recovery(path.getPath());
+		assertEquals(2, log.getItemManager().getUserItems(key(log, "alice")).size());
+		assertEquals(1, log.getItemManager().getUserItems(key(log, "bob")).size());
+	}
+}
@@ -0,0 +1,192 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.jdom2.Element;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static Element element(String name, String text) {
+		Element e = new Element(name);
+		e.addContent(text);
+		return e;
+	}
+	
+	private File log() {
+		return new File(folder.getRoot(), "SXPManager.log");
+	}
+	
+	private static ArrayList<String> readAll(LocalStore store, String... sections) throws IOException {
+		final ArrayList<String> read = new ArrayList<String>();
+		store.read(sections, new LocalStore.RecordHandler() {
+			@Override
+			public void record(String section, Element e) {
+				read.add(section + ":" + e.getText());
+			}
+		});
+		return read;
+	}
+	
+	@Test
+	public void logFile() {
+		assertEquals(new File("./SXPManager.log"), LocalStore.getLogFile("./SXPManager.xml"));
+		assertEquals(new File("./data.d/SXPManager.log"), LocalStore.getLogFile("./data.d/SXPManager"));
+	}
+	
+	@Test
+	public void putGet() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			assertTrue(store.put("items", "1", "alice", element("item", "one")));
+			assertTrue(store.put("items", "2", "alice", element("item", "two")));
+			assertEquals("one", store.get("items", "1").getText());
+			assertNull(store.get("items", "3"));
+			assertNull(store.get("users", "1"));
+		}
+	}
+	
+	@Test
+	public void unchangedNotWritten() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			store.put("items", "1", "alice", element("item", "one"));
+			long length = log().length();
+			assertFalse(store.put("items", "1", "alice", element("item", "one")));
+			assertEquals(length, log().length());
+			assertTrue(store.put("items", "1", "alice", element("item", "ONE")));
+			assertTrue(log().length() > length);
+			assertTrue(store.getDeadSize() > 0);
+		}
+	}
+	
+	@Test
+	public void reopen() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			store.put("users", "alice", "alice", element("user", "alice"));
+			store.put("items", "1", "alice", element("item", "one"));
+			store.put("items", "2", "alice", element("item", "two"));
+			store.put("items", "1", "alice", element("item", "one bis"));
+			store.remove("items", "2");
+			store.sync();
+		}
+		try (LocalStore store = new LocalStore(log())) {
+			assertEquals(2, store.size());
+			assertEquals(Arrays.asList("users:alice", "items:one bis"), readAll(store, "users", "items"));
+		}
+	}
+	
+	@Test
+	public void sectionsOrder() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			store.put("items", "1", "alice", element("item", "one"));
+			store.put("users", "alice", "alice", element("user", "alice"));
+			assertEquals(Arrays.asList("users:alice", "items:one"), readAll(store, "users", "items"));
+		}
+	}
+	
+	@Test
+	public void retain() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			store.put("items", "1", "alice", element("item", "one"));
+			store.put("items", "2", "alice", element("item", "two"));
+			store.put("items", "3", "bob", element("item", "three"));
+			assertEquals(1, store.retain("items", "alice", new HashSet<String>(Arrays.asList("1"))));
+			assertTrue(store.contains("items", "1"));
+			assertFalse(store.contains("items", "2"));
+			assertTrue(store.contains("items", "3"));
+		}
+	}
+	
+	@Test
+	public void tornTail() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			store.put("items", "1", "alice", element("item", "one"));
+			store.put("items", "2", "alice", element("item", "two"));
+		}
+		long length = log().length();
+		try (RandomAccessFile file = new RandomAccessFile(log(), "rw")) {
+			file.setLength(length - 3); // crash while writing the last record
+		}
+		try (LocalStore store = new LocalStore(log())) {
+			assertTrue(store.contains("items", "1"));
+			assertFalse(store.contains("items", "2"));
+			assertTrue(log().length() < length - 3);
+			store.put("items", "2", "alice", element("item", "two"));
+		}
+		try (LocalStore store = new LocalStore(log())) {
+			assertEquals("two", store.get("items", "2").getText());
+		}
+	}
+	
+	@Test
+	public void corruptedRecord() throws IOException {
+		try (LocalStore store = new LocalStore(log())) {
+			store.put("items", "1", "alice", element("item", "one"));
+		}
+		try (RandomAccessFile file = new RandomAccessFile(log(), "rw")) {
+			file.seek(file.length() - 5);
+			file.write('X');
+		}
+		try (LocalStore store = new LocalStore(log())) {
+			assertEquals(0, store.size());
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void notALog() throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(log(), "rw")) {
+			file.writeBytes("<xml/>");
+		}
+		new LocalStore(log());
+	}
+	
+	@Test
+	public void compaction() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < 1000; i++)
+			text.append("text ");
+		try (LocalStore store = new LocalStore(log())) {
+			for(int i = 0; i < 100; i++) {
+				store.put("items", "1", "alice", element("item", text.toString() + i));
+				store.put("items", "2", "bob", element("item", "two"));
+			}
+			assertTrue(store.needsCompaction());
+			long length = log().length();
+			store.compact();
+			assertTrue(log().length() < length / 50);
+			assertEquals(0, store.getDeadSize());
+			assertFalse(store.needsCompaction());
+			store.put("items", "3", "alice", element("item", "three"));
+		}
+		assertFalse(new File(log().getPath() + ".tmp").exists());
+		try (LocalStore store = new LocalStore(log())) {
+			assertEquals(new HashSet<String>(Arrays.asList("items:" + text + "99", "items:two", "items:three")),
+					new HashSet<String>(readAll(store, "items")));
+		}
+	}
+}
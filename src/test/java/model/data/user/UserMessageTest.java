@@ -0,0 +1,52 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.data.user;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.secure.AsymKeysImpl;
+
+public class UserMessageTest {
+	private static AsymKeysImpl sender;
+	private static AsymKeysImpl receiver;
+	
+	@BeforeClass
+	public static void init(){
+		sender = new AsymKeysImpl(false, "password");
+		receiver = new AsymKeysImpl(false, "password");
+	}
+	
+	@Test
+	public void cryptDecrypt() {
+		StringBuffer content = new StringBuffer();
+		for(int i = 0; i < 1000; i++)
+			content.append("Hello dear Bob ! ");
+		UserMessage msg = new UserMessage(receiver, sender, "subject", content.toString());
+		msg.encrypt();
+		assertTrue(msg.isEncrypted());
+		assertFalse(msg.getContent().contains("Bob"));
+		
+		AsymKeysImpl clearReceiver = receiver.copy();
+		clearReceiver.decryptPrivateKey("password");
+		msg.decrypt(clearReceiver);
+		assertFalse(msg.isEncrypted());
+		assertEquals(content.toString(), msg.getContent());
+		assertEquals(sender.getPublicKey(), msg.getSender().getPublicKey());
+	}
+}
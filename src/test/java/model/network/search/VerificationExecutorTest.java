@@ -0,0 +1,81 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package model.network.search;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import model.data.user.User;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class VerificationExecutorTest {
+	private static ArrayList<User> users = new ArrayList<User>();
+	private static User forged;
+	
+	@BeforeClass
+	public static void init(){
+		User bob = new User("bob", "password", "name", "firstname", "email@em.fr", "0650507121");
+		bob.getKeys().decryptPrivateKey("password");
+		for(int i = 0; i < 20; i++) {
+			User u = new User("user" + i, "password", "name", "firstname", "email@em.fr", "0650507121");
+			u.getKeys().decryptPrivateKey("password");
+			u.sign(u.getKeys());
+			users.add(u);
+		}
+		forged = new User("alice", "password", "name", "firstname", "email@em.fr", "0650507121");
+		forged.sign(bob.getKeys()); // signed by bob with alice's keys
+		users.add(5, forged);
+	}
+	
+	@Test
+	public void verifyAll() {
+		VerificationExecutor executor = new VerificationExecutor(4, 16);
+		ArrayList<User> verified = executor.verifyAll(users, null);
+		ArrayList<User> expected = new ArrayList<User>(users);
+		expected.remove(5);
+		assertEquals(expected.size(), verified.size());
+		for(int i = 0; i < expected.size(); i++)
+			assertSame(expected.get(i), verified.get(i)); // User.equals only compares keys
+		assertEquals(1, executor.verifyAll(users.subList(0, 4), users.get(1).getKeys()).size());
+		executor.shutdown();
+	}
+	
+	@Test
+	public void submit() throws InterruptedException {
+		VerificationExecutor executor = new VerificationExecutor(4, 16);
+		final List<User> received = Collections.synchronizedList(new ArrayList<User>());
+		final CountDownLatch latch = new CountDownLatch(users.size() - 1);
+		executor.submit(users, null, new SearchListener<User>() {
+			@Override
+			public void searchEvent(User event) {
+				received.add(event);
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		assertEquals(users.size() - 1, received.size());
+		for(User u : received)
+			assertNotSame(forged, u);
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,99 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+@SuppressWarnings("deprecation")
+public class Base64CodecTest {
+	
+	@Test
+	public void rfc4648() {
+		String[] clear = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+		String[] encoded = {"", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy"};
+		for(int i = 0; i < clear.length; i++) {
+			assertEquals(encoded[i], Base64Codec.encode(clear[i].getBytes()));
+			assertEquals(clear[i], new String(Base64Codec.decode(encoded[i])));
+		}
+	}
+	
+	@Test
+	public void sameAsJxta() throws IOException {
+		Random r = new Random(42);
+		for(int size : new int[] {1, 56, 57, 58, 114, 1000}) {
+			byte[] data = new byte[size];
+			r.nextBytes(data);
+			String jxta = net.jxta.impl.util.Base64.encodeBase64(data);
+			// JXTA always ends with a line break
+			assertEquals(jxta.trim(), Base64Codec.encode(data, 0, size, Base64Codec.MIME_LINE));
+			assertArrayEquals(data, Base64Codec.decode(jxta));
+			assertArrayEquals(data, net.jxta.impl.util.Base64.decodeBase64(Base64Codec.encode(data, 0, size, Base64Codec.MIME_LINE)));
+		}
+	}
+	
+	@Test
+	public void streamed() throws IOException {
+		byte[] data = new byte[10000];
+		new Random(7).nextBytes(data);
+		for(int lineLength : new int[] {0, Base64Codec.MIME_LINE}) {
+			StringWriter writer = new StringWriter();
+			Base64Codec.Encoder encoder = new Base64Codec.Encoder(writer, lineLength);
+			encoder.write(data, 0, 1);
+			encoder.write(data, 1, 5);
+			encoder.write(data[6]);
+			encoder.write(data, 7, data.length - 7);
+			encoder.finish();
+			String expected = Base64Codec.encode(data, 0, data.length, lineLength);
+			assertEquals(expected, writer.toString());
+			assertEquals(Base64Codec.encodedLength(data.length, lineLength), expected.length());
+			
+			writer = new StringWriter();
+			Base64Codec.encode(new ByteArrayInputStream(data), writer, lineLength);
+			assertEquals(expected, writer.toString());
+		}
+	}
+	
+	@Test
+	public void byteBuffer() {
+		ByteBuffer buffer = ByteBuffer.wrap("xxfoobar".getBytes());
+		buffer.position(2);
+		assertEquals("Zm9vYmFy", Base64Codec.encode(buffer));
+		assertEquals(2, buffer.position());
+		ByteBuffer direct = ByteBuffer.allocateDirect(3);
+		direct.put("foo".getBytes()).flip();
+		assertEquals("Zm9v", Base64Codec.encode(direct));
+	}
+	
+	@Test
+	public void malformed() {
+		String[] bad = {"Zm9v!", "Z", "Zm9vY===", "Zg==Zg==", "Zm9=v"};
+		for(String s : bad) {
+			try {
+				Base64Codec.decode(s);
+				fail(s);
+			} catch(IllegalArgumentException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressorTest {
+	private Compressor deflate = Compressor.get(DeflateCompressor.NAME);
+	
+	private static byte[] text(int length) {
+		byte[] b = new byte[length];
+		for(int i = 0; i < length; i++)
+			b[i] = (byte) ('a' + i % 7);
+		return b;
+	}
+	
+	@Test
+	public void roundTrip() {
+		byte[] data = text(10000);
+		byte[] compressed = deflate.compressIfUseful(data);
+		assertTrue(compressed.length < data.length / 10);
+		assertArrayEquals(data, deflate.decompress(compressed, data.length));
+	}
+	
+	@Test
+	public void notUseful() {
+		assertNull(deflate.compressIfUseful(text(Compressor.THRESHOLD - 1)));
+		byte[] random = new byte[10000];
+		new Random(3).nextBytes(random);
+		assertNull(deflate.compressIfUseful(random));
+		byte[] gzip = text(10000);
+		gzip[0] = 0x1F;
+		gzip[1] = (byte) 0x8B;
+		assertNull(deflate.compressIfUseful(gzip));
+	}
+	
+	@Test
+	public void formats() {
+		byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+		assertTrue(Compressor.isCompressedFormat(jpeg, 0));
+		assertTrue(Compressor.isCompressedFormat(Base64Codec.encode(jpeg)));
+		assertTrue(Compressor.isCompressedFormat("data:image/jpeg;base64," + Base64Codec.encode(jpeg)));
+		assertFalse(Compressor.isCompressedFormat(Base64Codec.encode(text(100))));
+		assertFalse(Compressor.isCompressedFormat("not base64 at all, just text"));
+		assertFalse(Compressor.isCompressedFormat(text(100), 0));
+	}
+	
+	@Test
+	public void registry() {
+		assertTrue(Arrays.asList(Compressor.getNames()).contains(DeflateCompressor.NAME));
+		assertNull(Compressor.get("unknown"));
+	}
+	
+	@Test
+	public void corrupted() {
+		byte[] data = text(1000);
+		byte[] compressed = deflate.compress(data);
+		int[] lengths = {data.length - 1, data.length + 1, Compressor.MAX_LENGTH + 1};
+		for(int length : lengths) {
+			try {
+				deflate.decompress(compressed, length);
+				fail("length " + length);
+			} catch(IllegalArgumentException e) {
+			}
+		}
+		try {
+			deflate.decompress(Arrays.copyOf(compressed, compressed.length / 2), data.length);
+			fail("truncated");
+		} catch(IllegalArgumentException e) {
+		}
+	}
+}
@@ -18,6 +18,7 @@ package util;
 import static org.junit.Assert.*;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -67,5 +68,40 @@ public class HexaTest {
 	@Test
 	public void hexStringToBytes() {
 		assertArrayEquals(msgByte, Hexa.hexToBytes(msgHex));
+		assertArrayEquals(msgByte, Hexa.hexToBytes(msgHex.toUpperCase()));
+	}
+	
+	@Test
+	public void byteBuffer() {
+		ByteBuffer direct = ByteBuffer.allocateDirect(msgByte.length);
+		Hexa.hexToBytes(new StringBuilder(msgHex), direct).flip();
+		assertEquals(msgHex, Hexa.bytesToHex(direct));
+		assertEquals(msgHex.substring(2), Hexa.bytesToHex(ByteBuffer.wrap(msgByte, 1, msgByte.length - 1)));
+	}
+	
+	@Test
+	public void allBytes() {
+		byte[] all = new byte[256];
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < all.length; i++) {
+			all[i] = (byte) i;
+			sb.append(String.format("%02x", i));
+		}
+		assertEquals(sb.toString(), Hexa.bytesToHex(all));
+		assertEquals(sb.toString(), Hexa.appendHex(new StringBuilder(), all, 0, all.length).toString());
+		assertArrayEquals(all, Hexa.hexToBytes(sb));
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void notHex() {
+		Hexa.hexToBytes("0g");
+	}
+	
+	@Test
+	public void isHex() {
+		assertTrue(Hexa.isHex(msgHex));
+		assertFalse(Hexa.isHex(""));
+		assertFalse(Hexa.isHex("abc"));
+		assertFalse(Hexa.isHex("AB"));
 	}
 }
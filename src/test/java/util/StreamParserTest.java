@@ -0,0 +1,126 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLStreamException;
+
+import model.data.item.Category;
+import model.data.item.Category.CATEGORY;
+import model.data.item.Item;
+import model.data.manager.Manager;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import util.secure.AsymKeysImpl;
+
+public class StreamParserTest {
+	private static AsymKeysImpl keys;
+	private static Item item1, item2;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		AsymKeysImpl clearKeys = keys.copy();
+		clearKeys.decryptPrivateKey("password");
+		item1 = new Item(keys, "nick", "title1", new Category(CATEGORY.NA), "description <&> é", "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.OFFER);
+		item1.sign(clearKeys);
+		item2 = new Item(keys, "nick", "title2", new Category(CATEGORY.Baby), "description", "",
+				"country", "contact", 0L, 1000000L, Item.TYPE.DEMAND);
+		item2.sign(clearKeys);
+	}
+	
+	@Test
+	public void sameAsSAXBuilder() throws JDOMException, IOException, XMLStreamException {
+		String xml = item1.toString();
+		Element sax = new SAXBuilder().build(new StringReader(xml)).getRootElement();
+		Element stax = StreamParser.readRootElement(new StringReader(xml));
+		XMLOutputter out = new XMLOutputter(Format.getRawFormat());
+		assertEquals(out.outputString(sax), out.outputString(stax));
+	}
+	
+	@Test
+	public void advertisement() {
+		Item copy = new Item(item1.toString());
+		assertEquals(item1.getConcatenedElements(), copy.getConcatenedElements());
+		assertTrue(copy.checkSignature(keys));
+	}
+	
+	@Test(expected = XMLStreamException.class)
+	public void truncated() throws XMLStreamException {
+		String xml = item1.toString();
+		StreamParser.readRootElement(new StringReader(xml.substring(0, xml.length() / 2)));
+	}
+	
+	@Test
+	public void recovery() throws IOException {
+		Element root = new Element(Manager.class.getName());
+		root.addContent(new Element("users"));
+		Element items = new Element("items");
+		items.addContent(item1.getRootElement());
+		items.addContent(item2.getRootElement());
+		root.addContent(items);
+		root.addContent(new Element("messages"));
+		Format format = Format.getPrettyFormat();
+		format.setEncoding("UTF8");
+		File file = File.createTempFile("SXPManager", ".xml");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		new XMLOutputter(format).output(new Document(root), writer);
+		writer.close();
+		
+		Manager manager = new Manager(null);
+		manager.recovery(file.getPath());
+		assertEquals(2, manager.getItemManager().getItems().size());
+		assertNotNull(manager.getItemManager().getItem(item1.getItemKey()));
+		assertTrue(file.exists());
+	}
+	
+	@Test
+	public void unreadableKept() throws IOException {
+		File file = File.createTempFile("SXPManager", ".xml");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write("<?xml version=\"1.0\"?><root><users><User>");
+		writer.close();
+		
+		new Manager(null).recovery(file.getPath());
+		assertFalse(file.exists());
+		File[] aside = file.getParentFile().listFiles();
+		boolean moved = false;
+		for(File f : aside) {
+			if(f.getName().startsWith(file.getName() + ".") && f.getName().endsWith(".bad")) {
+				moved = true;
+				f.deleteOnExit();
+			}
+		}
+		assertTrue(moved);
+	}
+}
@@ -0,0 +1,122 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ElGamalBatchTest {
+	private static AsymKeysImpl alice, bob;
+	private static SecureRandom random = new SecureRandom();
+	
+	@BeforeClass
+	public static void init(){
+		alice = new AsymKeysImpl(false, "password");
+		alice.decryptPrivateKey("password");
+		bob = new AsymKeysImpl(false, "password");
+		bob.decryptPrivateKey("password");
+	}
+	
+	private static ArrayList<AsymKeysImpl> keys = new ArrayList<AsymKeysImpl>();
+	private static ArrayList<byte[]> messages = new ArrayList<byte[]>();
+	private static ArrayList<ElGamalSign> signs = new ArrayList<ElGamalSign>();
+	
+	private static void add(AsymKeysImpl k, String message) {
+		keys.add(new AsymKeysImpl(k.getP(), k.getG(), k.getPublicKey()));
+		messages.add(message.getBytes());
+		signs.add(new ElGamal(k).getMessageSignature(message.getBytes()));
+	}
+	
+	@Test
+	public void batch() {
+		SignatureCache.getInstance().clear();
+		keys.clear(); messages.clear(); signs.clear();
+		for(int i = 0; i < 10; i++) {
+			add(alice, "alice item " + i);
+			add(bob, "bob item " + i);
+		}
+		// replicas
+		for(int i = 0; i < 5; i++) {
+			keys.add(keys.get(0));
+			messages.add(messages.get(0));
+			signs.add(signs.get(0));
+		}
+		boolean[] valid = ElGamal.verifySignatures(keys, messages, signs);
+		for(boolean v : valid)
+			assertTrue(v);
+		
+		// a wrong message, a wrong key and a missing signature
+		messages.set(3, "bob item 42".getBytes());
+		keys.set(4, keys.get(1));
+		signs.set(5, null);
+		valid = ElGamal.verifySignatures(keys, messages, signs);
+		for(int i = 0; i < valid.length; i++) {
+			assertEquals(i != 3 && i != 4 && i != 5, valid[i]);
+			if(signs.get(i) != null)
+				assertEquals(new ElGamal(keys.get(i)).verifySignature(messages.get(i), signs.get(i)), valid[i]);
+		}
+	}
+	
+	@Test
+	public void sameKey() {
+		SignatureCache.getInstance().clear();
+		ArrayList<byte[]> M = new ArrayList<byte[]>();
+		ArrayList<ElGamalSign> S = new ArrayList<ElGamalSign>();
+		ElGamal elGamal = new ElGamal(alice);
+		for(int i = 0; i < 5; i++) {
+			M.add(("message " + i).getBytes());
+			S.add(elGamal.getMessageSignature(M.get(i)));
+		}
+		S.set(2, S.get(1));
+		boolean[] valid = elGamal.verifySignatures(M, S);
+		assertArrayEquals(new boolean[] {true, true, false, true, true}, valid);
+	}
+	
+	@Test
+	public void multiPow() {
+		BigInteger p = alice.getP();
+		ArrayList<BigInteger> bases = new ArrayList<BigInteger>();
+		ArrayList<BigInteger> exponents = new ArrayList<BigInteger>();
+		BigInteger expected = BigInteger.ONE;
+		for(int i = 0; i < 20; i++) {
+			BigInteger b = new BigInteger(p.bitLength() - 1, random);
+			BigInteger e = new BigInteger(i * 50, random);
+			bases.add(b);
+			exponents.add(e);
+			expected = expected.multiply(b.modPow(e, p)).mod(p);
+		}
+		assertEquals(expected, ElGamalBatch.multiPow(bases, exponents, p));
+	}
+	
+	@Test
+	public void jacobi() {
+		BigInteger p = alice.getP();
+		BigInteger half = p.shiftRight(1);
+		for(int i = 0; i < 20; i++) {
+			BigInteger a = new BigInteger(p.bitLength() - 1, random);
+			int euler = a.modPow(half, p).equals(BigInteger.ONE) ? 1 : -1;
+			assertEquals(euler, ElGamalBatch.jacobi(a, p));
+		}
+		assertEquals(-1, ElGamalBatch.jacobi(BigInteger.valueOf(2), BigInteger.valueOf(11)));
+		assertEquals(1, ElGamalBatch.jacobi(BigInteger.valueOf(3), BigInteger.valueOf(11)));
+	}
+}
@@ -0,0 +1,64 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ElGamalHybridTest {
+	private static AsymKeysImpl keys;
+	private static AsymKeysImpl publicKeys;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		publicKeys = new AsymKeysImpl(keys.getP(), keys.getG(), keys.getPublicKey());
+	}
+	
+	@Test
+	public void cryptDecrypt() {
+		for(int size : new int[] {0, 1, 127, 128, 129, 100000}) {
+			byte[] data = new byte[size];
+			new Random(size).nextBytes(data);
+			byte[] encrypted = new ElGamalHybrid(publicKeys).encryptWithPublicKey(data);
+			assertTrue(ElGamalHybrid.isHybrid(encrypted));
+			assertArrayEquals(data, new ElGamalHybrid(keys).decryptWithPrivateKey(encrypted));
+		}
+	}
+	
+	@Test
+	public void modified() {
+		byte[] encrypted = new ElGamalHybrid(publicKeys).encryptWithPublicKey("Hello dear Bob !".getBytes());
+		for(int i : new int[] {10, encrypted.length / 2, encrypted.length - 20, encrypted.length - 1}) {
+			byte[] modified = encrypted.clone();
+			modified[i] ^= 1;
+			assertNull(new ElGamalHybrid(keys).decryptWithPrivateKey(modified));
+		}
+	}
+	
+	@Test
+	public void wrongKey() {
+		AsymKeysImpl other = new AsymKeysImpl(false, "password");
+		other.decryptPrivateKey("password");
+		byte[] encrypted = new ElGamalHybrid(publicKeys).encryptWithPublicKey("Hello dear Bob !".getBytes());
+		assertNull(new ElGamalHybrid(other).decryptWithPrivateKey(encrypted));
+	}
+}
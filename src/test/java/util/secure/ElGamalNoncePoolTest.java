@@ -0,0 +1,72 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ElGamalNoncePoolTest {
+	private static AsymKeysImpl keys;
+	private static AsymKeysImpl publicKeys;
+	private static byte[] message = "Hello dear Bob !".getBytes();
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		publicKeys = new AsymKeysImpl(keys.getP(), keys.getG(), keys.getPublicKey());
+	}
+	
+	@Test
+	public void cryptDecrypt() {
+		for(int i = 0; i < 20; i++) {
+			byte[] encrypted = new ElGamal(publicKeys).encryptWithPublicKey(message);
+			assertArrayEquals(message, new ElGamal(keys).decryptWithPrivateKey(encrypted));
+		}
+	}
+	
+	@Test
+	public void encryptForContract() {
+		ElGamalEncrypt e = new ElGamal(publicKeys).encryptForContract(message);
+		BigInteger p = keys.getP();
+		assertEquals(keys.getG().modPow(e.getK(), p), e.getU());
+		assertEquals(keys.getPublicKey().modPow(e.getK(), p).multiply(new BigInteger(message)), e.getV());
+		assertArrayEquals(message, new ElGamal(keys).decryptWithPrivateKey(e.getM()));
+	}
+	
+	@Test
+	public void freshNonces() throws InterruptedException {
+		ElGamalNoncePool pool = new ElGamalNoncePool(2, 8);
+		pool.prepare(publicKeys);
+		for(int i = 0; i < 100 && pool.available(publicKeys) < 8; i++)
+			Thread.sleep(50);
+		assertEquals(8, pool.available(publicKeys));
+		
+		HashSet<BigInteger> ks = new HashSet<BigInteger>();
+		for(int i = 0; i < 20; i++) {
+			ElGamalNoncePool.Nonce n = pool.take(publicKeys);
+			assertTrue(ks.add(n.getK()));
+			assertEquals(keys.getG().modPow(n.getK(), keys.getP()), n.getGK());
+			assertEquals(keys.getPublicKey().modPow(n.getK(), keys.getP()), n.getYK());
+		}
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,68 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.security.SecureRandom;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ElGamalSignerTest {
+	private static AsymKeysImpl keys;
+	private static AsymKeysImpl publicKeys;
+	private static byte[] message = "Hello dear Alice !".getBytes();
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		publicKeys = new AsymKeysImpl(keys.getP(), keys.getG(), keys.getPublicKey());
+	}
+	
+	@Test
+	public void randomSignVerify() {
+		ElGamalSign sign = new ElGamalSigner(keys).sign(message);
+		assertTrue(new ElGamal(publicKeys).verifySignature(message, sign));
+		assertFalse(new ElGamal(publicKeys).verifySignature("Hello dear Bob !".getBytes(), sign));
+	}
+	
+	@Test
+	public void deterministicSignVerify() {
+		ElGamalSigner signer = new ElGamalSigner(keys, ElGamalSigner.NONCE.DETERMINISTIC, new SecureRandom());
+		ElGamalSign sign1 = signer.sign(message);
+		ElGamalSign sign2 = signer.sign(message);
+		assertEquals(sign1.getR(), sign2.getR());
+		assertEquals(sign1.getS(), sign2.getS());
+		assertTrue(new ElGamal(publicKeys).verifySignature(message, sign1));
+		
+		ElGamalSign other = signer.sign("Hello dear Bob !".getBytes());
+		assertNotEquals(sign1.getR(), other.getR());
+	}
+	
+	@Test
+	public void elGamalNonceMode() {
+		ElGamal elGamal = new ElGamal(keys);
+		elGamal.setNonce(ElGamalSigner.NONCE.DETERMINISTIC);
+		assertEquals(elGamal.getMessageSignature(message).toString(), elGamal.getMessageSignature(message).toString());
+	}
+	
+	@Test
+	public void unknownPrivateKey() {
+		assertNull(new ElGamalSigner(publicKeys).sign(message));
+	}
+}
@@ -0,0 +1,67 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FixedBaseTest {
+	private static AsymKeysImpl keys;
+	private static SecureRandom random = new SecureRandom();
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		FixedBase.precompute(keys.getG(), keys.getP());
+	}
+	
+	@Test
+	public void sameAsModPow() {
+		BigInteger g = keys.getG(), p = keys.getP();
+		for(int i = 0; i < 50; i++) {
+			BigInteger x = new BigInteger(p.bitLength() - 1, random);
+			assertEquals(g.modPow(x, p), FixedBase.modPow(g, x, p));
+		}
+		assertEquals(BigInteger.ONE, FixedBase.modPow(g, BigInteger.ZERO, p));
+		assertEquals(g, FixedBase.modPow(g, BigInteger.ONE, p));
+	}
+	
+	@Test
+	public void outOfRangeExponents() {
+		BigInteger g = keys.getG(), p = keys.getP();
+		BigInteger big = new BigInteger(p.bitLength() + 100, random);
+		assertEquals(g.modPow(big, p), FixedBase.modPow(g, big, p));
+		BigInteger negative = new BigInteger(200, random).negate();
+		assertEquals(g.modPow(negative, p), FixedBase.modPow(g, negative, p));
+		BigInteger pMinusOne = p.subtract(BigInteger.ONE);
+		assertEquals(BigInteger.ONE, FixedBase.modPow(g, pMinusOne, p));
+	}
+	
+	@Test
+	public void otherModulus() {
+		BigInteger p = BigInteger.probablePrime(256, random);
+		BigInteger g = BigInteger.valueOf(3);
+		for(int i = 0; i < 10; i++) {
+			BigInteger x = new BigInteger(300, random);
+			assertEquals(g.modPow(x, p), FixedBase.modPow(g, x, p));
+		}
+	}
+}
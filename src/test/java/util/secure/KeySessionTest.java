@@ -0,0 +1,64 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class KeySessionTest {
+	private static AsymKeysImpl keys;
+	private static byte[] message = "Hello dear Alice !".getBytes();
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+	}
+	
+	@Test
+	public void openSession() {
+		KeySession session = new KeySession(keys, "password");
+		assertTrue(session.isValid());
+		assertNotNull(session.getKeys().getPrivateKey());
+		assertNull(keys.getPrivateKey()); // the user keys stay encrypted
+		
+		ElGamalSign sign = new ElGamal(session.getKeys()).getMessageSignature(message);
+		assertTrue(new ElGamal(keys).verifySignature(message, sign));
+		
+		byte[] cypher = session.getCipher().encrypt(message);
+		assertArrayEquals(message, new SerpentGCM("password").decrypt(cypher));
+		assertTrue(keys.copy().decryptPrivateKey(session.getCipher()));
+	}
+	
+	@Test
+	public void wrongPassword() {
+		KeySession session = new KeySession(keys, "wrong");
+		assertFalse(session.isValid());
+		assertNull(session.getKeys().getPrivateKey());
+	}
+	
+	@Test
+	public void close() {
+		KeySession session = new KeySession(keys, "password");
+		AsymKeysImpl clear = session.getKeys();
+		session.close();
+		assertFalse(session.isValid());
+		assertNull(session.getCipher());
+		assertNull(session.getKeys());
+		assertNull(clear.getPrivateKey());
+	}
+}
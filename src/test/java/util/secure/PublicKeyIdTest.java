@@ -0,0 +1,65 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class PublicKeyIdTest {
+	
+	@Test
+	public void interned() {
+		BigInteger key = new BigInteger("1234567890abcdef1234567890abcdef", 16);
+		PublicKeyId id = PublicKeyId.of(key);
+		assertSame(id, PublicKeyId.of(new BigInteger(key.toByteArray())));
+		assertSame(id, PublicKeyId.of(key.toString(16)));
+		assertSame(id, PublicKeyId.of("1234567890ABCDEF1234567890ABCDEF"));
+		assertNotSame(id, PublicKeyId.of(key.add(BigInteger.ONE)));
+	}
+	
+	@Test
+	public void hexadecimal() {
+		BigInteger key = new BigInteger("00ff00ff00ff", 16);
+		PublicKeyId id = PublicKeyId.of("00FF00ff00ff");
+		assertEquals(key.toString(16), id.toString());
+		assertEquals(key, id.getKey());
+		assertNull(PublicKeyId.of("zz"));
+		assertNull(PublicKeyId.of(""));
+		assertNull(PublicKeyId.of((String) null));
+	}
+	
+	@Test
+	public void digest() {
+		PublicKeyId id = PublicKeyId.of(BigInteger.valueOf(42));
+		byte[] d = id.getDigest();
+		assertEquals(32, d.length);
+		d[0]++;
+		assertFalse(d[0] == id.getDigest()[0]);
+	}
+	
+	@Test
+	public void keys() {
+		AsymKeysImpl keys = new AsymKeysImpl(BigInteger.valueOf(23), BigInteger.valueOf(5), BigInteger.valueOf(8));
+		assertSame(PublicKeyId.of(BigInteger.valueOf(8)), keys.getPublicKeyId());
+		keys.setPublicKey(BigInteger.valueOf(19));
+		assertEquals("13", keys.getPublicKeyId().toString());
+		assertSame(keys.getPublicKeyId(), new AsymKeysImpl(keys).getPublicKeyId());
+		assertNull(new AsymKeysImpl().getPublicKeyId());
+	}
+}
@@ -0,0 +1,156 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SerpentGCMTest {
+	private static SerpentGCM serpent;
+	private static Random random = new Random(42);
+	private static byte[] plainText = "Lorem ipsum dolor sit amet ! Izy".getBytes();
+	
+	@BeforeClass
+	public static void init(){
+		serpent = new SerpentGCM("qosfqifquig");
+	}
+	
+	@Test
+	public void encryptDecrypt() {
+		byte[] cypher = serpent.encrypt(plainText);
+		assertEquals(plainText.length + SerpentGCM.OVERHEAD, cypher.length);
+		assertTrue(SerpentGCM.isAuthenticated(cypher));
+		assertArrayEquals(plainText, serpent.decrypt(cypher));
+		assertArrayEquals(new byte[0], serpent.decrypt(serpent.encrypt(new byte[0])));
+		assertFalse(Arrays.equals(cypher, serpent.encrypt(plainText))); // new nonce each time
+	}
+	
+	@Test
+	public void authentication() {
+		byte[] cypher = serpent.encrypt(plainText);
+		cypher[SerpentGCM.HEADER.length + GCMMode.NONCE_LENGTH + 3] ^= 1;
+		assertNull(serpent.decrypt(cypher));
+		assertNull(new SerpentGCM("wrong password").decrypt(serpent.encrypt(plainText)));
+	}
+	
+	private static byte[] salt(byte[] cypher) {
+		return Arrays.copyOfRange(cypher, SerpentGCM.HEADER.length, SerpentGCM.HEADER.length + SerpentGCM.SALT_LENGTH);
+	}
+	
+	@Test
+	public void salt() {
+		byte[] first = new SerpentGCM("password").encrypt(plainText);
+		byte[] other = new SerpentGCM("password").encrypt(plainText);
+		assertFalse(Arrays.equals(salt(first), salt(other))); // a new salt for each user
+		SerpentGCM login = new SerpentGCM("password");
+		assertArrayEquals(plainText, login.decrypt(first));
+		assertArrayEquals(salt(first), salt(login.encrypt(plainText))); // the user keeps his salt
+	}
+	
+	@Test
+	public void version1() throws Exception {
+		byte[] header = {'S', 'X', 'P', 0x01}, nonce = new byte[GCMMode.NONCE_LENGTH];
+		random.nextBytes(nonce);
+		byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(
+				new PBEKeySpec("qosfqifquig".toCharArray(), "SXP-Serpent-GCM".getBytes(), 10000, 256)).getEncoded();
+		ByteBuffer cypher = ByteBuffer.allocate(header.length + nonce.length + plainText.length + GCMMode.TAG_LENGTH);
+		cypher.put(header).put(nonce);
+		new GCMMode(new gnu.crypto.cipher.Serpent(), key).encrypt(nonce, header, ByteBuffer.wrap(plainText), cypher);
+		assertTrue(SerpentGCM.isAuthenticated(cypher.array()));
+		assertArrayEquals(plainText, serpent.decrypt(cypher.array()));
+	}
+	
+	@Test
+	public void oldFormat() {
+		byte[] cypher = new Serpent("qosfqifquig").encrypt(plainText);
+		assertFalse(SerpentGCM.isAuthenticated(cypher));
+		assertArrayEquals(plainText, serpent.decrypt(cypher));
+	}
+	
+	@Test
+	public void streams() throws Exception {
+		byte[] data = new byte[3 * 1024 * 1024 + 7];
+		random.nextBytes(data);
+		ByteArrayOutputStream cypher = new ByteArrayOutputStream();
+		serpent.encrypt(new ByteArrayInputStream(data), cypher);
+		assertEquals(data.length + SerpentGCM.OVERHEAD, cypher.size());
+		assertArrayEquals(data, serpent.decrypt(cypher.toByteArray()));
+		
+		ByteArrayOutputStream clear = new ByteArrayOutputStream();
+		serpent.decrypt(new ByteArrayInputStream(cypher.toByteArray()), clear);
+		assertArrayEquals(data, clear.toByteArray());
+		
+		byte[] modified = cypher.toByteArray();
+		modified[modified.length - 1] ^= 1;
+		try {
+			serpent.decrypt(new ByteArrayInputStream(modified), new ByteArrayOutputStream());
+			fail("modified data accepted");
+		} catch(AEADBadTagException e) {
+		}
+	}
+	
+	@Test
+	public void byteBuffers() throws Exception {
+		ByteBuffer src = ByteBuffer.allocateDirect(10000);
+		byte[] data = new byte[10000];
+		random.nextBytes(data);
+		src.put(data).flip();
+		ByteBuffer cypher = ByteBuffer.allocateDirect(data.length + SerpentGCM.OVERHEAD);
+		assertEquals(cypher.capacity(), serpent.encrypt(src, cypher));
+		cypher.flip();
+		ByteBuffer clear = ByteBuffer.allocate(data.length);
+		assertEquals(data.length, serpent.decrypt(cypher, clear));
+		assertArrayEquals(data, clear.array());
+	}
+	
+	/**
+	 * The mode must give the same result as the JDK AES/GCM
+	 */
+	@Test
+	public void gcmMode() throws Exception {
+		for(int length : new int[] {0, 1, 15, 16, 17, 100, 5000}) {
+			byte[] key = new byte[16], nonce = new byte[12], aad = new byte[20], data = new byte[length];
+			random.nextBytes(key);
+			random.nextBytes(nonce);
+			random.nextBytes(aad);
+			random.nextBytes(data);
+			Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+			aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, nonce));
+			aes.updateAAD(aad);
+			byte[] expected = aes.doFinal(data);
+			
+			GCMMode gcm = new GCMMode(new gnu.crypto.cipher.Rijndael(), key);
+			ByteBuffer cypher = ByteBuffer.allocate(length + GCMMode.TAG_LENGTH);
+			gcm.encrypt(nonce, aad, ByteBuffer.wrap(data), cypher);
+			assertArrayEquals(expected, cypher.array());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/* Copyright 2015 Pablo Arrighi, Sarah Boukris, Mehdi Chtiwi, 
+   Michael Dubuis, Kevin Perrot, Julien Prudhomme.
+
+   This file is part of SXP.
+
+   SXP is free software: you can redistribute it and/or modify it 
+   under the terms of the GNU Lesser General Public License as published 
+   by the Free Software Foundation, version 3.
+
+   SXP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
+   without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR 
+   PURPOSE.  See the GNU Lesser General Public License for more details.
+
+   You should have received a copy of the GNU Lesser General Public License along with SXP. 
+   If not, see <http://www.gnu.org/licenses/>. */
+package util.secure;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SignatureCacheTest {
+	private static AsymKeysImpl keys;
+	private static AsymKeysImpl publicKeys;
+	private static byte[] message = "Hello dear Alice !".getBytes();
+	private static ElGamalSign sign;
+	
+	@BeforeClass
+	public static void init(){
+		keys = new AsymKeysImpl(false, "password");
+		keys.decryptPrivateKey("password");
+		publicKeys = new AsymKeysImpl(keys.getP(), keys.getG(), keys.getPublicKey());
+		sign = new ElGamal(keys).getMessageSignature(message);
+	}
+	
+	@Before
+	public void clear() {
+		SignatureCache.getInstance().clear();
+	}
+	
+	@Test
+	public void hitsAndMisses() {
+		SignatureCache cache = SignatureCache.getInstance();
+		ElGamal elGamal = new ElGamal(publicKeys);
+		assertTrue(elGamal.verifySignature(message, sign));
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertTrue(elGamal.verifySignature(message, sign));
+		assertTrue(new ElGamal(new AsymKeysImpl(keys.getP(), keys.getG(), keys.getPublicKey())).verifySignature(message, sign));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void invalidNotCached() {
+		SignatureCache cache = SignatureCache.getInstance();
+		ElGamal elGamal = new ElGamal(publicKeys);
+		byte[] other = "Hello dear Bob !".getBytes();
+		assertFalse(elGamal.verifySignature(other, sign));
+		assertFalse(elGamal.verifySignature(other, sign));
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.size());
+		
+		ElGamalSign forged = new ElGamalSign(sign.getR(), sign.getS().add(BigInteger.ONE));
+		assertTrue(elGamal.verifySignature(message, sign));
+		assertFalse(elGamal.verifySignature(message, forged));
+	}
+	
+	@Test
+	public void lruEviction() {
+		SignatureCache cache = new SignatureCache(2);
+		byte[] m1 = "1".getBytes(), m2 = "2".getBytes(), m3 = "3".getBytes();
+		cache.addVerified(publicKeys, m1, sign);
+		cache.addVerified(publicKeys, m2, sign);
+		assertTrue(cache.isVerified(publicKeys, m1, sign));
+		cache.addVerified(publicKeys, m3, sign);
+		assertEquals(2, cache.size());
+		assertTrue(cache.isVerified(publicKeys, m1, sign));
+		assertFalse(cache.isVerified(publicKeys, m2, sign));
+		assertTrue(cache.isVerified(publicKeys, m3, sign));
+		cache.setCapacity(1);
+		assertEquals(1, cache.size());
+		assertTrue(cache.isVerified(publicKeys, m3, sign));
+	}
+}